@@ -0,0 +1,122 @@
+package HaarTransform;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Block sparse view of a coefficient array, recording for every square block of coefficients
+ * whether any band of any coefficient in it is non-zero. After thresholding most detail blocks
+ * are empty, which lets recover passes skip reading them altogether.
+ *
+ * <p>The map describes the coefficients at the time it was built. Passes that rewrite a region
+ * of the array keep it valid by building the occupancy of that region from every non-zero
+ * coefficient they write, which replaces the old occupancy once the pass is done.
+ */
+public final class BlockOccupancyMap {
+    static final int BLOCK_SIZE = 16;
+    private final boolean[][] occupiedBlocks;
+    private final int numOfBlockColumns;
+    private final int numOfBlockRows;
+    private boolean[][] rewrittenBlocks;
+
+    private BlockOccupancyMap(boolean[][] occupiedBlocks, int numOfBlockRows){
+        this.occupiedBlocks = occupiedBlocks;
+        this.numOfBlockColumns = occupiedBlocks.length;
+        this.numOfBlockRows = numOfBlockRows;
+    }
+
+    /**
+     * Builds the occupancy of every block of the coefficient array, one column of blocks per task
+     */
+    public static BlockOccupancyMap build(double[][][] pixelArray){
+        int numOfColumns = pixelArray.length;
+        int numOfRows = pixelArray[0].length;
+        int numOfBlockColumns = (numOfColumns + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int numOfBlockRows = (numOfRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        boolean[][] occupiedBlocks = new boolean[numOfBlockColumns][numOfBlockRows];
+
+        IntStream.range(0, numOfBlockColumns).parallel().forEach(blockColumn -> {
+            int endColumn = Math.min(numOfColumns, (blockColumn + 1) * BLOCK_SIZE);
+            for (int currColumn = blockColumn * BLOCK_SIZE; currColumn < endColumn; currColumn++) {
+                for (int currRow = 0; currRow < numOfRows; currRow++) {
+                    if (!occupiedBlocks[blockColumn][currRow / BLOCK_SIZE] && isNonZero(pixelArray[currColumn][currRow])) {
+                        occupiedBlocks[blockColumn][currRow / BLOCK_SIZE] = true;
+                    }
+                }
+            }
+        });
+        return new BlockOccupancyMap(occupiedBlocks, numOfBlockRows);
+    }
+
+    private static boolean isNonZero(double[] pixelBands){
+        for (double coefficient : pixelBands) {
+            if (coefficient != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true when every coefficient in the columns [startColumn, endColumn) of the
+     * rows [startRow, endRow) is zero in every band
+     */
+    public boolean isZero(int startColumn, int startRow, int endColumn, int endRow){
+        int lastBlockColumn = (endColumn - 1) / BLOCK_SIZE;
+        int lastBlockRow = (endRow - 1) / BLOCK_SIZE;
+
+        for (int blockColumn = startColumn / BLOCK_SIZE; blockColumn <= lastBlockColumn; blockColumn++) {
+            for (int blockRow = startRow / BLOCK_SIZE; blockRow <= lastBlockRow; blockRow++) {
+                if (occupiedBlocks[blockColumn][blockRow]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts rewriting the columns [0, endColumn) of the rows [0, endRow). Queries keep answering
+     * for the coefficients as they were until the rewrite ends, while the blocks lying entirely
+     * inside the region start out empty in the occupancy being built. Blocks straddling the edge
+     * of the region keep their occupancy, since part of them is left as is.
+     */
+    void beginRegionRewrite(int endColumn, int endRow){
+        rewrittenBlocks = new boolean[numOfBlockColumns][];
+        for (int blockColumn = 0; blockColumn < numOfBlockColumns; blockColumn++) {
+            rewrittenBlocks[blockColumn] = occupiedBlocks[blockColumn].clone();
+            if (blockColumn < endColumn / BLOCK_SIZE) {
+                Arrays.fill(rewrittenBlocks[blockColumn], 0, endRow / BLOCK_SIZE, false);
+            }
+        }
+    }
+
+    /**
+     * Marks the block holding a rewritten coefficient as occupied. Lines written concurrently may
+     * mark the same block, which is harmless as they all store the same value.
+     */
+    void markOccupied(int column, int row){
+        rewrittenBlocks[column / BLOCK_SIZE][row / BLOCK_SIZE] = true;
+    }
+
+    /**
+     * Ends the current rewrite, subsequent queries answering for the rewritten coefficients
+     */
+    void endRegionRewrite(){
+        System.arraycopy(rewrittenBlocks, 0, occupiedBlocks, 0, numOfBlockColumns);
+        rewrittenBlocks = null;
+    }
+
+    /**
+     * @return The fraction of blocks holding at least one non-zero coefficient
+     */
+    public double getOccupiedFraction(){
+        long numOccupied = 0;
+        for (boolean[] blockColumn : occupiedBlocks) {
+            for (boolean occupied : blockColumn) {
+                numOccupied += occupied ? 1 : 0;
+            }
+        }
+        return (double)numOccupied / ((long)numOfBlockColumns * numOfBlockRows);
+    }
+}
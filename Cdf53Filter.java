@@ -0,0 +1,33 @@
+package HaarTransform;
+
+/**
+ * <p>The integer reversible CDF 5/3 (LeGall) filter used by lossless JPEG 2000. The rounding
+ * in both lifting steps makes the step exactly reversible, so integer samples are recovered
+ * without any loss.
+ */
+final class Cdf53Filter extends LiftingFilter {
+
+    @Override
+    void liftForward(double[] coefficients, int half){
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[half + pairIndex] -= Math.floor((lowAt(coefficients, half, pairIndex)
+                    + lowAt(coefficients, half, pairIndex + 1)) / 2);
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] += Math.floor((highAt(coefficients, half, pairIndex - 1)
+                    + highAt(coefficients, half, pairIndex) + 2) / 4);
+        }
+    }
+
+    @Override
+    void liftInverse(double[] coefficients, int half){
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] -= Math.floor((highAt(coefficients, half, pairIndex - 1)
+                    + highAt(coefficients, half, pairIndex) + 2) / 4);
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[half + pairIndex] += Math.floor((lowAt(coefficients, half, pairIndex)
+                    + lowAt(coefficients, half, pairIndex + 1)) / 2);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package HaarTransform;
+
+/**
+ * <p>The CDF 9/7 filter used by lossy JPEG 2000, made of two predict and two update lifting
+ * steps followed by scaling. The low pass coefficients are scaled to keep the brightness of
+ * the averaged sub-image, so pixel expansion images remain meaningful.
+ */
+final class Cdf97Filter extends LiftingFilter {
+    private static final double ALPHA = -1.586134342059924;
+    private static final double BETA = -0.052980118572961;
+    private static final double GAMMA = 0.882911075530934;
+    private static final double DELTA = 0.443506852043971;
+    private static final double K = 1.230174104914001;
+
+    @Override
+    void liftForward(double[] coefficients, int half){
+        predict(coefficients, half, ALPHA);
+        update(coefficients, half, BETA);
+        predict(coefficients, half, GAMMA);
+        update(coefficients, half, DELTA);
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] /= K;
+            coefficients[half + pairIndex] *= K / 2;
+        }
+    }
+
+    @Override
+    void liftInverse(double[] coefficients, int half){
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] *= K;
+            coefficients[half + pairIndex] /= K / 2;
+        }
+        update(coefficients, half, -DELTA);
+        predict(coefficients, half, -GAMMA);
+        update(coefficients, half, -BETA);
+        predict(coefficients, half, -ALPHA);
+    }
+
+    private void predict(double[] coefficients, int half, double weight){
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[half + pairIndex] += weight * (lowAt(coefficients, half, pairIndex)
+                    + lowAt(coefficients, half, pairIndex + 1));
+        }
+    }
+
+    private void update(double[] coefficients, int half, double weight){
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] += weight * (highAt(coefficients, half, pairIndex - 1)
+                    + highAt(coefficients, half, pairIndex));
+        }
+    }
+}
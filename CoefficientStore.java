@@ -0,0 +1,94 @@
+package HaarTransform;
+
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * <p>Storage for the coefficients of an image that is too large for the double[][][] array used
+ * by HaarTransform. Coefficients are addressed by column, row and band, while implementations
+ * index their storage with longs so the total number of coefficients is not limited to what a
+ * Java array can hold.
+ *
+ * <p>Different coefficients may be read and written concurrently by the lines of a pass.
+ * Closing a store releases its storage, after which it must not be used anymore.
+ *
+ * <p>Images are moved in and out of every store the same way, through writeRaster and readRaster,
+ * whatever precision the store keeps its coefficients in.
+ */
+public interface CoefficientStore extends AutoCloseable {
+
+    int getNumOfColumns();
+
+    int getNumOfRows();
+
+    int getNumOfBands();
+
+    double get(int column, int row, int band);
+
+    void set(int column, int row, int band, double value);
+
+    /**
+     * Copies the coefficients of a run of pixels of a row into samples, starting at offset, with
+     * the bands of a pixel next to each other. Stores override this to copy the run in bulk.
+     */
+    default void readPixels(int startColumn, int row, int numOfPixels, double[] samples, int offset){
+        int numOfBands = getNumOfBands();
+        for (int pixelIndex = 0; pixelIndex < numOfPixels; pixelIndex++) {
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                samples[offset + (pixelIndex * numOfBands) + bandIndex] = get(startColumn + pixelIndex, row, bandIndex);
+            }
+        }
+    }
+
+    /**
+     * Copies samples laid out as readPixels lays them out into a run of pixels of a row
+     */
+    default void writePixels(int startColumn, int row, int numOfPixels, double[] samples, int offset){
+        int numOfBands = getNumOfBands();
+        for (int pixelIndex = 0; pixelIndex < numOfPixels; pixelIndex++) {
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                set(startColumn + pixelIndex, row, bandIndex, samples[offset + (pixelIndex * numOfBands) + bandIndex]);
+            }
+        }
+    }
+
+    /**
+     * Copies the samples of a raster into the store, its top left pixel going to the given column and row
+     */
+    default void writeRaster(Raster raster, int startColumn, int startRow){
+        int numOfBands = getNumOfBands();
+        double[] rowSamples = new double[raster.getWidth() * numOfBands];
+        for (int currRow = 0; currRow < raster.getHeight(); currRow++) {
+            raster.getPixels(raster.getMinX(), raster.getMinY() + currRow, raster.getWidth(), 1, rowSamples);
+            for (int currColumn = 0; currColumn < raster.getWidth(); currColumn++) {
+                for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                    set(startColumn + currColumn, startRow + currRow, bandIndex,
+                            rowSamples[(currColumn * numOfBands) + bandIndex]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the coefficients starting at the given column and row into a raster, rounded to the
+     * nearest sample and clamped to the range each band can hold
+     */
+    default void readRaster(WritableRaster raster, int startColumn, int startRow){
+        int numOfBands = getNumOfBands();
+        int[] rowSamples = new int[raster.getWidth() * numOfBands];
+        for (int currRow = 0; currRow < raster.getHeight(); currRow++) {
+            for (int currColumn = 0; currColumn < raster.getWidth(); currColumn++) {
+                for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                    long maxSample = (1L << raster.getSampleModel().getSampleSize(bandIndex)) - 1;
+                    double value = get(startColumn + currColumn, startRow + currRow, bandIndex);
+                    rowSamples[(currColumn * numOfBands) + bandIndex] =
+                            (int)Math.max(0, Math.min(maxSample, Math.round(value)));
+                }
+            }
+            raster.setPixels(raster.getMinX(), raster.getMinY() + currRow, raster.getWidth(), 1, rowSamples);
+        }
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,157 @@
+package HaarTransform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Transforms and recovers every level of an image held in a CoefficientStore, for images too
+ * large for the coefficient array of HaarTransform such as 100k by 100k panoramas kept in an
+ * OffHeapCoefficientStore. Levels are ordered and sized exactly as HaarTransform orders and sizes
+ * them, in either decomposition mode and with any wavelet family, so a store holds the same
+ * coefficients HaarTransform would produce for the same image.
+ *
+ * <p>Recovers undo the passes of the transform in the opposite order. No stage images are
+ * rendered; the pixels are moved in and out of the store in pieces small enough for a Raster.
+ *
+ * <p>The passes compute in the precision of the store, which makes this the only way to
+ * transform in the 16 bit fixed point of a FixedPointCoefficientStore.
+ */
+public class CoefficientStoreTransform {
+    private final CoefficientStore store;
+    private WaveletFamily waveletFamily = WaveletFamily.HAAR;
+    private LiftingEngine liftingEngine = new LiftingEngine(waveletFamily.createFilter());
+    private DecompositionMode decompositionMode = DecompositionMode.NON_STANDARD;
+
+    /**
+     * @param store The store holding the image to transform, or the coefficients to recover
+     */
+    public CoefficientStoreTransform(CoefficientStore store){
+        this.store = store;
+    }
+
+    /**
+     * Selects the wavelet used by the row and column passes. Must be left unchanged between
+     * transforming and recovering a store, and be the Haar family for a FixedPointCoefficientStore.
+     */
+    public void setWaveletFamily(WaveletFamily waveletFamily){
+        if (store instanceof FixedPointCoefficientStore && waveletFamily != WaveletFamily.HAAR) {
+            throw new IllegalArgumentException("waveletFamily must be HAAR for a FixedPointCoefficientStore: " + waveletFamily);
+        }
+        this.waveletFamily = waveletFamily;
+        liftingEngine = new LiftingEngine(waveletFamily.createFilter());
+    }
+
+    public WaveletFamily getWaveletFamily(){
+        return waveletFamily;
+    }
+
+    /**
+     * Selects how the levels of the transform are ordered. Must be left unchanged between
+     * transforming and recovering a store.
+     */
+    public void setDecompositionMode(DecompositionMode decompositionMode){
+        this.decompositionMode = decompositionMode;
+    }
+
+    public DecompositionMode getDecompositionMode(){
+        return decompositionMode;
+    }
+
+    /**
+     * Transforms every level of the store in place
+     */
+    public void performAllTransforms(){
+        List<Pass> passes = planPasses();
+        for (Pass pass : passes) {
+            performPass(pass, false);
+        }
+    }
+
+    /**
+     * Recovers every level of the store in place
+     */
+    public void performAllRecovers(){
+        List<Pass> passes = planPasses();
+        for (int passIndex = passes.size() - 1; passIndex >= 0; passIndex--) {
+            performPass(passes.get(passIndex), true);
+        }
+    }
+
+    private void performPass(Pass pass, boolean recover){
+        TransformPassEvent event = new TransformPassEvent();
+        event.begin();
+        if (pass.rowPass) {
+            liftingEngine.transformRows(store, pass.subImageMaxColumn, pass.subImageMaxRow, recover);
+        } else {
+            liftingEngine.transformColumns(store, pass.subImageMaxColumn, pass.subImageMaxRow, recover);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.pass = (pass.rowPass ? "Store Row " : "Store Column ") + (recover ? "Recover" : "Transform");
+            event.level = pass.level;
+            event.subImageColumns = pass.subImageMaxColumn;
+            event.subImageRows = pass.subImageMaxRow;
+            event.bands = store.getNumOfBands();
+            //Each pass reads and writes back every coefficient of its sub-image
+            event.bytesTouched = 2L * pass.subImageMaxColumn * pass.subImageMaxRow * store.getNumOfBands() * Double.BYTES;
+            event.commit();
+        }
+    }
+
+    /**
+     * Lists the passes of a full transform in the order they are performed
+     */
+    private List<Pass> planPasses(){
+        int numOfColumns = store.getNumOfColumns();
+        int numOfRows = store.getNumOfRows();
+        int numRowTransformsNeeded = calcTransformsNeeded(numOfColumns);
+        int numColumnTransformsNeeded = calcTransformsNeeded(numOfRows);
+        List<Pass> passes = new ArrayList<>();
+
+        if (decompositionMode == DecompositionMode.STANDARD) {
+            for (int level = 0; level < numRowTransformsNeeded; level++) {
+                passes.add(new Pass(true, level, subImageSize(numOfColumns, level), numOfRows));
+            }
+            for (int level = 0; level < numColumnTransformsNeeded; level++) {
+                passes.add(new Pass(false, level, numOfColumns, subImageSize(numOfRows, level)));
+            }
+            return passes;
+        }
+        for (int level = 0; level < numRowTransformsNeeded || level < numColumnTransformsNeeded; level++) {
+            if (level < numRowTransformsNeeded) {
+                passes.add(new Pass(true, level, subImageSize(numOfColumns, level), subImageSize(numOfRows, level)));
+            }
+            if (level < numColumnTransformsNeeded) {
+                passes.add(new Pass(false, level, subImageSize(numOfColumns, level), subImageSize(numOfRows, level)));
+            }
+        }
+        return passes;
+    }
+
+    private static int subImageSize(int size, int level){
+        return Math.max(1, size >> level);
+    }
+
+    private static int calcTransformsNeeded(int size){
+        int numOfTransformsNeeded = 0;
+        while(size > 1) {
+            numOfTransformsNeeded++;
+            size/=2;
+        }
+        return numOfTransformsNeeded;
+    }
+
+    private static class Pass {
+        final boolean rowPass;
+        final int level;
+        final int subImageMaxColumn;
+        final int subImageMaxRow;
+
+        Pass(boolean rowPass, int level, int subImageMaxColumn, int subImageMaxRow){
+            this.rowPass = rowPass;
+            this.level = level;
+            this.subImageMaxColumn = subImageMaxColumn;
+            this.subImageMaxRow = subImageMaxRow;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package HaarTransform;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Zeroes the small coefficients of a transformed image in place, either everything at or below
+ * a magnitude threshold or everything but the K largest magnitudes of a subband. Coefficients of
+ * every band of a subband are thresholded together.
+ *
+ * <p>The magnitude cutoff for the K largest coefficients is found without sorting the subband:
+ * a histogram of the magnitudes, built in parallel, locates the bin holding the cutoff, and only
+ * the coefficients falling into that bin are selected from.
+ *
+ * <p>With hard thresholding the coefficients above the threshold keep their value, with soft
+ * thresholding they are shrunk towards zero by the threshold.
+ *
+ * <p>For YCoCg-R transformed images the chroma bands can be given their own threshold or
+ * fraction kept. Chroma bands are left alone in the subbands of levels they took no part in,
+ * where they still hold averaged values.
+ */
+public class CoefficientThresholder {
+    private static final int NUM_OF_BINS = 4096;
+    /** Threshold of the bands a subband is thresholded without */
+    private static final double SKIPPED_BAND = Double.NaN;
+    private final ThresholdMode mode;
+
+    public CoefficientThresholder(ThresholdMode mode){
+        this.mode = mode;
+    }
+
+    public ThresholdMode getMode(){
+        return mode;
+    }
+
+    /**
+     * Thresholds every detail subband of a fully transformed image with the same threshold,
+     * leaving the averaged sub-image untouched
+     * @param transformer The transformer holding the fully transformed image
+     * @param threshold Coefficients with a magnitude at or below this value are zeroed
+     * @return The number of coefficients kept in each detail subband
+     */
+    public Map<Subband, Long> thresholdDetailSubbands(HaarTransform transformer, double threshold){
+        return thresholdDetailSubbands(transformer, threshold, threshold);
+    }
+
+    /**
+     * Thresholds every detail subband of a fully transformed image, with a separate threshold for
+     * the chroma bands of YCoCg-R transformed images, leaving the averaged sub-image untouched
+     * @param transformer The transformer holding the fully transformed image
+     * @param lumaThreshold Coefficients of the luma band, or of every band of other images, with a
+     *                      magnitude at or below this value are zeroed
+     * @param chromaThreshold Coefficients of the chroma bands with a magnitude at or below this value are zeroed
+     * @return The number of coefficients kept in each detail subband
+     */
+    public Map<Subband, Long> thresholdDetailSubbands(HaarTransform transformer, double lumaThreshold,
+                                                      double chromaThreshold){
+        Map<Subband, Long> keptCoefficients = new LinkedHashMap<>();
+        for (Subband subband : transformer.getSubbands()) {
+            if (!subband.isApproximation()) {
+                double[] bandThresholds = new double[transformer.numOfBands];
+                for (int bandIndex = 0; bandIndex < bandThresholds.length; bandIndex++) {
+                    bandThresholds[bandIndex] = !transformer.isBandInSubband(bandIndex, subband) ? SKIPPED_BAND
+                                              : transformer.isChromaBand(bandIndex) ? chromaThreshold : lumaThreshold;
+                }
+                keptCoefficients.put(subband, thresholdBands(transformer.getImagePixelArray(), subband, bandThresholds));
+            }
+        }
+        return keptCoefficients;
+    }
+
+    /**
+     * Keeps the given fraction of the largest coefficients in every detail subband of a fully
+     * transformed image, leaving the averaged sub-image untouched
+     * @param transformer The transformer holding the fully transformed image
+     * @param fractionKept The fraction of coefficients kept in each subband, between 0 and 1
+     * @return The number of coefficients kept in each detail subband
+     */
+    public Map<Subband, Long> keepLargestInDetailSubbands(HaarTransform transformer, double fractionKept){
+        Map<Subband, Long> keptCoefficients = new LinkedHashMap<>();
+        for (Subband subband : transformer.getSubbands()) {
+            if (!subband.isApproximation()) {
+                boolean[] bandsKept = new boolean[transformer.numOfBands];
+                for (int bandIndex = 0; bandIndex < bandsKept.length; bandIndex++) {
+                    bandsKept[bandIndex] = transformer.isBandInSubband(bandIndex, subband);
+                }
+                keptCoefficients.put(subband, keepLargestOfBands(transformer.getImagePixelArray(), subband,
+                        fractionKept, bandsKept));
+            }
+        }
+        return keptCoefficients;
+    }
+
+    /**
+     * Keeps the given fractions of the largest coefficients in every detail subband of a fully
+     * transformed image, selecting the largest chroma coefficients of YCoCg-R transformed images
+     * separately from the others, and leaving the averaged sub-image untouched
+     * @param transformer The transformer holding the fully transformed image
+     * @param lumaFractionKept The fraction of the luma coefficients, or of the coefficients of every
+     *                         band of other images, kept in each subband
+     * @param chromaFractionKept The fraction of the chroma coefficients kept in each subband
+     * @return The number of coefficients kept in each detail subband
+     */
+    public Map<Subband, Long> keepLargestInDetailSubbands(HaarTransform transformer, double lumaFractionKept,
+                                                          double chromaFractionKept){
+        Map<Subband, Long> keptCoefficients = new LinkedHashMap<>();
+        for (Subband subband : transformer.getSubbands()) {
+            if (!subband.isApproximation()) {
+                boolean[] lumaBands = new boolean[transformer.numOfBands];
+                boolean[] chromaBands = new boolean[transformer.numOfBands];
+                for (int bandIndex = 0; bandIndex < lumaBands.length; bandIndex++) {
+                    boolean inSubband = transformer.isBandInSubband(bandIndex, subband);
+                    chromaBands[bandIndex] = inSubband && transformer.isChromaBand(bandIndex);
+                    lumaBands[bandIndex] = inSubband && !transformer.isChromaBand(bandIndex);
+                }
+                double[][][] pixelArray = transformer.getImagePixelArray();
+                keptCoefficients.put(subband, keepLargestOfBands(pixelArray, subband, lumaFractionKept, lumaBands)
+                        + keepLargestOfBands(pixelArray, subband, chromaFractionKept, chromaBands));
+            }
+        }
+        return keptCoefficients;
+    }
+
+    private long keepLargestOfBands(double[][][] pixelArray, Subband subband, double fractionKept, boolean[] bandsKept){
+        long numOfBandsKept = 0;
+        for (boolean bandKept : bandsKept) {
+            numOfBandsKept += bandKept ? 1 : 0;
+        }
+        if (numOfBandsKept == 0) {
+            return 0;
+        }
+        long numToKeep = Math.round(subband.getNumOfCoefficients((int)numOfBandsKept) * fractionKept);
+        return keepLargest(pixelArray, subband, numToKeep, bandsKept);
+    }
+
+    /**
+     * Zeroes every coefficient of the subband with a magnitude at or below the threshold
+     * @return The number of coefficients kept
+     */
+    public long threshold(double[][][] pixelArray, Subband subband, double threshold){
+        double[] bandThresholds = new double[pixelArray[0][0].length];
+        Arrays.fill(bandThresholds, threshold);
+        return thresholdBands(pixelArray, subband, bandThresholds);
+    }
+
+    /**
+     * Zeroes the coefficients of each band of the subband with a magnitude at or below the
+     * threshold of that band, leaving bands with a SKIPPED_BAND threshold untouched
+     * @return The number of coefficients kept in the bands thresholded
+     */
+    private long thresholdBands(double[][][] pixelArray, Subband subband, double[] bandThresholds){
+        return IntStream.range(subband.getStartColumn(), subband.getEndColumn()).parallel()
+                .mapToLong(currColumn -> thresholdColumn(pixelArray[currColumn], subband, bandThresholds))
+                .sum();
+    }
+
+    /**
+     * Keeps the numToKeep coefficients of the subband with the largest magnitudes, zeroing the
+     * rest. Fewer coefficients are kept when several share the magnitude at the cutoff.
+     * @return The number of coefficients kept
+     */
+    public long keepLargest(double[][][] pixelArray, Subband subband, long numToKeep){
+        boolean[] bandsKept = new boolean[pixelArray[0][0].length];
+        Arrays.fill(bandsKept, true);
+        return keepLargest(pixelArray, subband, numToKeep, bandsKept);
+    }
+
+    /**
+     * Keeps the numToKeep coefficients of the given bands of the subband with the largest
+     * magnitudes, zeroing the rest of these bands and leaving the other bands untouched
+     * @return The number of coefficients kept in the given bands
+     */
+    private long keepLargest(double[][][] pixelArray, Subband subband, long numToKeep, boolean[] bandsKept){
+        long numOfBandsKept = 0;
+        for (boolean bandKept : bandsKept) {
+            numOfBandsKept += bandKept ? 1 : 0;
+        }
+        long numOfCoefficients = subband.getNumOfCoefficients((int)numOfBandsKept);
+        if (numToKeep >= numOfCoefficients) {
+            return countNonZero(pixelArray, subband, bandsKept);
+        }
+        //The largest magnitude that has to go is the cutoff, everything above it is kept
+        double cutoff = findMagnitudeOfRank(pixelArray, subband, Math.max(0, numToKeep) + 1, bandsKept);
+        double[] bandThresholds = new double[bandsKept.length];
+        for (int bandIndex = 0; bandIndex < bandsKept.length; bandIndex++) {
+            bandThresholds[bandIndex] = bandsKept[bandIndex] ? cutoff : SKIPPED_BAND;
+        }
+        return thresholdBands(pixelArray, subband, bandThresholds);
+    }
+
+    private long thresholdColumn(double[][] columnPixels, Subband subband, double[] bandThresholds){
+        long keptCoefficients = 0;
+
+        for (int currRow = subband.getStartRow(); currRow < subband.getEndRow(); currRow++) {
+            double[] pixelBands = columnPixels[currRow];
+            for (int bandIndex = 0; bandIndex < pixelBands.length; bandIndex++) {
+                double threshold = bandThresholds[bandIndex];
+                if (Double.isNaN(threshold)) {
+                    continue;
+                }
+                double magnitude = Math.abs(pixelBands[bandIndex]);
+                if (magnitude <= threshold) {
+                    pixelBands[bandIndex] = 0;
+                } else {
+                    if (mode == ThresholdMode.SOFT) {
+                        pixelBands[bandIndex] = Math.signum(pixelBands[bandIndex]) * (magnitude - threshold);
+                    }
+                    keptCoefficients++;
+                }
+            }
+        }
+        return keptCoefficients;
+    }
+
+    private long countNonZero(double[][][] pixelArray, Subband subband, boolean[] bandsKept){
+        return IntStream.range(subband.getStartColumn(), subband.getEndColumn()).parallel()
+                .mapToLong(currColumn -> {
+                    long nonZero = 0;
+                    for (int currRow = subband.getStartRow(); currRow < subband.getEndRow(); currRow++) {
+                        double[] pixelBands = pixelArray[currColumn][currRow];
+                        for (int bandIndex = 0; bandIndex < pixelBands.length; bandIndex++) {
+                            nonZero += (bandsKept[bandIndex] && pixelBands[bandIndex] != 0) ? 1 : 0;
+                        }
+                    }
+                    return nonZero;
+                }).sum();
+    }
+
+    /**
+     * Finds the magnitude that is the rank-th largest in the subband, counting from 1
+     */
+    private double findMagnitudeOfRank(double[][][] pixelArray, Subband subband, long rank, boolean[] bandsKept){
+        double maxMagnitude = IntStream.range(subband.getStartColumn(), subband.getEndColumn()).parallel()
+                .mapToDouble(currColumn -> {
+                    double columnMax = 0;
+                    for (int currRow = subband.getStartRow(); currRow < subband.getEndRow(); currRow++) {
+                        double[] pixelBands = pixelArray[currColumn][currRow];
+                        for (int bandIndex = 0; bandIndex < pixelBands.length; bandIndex++) {
+                            if (bandsKept[bandIndex]) {
+                                columnMax = Math.max(columnMax, Math.abs(pixelBands[bandIndex]));
+                            }
+                        }
+                    }
+                    return columnMax;
+                }).max().orElse(0);
+        if (maxMagnitude == 0) {
+            return 0;
+        }
+
+        //Each worker fills one histogram, merged into one another as the workers finish
+        long[] histogram = IntStream.range(subband.getStartColumn(), subband.getEndColumn()).parallel()
+                .collect(() -> new long[NUM_OF_BINS],
+                        (workerHistogram, currColumn) -> addColumnToHistogram(workerHistogram, pixelArray[currColumn],
+                                subband, maxMagnitude, bandsKept),
+                        CoefficientThresholder::addHistogramInto);
+
+        //Walks down from the largest magnitudes until the bin holding the requested rank is reached
+        int cutoffBin = NUM_OF_BINS - 1;
+        long numAboveCutoffBin = 0;
+        while (numAboveCutoffBin + histogram[cutoffBin] < rank) {
+            numAboveCutoffBin += histogram[cutoffBin];
+            cutoffBin--;
+        }
+
+        double[] binMagnitudes = collectBinMagnitudes(pixelArray, subband, maxMagnitude, cutoffBin,
+                (int)histogram[cutoffBin], bandsKept);
+        Arrays.parallelSort(binMagnitudes);
+        return binMagnitudes[binMagnitudes.length - (int)(rank - numAboveCutoffBin)];
+    }
+
+    private static void addColumnToHistogram(long[] histogram, double[][] columnPixels, Subband subband,
+                                             double maxMagnitude, boolean[] bandsKept){
+        for (int currRow = subband.getStartRow(); currRow < subband.getEndRow(); currRow++) {
+            double[] pixelBands = columnPixels[currRow];
+            for (int bandIndex = 0; bandIndex < pixelBands.length; bandIndex++) {
+                if (bandsKept[bandIndex]) {
+                    histogram[binOf(Math.abs(pixelBands[bandIndex]), maxMagnitude)]++;
+                }
+            }
+        }
+    }
+
+    private static void addHistogramInto(long[] sum, long[] other){
+        for (int binIndex = 0; binIndex < NUM_OF_BINS; binIndex++) {
+            sum[binIndex] += other[binIndex];
+        }
+    }
+
+    private double[] collectBinMagnitudes(double[][][] pixelArray, Subband subband, double maxMagnitude,
+                                          int bin, int binCount, boolean[] bandsKept){
+        double[] binMagnitudes = new double[binCount];
+        int numCollected = 0;
+
+        for (int currColumn = subband.getStartColumn(); currColumn < subband.getEndColumn(); currColumn++) {
+            for (int currRow = subband.getStartRow(); currRow < subband.getEndRow(); currRow++) {
+                double[] pixelBands = pixelArray[currColumn][currRow];
+                for (int bandIndex = 0; bandIndex < pixelBands.length; bandIndex++) {
+                    double magnitude = Math.abs(pixelBands[bandIndex]);
+                    if (bandsKept[bandIndex] && binOf(magnitude, maxMagnitude) == bin) {
+                        binMagnitudes[numCollected++] = magnitude;
+                    }
+                }
+            }
+        }
+        return binMagnitudes;
+    }
+
+    private static int binOf(double magnitude, double maxMagnitude){
+        return Math.min(NUM_OF_BINS - 1, (int)((magnitude / maxMagnitude) * NUM_OF_BINS));
+    }
+}
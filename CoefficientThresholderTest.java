@@ -0,0 +1,145 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Random;
+
+public class CoefficientThresholderTest extends TestCase {
+
+    public void testHardThresholdZeroesOnlyTheSmallCoefficients() throws Exception {
+        double[][][] pixelArray = createColumns(3, -2, 0.5, -5, 2.5);
+        long kept = new CoefficientThresholder(ThresholdMode.HARD).threshold(pixelArray, rowSubband(5), 2);
+        assertEquals(3, kept);
+        assertColumns(pixelArray, 3, 0, 0, -5, 2.5);
+    }
+
+    public void testSoftThresholdShrinksTheKeptCoefficients() throws Exception {
+        double[][][] pixelArray = createColumns(3, -2, 0.5, -5, 2.5);
+        long kept = new CoefficientThresholder(ThresholdMode.SOFT).threshold(pixelArray, rowSubband(5), 2);
+        assertEquals(3, kept);
+        assertColumns(pixelArray, 1, 0, 0, -3, 0.5);
+    }
+
+    public void testKeepLargestDropsEveryCoefficientTiedAtTheCutoff() throws Exception {
+        CoefficientThresholder thresholder = new CoefficientThresholder(ThresholdMode.HARD);
+
+        double[][][] pixelArray = createColumns(5, 3, -3, 1);
+        assertEquals(1, thresholder.keepLargest(pixelArray, rowSubband(4), 1));
+        assertColumns(pixelArray, 5, 0, 0, 0);
+
+        //The second largest ties with the third, so neither is kept
+        pixelArray = createColumns(5, 3, -3, 1);
+        assertEquals(1, thresholder.keepLargest(pixelArray, rowSubband(4), 2));
+        assertColumns(pixelArray, 5, 0, 0, 0);
+
+        pixelArray = createColumns(5, 3, -3, 1);
+        assertEquals(3, thresholder.keepLargest(pixelArray, rowSubband(4), 3));
+        assertColumns(pixelArray, 5, 3, -3, 0);
+
+        pixelArray = createColumns(4, -4, 4, 1, 2);
+        assertEquals(0, thresholder.keepLargest(pixelArray, rowSubband(5), 2));
+        assertColumns(pixelArray, 0, 0, 0, 0, 0);
+
+        pixelArray = createColumns(4, -4, 4, 1, 2);
+        assertEquals(0, thresholder.keepLargest(pixelArray, rowSubband(5), 0));
+        assertColumns(pixelArray, 0, 0, 0, 0, 0);
+    }
+
+    public void testKeepLargestKeepsAtMostTheNonZeroCoefficients() throws Exception {
+        double[][][] pixelArray = createColumns(5, 0, -3, 0);
+        assertEquals(2, new CoefficientThresholder(ThresholdMode.HARD).keepLargest(pixelArray, rowSubband(4), 10));
+        assertColumns(pixelArray, 5, 0, -3, 0);
+    }
+
+    public void testKeepLargestKeepsTheRequestedCountOfDistinctMagnitudes() throws Exception {
+        Random random = new Random(32);
+        int numOfColumns = 37;
+        int numOfRows = 23;
+        for (long numToKeep : new long[]{1, 17, 500, 2 * numOfColumns * numOfRows - 1}) {
+            double[][][] pixelArray = new double[numOfColumns][numOfRows][2];
+            for (double[][] columnPixels : pixelArray) {
+                for (double[] pixelBands : columnPixels) {
+                    pixelBands[0] = random.nextGaussian() * 40;
+                    pixelBands[1] = random.nextGaussian() * 40;
+                }
+            }
+            Subband subband = new Subband("HH1", 1, 0, 0, numOfColumns, numOfRows, false);
+            assertEquals(numToKeep, new CoefficientThresholder(ThresholdMode.HARD).keepLargest(pixelArray, subband, numToKeep));
+
+            long numOfNonZero = 0;
+            for (double[][] columnPixels : pixelArray) {
+                for (double[] pixelBands : columnPixels) {
+                    numOfNonZero += (pixelBands[0] != 0 ? 1 : 0) + (pixelBands[1] != 0 ? 1 : 0);
+                }
+            }
+            assertEquals(numToKeep, numOfNonZero);
+        }
+    }
+
+    public void testDetailThresholdsLeaveTheAveragedSubImageUntouched() throws Throwable {
+        for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+            for (ThresholdMode mode : ThresholdMode.values()) {
+                HaarTransform transformer = HaarTransformTest.createTransformer(WaveletFamily.HAAR, decompositionMode);
+                transformer.loadImage(HaarTransformTest.createRandomImage(29, 18, BufferedImage.TYPE_3BYTE_BGR, 32), "png");
+                transformer.performAllTransforms();
+                double[][][] transformed = copyOf(transformer.getImagePixelArray());
+                Subband averaged = transformer.getSubbands().get(transformer.getSubbands().size() - 1);
+                assertTrue(averaged.isApproximation());
+
+                CoefficientThresholder thresholder = new CoefficientThresholder(mode);
+                Map<Subband, Long> kept = thresholder.keepLargestInDetailSubbands(transformer, 0.25);
+                assertFalse(kept.containsKey(averaged));
+                kept = thresholder.thresholdDetailSubbands(transformer, Double.MAX_VALUE);
+                for (long keptInSubband : kept.values()) {
+                    assertEquals(0, keptInSubband);
+                }
+
+                double[][][] thresholded = transformer.getImagePixelArray();
+                for (int currColumn = 0; currColumn < thresholded.length; currColumn++) {
+                    for (int currRow = 0; currRow < thresholded[currColumn].length; currRow++) {
+                        boolean inAveraged = currColumn < averaged.getEndColumn() && currRow < averaged.getEndRow();
+                        for (int bandIndex = 0; bandIndex < 3; bandIndex++) {
+                            assertEquals(decompositionMode + " " + mode + " at " + currColumn + "," + currRow,
+                                    inAveraged ? transformed[currColumn][currRow][bandIndex] : 0,
+                                    thresholded[currColumn][currRow][bandIndex], 0.0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lays the values out along the first row, one column each
+     */
+    private static double[][][] createColumns(double... values){
+        double[][][] pixelArray = new double[values.length][1][1];
+        for (int currColumn = 0; currColumn < values.length; currColumn++) {
+            pixelArray[currColumn][0][0] = values[currColumn];
+        }
+        return pixelArray;
+    }
+
+    private static void assertColumns(double[][][] pixelArray, double... expected){
+        for (int currColumn = 0; currColumn < expected.length; currColumn++) {
+            assertEquals("column " + currColumn, expected[currColumn], pixelArray[currColumn][0][0], 0.0);
+        }
+    }
+
+    private static Subband rowSubband(int numOfColumns){
+        return new Subband("HL1", 1, 0, 0, numOfColumns, 1, false);
+    }
+
+    private static double[][][] copyOf(double[][][] pixelArray){
+        double[][][] copy = new double[pixelArray.length][][];
+        for (int currColumn = 0; currColumn < pixelArray.length; currColumn++) {
+            copy[currColumn] = new double[pixelArray[currColumn].length][];
+            for (int currRow = 0; currRow < pixelArray[currColumn].length; currRow++) {
+                copy[currColumn][currRow] = pixelArray[currColumn][currRow].clone();
+            }
+        }
+        return copy;
+    }
+}
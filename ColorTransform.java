@@ -0,0 +1,79 @@
+package HaarTransform;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+
+/**
+ * The color transforms HaarTransform can apply to the bands of an image before its row and
+ * column passes, undone again whenever the coefficients are rendered.
+ */
+public enum ColorTransform {
+    /** Transforms the bands of the image as they are stored */
+    NONE,
+
+    /**
+     * The lifting based YCoCg-R transform, which turns the R, G and B bands into a luma band and
+     * two chroma bands with integer arithmetic only, so integer samples are recovered without loss.
+     * Most of the detail of natural images ends up in the luma band, leaving the chroma bands with
+     * small coefficients. Any further bands, such as alpha, are left as they are.
+     */
+    YCOCG_R;
+
+    /**
+     * @return Whether the transform changes the bands of images with the given color model. Only
+     * YCOCG_R does, and only for images storing R, G and B samples in their first three bands.
+     */
+    boolean appliesTo(ColorModel colorModel){
+        return this == YCOCG_R && !(colorModel instanceof IndexColorModel)
+                && colorModel.getColorSpace().getType() == ColorSpace.TYPE_RGB
+                && colorModel.getNumColorComponents() == 3;
+    }
+
+    /**
+     * @return Whether the band holds chroma once YCOCG_R has been applied
+     */
+    static boolean isChromaBand(int bandIndex){
+        return bandIndex == 1 || bandIndex == 2;
+    }
+
+    /**
+     * Replaces the R, G and B samples at the start of the pixel by its Y, Co and Cg values
+     */
+    static void forwardYCoCgR(int[] pixel){
+        forwardYCoCgR(pixel, 0);
+    }
+
+    /**
+     * Replaces the R, G and B samples starting at the offset by the Y, Co and Cg values of the
+     * pixel, for pixels stored next to each other in a row of samples
+     */
+    static void forwardYCoCgR(int[] samples, int offset){
+        int orangeChroma = samples[offset] - samples[offset + 2];
+        int temp = samples[offset + 2] + (orangeChroma >> 1);
+        int greenChroma = samples[offset + 1] - temp;
+        samples[offset] = temp + (greenChroma >> 1);
+        samples[offset + 1] = orangeChroma;
+        samples[offset + 2] = greenChroma;
+    }
+
+    /**
+     * Replaces the Y, Co and Cg values at the start of the pixel by its R, G and B samples
+     */
+    static void inverseYCoCgR(int[] pixel){
+        inverseYCoCgR(pixel, 0);
+    }
+
+    /**
+     * Replaces the Y, Co and Cg values starting at the offset by the R, G and B samples of the
+     * pixel, for pixels stored next to each other in a row of samples
+     */
+    static void inverseYCoCgR(int[] samples, int offset){
+        int temp = samples[offset] - (samples[offset + 2] >> 1);
+        int green = samples[offset + 2] + temp;
+        int blue = temp - (samples[offset + 1] >> 1);
+        samples[offset] = blue + samples[offset + 1];
+        samples[offset + 1] = green;
+        samples[offset + 2] = blue;
+    }
+}
@@ -0,0 +1,48 @@
+package HaarTransform;
+
+/**
+ * <p>The four tap Daubechies (D4) filter factored into an update, a predict and a second update
+ * lifting step followed by scaling. As with the other filters the low pass coefficients keep
+ * the brightness of the averaged sub-image.
+ */
+final class Daubechies4Filter extends LiftingFilter {
+    private static final double SQRT_3 = Math.sqrt(3);
+    private static final double LOW_SCALE = (SQRT_3 - 1) / 2;
+    private static final double HIGH_SCALE = (SQRT_3 + 1) / 2;
+
+    @Override
+    void liftForward(double[] coefficients, int half){
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] += SQRT_3 * coefficients[half + pairIndex];
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[half + pairIndex] -= ((SQRT_3 / 4) * lowAt(coefficients, half, pairIndex))
+                    + (((SQRT_3 - 2) / 4) * lowAt(coefficients, half, pairIndex - 1));
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] -= highAt(coefficients, half, pairIndex + 1);
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] *= LOW_SCALE;
+            coefficients[half + pairIndex] *= HIGH_SCALE;
+        }
+    }
+
+    @Override
+    void liftInverse(double[] coefficients, int half){
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] /= LOW_SCALE;
+            coefficients[half + pairIndex] /= HIGH_SCALE;
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] += highAt(coefficients, half, pairIndex + 1);
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[half + pairIndex] += ((SQRT_3 / 4) * lowAt(coefficients, half, pairIndex))
+                    + (((SQRT_3 - 2) / 4) * lowAt(coefficients, half, pairIndex - 1));
+        }
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            coefficients[pairIndex] -= SQRT_3 * coefficients[half + pairIndex];
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package HaarTransform;
+
+/**
+ * The orders in which HaarTransform can perform the row and column transforms of an image.
+ */
+public enum DecompositionMode {
+    /**
+     * The pyramid decomposition, alternating one row transform and one column transform per level.
+     * Every level only transforms the averaged sub-image left by the previous level, so each
+     * deeper level costs a fraction of the one before it.
+     */
+    NON_STANDARD,
+
+    /**
+     * Performs every row transform on all rows of the image first, then every column transform
+     * on all columns of the image.
+     */
+    STANDARD
+}
@@ -0,0 +1,150 @@
+package HaarTransform;
+
+/**
+ * <p>CoefficientStore keeping each coefficient of an image with 8 bit samples in a short, as a
+ * signed fixed-point number with FRACTION_BITS fractional bits, so it takes a quarter of the memory
+ * of a double and passes move a quarter of the bytes. Coefficients are laid out row by row with the
+ * bands of a pixel next to each other, in chunks of at most 2^27 coefficients like
+ * OffHeapCoefficientStore.
+ *
+ * <p>Coefficients are rounded to the nearest multiple of 2^-7 when they are set, and hold values in
+ * [-256, 256). That is the range of every Haar average and difference of 8 bit samples, and of
+ * YCoCg-R chroma samples, whose differences of up to 255 either way are halved by the Haar pairs.
+ * Values outside the range saturate, which is why only the Haar family may be used with this store.
+ *
+ * <p>A Haar pass halves the sums and differences of its input, adding one fractional bit, so the
+ * first seven passes of a transform are exact and every later pass rounds. Rounding adds at most
+ * 2^-8 to an output of a pass, and neither averaging nor halving a difference makes an earlier
+ * error any larger, so every transform coefficient is within (passes - 7) * 2^-8 of the one
+ * computed in doubles. Recovering only adds and subtracts, which is exact, but undoing a pass
+ * adds the errors of the average and difference it combines. For sub-images of even size that
+ * bounds the error of a recovered sample by:
+ * <ul>
+ *     <li>Non-standard decomposition: 2^-6 for the fourth level and 3 * 2^-7 for every level
+ *     after it. That stays below half a sample for sides below 2^25, so rounding the recovered
+ *     samples gives back the image exactly.</li>
+ *     <li>Standard decomposition: 2^-7 for every row pass past the seventh pass, and
+ *     (row levels + 1) * 2^-7 for every column pass past the seventh pass. Once that reaches half
+ *     a sample, as it does for 4096 by 4096 images, a few recovered samples can be one off.</li>
+ * </ul>
+ * The leftover pixel of an odd sized sub-image is recovered from its neighbour plus twice its
+ * difference, which can double what its level adds to the bound for the last column or row.
+ *
+ * <p>The precision is only available to images held in a store and transformed by
+ * CoefficientStoreTransform. HaarTransform keeps its coefficients in doubles, so its stage
+ * histories, generateImage, createImageFilesForAllStages and writeCoefficientFile are not
+ * computed in fixed point. A store is rendered with readRaster, and its coefficients are written
+ * with NetpbmWriter.writePfm.
+ */
+public final class FixedPointCoefficientStore implements CoefficientStore {
+    public static final int FRACTION_BITS = 7;
+    private static final double SCALE = 1 << FRACTION_BITS;
+    private static final double INVERSE_SCALE = 1.0 / SCALE;
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private final int numOfColumns;
+    private final int numOfRows;
+    private final int numOfBands;
+    private short[][] chunks;
+
+    private FixedPointCoefficientStore(int numOfColumns, int numOfRows, int numOfBands){
+        if (numOfColumns < 1 || numOfRows < 1 || numOfBands < 1) {
+            throw new IllegalArgumentException("A store needs at least one coefficient: " + numOfColumns + "x"
+                    + numOfRows + "x" + numOfBands);
+        }
+        this.numOfColumns = numOfColumns;
+        this.numOfRows = numOfRows;
+        this.numOfBands = numOfBands;
+
+        long numOfCoefficients = (long)numOfColumns * numOfRows * numOfBands;
+        chunks = new short[(int)((numOfCoefficients + CHUNK_MASK) >>> CHUNK_SHIFT)][];
+        for (int chunkIndex = 0; chunkIndex < chunks.length; chunkIndex++) {
+            long chunkStart = (long)chunkIndex << CHUNK_SHIFT;
+            chunks[chunkIndex] = new short[(int)Math.min(CHUNK_MASK + 1, numOfCoefficients - chunkStart)];
+        }
+    }
+
+    /**
+     * Allocates a store on the heap, with every coefficient set to zero
+     */
+    public static FixedPointCoefficientStore allocate(int numOfColumns, int numOfRows, int numOfBands){
+        return new FixedPointCoefficientStore(numOfColumns, numOfRows, numOfBands);
+    }
+
+    @Override
+    public int getNumOfColumns(){
+        return numOfColumns;
+    }
+
+    @Override
+    public int getNumOfRows(){
+        return numOfRows;
+    }
+
+    @Override
+    public int getNumOfBands(){
+        return numOfBands;
+    }
+
+    @Override
+    public double get(int column, int row, int band){
+        long index = indexOf(column, row, band);
+        return chunks[(int)(index >>> CHUNK_SHIFT)][(int)(index & CHUNK_MASK)] * INVERSE_SCALE;
+    }
+
+    /**
+     * Sets a coefficient to the nearest value the store can hold
+     */
+    @Override
+    public void set(int column, int row, int band, double value){
+        long index = indexOf(column, row, band);
+        chunks[(int)(index >>> CHUNK_SHIFT)][(int)(index & CHUNK_MASK)] = toFixedPoint(value);
+    }
+
+    private static short toFixedPoint(double value){
+        long fixedPointValue = Math.round(value * SCALE);
+        return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, fixedPointValue));
+    }
+
+    @Override
+    public void readPixels(int startColumn, int row, int numOfPixels, double[] samples, int offset){
+        long index = indexOf(startColumn, row, 0);
+        int numOfSamples = numOfPixels * numOfBands;
+        //A run crosses into the next chunk at most once, chunks being far longer than a row
+        for (int sampleIndex = 0; sampleIndex < numOfSamples; ) {
+            short[] chunk = chunks[(int)(index >>> CHUNK_SHIFT)];
+            int chunkOffset = (int)(index & CHUNK_MASK);
+            int runLength = Math.min(numOfSamples - sampleIndex, chunk.length - chunkOffset);
+            for (int runIndex = 0; runIndex < runLength; runIndex++) {
+                samples[offset + sampleIndex + runIndex] = chunk[chunkOffset + runIndex] * INVERSE_SCALE;
+            }
+            sampleIndex += runLength;
+            index += runLength;
+        }
+    }
+
+    @Override
+    public void writePixels(int startColumn, int row, int numOfPixels, double[] samples, int offset){
+        long index = indexOf(startColumn, row, 0);
+        int numOfSamples = numOfPixels * numOfBands;
+        for (int sampleIndex = 0; sampleIndex < numOfSamples; ) {
+            short[] chunk = chunks[(int)(index >>> CHUNK_SHIFT)];
+            int chunkOffset = (int)(index & CHUNK_MASK);
+            int runLength = Math.min(numOfSamples - sampleIndex, chunk.length - chunkOffset);
+            for (int runIndex = 0; runIndex < runLength; runIndex++) {
+                chunk[chunkOffset + runIndex] = toFixedPoint(samples[offset + sampleIndex + runIndex]);
+            }
+            sampleIndex += runLength;
+            index += runLength;
+        }
+    }
+
+    private long indexOf(int column, int row, int band){
+        return (((long)row * numOfColumns) + column) * numOfBands + band;
+    }
+
+    @Override
+    public void close(){
+        chunks = null;
+    }
+}
@@ -0,0 +1,90 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+public class FixedPointCoefficientStoreTest extends TestCase {
+
+    public void testSetRoundsToTheFixedPointGrid() throws Exception {
+        FixedPointCoefficientStore store = FixedPointCoefficientStore.allocate(2, 1, 1);
+        double step = 1.0 / (1 << FixedPointCoefficientStore.FRACTION_BITS);
+        store.set(0, 0, 0, -12.5 + (0.4 * step));
+        assertEquals(-12.5, store.get(0, 0, 0), 0.0);
+        store.set(1, 0, 0, 255 + (0.6 * step));
+        assertEquals(255 + step, store.get(1, 0, 0), 0.0);
+
+        //Values outside [-256, 256) saturate
+        store.set(0, 0, 0, 300);
+        assertEquals(256 - step, store.get(0, 0, 0), 0.0);
+        store.set(0, 0, 0, -300);
+        assertEquals(-256, store.get(0, 0, 0), 0.0);
+    }
+
+    public void testTransformStaysWithinTheErrorBound() throws Throwable {
+        for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+            for (int[] imageSize : new int[][]{{64, 64}, {67, 45}, {1, 200}}) {
+                BufferedImage image = HaarTransformTest.createRandomImage(imageSize[0], imageSize[1],
+                        BufferedImage.TYPE_3BYTE_BGR, 46);
+                HaarTransform transformer = HaarTransformTest.createTransformer(WaveletFamily.HAAR, decompositionMode);
+                transformer.loadImage(image, "png");
+                transformer.performAllTransforms();
+
+                FixedPointCoefficientStore store = transformStore(image, decompositionMode);
+                //Every pass past the seventh rounds its outputs by at most 2^-8
+                int numOfPasses = transformer.numRowTransformsNeeded + transformer.numColumnTransformsNeeded;
+                double errorBound = Math.max(0, numOfPasses - FixedPointCoefficientStore.FRACTION_BITS) / 256.0;
+                double[][][] coefficients = transformer.getImagePixelArray();
+                for (int currColumn = 0; currColumn < imageSize[0]; currColumn++) {
+                    for (int currRow = 0; currRow < imageSize[1]; currRow++) {
+                        for (int bandIndex = 0; bandIndex < 3; bandIndex++) {
+                            assertEquals(decompositionMode + " " + imageSize[0] + "x" + imageSize[1],
+                                    coefficients[currColumn][currRow][bandIndex],
+                                    store.get(currColumn, currRow, bandIndex), errorBound);
+                        }
+                    }
+                }
+                store.close();
+            }
+        }
+    }
+
+    public void testNonStandardRecoverReturnsTheImage() throws Exception {
+        for (int[] imageSize : new int[][]{{64, 64}, {67, 45}, {1, 200}, {300, 3}}) {
+            BufferedImage image = HaarTransformTest.createRandomImage(imageSize[0], imageSize[1],
+                    BufferedImage.TYPE_3BYTE_BGR, 7);
+            FixedPointCoefficientStore store = transformStore(image, DecompositionMode.NON_STANDARD);
+            CoefficientStoreTransform storeTransform = new CoefficientStoreTransform(store);
+            storeTransform.performAllRecovers();
+
+            BufferedImage recovered = new BufferedImage(imageSize[0], imageSize[1], BufferedImage.TYPE_3BYTE_BGR);
+            store.readRaster(recovered.getRaster(), 0, 0);
+            HaarTransformTest.assertImageEquals(imageSize[0] + "x" + imageSize[1], image, recovered);
+            store.close();
+        }
+    }
+
+    public void testOnlyTheHaarFamilyIsAccepted() throws Exception {
+        FixedPointCoefficientStore store = FixedPointCoefficientStore.allocate(4, 4, 1);
+        CoefficientStoreTransform storeTransform = new CoefficientStoreTransform(store);
+        storeTransform.setWaveletFamily(WaveletFamily.HAAR);
+        try {
+            storeTransform.setWaveletFamily(WaveletFamily.CDF_5_3);
+            fail("CDF 5/3 coefficients can leave the range of the store");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(WaveletFamily.HAAR, storeTransform.getWaveletFamily());
+        }
+    }
+
+    private static FixedPointCoefficientStore transformStore(BufferedImage image, DecompositionMode decompositionMode){
+        WritableRaster raster = image.getRaster();
+        FixedPointCoefficientStore store = FixedPointCoefficientStore.allocate(raster.getWidth(), raster.getHeight(),
+                raster.getNumBands());
+        store.writeRaster(raster, 0, 0);
+        CoefficientStoreTransform storeTransform = new CoefficientStoreTransform(store);
+        storeTransform.setDecompositionMode(decompositionMode);
+        storeTransform.performAllTransforms();
+        return store;
+    }
+}
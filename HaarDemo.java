@@ -2,7 +2,6 @@ package HaarTransform;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.ArrayList;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 
@@ -22,10 +21,10 @@ import javax.swing.*;
  */
 public class HaarDemo{
     private final HaarTransform haarTransformer;
-    private ArrayList<ImageIcon> recoverPPics;
-    private ArrayList<ImageIcon> recoverSPics;
-    private ArrayList<ImageIcon> transformPPics;
-    private ArrayList<ImageIcon> transformSPics;
+    //Stage images are rendered from the histories when they are shown rather than all kept around.
+    //Set from the worker thread as soon as the first stage exists, so it can be shown while the rest are made.
+    private volatile StageHistory recoverHistory;
+    private volatile StageHistory transformHistory;
 
     private File theFile;
 
@@ -34,11 +33,6 @@ public class HaarDemo{
      */
    public HaarDemo(){
        haarTransformer = new HaarTransform();
-
-       recoverPPics = new ArrayList<>();
-       recoverSPics = new ArrayList<>();
-       transformPPics = new ArrayList<>();
-       transformSPics = new ArrayList<>();
     }
 
     /*protected File getOriginalImageFile(){
@@ -54,82 +48,123 @@ public class HaarDemo{
         return new ImageIcon(loadedImage);
     }
 
-    protected void clearTransformImages(){
-        transformPPics.clear();
-        transformSPics.clear();
+    protected synchronized void clearTransformImages(){
+        transformHistory = null;
     }
 
-    protected void clearRecoverImages(){
-        recoverPPics.clear();
-        recoverSPics.clear();
+    protected synchronized void clearRecoverImages(){
+        recoverHistory = null;
     }
 
-    protected ImageIcon getTransformSPic(int index){
-        return transformSPics.get(index);
+    /**
+     * Shows the stages of a transform unless its worker was cancelled, as the stages of a cancelled
+     * worker have been cleared and a later transform may already be running
+     */
+    private synchronized void setTransformHistory(SwingWorker<?, ?> worker, StageHistory history){
+        if (worker == null || !worker.isCancelled()) {
+            transformHistory = history;
+        }
     }
 
-    protected ImageIcon getTransformPPic(int index){
-        return transformPPics.get(index);
+    /**
+     * Shows the stages of a recover unless its worker was cancelled, as the stages of a cancelled
+     * worker have been cleared and a later recover may already be running
+     */
+    private synchronized void setRecoverHistory(SwingWorker<?, ?> worker, StageHistory history){
+        if (worker == null || !worker.isCancelled()) {
+            recoverHistory = history;
+        }
     }
 
-    protected ImageIcon getRecoverSPic(int index){
-        return recoverSPics.get(index);
+    /**
+     * @return The stages of the last transform, rendered a region at a time as they are shown
+     */
+    protected StageHistory getTransformHistory(){
+        return transformHistory;
     }
 
-    protected ImageIcon getRecoverPPic(int index){
-        return recoverPPics.get(index);
+    /**
+     * @return The stages of the last recover, rendered a region at a time as they are shown
+     */
+    protected StageHistory getRecoverHistory(){
+        return recoverHistory;
     }
 
     protected int getNumOfTransformSPics(){
-        return transformSPics.size();
+        return (transformHistory == null) ? 0 : transformHistory.getNumOfStages();
     }
 
     protected int getNumOfTransformPPics(){
-        return transformPPics.size();
+        return getNumOfTransformSPics();
     }
 
     protected int getNumOfRecoverSPics(){
-        return recoverSPics.size();
+        return (recoverHistory == null) ? 0 : recoverHistory.getNumOfStages();
     }
 
     protected int getNumOfRecoverPPics(){
-        return recoverPPics.size();
+        return getNumOfRecoverSPics();
     }
 
     protected void performTransform(boolean generateFiles){
-        performTransform(generateFiles, null, null);
+        performTransform(generateFiles, null, null, null);
     }
-    protected void performTransform(boolean generateFiles, SwingWorker worker, JProgressBar progressBar){
+    /**
+     * @param stageListener Notified of each stage as soon as it can be shown, or null
+     */
+    protected void performTransform(boolean generateFiles, SwingWorker worker, JProgressBar progressBar,
+                                    StageListener stageListener){
+        //Files of a stage are written while the passes of the following stages are performed
+        StageFileWriter stageFileWriter = generateFiles ? haarTransformer.createStageFileWriter() : null;
         try {
-            ArrayList<BufferedImage> transformedImgs =
-                    haarTransformer.generateTransformImages(generateFiles, worker, progressBar);
-            updateTransformImageIconCollections(transformedImgs);
+            StageHistory generated = haarTransformer.generateTransformHistory(worker, progressBar, (history, stageIndex) -> {
+                setTransformHistory(worker, history);
+                if (stageFileWriter != null) {
+                    stageFileWriter.writeStage(history, stageIndex, "Transform");
+                }
+                if (stageListener != null) {
+                    stageListener.stageRecorded(history, stageIndex);
+                }
+            });
+            setTransformHistory(worker, generated);
+            if (stageFileWriter != null) {
+                haarTransformer.awaitStageFiles(stageFileWriter, "Transform");
+            }
         }catch(TransformException ex) {
             //Do nothing, SwingWorker parameter handles the cancellation
+        }finally {
+            if (stageFileWriter != null) {
+                stageFileWriter.close();
+            }
         }
     }
 
-    private void updateTransformImageIconCollections(ArrayList<BufferedImage> aggregatedImgs){
-        for (int count = 0 ; count < aggregatedImgs.size(); count += 2){
-            transformSPics.add(new ImageIcon(aggregatedImgs.get(count)));
-            transformPPics.add(new ImageIcon(aggregatedImgs.get(count+1)));
-        }
-    }
-
-    protected void performRecover(boolean generateFiles, SwingWorker worker, JProgressBar progressBar){
+    /**
+     * @param stageListener Notified of each stage as soon as it can be shown, or null
+     */
+    protected void performRecover(boolean generateFiles, SwingWorker worker, JProgressBar progressBar,
+                                  StageListener stageListener){
+       StageFileWriter stageFileWriter = generateFiles ? haarTransformer.createStageFileWriter() : null;
        try{
-           ArrayList<BufferedImage> recoveredImgs =
-                   haarTransformer.generateRecoverImages(generateFiles, worker, progressBar);
-           updateRecoverImageIconCollections(recoveredImgs);
+           StageHistory generated = haarTransformer.generateRecoverHistory(worker, progressBar, (history, stageIndex) -> {
+               setRecoverHistory(worker, history);
+               if (stageFileWriter != null) {
+                   stageFileWriter.writeStage(history, stageIndex, "Recover");
+               }
+               if (stageListener != null) {
+                   stageListener.stageRecorded(history, stageIndex);
+               }
+           });
+           setRecoverHistory(worker, generated);
+           if (stageFileWriter != null) {
+               haarTransformer.awaitStageFiles(stageFileWriter, "Recover");
+           }
        }catch(TransformException ex){
            //Do nothing, SwingWorker parameter handles the cancellation
+       }finally {
+           if (stageFileWriter != null) {
+               stageFileWriter.close();
+           }
        }
     }
-
-    private void updateRecoverImageIconCollections(ArrayList<BufferedImage> aggregatedImgs){
-        for (int count = 0 ; count < aggregatedImgs.size(); count += 2){
-            recoverSPics.add(new ImageIcon(aggregatedImgs.get(count)));
-            recoverPPics.add(new ImageIcon(aggregatedImgs.get(count+1)));
-        }
-    }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import javax.swing.border.EtchedBorder;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.util.List;
 
 import static javax.swing.UIManager.*;
 
@@ -31,7 +32,7 @@ public class HaarDemoUI extends JFrame {
     private JButton recoverButton;
     private JProgressBar progressBar;
     private JScrollPane scrollImg;
-    private JLabel displayedImg;
+    private StageViewer displayedImg;
     private Icon baseImage;
     private JFileChooser fileChooser;
     private JTextField origFileField;
@@ -220,7 +221,7 @@ public class HaarDemoUI extends JFrame {
         imgPanel.setBackground(Color.BLACK);
 
         baseImage = DEFAULT_IMAGE;
-        displayedImg = new JLabel(DEFAULT_IMAGE);
+        displayedImg = new StageViewer(DEFAULT_IMAGE);
         imgPanel.add(displayedImg, BorderLayout.CENTER);
 
         scrollImg = new JScrollPane(imgPanel);
@@ -344,7 +345,7 @@ public class HaarDemoUI extends JFrame {
         ImageIcon newImage = program.loadImage(origFileField.getText());
         baseImage = newImage;
         displayedImg.setIcon(newImage);
-        setSizeOfImageScrollableDisplay(displayedImg.getIcon());
+        setSizeOfImageScrollableDisplay(newImage);
     }
 
     private void setSizeOfImageScrollableDisplay(Icon image) {
@@ -495,7 +496,6 @@ public class HaarDemoUI extends JFrame {
     private abstract class SelectionHandler implements ItemListener{
         JRadioButton theSelectedBtn;
         int index;
-        ImageIcon selectedImg;
     }
 
     private class TransformStageSelectionHandler extends SelectionHandler {
@@ -505,14 +505,13 @@ public class HaarDemoUI extends JFrame {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 theSelectedBtn = (JRadioButton) e.getItem();
                 index = transformImageChoicePanel.indexOfStageImage(theSelectedBtn);
-                selectedImg = program.getTransformSPic(index);
-                setDisplayImage(selectedImg);
+                displayStage(program.getTransformHistory(), index, false);
             }
         }
     }
 
-    private void setDisplayImage(ImageIcon image) {
-        displayedImg.setIcon(image);
+    private void displayStage(StageHistory history, int stageIndex, boolean pixelExpansion) {
+        displayedImg.showStage(history, stageIndex, pixelExpansion);
         mainWindow.revalidate();
         mainWindow.repaint();
     }
@@ -524,8 +523,7 @@ public class HaarDemoUI extends JFrame {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 theSelectedBtn = (JRadioButton) e.getItem();
                 index = transformImageChoicePanel.indexOfPixelImage(theSelectedBtn);
-                selectedImg = program.getTransformPPic(index);
-                setDisplayImage(selectedImg);
+                displayStage(program.getTransformHistory(), index, true);
             }
         }
     }
@@ -537,8 +535,7 @@ public class HaarDemoUI extends JFrame {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 theSelectedBtn = (JRadioButton) e.getItem();
                 index = recoverImageChoicePanel.indexOfStageImage(theSelectedBtn);
-                selectedImg = program.getRecoverSPic(index);
-                setDisplayImage(selectedImg);
+                displayStage(program.getRecoverHistory(), index, false);
             }
         }
     }
@@ -550,8 +547,7 @@ public class HaarDemoUI extends JFrame {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 theSelectedBtn = (JRadioButton) e.getItem();
                 index = recoverImageChoicePanel.indexOfPixelImage(theSelectedBtn);
-                selectedImg = program.getRecoverPPic(index);
-                setDisplayImage(selectedImg);
+                displayStage(program.getRecoverHistory(), index, true);
             }
         }
     }
@@ -560,7 +556,7 @@ public class HaarDemoUI extends JFrame {
      * Custom SwingWorker to execute the Haar transformation in the background and
      * update the GUI of this HaarDemo when the transformation is done.
      */
-    class transformImage extends SwingWorker{
+    class transformImage extends SwingWorker<Object, Integer>{
         JProgressBar progressBar;
         public transformImage(JProgressBar progressBar){
             this.progressBar = progressBar;
@@ -577,10 +573,21 @@ public class HaarDemoUI extends JFrame {
             progressBar.setValue(0);
             progressBar.setVisible(true);
             program.clearTransformImages();
-            program.performTransform(fileGenerationToggle.isSelected(), this, progressBar);
+            program.performTransform(fileGenerationToggle.isSelected(), this, progressBar,
+                    (history, stageIndex) -> publish(stageIndex));
             return null;
         }
 
+        /**
+         * Adds the buttons of the stages transformed so far, showing the first one as soon as it exists
+         */
+        @Override
+        protected void process(List<Integer> stageIndices) {
+            if (!isCancelled()) {
+                showPublishedStages(transformImageChoicePanel, recoverImageChoicePanel, stageIndices);
+            }
+        }
+
         /**
          * Updates this HaarDemo's UI when the Haar transformation is complete
          */
@@ -590,7 +597,11 @@ public class HaarDemoUI extends JFrame {
             progressBar.setVisible(false);
             cancelButton.setVisible(false);
             loadButton.setVisible(true);
-            if (!isCancelled()) {
+            if (isCancelled()) {
+                transformImageChoicePanel.clearPixelPanel();
+                transformImageChoicePanel.clearStagePanel();
+                program.clearTransformImages();
+            } else {
                 updateTransformImageChoicePanel();
                 transformButton.setVisible(false);
                 transformButton.setEnabled(true);
@@ -602,8 +613,25 @@ public class HaarDemoUI extends JFrame {
         }
     }
 
+    /**
+     * Adds the buttons of stages published by a running worker, which may arrive in batches or after
+     * the worker is done, and shows the first stage as soon as its button exists
+     */
+    private void showPublishedStages(ImageChooserUI shownPanel, ImageChooserUI hiddenPanel, List<Integer> stageIndices){
+        boolean firstStagePublished = shownPanel.getNumOfRadioButtons() == 0;
+        shownPanel.addRadioButtonsUpTo(stageIndices.get(stageIndices.size() - 1) + 1);
+        if (!shownPanel.isVisible()) {
+            shownPanel.setVisible(true);
+            hiddenPanel.setVisible(false);
+        }
+        baseUIFrame.revalidate();
+        if (firstStagePublished) {
+            shownPanel.manualSelectStageByIndex(0);
+        }
+    }
+
     private void updateTransformImageChoicePanel(){
-        transformImageChoicePanel.addRadioButtons(program.getNumOfTransformSPics());
+        transformImageChoicePanel.addRadioButtonsUpTo(program.getNumOfTransformSPics());
 
         if(!transformImageChoicePanel.isVisible()){
             transformImageChoicePanel.setVisible(true);
@@ -615,7 +643,7 @@ public class HaarDemoUI extends JFrame {
      * Custom SwingWorker to generateRecoverImages from the Haar transformation and
      * update the GUI of this HaarDemo when the recovery is complete.
      */
-    class recoverImage extends SwingWorker{
+    class recoverImage extends SwingWorker<Object, Integer>{
         JProgressBar progressBar;
         public recoverImage(JProgressBar progressBar){
             this.progressBar = progressBar;
@@ -632,10 +660,21 @@ public class HaarDemoUI extends JFrame {
             progressBar.setValue(0);
             progressBar.setVisible(true);
             program.clearRecoverImages();
-            program.performRecover(fileGenerationToggle.isSelected(), this, progressBar);
+            program.performRecover(fileGenerationToggle.isSelected(), this, progressBar,
+                    (history, stageIndex) -> publish(stageIndex));
             return null;
         }
 
+        /**
+         * Adds the buttons of the stages recovered so far, showing the first one as soon as it exists
+         */
+        @Override
+        protected void process(List<Integer> stageIndices) {
+            if (!isCancelled()) {
+                showPublishedStages(recoverImageChoicePanel, transformImageChoicePanel, stageIndices);
+            }
+        }
+
         /**
          * Updates this HaarDemo's UI when the recovery is complete
          */
@@ -647,7 +686,11 @@ public class HaarDemoUI extends JFrame {
             cancelButton.setVisible(false);
             loadButton.setVisible(true);
             recoverButton.setEnabled(true);
-            if(!isCancelled()) {
+            if(isCancelled()) {
+                recoverImageChoicePanel.clearPixelPanel();
+                recoverImageChoicePanel.clearStagePanel();
+                program.clearRecoverImages();
+            } else {
                 updateRecoverImageChoicePanel();
                 recoverButton.setVisible(false);
                 transformButton.setVisible(true);
@@ -659,7 +702,7 @@ public class HaarDemoUI extends JFrame {
     }
 
     private void updateRecoverImageChoicePanel(){
-        recoverImageChoicePanel.addRadioButtons(program.getNumOfRecoverSPics());
+        recoverImageChoicePanel.addRadioButtonsUpTo(program.getNumOfRecoverSPics());
 
         if(!recoverImageChoicePanel.isVisible()){
             recoverImageChoicePanel.setVisible(true);
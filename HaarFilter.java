@@ -0,0 +1,98 @@
+package HaarTransform;
+
+/**
+ * <p>The Haar step used by HaarTransform since its first version. Each pair of samples is
+ * replaced by its average and by the difference between the first sample and that average.
+ *
+ * <p>Lines can also be given interleaved, holding every band of a pixel next to each other, in
+ * which case the average and difference of all bands of a pixel pair are computed together and
+ * the whole line is traversed once whatever the number of bands. The coefficients match those
+ * of filtering each band on its own exactly.
+ */
+final class HaarFilter extends LiftingFilter {
+
+    @Override
+    void liftForward(double[] coefficients, int half){
+        double averagedResult;
+
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            averagedResult = (coefficients[pairIndex] + coefficients[half + pairIndex]) / 2.0;
+            coefficients[half + pairIndex] = coefficients[pairIndex] - averagedResult;
+            coefficients[pairIndex] = averagedResult;
+        }
+    }
+
+    @Override
+    void liftInverse(double[] coefficients, int half){
+        double firstPixelResult, secondPixelResult;
+
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            firstPixelResult = coefficients[pairIndex] + coefficients[half + pairIndex];
+            secondPixelResult = coefficients[pairIndex] - coefficients[half + pairIndex];
+            coefficients[pairIndex] = firstPixelResult;
+            coefficients[half + pairIndex] = secondPixelResult;
+        }
+    }
+
+    /**
+     * Transforms the first length pixels of an interleaved line, holding numOfBands samples per
+     * pixel, leaving the averages of every band in the first half of the pixels and the differences
+     * in the second half
+     */
+    void forwardInterleaved(double[] line, double[] scratch, int length, int numOfBands){
+        if (length < 2) {
+            return;
+        }
+        int half = length / 2;
+        double averagedResult;
+
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            int firstPixel = 2 * pairIndex * numOfBands;
+            int secondPixel = firstPixel + numOfBands;
+            int averagePixel = pairIndex * numOfBands;
+            int differencePixel = (half + pairIndex) * numOfBands;
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                averagedResult = (line[firstPixel + bandIndex] + line[secondPixel + bandIndex]) / 2.0;
+                scratch[averagePixel + bandIndex] = averagedResult;
+                scratch[differencePixel + bandIndex] = line[firstPixel + bandIndex] - averagedResult;
+            }
+        }
+        if (length % 2 != 0) {
+            int leftoverPixel = (length - 1) * numOfBands;
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                averagedResult = (line[leftoverPixel + bandIndex] + line[leftoverPixel - numOfBands + bandIndex]) / 2;
+                scratch[leftoverPixel + bandIndex] = line[leftoverPixel + bandIndex] - averagedResult;
+            }
+        }
+        System.arraycopy(scratch, 0, line, 0, length * numOfBands);
+    }
+
+    /**
+     * Recovers the first length pixels of an interleaved line transformed by forwardInterleaved
+     */
+    void inverseInterleaved(double[] line, double[] scratch, int length, int numOfBands){
+        if (length < 2) {
+            return;
+        }
+        int half = length / 2;
+
+        System.arraycopy(line, 0, scratch, 0, length * numOfBands);
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            int firstPixel = 2 * pairIndex * numOfBands;
+            int secondPixel = firstPixel + numOfBands;
+            int averagePixel = pairIndex * numOfBands;
+            int differencePixel = (half + pairIndex) * numOfBands;
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                line[firstPixel + bandIndex] = scratch[averagePixel + bandIndex] + scratch[differencePixel + bandIndex];
+                line[secondPixel + bandIndex] = scratch[averagePixel + bandIndex] - scratch[differencePixel + bandIndex];
+            }
+        }
+        if (length % 2 != 0) {
+            int leftoverPixel = (length - 1) * numOfBands;
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                line[leftoverPixel + bandIndex] = line[leftoverPixel - numOfBands + bandIndex]
+                        + (2 * scratch[leftoverPixel + bandIndex]);
+            }
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package HaarTransform;
+
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Brings the Haar coefficients of a fully transformed image up to date with new samples for a
+ * region of one band, touching only the coefficients the region reaches at each level.
+ *
+ * <p>The Haar passes are linear, so the coefficients of the edited image are those of the image
+ * as it was plus the transform of the change, which is zero outside the region. The samples the
+ * region held are first recovered from the coefficients they depend on, then the change is
+ * transformed on its own. At every level a pass maps a range of a line to the averages and
+ * differences of the pairs it overlaps, plus the leftover of an odd length when the range reaches
+ * the last pair, so both steps cost a small multiple of the region size. Results are exact
+ * wherever the coefficients are, as the passes only ever halve sums of dyadic values.
+ *
+ * <p>Sub-images, pairs and leftovers are laid out as by the passes of HaarTransform, for both the
+ * non-standard and the standard decomposition. A band given fewer levels than the image, like
+ * a chroma band, is updated with its own number of levels.
+ */
+final class HaarRegionUpdate {
+    private final double[][][] coefficients;
+    private final int numOfColumns;
+    private final int numOfRows;
+    private final DecompositionMode decompositionMode;
+
+    HaarRegionUpdate(double[][][] coefficients, DecompositionMode decompositionMode){
+        this.coefficients = coefficients;
+        this.numOfColumns = coefficients.length;
+        this.numOfRows = coefficients[0].length;
+        this.decompositionMode = decompositionMode;
+    }
+
+    /**
+     * Replaces the samples of a region of a band
+     * @param rowLevels The number of row passes the band went through
+     * @param columnLevels The number of column passes the band went through
+     * @param regionSamples The new samples of the region, laid out row by row
+     */
+    void updateBand(int bandIndex, int rowLevels, int columnLevels, Rectangle region, double[] regionSamples){
+        int startColumn = region.x;
+        int endColumn = region.x + region.width;
+        int startRow = region.y;
+        int endRow = region.y + region.height;
+        double[] oldSamples = (decompositionMode == DecompositionMode.STANDARD)
+                ? recoverStandard(bandIndex, rowLevels, columnLevels, startColumn, endColumn, startRow, endRow)
+                : recoverNonStandard(bandIndex, 0, rowLevels, columnLevels, startColumn, endColumn, startRow, endRow);
+
+        double[] change = new double[regionSamples.length];
+        for (int sampleIndex = 0; sampleIndex < change.length; sampleIndex++) {
+            change[sampleIndex] = regionSamples[sampleIndex] - oldSamples[sampleIndex];
+        }
+        if (decompositionMode == DecompositionMode.STANDARD) {
+            addStandardChange(bandIndex, rowLevels, columnLevels, startColumn, endColumn, startRow, endRow, change);
+        } else {
+            addNonStandardChange(bandIndex, rowLevels, columnLevels, startColumn, endColumn, startRow, endRow, change);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Non-standard decomposition
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Recovers the samples of a region of the sub-image a level starts from, reading the averaged
+     * sub-image of the next level from that level in turn and every detail from the coefficients
+     */
+    private double[] recoverNonStandard(int bandIndex, int level, int rowLevels, int columnLevels,
+                                       int startColumn, int endColumn, int startRow, int endRow){
+        int regionColumns = endColumn - startColumn;
+        double[] samples = new double[regionColumns * (endRow - startRow)];
+        boolean rowPass = level < rowLevels;
+        boolean columnPass = level < columnLevels;
+        if (!rowPass && !columnPass) {
+            for (int currRow = startRow; currRow < endRow; currRow++) {
+                for (int currColumn = startColumn; currColumn < endColumn; currColumn++) {
+                    samples[((currRow - startRow) * regionColumns) + currColumn - startColumn] =
+                            coefficients[currColumn][currRow][bandIndex];
+                }
+            }
+            return samples;
+        }
+
+        int subImageColumns = subImageSize(numOfColumns, level);
+        int subImageRows = subImageSize(numOfRows, level);
+        int[] averagedColumns = rowPass ? averagedRangeRead(subImageColumns, startColumn, endColumn)
+                                        : new int[]{startColumn, endColumn};
+        int[] averagedRows = columnPass ? averagedRangeRead(subImageRows, startRow, endRow)
+                                        : new int[]{startRow, endRow};
+        double[] averaged = recoverNonStandard(bandIndex, level + 1, rowLevels, columnLevels,
+                averagedColumns[0], averagedColumns[1], averagedRows[0], averagedRows[1]);
+        int averagedWidth = averagedColumns[1] - averagedColumns[0];
+
+        for (int currRow = startRow; currRow < endRow; currRow++) {
+            int row = currRow;
+            //The samples of the row as they are between the row and the column pass of the level
+            LineValues rowPassed = column -> {
+                LineValues transformedColumn = transformedRow -> {
+                    if (column >= averagedColumns[0] && column < averagedColumns[1]
+                            && transformedRow >= averagedRows[0] && transformedRow < averagedRows[1]) {
+                        return averaged[((transformedRow - averagedRows[0]) * averagedWidth) + column - averagedColumns[0]];
+                    }
+                    return coefficients[column][transformedRow][bandIndex];
+                };
+                return columnPass ? recoverAt(transformedColumn, subImageRows, row) : transformedColumn.at(row);
+            };
+            for (int currColumn = startColumn; currColumn < endColumn; currColumn++) {
+                samples[((currRow - startRow) * regionColumns) + currColumn - startColumn] =
+                        rowPass ? recoverAt(rowPassed, subImageColumns, currColumn) : rowPassed.at(currColumn);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Transforms a change, zero outside its region, level after level, adding the details it
+     * makes to the coefficients and the averaged sub-image it leaves after the last level
+     */
+    private void addNonStandardChange(int bandIndex, int rowLevels, int columnLevels, int startColumn, int endColumn,
+                                      int startRow, int endRow, double[] change){
+        for (int level = 0; level < rowLevels || level < columnLevels; level++) {
+            boolean rowPass = level < rowLevels;
+            boolean columnPass = level < columnLevels;
+            int subImageColumns = subImageSize(numOfColumns, level);
+            int subImageRows = subImageSize(numOfRows, level);
+            int regionColumns = endColumn - startColumn;
+            int[] passColumns = rowPass ? indicesChanged(subImageColumns, startColumn, endColumn)
+                                        : indicesBetween(startColumn, endColumn);
+            int[] passRows = columnPass ? indicesChanged(subImageRows, startRow, endRow)
+                                        : indicesBetween(startRow, endRow);
+            int[] averagedColumns = rowPass ? averagedRangeChanged(subImageColumns, startColumn, endColumn)
+                                            : new int[]{startColumn, endColumn};
+            int[] averagedRows = columnPass ? averagedRangeChanged(subImageRows, startRow, endRow)
+                                            : new int[]{startRow, endRow};
+
+            //Row pass, leaving the changed columns of every row of the region, column by column
+            double[][] rowPassed = new double[passColumns.length][endRow - startRow];
+            double[] levelChange = change;
+            for (int currRow = startRow; currRow < endRow; currRow++) {
+                int rowOffset = (currRow - startRow) * regionColumns;
+                int firstColumn = startColumn;
+                int lastColumn = endColumn;
+                LineValues changeRow = column -> (column >= firstColumn && column < lastColumn)
+                        ? levelChange[rowOffset + column - firstColumn] : 0;
+                for (int columnIndex = 0; columnIndex < passColumns.length; columnIndex++) {
+                    rowPassed[columnIndex][currRow - startRow] = rowPass
+                            ? transformAt(changeRow, subImageColumns, passColumns[columnIndex])
+                            : changeRow.at(passColumns[columnIndex]);
+                }
+            }
+
+            //Column pass, keeping the averaged sub-image for the next level and adding the rest
+            int averagedWidth = Math.max(0, averagedColumns[1] - averagedColumns[0]);
+            double[] averaged = new double[averagedWidth * Math.max(0, averagedRows[1] - averagedRows[0])];
+            for (int columnIndex = 0; columnIndex < passColumns.length; columnIndex++) {
+                int column = passColumns[columnIndex];
+                double[] columnChange = rowPassed[columnIndex];
+                int firstRow = startRow;
+                LineValues changeColumn = row -> (row >= firstRow && row - firstRow < columnChange.length)
+                        ? columnChange[row - firstRow] : 0;
+                for (int row : passRows) {
+                    double value = columnPass ? transformAt(changeColumn, subImageRows, row) : changeColumn.at(row);
+                    if (column >= averagedColumns[0] && column < averagedColumns[1]
+                            && row >= averagedRows[0] && row < averagedRows[1]) {
+                        averaged[((row - averagedRows[0]) * averagedWidth) + column - averagedColumns[0]] = value;
+                    } else {
+                        coefficients[column][row][bandIndex] += value;
+                    }
+                }
+            }
+
+            startColumn = averagedColumns[0];
+            endColumn = averagedColumns[1];
+            startRow = averagedRows[0];
+            endRow = averagedRows[1];
+            change = averaged;
+            if (startColumn >= endColumn || startRow >= endRow) {
+                return;
+            }
+        }
+        int regionColumns = endColumn - startColumn;
+        for (int currRow = startRow; currRow < endRow; currRow++) {
+            for (int currColumn = startColumn; currColumn < endColumn; currColumn++) {
+                coefficients[currColumn][currRow][bandIndex] +=
+                        change[((currRow - startRow) * regionColumns) + currColumn - startColumn];
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Standard decomposition
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Recovers the samples of a region by recovering the columns each row of the region reads,
+     * over the rows of the region only, then the rows of the region from those columns
+     */
+    private double[] recoverStandard(int bandIndex, int rowLevels, int columnLevels, int startColumn, int endColumn,
+                                     int startRow, int endRow){
+        int regionColumns = endColumn - startColumn;
+        double[] samples = new double[regionColumns * (endRow - startRow)];
+        Map<Integer, double[]> recoveredColumns = new HashMap<>();
+        for (int currRow = startRow; currRow < endRow; currRow++) {
+            int rowIndex = currRow - startRow;
+            double[] recoveredRow = recoverLine(numOfColumns, 0, rowLevels, startColumn, endColumn,
+                    column -> recoveredColumns.computeIfAbsent(column, key -> recoverLine(numOfRows, 0, columnLevels,
+                            startRow, endRow, row -> coefficients[key][row][bandIndex]))[rowIndex]);
+            System.arraycopy(recoveredRow, 0, samples, rowIndex * regionColumns, regionColumns);
+        }
+        return samples;
+    }
+
+    /**
+     * Transforms every row of a change, zero outside its region, through all row levels, then
+     * every column the rows changed through all column levels, adding the result to the coefficients
+     */
+    private void addStandardChange(int bandIndex, int rowLevels, int columnLevels, int startColumn, int endColumn,
+                                   int startRow, int endRow, double[] change){
+        int regionColumns = endColumn - startColumn;
+        int regionRows = endRow - startRow;
+        Map<Integer, double[]> rowTransformedColumns = new HashMap<>();
+        for (int currRow = startRow; currRow < endRow; currRow++) {
+            int rowIndex = currRow - startRow;
+            double[] changeRow = new double[regionColumns];
+            System.arraycopy(change, rowIndex * regionColumns, changeRow, 0, regionColumns);
+            transformLineChange(numOfColumns, rowLevels, startColumn, changeRow, (column, value) ->
+                    rowTransformedColumns.computeIfAbsent(column, key -> new double[regionRows])[rowIndex] += value);
+        }
+        for (Map.Entry<Integer, double[]> columnChange : rowTransformedColumns.entrySet()) {
+            int column = columnChange.getKey();
+            transformLineChange(numOfRows, columnLevels, startRow, columnChange.getValue(),
+                    (row, value) -> coefficients[column][row][bandIndex] += value);
+        }
+    }
+
+    /**
+     * Recovers the range [start, end) of a line of fullLength transformed by numOfLevels passes,
+     * from the level given on
+     */
+    private static double[] recoverLine(int fullLength, int level, int numOfLevels, int start, int end,
+                                        LineValues transformed){
+        double[] samples = new double[end - start];
+        if (level == numOfLevels) {
+            for (int index = start; index < end; index++) {
+                samples[index - start] = transformed.at(index);
+            }
+            return samples;
+        }
+        int length = subImageSize(fullLength, level);
+        int[] averagedRange = averagedRangeRead(length, start, end);
+        double[] averaged = recoverLine(fullLength, level + 1, numOfLevels, averagedRange[0], averagedRange[1], transformed);
+        LineValues levelTransformed = index -> (index >= averagedRange[0] && index < averagedRange[1])
+                ? averaged[index - averagedRange[0]] : transformed.at(index);
+        for (int index = start; index < end; index++) {
+            samples[index - start] = recoverAt(levelTransformed, length, index);
+        }
+        return samples;
+    }
+
+    /**
+     * Transforms a change to a line of fullLength, zero outside [start, start + change.length),
+     * through numOfLevels passes, handing every value it changes to the output
+     */
+    private static void transformLineChange(int fullLength, int numOfLevels, int start, double[] change,
+                                            LineOutput output){
+        int end = start + change.length;
+        for (int level = 0; level < numOfLevels && start < end; level++) {
+            int length = subImageSize(fullLength, level);
+            int[] averagedRange = averagedRangeChanged(length, start, end);
+            double[] averaged = new double[Math.max(0, averagedRange[1] - averagedRange[0])];
+            int firstIndex = start;
+            double[] levelChange = change;
+            LineValues changeLine = index -> (index >= firstIndex && index - firstIndex < levelChange.length)
+                    ? levelChange[index - firstIndex] : 0;
+            for (int index : indicesChanged(length, start, end)) {
+                double value = transformAt(changeLine, length, index);
+                if (index >= averagedRange[0] && index < averagedRange[1]) {
+                    averaged[index - averagedRange[0]] = value;
+                } else {
+                    output.add(index, value);
+                }
+            }
+            start = averagedRange[0];
+            end = averagedRange[1];
+            change = averaged;
+        }
+        for (int index = start; index < end; index++) {
+            output.add(index, change[index - start]);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+    // Single passes over a line
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * @return The size of the sub-image a level works on along a side, as HaarTransform sizes it
+     */
+    private static int subImageSize(int size, int level){
+        return Math.max(1, size >> level);
+    }
+
+    /**
+     * @return The averages a pass leaves that are needed to recover [start, end) of its line,
+     * including those of the pixel before the leftover, which the leftover is recovered from
+     */
+    private static int[] averagedRangeRead(int length, int start, int end){
+        if (length % 2 != 0 && end == length) {
+            start = Math.min(start, length - 2);
+        }
+        return new int[]{start >> 1, Math.min(length / 2, ((end - 1) >> 1) + 1)};
+    }
+
+    /**
+     * @return The averages a pass changes when [start, end) of its line changes, which is empty
+     * when only the leftover changes
+     */
+    private static int[] averagedRangeChanged(int length, int start, int end){
+        return new int[]{start >> 1, Math.min(length / 2, ((end - 1) >> 1) + 1)};
+    }
+
+    /**
+     * @return The indices a pass changes when [start, end) of its line changes: the averages and
+     * differences of the pairs overlapping the range, and the leftover when it reaches the last pair
+     */
+    private static int[] indicesChanged(int length, int start, int end){
+        int half = length / 2;
+        int[] averagedRange = averagedRangeChanged(length, start, end);
+        int numOfPairs = Math.max(0, averagedRange[1] - averagedRange[0]);
+        boolean leftoverChanged = length % 2 != 0 && end >= length - 1;
+        int[] indices = new int[(2 * numOfPairs) + (leftoverChanged ? 1 : 0)];
+        for (int pairIndex = 0; pairIndex < numOfPairs; pairIndex++) {
+            indices[pairIndex] = averagedRange[0] + pairIndex;
+            indices[numOfPairs + pairIndex] = half + averagedRange[0] + pairIndex;
+        }
+        if (leftoverChanged) {
+            indices[indices.length - 1] = length - 1;
+        }
+        return indices;
+    }
+
+    private static int[] indicesBetween(int start, int end){
+        int[] indices = new int[end - start];
+        for (int index = start; index < end; index++) {
+            indices[index - start] = index;
+        }
+        return indices;
+    }
+
+    /**
+     * Computes one value of a line after a pass, the way HaarFilter computes it
+     */
+    private static double transformAt(LineValues line, int length, int index){
+        int half = length / 2;
+        if (index < half) {
+            return (line.at(2 * index) + line.at((2 * index) + 1)) / 2.0;
+        }
+        if (index < 2 * half) {
+            int pairIndex = index - half;
+            double firstPixel = line.at(2 * pairIndex);
+            return firstPixel - ((firstPixel + line.at((2 * pairIndex) + 1)) / 2.0);
+        }
+        //The leftover, stored as its difference from its average with the pixel before it
+        double leftoverPixel = line.at(index);
+        return leftoverPixel - ((leftoverPixel + line.at(index - 1)) / 2);
+    }
+
+    /**
+     * Recovers one value of a line before a pass, the way HaarFilter recovers it
+     */
+    private static double recoverAt(LineValues transformed, int length, int index){
+        int half = length / 2;
+        if (index < 2 * half) {
+            int pairIndex = index >> 1;
+            double average = transformed.at(pairIndex);
+            double difference = transformed.at(half + pairIndex);
+            return ((index & 1) == 0) ? average + difference : average - difference;
+        }
+        return recoverAt(transformed, length, index - 1) + (2 * transformed.at(index));
+    }
+
+    private interface LineValues {
+        double at(int index);
+    }
+
+    private interface LineOutput {
+        void add(int index, double value);
+    }
+}
@@ -0,0 +1,397 @@
+package HaarTransform;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.IntStream;
+import javax.imageio.ImageIO;
+
+/**
+ * <p>Serves fixed-size tiles of a Haar transformed image at every zoom level straight from its
+ * coefficients, without building a separate image pyramid. Level 0 is the full resolution image
+ * and every further level halves it, so level L is the averaged (LL) sub-image left by the first
+ * L levels of the transform.
+ *
+ * <p>A tile of level L is reconstructed from the tile of level L+1 covering it and the detail
+ * coefficients of level L+1, undoing a single column and row recover over just the pixels of the
+ * tile. Only the ancestors of a requested tile are ever reconstructed, and every reconstructed
+ * tile is kept in an LRU cache for its neighbours and descendants. The coarse levels a viewer
+ * opens with can be precomputed in the background.
+ *
+ * <p>The Haar pairs are what keep the reconstruction local to a tile, so the transformer must use
+ * the Haar family and the non-standard decomposition, have every level transformed, and not be
+ * modified while tiles are served. Concurrent requests for a tile that is not cached yet may
+ * reconstruct it more than once, which costs time but gives the same tile.
+ */
+public class HaarTileServer implements AutoCloseable {
+    private final HaarTransform transformer;
+    private final double[][][] coefficients;
+    private final int tileSize;
+    private final int maxLevel;
+    private final Map<TileKey, LevelTile> tileCache;
+    private final ExecutorService precomputeThread =
+            Executors.newSingleThreadExecutor(daemonThreads("HaarTileServer precompute"));
+    private final ExecutorService requestThreads = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), daemonThreads("HaarTileServer request"));
+
+    /**
+     * @param transformer The transformer holding the fully transformed image
+     * @param tileSize The width and height of every tile but those at the right and bottom edges of a level, must be even
+     * @param cacheCapacity The number of reconstructed tiles kept in the cache
+     */
+    public HaarTileServer(HaarTransform transformer, int tileSize, int cacheCapacity){
+        if (transformer.getWaveletFamily() != WaveletFamily.HAAR
+                || transformer.getDecompositionMode() != DecompositionMode.NON_STANDARD) {
+            throw new IllegalArgumentException("Tiles can only be served for the Haar family in the non-standard decomposition");
+        }
+        if (transformer.isColorTransformApplied() && transformer.getChromaLevels()
+                < Math.max(transformer.numRowTransformsNeeded, transformer.numColumnTransformsNeeded)) {
+            throw new IllegalArgumentException("Tiles can only be served when the chroma bands take part in every level");
+        }
+        if (tileSize < 2 || tileSize % 2 != 0) {
+            throw new IllegalArgumentException("tileSize must be even and at least 2: " + tileSize);
+        }
+        if (cacheCapacity < 1) {
+            throw new IllegalArgumentException("cacheCapacity must be at least 1: " + cacheCapacity);
+        }
+        this.transformer = transformer;
+        this.coefficients = transformer.getImagePixelArray();
+        this.tileSize = tileSize;
+        this.maxLevel = Math.max(transformer.numRowTransformsNeeded, transformer.numColumnTransformsNeeded);
+        this.tileCache = new LinkedHashMap<TileKey, LevelTile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, LevelTile> eldest){
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * @return The coarsest level, which is a single averaged pixel for square images
+     */
+    public int getMaxLevel(){
+        return maxLevel;
+    }
+
+    public int getTileSize(){
+        return tileSize;
+    }
+
+    public int getLevelColumns(int level){
+        return levelSize(transformer.numOfColumns, level);
+    }
+
+    public int getLevelRows(int level){
+        return levelSize(transformer.numOfRows, level);
+    }
+
+    public int getNumOfTileColumns(int level){
+        return (getLevelColumns(level) + tileSize - 1) / tileSize;
+    }
+
+    public int getNumOfTileRows(int level){
+        return (getLevelRows(level) + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Renders a tile of a level, reconstructing it and any of its ancestors missing from the cache
+     * @param level The zoom level, from 0 for the full resolution image up to getMaxLevel
+     * @param tileColumn The column of the tile, counted in tiles from the left edge of the level
+     * @param tileRow The row of the tile, counted in tiles from the top edge of the level
+     * @return The pixels of the tile, which are smaller than the tile size at the right and bottom edges
+     */
+    public BufferedImage getTile(int level, int tileColumn, int tileRow){
+        checkTileIndex(level, tileColumn, tileRow);
+        LevelTile tile = getLevelTile(level, tileColumn, tileRow);
+        WritableRaster tileRaster = transformer.createCompatibleRaster(tile.numOfColumns, tile.numOfRows);
+        int[] pixel = new int[transformer.numOfBands];
+
+        for (int currColumn = 0; currColumn < tile.numOfColumns; currColumn++) {
+            for (int currRow = 0; currRow < tile.numOfRows; currRow++) {
+                for (int bandIndex = 0; bandIndex < pixel.length; bandIndex++) {
+                    pixel[bandIndex] = (int)Math.round(tile.pixels[currColumn][currRow][bandIndex]);
+                }
+                if (transformer.isColorTransformApplied()) {
+                    ColorTransform.inverseYCoCgR(pixel);
+                }
+                for (int bandIndex = 0; bandIndex < pixel.length; bandIndex++) {
+                    long maxSample = (1L << tileRaster.getSampleModel().getSampleSize(bandIndex)) - 1;
+                    pixel[bandIndex] = (int)Math.max(0, Math.min(maxSample, pixel[bandIndex]));
+                }
+                tileRaster.setPixel(currColumn, currRow, pixel);
+            }
+        }
+        return new BufferedImage(transformer.getColorModel(), tileRaster, false, null);
+    }
+
+    /**
+     * Reconstructs every tile from the coarsest level down to the given level on a background
+     * thread, coarse levels first, so viewers opening the image find them in the cache. The cache
+     * must be large enough to hold all of these tiles for them to stay there.
+     * @param finestLevel The finest level precomputed
+     * @return The pending precomputation
+     */
+    public Future<?> precomputeLevels(int finestLevel){
+        return precomputeThread.submit(() -> {
+            for (int level = maxLevel; level >= Math.max(0, finestLevel); level--) {
+                int currLevel = level;
+                int numOfTileColumns = getNumOfTileColumns(level);
+                IntStream.range(0, numOfTileColumns * getNumOfTileRows(level)).parallel().forEach(tileIndex ->
+                        getLevelTile(currLevel, tileIndex % numOfTileColumns, tileIndex / numOfTileColumns));
+            }
+        });
+    }
+
+    /**
+     * Serves the tiles over HTTP as PNG images at /tiles/{level}/{tileColumn}/{tileRow}.png. Every
+     * server started by a tile server handles its requests on the threads of the tile server,
+     * which are stopped by close.
+     * @param address The address the server listens on
+     * @return The started server, stopped by the caller once tiles are no longer needed
+     */
+    public HttpServer serve(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/tiles/", this::handleTileRequest);
+        server.setExecutor(requestThreads);
+        server.start();
+        return server;
+    }
+
+    private void handleTileRequest(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] pathParts = exchange.getRequestURI().getPath().substring("/tiles/".length()).split("/");
+            if (pathParts.length != 3 || !pathParts[2].endsWith(".png")) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            BufferedImage tileImage;
+            try {
+                tileImage = getTile(Integer.parseInt(pathParts[0]), Integer.parseInt(pathParts[1]),
+                        Integer.parseInt(pathParts[2].substring(0, pathParts[2].length() - ".png".length())));
+            } catch (NumberFormatException ex) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            } catch (IndexOutOfBoundsException ex) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            ByteArrayOutputStream encodedTile = new ByteArrayOutputStream();
+            ImageIO.write(tileImage, "png", encodedTile);
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, encodedTile.size());
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                encodedTile.writeTo(responseBody);
+            }
+        }
+    }
+
+    @Override
+    public void close(){
+        precomputeThread.shutdownNow();
+        requestThreads.shutdownNow();
+    }
+
+    private LevelTile getLevelTile(int level, int tileColumn, int tileRow){
+        TileKey key = new TileKey(level, tileColumn, tileRow);
+        synchronized (tileCache) {
+            LevelTile cachedTile = tileCache.get(key);
+            if (cachedTile != null) {
+                return cachedTile;
+            }
+        }
+        LevelTile tile = reconstructTile(level, tileColumn, tileRow);
+        synchronized (tileCache) {
+            tileCache.put(key, tile);
+        }
+        return tile;
+    }
+
+    private LevelTile reconstructTile(int level, int tileColumn, int tileRow){
+        int levelColumns = getLevelColumns(level);
+        int levelRows = getLevelRows(level);
+        LevelTile tile = new LevelTile(tileColumn * tileSize, tileRow * tileSize,
+                Math.min(tileSize, levelColumns - (tileColumn * tileSize)),
+                Math.min(tileSize, levelRows - (tileRow * tileSize)), transformer.numOfBands);
+
+        if (level == maxLevel) {
+            //Nothing coarser was transformed, the averaged sub-image is stored as is
+            for (int currColumn = 0; currColumn < tile.numOfColumns; currColumn++) {
+                for (int currRow = 0; currRow < tile.numOfRows; currRow++) {
+                    tile.pixels[currColumn][currRow] =
+                            coefficients[tile.startColumn + currColumn][tile.startRow + currRow].clone();
+                }
+            }
+            return tile;
+        }
+
+        TileRecover tileRecover = new TileRecover(level, tile);
+        for (int currColumn = 0; currColumn < tile.numOfColumns; currColumn++) {
+            for (int currRow = 0; currRow < tile.numOfRows; currRow++) {
+                for (int bandIndex = 0; bandIndex < transformer.numOfBands; bandIndex++) {
+                    tile.pixels[currColumn][currRow][bandIndex] =
+                            tileRecover.recoveredAt(tile.startColumn + currColumn, tile.startRow + currRow, bandIndex);
+                }
+            }
+        }
+        return tile;
+    }
+
+    private void checkTileIndex(int level, int tileColumn, int tileRow){
+        if (level < 0 || level > maxLevel || tileColumn < 0 || tileColumn >= getNumOfTileColumns(level)
+                || tileRow < 0 || tileRow >= getNumOfTileRows(level)) {
+            throw new IndexOutOfBoundsException("No tile at level " + level + ", column " + tileColumn
+                    + ", row " + tileRow);
+        }
+    }
+
+    /**
+     * Creates threads that do not keep the application running once everything else is done
+     */
+    private static ThreadFactory daemonThreads(String threadName){
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static int levelSize(int size, int level){
+        return Math.max(1, size >> level);
+    }
+
+    /**
+     * Undoes the column and then the row recover of one level for single pixels of a tile. The
+     * averaged sub-image of the level below is read from the tiles of the next coarser level,
+     * everything else from the detail coefficients of the level.
+     */
+    private class TileRecover {
+        private final int levelColumns;
+        private final int levelRows;
+        private final int averagedColumns;
+        private final int averagedRows;
+        private final int firstParentTileColumn;
+        private final int firstParentTileRow;
+        private final LevelTile[][] parentTiles;
+
+        TileRecover(int level, LevelTile tile){
+            levelColumns = getLevelColumns(level);
+            levelRows = getLevelRows(level);
+            averagedColumns = getLevelColumns(level + 1);
+            averagedRows = getLevelRows(level + 1);
+
+            //Pairs of the tile start at half its position, leftovers also need the last pair before them
+            int firstAveragedColumn = Math.min(tile.startColumn / 2, averagedColumns - 1);
+            int lastAveragedColumn = Math.min((tile.startColumn + tile.numOfColumns - 1) / 2, averagedColumns - 1);
+            int firstAveragedRow = Math.min(tile.startRow / 2, averagedRows - 1);
+            int lastAveragedRow = Math.min((tile.startRow + tile.numOfRows - 1) / 2, averagedRows - 1);
+            firstParentTileColumn = firstAveragedColumn / tileSize;
+            firstParentTileRow = firstAveragedRow / tileSize;
+            parentTiles = new LevelTile[(lastAveragedColumn / tileSize) - firstParentTileColumn + 1]
+                                       [(lastAveragedRow / tileSize) - firstParentTileRow + 1];
+            for (int parentColumn = 0; parentColumn < parentTiles.length; parentColumn++) {
+                for (int parentRow = 0; parentRow < parentTiles[0].length; parentRow++) {
+                    parentTiles[parentColumn][parentRow] = getLevelTile(level + 1,
+                            firstParentTileColumn + parentColumn, firstParentTileRow + parentRow);
+                }
+            }
+        }
+
+        /**
+         * @return The pixel of the level after both recovers
+         */
+        double recoveredAt(int column, int row, int band){
+            if (levelColumns < 2) {
+                return columnRecoveredAt(column, row, band);
+            }
+            int half = levelColumns / 2;
+            if (column >= 2 * half) {
+                return recoveredAt(column - 1, row, band) + (2 * columnRecoveredAt(column, row, band));
+            }
+            double averagedValue = columnRecoveredAt(column / 2, row, band);
+            double differenceValue = columnRecoveredAt(half + (column / 2), row, band);
+            return (column % 2 == 0) ? averagedValue + differenceValue : averagedValue - differenceValue;
+        }
+
+        /**
+         * @return The coefficient of the level after the column recover only
+         */
+        private double columnRecoveredAt(int column, int row, int band){
+            if (levelRows < 2) {
+                return transformedAt(column, row, band);
+            }
+            int half = levelRows / 2;
+            if (row >= 2 * half) {
+                return columnRecoveredAt(column, row - 1, band) + (2 * transformedAt(column, row, band));
+            }
+            double averagedValue = transformedAt(column, row / 2, band);
+            double differenceValue = transformedAt(column, half + (row / 2), band);
+            return (row % 2 == 0) ? averagedValue + differenceValue : averagedValue - differenceValue;
+        }
+
+        /**
+         * @return The coefficient of the level before any of its recovers
+         */
+        private double transformedAt(int column, int row, int band){
+            if (column < averagedColumns && row < averagedRows) {
+                LevelTile parentTile = parentTiles[(column / tileSize) - firstParentTileColumn]
+                                                  [(row / tileSize) - firstParentTileRow];
+                return parentTile.pixels[column - parentTile.startColumn][row - parentTile.startRow][band];
+            }
+            return coefficients[column][row][band];
+        }
+    }
+
+    private static class LevelTile {
+        final int startColumn;
+        final int startRow;
+        final int numOfColumns;
+        final int numOfRows;
+        final double[][][] pixels;
+
+        LevelTile(int startColumn, int startRow, int numOfColumns, int numOfRows, int numOfBands){
+            this.startColumn = startColumn;
+            this.startRow = startRow;
+            this.numOfColumns = numOfColumns;
+            this.numOfRows = numOfRows;
+            this.pixels = new double[numOfColumns][numOfRows][numOfBands];
+        }
+    }
+
+    private static final class TileKey {
+        final int level;
+        final int tileColumn;
+        final int tileRow;
+
+        TileKey(int level, int tileColumn, int tileRow){
+            this.level = level;
+            this.tileColumn = tileColumn;
+            this.tileRow = tileRow;
+        }
+
+        @Override
+        public boolean equals(Object other){
+            if (!(other instanceof TileKey)) {
+                return false;
+            }
+            TileKey otherKey = (TileKey)other;
+            return level == otherKey.level && tileColumn == otherKey.tileColumn && tileRow == otherKey.tileRow;
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hash(level, tileColumn, tileRow);
+        }
+    }
+}
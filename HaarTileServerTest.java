@@ -0,0 +1,142 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpServer;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+public class HaarTileServerTest extends TestCase {
+    private static final int TILE_SIZE = 8;
+
+    public void testTilesOfEveryLevelMatchTheDownscaledImage() throws Throwable {
+        for (int[] imageSize : new int[][]{{37, 21}, {64, 64}, {5, 40}, {1, 17}, {19, 3}}) {
+            for (boolean precompute : new boolean[]{false, true}) {
+                BufferedImage image = HaarTransformTest.createRandomImage(imageSize[0], imageSize[1],
+                        BufferedImage.TYPE_3BYTE_BGR, 36);
+                HaarTransform transformer = new HaarTransform();
+                transformer.loadImage(image, "png");
+                transformer.performAllTransforms();
+                String message = imageSize[0] + "x" + imageSize[1] + (precompute ? " precomputed" : "");
+
+                try (HaarTileServer tileServer = new HaarTileServer(transformer, TILE_SIZE, 1000)) {
+                    if (precompute) {
+                        tileServer.precomputeLevels(0).get(30, TimeUnit.SECONDS);
+                    }
+                    //Tiles are served from the finest level up, so each reconstructs its ancestors itself
+                    for (int level = 0; level <= tileServer.getMaxLevel(); level++) {
+                        Raster downscaled = downscale(image.getRaster(), transformer, level);
+                        assertEquals(message, downscaled.getWidth(), tileServer.getLevelColumns(level));
+                        assertEquals(message, downscaled.getHeight(), tileServer.getLevelRows(level));
+                        for (int tileColumn = 0; tileColumn < tileServer.getNumOfTileColumns(level); tileColumn++) {
+                            for (int tileRow = 0; tileRow < tileServer.getNumOfTileRows(level); tileRow++) {
+                                assertTileEquals(message + " level " + level + " tile " + tileColumn + "," + tileRow,
+                                        downscaled, tileColumn * TILE_SIZE, tileRow * TILE_SIZE,
+                                        tileServer.getTile(level, tileColumn, tileRow).getRaster());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testServedTilesMatchGetTile() throws Throwable {
+        HaarTransform transformer = new HaarTransform();
+        transformer.loadImage(HaarTransformTest.createRandomImage(37, 21, BufferedImage.TYPE_3BYTE_BGR, 36), "png");
+        transformer.performAllTransforms();
+
+        try (HaarTileServer tileServer = new HaarTileServer(transformer, TILE_SIZE, 100)) {
+            HttpServer server = tileServer.serve(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try {
+                String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/tiles/";
+                HttpURLConnection connection = (HttpURLConnection)new URL(baseUrl + "1/2/1.png").openConnection();
+                assertEquals(200, connection.getResponseCode());
+                try (InputStream tileStream = connection.getInputStream()) {
+                    HaarTransformTest.assertImageEquals("served tile", tileServer.getTile(1, 2, 1), ImageIO.read(tileStream));
+                }
+                assertEquals(404, ((HttpURLConnection)new URL(baseUrl + "1/3/0.png").openConnection()).getResponseCode());
+                assertEquals(400, ((HttpURLConnection)new URL(baseUrl + "1/x/0.png").openConnection()).getResponseCode());
+            } finally {
+                server.stop(0);
+            }
+        }
+        //Closing the tile server stops the threads the requests were handled on
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (hasRequestThreads() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(hasRequestThreads());
+    }
+
+    public void testOnlyHaarNonStandardTransformsAreServed() throws Throwable {
+        HaarTransform transformer = HaarTransformTest.createTransformer(WaveletFamily.HAAR, DecompositionMode.STANDARD);
+        transformer.loadImage(HaarTransformTest.createRandomImage(8, 8, BufferedImage.TYPE_BYTE_GRAY, 36), "png");
+        transformer.performAllTransforms();
+        try {
+            new HaarTileServer(transformer, TILE_SIZE, 10);
+            fail("Standard decompositions mix the levels of rows and columns");
+        } catch (IllegalArgumentException ex) {
+            //Expected
+        }
+    }
+
+    /**
+     * The averaged sub-image of a level is the mean of the block of pixels each of its pixels
+     * averages, leftover pixels taking no part in it
+     */
+    private static Raster downscale(Raster raster, HaarTransform transformer, int level){
+        int blockColumns = 1 << Math.min(level, transformer.numRowTransformsNeeded);
+        int blockRows = 1 << Math.min(level, transformer.numColumnTransformsNeeded);
+        int numOfColumns = Math.max(1, raster.getWidth() >> level);
+        int numOfRows = Math.max(1, raster.getHeight() >> level);
+        WritableRaster downscaled = raster.createCompatibleWritableRaster(numOfColumns, numOfRows);
+        for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+            for (int currRow = 0; currRow < numOfRows; currRow++) {
+                for (int bandIndex = 0; bandIndex < raster.getNumBands(); bandIndex++) {
+                    double sum = 0;
+                    for (int blockColumn = 0; blockColumn < blockColumns; blockColumn++) {
+                        for (int blockRow = 0; blockRow < blockRows; blockRow++) {
+                            sum += raster.getSample((currColumn * blockColumns) + blockColumn,
+                                    (currRow * blockRows) + blockRow, bandIndex);
+                        }
+                    }
+                    downscaled.setSample(currColumn, currRow, bandIndex,
+                            Math.round(sum / (blockColumns * blockRows)));
+                }
+            }
+        }
+        return downscaled;
+    }
+
+    private static void assertTileEquals(String message, Raster expected, int startColumn, int startRow, Raster tile){
+        assertEquals(message, Math.min(TILE_SIZE, expected.getWidth() - startColumn), tile.getWidth());
+        assertEquals(message, Math.min(TILE_SIZE, expected.getHeight() - startRow), tile.getHeight());
+        for (int currColumn = 0; currColumn < tile.getWidth(); currColumn++) {
+            for (int currRow = 0; currRow < tile.getHeight(); currRow++) {
+                for (int bandIndex = 0; bandIndex < tile.getNumBands(); bandIndex++) {
+                    assertEquals(message + " at " + currColumn + "," + currRow,
+                            expected.getSample(startColumn + currColumn, startRow + currRow, bandIndex),
+                            tile.getSample(currColumn, currRow, bandIndex));
+                }
+            }
+        }
+    }
+
+    private static boolean hasRequestThreads(){
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("HaarTileServer request")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
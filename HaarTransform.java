@@ -1,9 +1,14 @@
 package HaarTransform;
 
+import java.awt.Rectangle;
 import java.awt.image.*;
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.logging.*;
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -22,6 +27,17 @@ import javax.swing.*;
  * area. Recovering these pixels is done by adding two times the stored value for the leftover pixel
  * to the recovered value of the previous pixel.
  *
+ * <p>Supports both the non-standard (pyramid) decomposition, where the row and column transforms
+ * of each level only cover the averaged sub-image left by the previous level, and the standard
+ * decomposition, where every row transform is performed before any of the column transforms.
+ *
+ * <p>Besides the Haar wavelet, the row and column passes can use the CDF 5/3, CDF 9/7 and
+ * Daubechies-4 wavelets, all of which encode leftover pixels the same way. See WaveletFamily.
+ *
+ * <p>RGB images can optionally be decorrelated with the reversible YCoCg-R color transform,
+ * applied while the image is copied into the coefficient array and undone while coefficients
+ * are copied into an image. The chroma bands can be given fewer levels than the luma band.
+ *
  * <p>Provides both basic Haar generateTransformImages images and expanded images of the averaged portion of
  * each step to demonstrate the degradation of the image quality.
  *
@@ -31,6 +47,17 @@ import javax.swing.*;
 public class HaarTransform {
     private static final int ZERO_INDEX_OFFSET = 1;
     private double[][][] imagePixelArray;
+    private WaveletFamily waveletFamily = WaveletFamily.HAAR;
+    private LiftingEngine liftingEngine = new LiftingEngine(waveletFamily.createFilter());
+    private DecompositionMode decompositionMode = DecompositionMode.NON_STANDARD;
+    private boolean sparseRecoverEnabled;
+    private ColorTransform colorTransform = ColorTransform.NONE;
+    private boolean colorTransformApplied;
+    private int chromaLevels = Integer.MAX_VALUE;
+    private BlockOccupancyMap occupancyMap;
+    //Receives the stages and the regions changed by each pass while a stage history is generated
+    private StageHistory stageHistory;
+    private StageListener stageListener;
     private String fileExt;
     int numOfBands;
     int numOfRows;
@@ -38,7 +65,14 @@ public class HaarTransform {
     int numColumnTransformsNeeded;
     int numRowTransformsNeeded;
     private ColorModel colorModel;
-    private Raster originalRaster;
+    private SampleModel sampleModel;
+    //The image is reloaded from one of these when reset, neither holding a copy of its pixels
+    private Raster sourceRaster;
+    private ImageRegionSource regionSource;
+    private PassRollback passRollback = new PassRollback();
+    //Set once generateRecoveredImage has put the last recover pass into its image only, which leaves
+    //the coefficient array a level short of the image until the image is reset or loaded again
+    private boolean coefficientsConsumed;
 
     /**
      * Converts an image file to a three dimensional array where the first
@@ -47,6 +81,8 @@ public class HaarTransform {
      * @param imageFile The file name of the image to be converted as a String
      */
     public BufferedImage loadImage(File imageFile)throws TransformException{
+        ImageLoadEvent event = new ImageLoadEvent();
+        event.begin();
 
         try {
             BufferedImage inputImage = ImageIO.read(imageFile);
@@ -55,7 +91,8 @@ public class HaarTransform {
             }
             setFileExt(imageFile);
             setImageAttribs(inputImage);
-            imagePixelArray = copyRasterTo3DArray(originalRaster);
+            imagePixelArray = copyRasterTo3DArray(sourceRaster);
+            commitLoadEvent(event, imageFile);
             return inputImage;
         }
         catch (IOException ex) {
@@ -63,6 +100,49 @@ public class HaarTransform {
         }
     }
 
+    /**
+     * Converts an image that has already been decoded, such as a single frame of a multi-frame
+     * file, to the three dimensional array used by the transform and recover methods
+     * @param inputImage The image to be converted
+     * @param imageFileExt The image format used when writing files for the stages of this image
+     */
+    public void loadImage(BufferedImage inputImage, String imageFileExt){
+        fileExt = imageFileExt;
+        setImageAttribs(inputImage);
+        imagePixelArray = copyRasterTo3DArray(sourceRaster);
+    }
+
+    /**
+     * Converts a region of an image file, optionally subsampled, to the three dimensional array used
+     * by the transform and recover methods. The region is decoded a strip at a time straight into the
+     * array, so the whole image is never held in memory as a BufferedImage.
+     * @param source The region of the image file to be converted
+     */
+    public void loadImage(ImageRegionSource source) throws TransformException {
+        ImageLoadEvent event = new ImageLoadEvent();
+        event.begin();
+        setFileExt(source.getImageFile());
+        colorModel = source.getColorModel();
+        sampleModel = source.getSampleModel();
+        sourceRaster = null;
+        regionSource = source;
+        setImageSize(source.getNumOfColumns(), source.getNumOfRows(), source.getNumOfBands());
+        imagePixelArray = copySourceTo3DArray();
+        commitLoadEvent(event, source.getImageFile());
+    }
+
+    private void commitLoadEvent(ImageLoadEvent event, File imageFile){
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = imageFile.getPath();
+            event.columns = numOfColumns;
+            event.rows = numOfRows;
+            event.bands = numOfBands;
+            event.bytesTouched = bytesInSubImage(numOfColumns, numOfRows);
+            event.commit();
+        }
+    }
+
     private void setFileExt(File imageFile){
         int indexOfExt = imageFile.getName().lastIndexOf('.')+1;
         fileExt = imageFile.getName().substring(indexOfExt);
@@ -70,10 +150,20 @@ public class HaarTransform {
 
     private void setImageAttribs(BufferedImage image){
         colorModel = image.getColorModel();
-        originalRaster = image.getData();
-        numOfBands = image.getSampleModel().getNumBands();
-        numOfRows = image.getHeight();
-        numOfColumns = image.getWidth();
+        sampleModel = image.getSampleModel();
+        //Referenced rather than copied with getData, the image is never written to
+        sourceRaster = image.getRaster();
+        regionSource = null;
+        setImageSize(image.getWidth(), image.getHeight(), sampleModel.getNumBands());
+    }
+
+    private void setImageSize(int columns, int rows, int bands){
+        passRollback.clear();
+        coefficientsConsumed = false;
+        numOfBands = bands;
+        numOfRows = rows;
+        numOfColumns = columns;
+        colorTransformApplied = colorTransform.appliesTo(colorModel);
         numColumnTransformsNeeded = calcTransformsNeeded(numOfRows);
         numRowTransformsNeeded = calcTransformsNeeded(numOfColumns);
     }
@@ -87,21 +177,48 @@ public class HaarTransform {
         return numOfTransformsNeeded;
     }
 
+    private long bytesInSubImage(int columns, int rows){
+        return (long)columns * rows * numOfBands * Double.BYTES;
+    }
+
     private double[][][] copyRasterTo3DArray(Raster inputRaster){
+        double[][][] tempArray = new double[numOfColumns][numOfRows][numOfBands];
+        copyRasterRowsTo3DArray(inputRaster, tempArray, 0);
+        return tempArray;
+    }
+
+    /**
+     * Decodes the region source a strip at a time into a new array
+     */
+    private double[][][] copySourceTo3DArray() throws TransformException {
+        double[][][] tempArray = new double[numOfColumns][numOfRows][numOfBands];
+        regionSource.readStrips((strip, firstRow) -> copyRasterRowsTo3DArray(strip, tempArray, firstRow));
+        return tempArray;
+    }
+
+    /**
+     * Copies the raster a row at a time into the array, starting at the given row of the array,
+     * every band of a pixel together. Each pixel is color transformed as it is copied when YCoCg-R applies.
+     */
+    private void copyRasterRowsTo3DArray(Raster inputRaster, double[][][] tempArray, int firstRow){
         int columns = inputRaster.getWidth();
         int rows = inputRaster.getHeight();
         int bands = inputRaster.getNumBands();
-        double[][][] tempArray = new double[numOfColumns][numOfRows][numOfBands];
+        int[] rowSamples = new int[columns * bands];
 
-        for(int bandCount = 0; bandCount < bands; bandCount++) {
+        for (int rowCount = 0; rowCount < rows; rowCount++) {
+            inputRaster.getPixels(inputRaster.getMinX(), inputRaster.getMinY() + rowCount, columns, 1, rowSamples);
             for (int columnCount = 0; columnCount < columns; columnCount++) {
-                for ( int rowCount = 0; rowCount < rows; rowCount++){
-                    tempArray[columnCount][rowCount][bandCount] =
-                            inputRaster.getSample(columnCount, rowCount, bandCount);
+                int sampleOffset = columnCount * bands;
+                if (colorTransformApplied) {
+                    ColorTransform.forwardYCoCgR(rowSamples, sampleOffset);
+                }
+                double[] pixelBands = tempArray[columnCount][firstRow + rowCount];
+                for (int bandCount = 0; bandCount < bands; bandCount++) {
+                    pixelBands[bandCount] = rowSamples[sampleOffset + bandCount];
                 }
             }
         }
-        return tempArray;
     }
     ////////////////////////////////////////////////////////////
     //Transform methods
@@ -128,15 +245,61 @@ public class HaarTransform {
 
     public ArrayList<BufferedImage> generateTransformImages(boolean genFiles, SwingWorker worker, JProgressBar progressBar)
             throws TransformException{
-        ArrayList<BufferedImage> resultImages = new ArrayList<>();
+        ArrayList<BufferedImage> resultImages = generateTransformHistory(worker, progressBar).renderAllStages();
+        if(genFiles) {
+            createImageFilesForAllStages(resultImages, "Transform");
+        }
+        return resultImages;
+    }
+
+    /**
+     * Transforms the image like generateTransformImages, but keeps the stages in a StageHistory
+     * holding only the region each pass changed, instead of rendering two images for every stage
+     * @return The stages of the transform, rendered on demand
+     */
+    public StageHistory generateTransformHistory(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException {
+        return generateTransformHistory(worker, progressBar, null);
+    }
+
+    /**
+     * Creates a publisher of the stages of the transform, which performs the passes once its generate is called
+     * @param executor Delivers the stages to the subscribers, so they can work on a stage while the next is computed
+     * @param maxBufferCapacity The number of stages a subscriber may fall behind before the passes wait for it
+     */
+    public StagePublisher publishTransformStages(Executor executor, int maxBufferCapacity){
+        return new StagePublisher(this, false, executor, maxBufferCapacity);
+    }
+
+    /**
+     * Generates the history of the transform, handing each stage to the listener as soon as it is recorded
+     * @param stageListener Notified of every stage on the thread performing the passes, or null
+     */
+    public StageHistory generateTransformHistory(SwingWorker<?, ?> worker, JProgressBar progressBar, StageListener stageListener)
+            throws TransformException {
+        checkCoefficientsUsable();
+        this.stageListener = stageListener;
+        stageHistory = new StageHistory(createRenderer());
+        try {
+            if (decompositionMode == DecompositionMode.STANDARD) {
+                performStandardTransformStages(worker, progressBar);
+            } else {
+                performNonStandardTransformStages(worker, progressBar);
+            }
+            stageHistory.finish(imagePixelArray);
+            return stageHistory;
+        } finally {
+            stageHistory = null;
+            stageListener = null;
+        }
+    }
+
+    private void performNonStandardTransformStages(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException{
         int transformsPerformed = 0;
-        int progressIncrementStep = (100/((numColumnTransformsNeeded+numRowTransformsNeeded)/2))/4;
+        int progressIncrementStep = (100/Math.max(1, (numColumnTransformsNeeded+numRowTransformsNeeded)/2))/4;
         int progress = 0;
-        //Add original images to the results
-        resultImages.add(generateImage());
-        updateProgress(worker, progressBar, progress+= (progressIncrementStep/2));
-        resultImages.add(generatePixelExpansionImage(transformsPerformed, transformsPerformed));
-        updateProgress(worker, progressBar, progress+= (progressIncrementStep/2));
+        //The image as it is before any pass is the first stage
+        recordStage(transformsPerformed, transformsPerformed);
+        updateProgress(worker, progressBar, progress += progressIncrementStep);
 
         while ( transformsPerformed < numRowTransformsNeeded || transformsPerformed < numColumnTransformsNeeded) {
             if (transformsPerformed < numRowTransformsNeeded){
@@ -150,107 +313,697 @@ public class HaarTransform {
 
             transformsPerformed++;
 
-            resultImages.add(generateImage());
-            updateProgress(worker, progressBar, progress+= progressIncrementStep);
-            resultImages.add(generatePixelExpansionImage(transformsPerformed, transformsPerformed));
-            updateProgress(worker, progressBar, progress+= progressIncrementStep);
+            recordStage(transformsPerformed, transformsPerformed);
+            updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
         }
+    }
 
-        if(genFiles) {
-            createImageFilesForAllStages(resultImages, "Transform");
+    /**
+     * Transforms the image with the standard decomposition, performing every row transform
+     * before any of the column transforms. A stage is recorded after each single pass.
+     */
+    private void performStandardTransformStages(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException{
+        int progressIncrementStep = 100 / ((3 * (numRowTransformsNeeded + numColumnTransformsNeeded)) + 2);
+        int progress = 0;
+        //The image as it is before any pass is the first stage
+        recordStage(0, 0);
+        updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
+
+        for (int rowTransformsPerformed = 0; rowTransformsPerformed < numRowTransformsNeeded; ) {
+            performRowTransform(rowTransformsPerformed);
+            updateProgress(worker, progressBar, progress += progressIncrementStep);
+            rowTransformsPerformed++;
+
+            recordStage(rowTransformsPerformed, 0);
+            updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
+        }
+
+        for (int columnTransformsPerformed = 0; columnTransformsPerformed < numColumnTransformsNeeded; ) {
+            performColumnTransform(columnTransformsPerformed);
+            updateProgress(worker, progressBar, progress += progressIncrementStep);
+            columnTransformsPerformed++;
+
+            recordStage(numRowTransformsNeeded, columnTransformsPerformed);
+            updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
+        }
+    }
+
+    /**
+     * Transforms every level of the coefficient array in place without rendering any images.
+     * Used when the coefficients are processed further, such as for frame groups undergoing
+     * a temporal transform.
+     */
+    public void performAllTransforms(){
+        checkCoefficientsUsable();
+        if (decompositionMode == DecompositionMode.STANDARD) {
+            for (int rowTransformsPerformed = 0; rowTransformsPerformed < numRowTransformsNeeded; rowTransformsPerformed++) {
+                performRowTransform(rowTransformsPerformed);
+            }
+            for (int columnTransformsPerformed = 0; columnTransformsPerformed < numColumnTransformsNeeded;
+                 columnTransformsPerformed++) {
+                performColumnTransform(columnTransformsPerformed);
+            }
+            return;
+        }
+        for (int transformsPerformed = 0;
+             transformsPerformed < numRowTransformsNeeded || transformsPerformed < numColumnTransformsNeeded;
+             transformsPerformed++) {
+            if (transformsPerformed < numRowTransformsNeeded){
+                performRowTransform(transformsPerformed);
+            }
+            if (transformsPerformed < numColumnTransformsNeeded){
+                performColumnTransform(transformsPerformed);
+            }
         }
-        return resultImages;
+    }
+
+    /**
+     * Transforms every level of the coefficient array in place like performAllTransforms, reading the
+     * result from the cache instead when the same coefficients have been transformed with the same
+     * settings before, and adding the result to the cache otherwise
+     * @param cache The cache the result is read from or added to
+     */
+    public void performAllTransforms(TransformResultCache cache) throws TransformException {
+        checkCoefficientsUsable();
+        String cacheKey = calculateCacheKey();
+        //A hit is read straight over the coefficients it was transformed from
+        boolean hit;
+        try {
+            hit = cache.read(cacheKey, imagePixelArray);
+        } catch (TransformException ex) {
+            //A read failing part way leaves coefficients no recorded pass leads back from
+            passRollback.invalidate();
+            throw ex;
+        }
+        if (hit) {
+            //The passes of a cached result were never recorded, so a reset reloads the image instead
+            passRollback.invalidate();
+            return;
+        }
+        performAllTransforms();
+        cache.write(cacheKey, imagePixelArray);
+    }
+
+    /**
+     * Updates the coefficients of a fully transformed image after the pixels of a region have been
+     * replaced, as if the edited image had been transformed. With the Haar family only the
+     * coefficients the region reaches at each level are computed again, at a cost proportional to
+     * the size of the region. Other families are recovered and transformed again whole.
+     * <p>A reset afterwards goes back to the image as it was loaded, without the edits.
+     * @param region The pixels replaced, within the image
+     * @param regionPixels The new pixels of the region, read from the top left corner of the raster
+     */
+    public void updateRegion(Rectangle region, Raster regionPixels){
+        checkCoefficientsUsable();
+        Rectangle imageBounds = new Rectangle(numOfColumns, numOfRows);
+        if (region.isEmpty() || !imageBounds.contains(region)) {
+            throw new IllegalArgumentException("region must lie within the " + numOfColumns + "x" + numOfRows
+                    + " image: " + region);
+        }
+        if (regionPixels.getWidth() < region.width || regionPixels.getHeight() < region.height
+                || regionPixels.getNumBands() != numOfBands) {
+            throw new IllegalArgumentException("regionPixels must cover the region with " + numOfBands + " bands: "
+                    + regionPixels.getWidth() + "x" + regionPixels.getHeight() + "x" + regionPixels.getNumBands());
+        }
+        double[][] regionSamples = new double[numOfBands][region.width * region.height];
+        int[] rowSamples = new int[region.width * numOfBands];
+        for (int rowCount = 0; rowCount < region.height; rowCount++) {
+            regionPixels.getPixels(regionPixels.getMinX(), regionPixels.getMinY() + rowCount, region.width, 1, rowSamples);
+            for (int columnCount = 0; columnCount < region.width; columnCount++) {
+                int sampleOffset = columnCount * numOfBands;
+                if (colorTransformApplied) {
+                    ColorTransform.forwardYCoCgR(rowSamples, sampleOffset);
+                }
+                for (int bandCount = 0; bandCount < numOfBands; bandCount++) {
+                    regionSamples[bandCount][(rowCount * region.width) + columnCount] = rowSamples[sampleOffset + bandCount];
+                }
+            }
+        }
+        //The passes recorded no longer lead back to the loaded image
+        passRollback.invalidate();
+
+        if (waveletFamily != WaveletFamily.HAAR) {
+            performAllRecovers();
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                for (int rowCount = 0; rowCount < region.height; rowCount++) {
+                    for (int columnCount = 0; columnCount < region.width; columnCount++) {
+                        imagePixelArray[region.x + columnCount][region.y + rowCount][bandIndex] =
+                                regionSamples[bandIndex][(rowCount * region.width) + columnCount];
+                    }
+                }
+            }
+            performAllTransforms();
+            return;
+        }
+        HaarRegionUpdate regionUpdate = new HaarRegionUpdate(imagePixelArray, decompositionMode);
+        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+            int levelsOfBand = isChromaBand(bandIndex) ? chromaLevels : Integer.MAX_VALUE;
+            regionUpdate.updateBand(bandIndex, Math.min(numRowTransformsNeeded, levelsOfBand),
+                    Math.min(numColumnTransformsNeeded, levelsOfBand), region, regionSamples[bandIndex]);
+        }
+    }
+
+    /**
+     * Hashes the coefficients as they are now, together with everything performAllTransforms does
+     * to them depending on, into the name of their transform result in a TransformResultCache
+     */
+    private String calculateCacheKey(){
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            //Cannot happen, every Java platform provides SHA-256
+            throw new IllegalStateException(ex.getMessage());
+        }
+        //The coefficients are cached as doubles, the precision the passes compute them in
+        String transformSettings = "double " + numOfColumns + "x" + numOfRows + "x" + numOfBands + " " + decompositionMode
+                + " " + waveletFamily + " " + colorTransformApplied + " " + chromaLevels + " "
+                + numRowTransformsNeeded + " " + numColumnTransformsNeeded;
+        digest.update(transformSettings.getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer columnBytes = ByteBuffer.allocate(numOfRows * numOfBands * Double.BYTES);
+        for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+            columnBytes.clear();
+            for (int currRow = 0; currRow < numOfRows; currRow++) {
+                for (double coefficient : imagePixelArray[currColumn][currRow]) {
+                    columnBytes.putDouble(coefficient);
+                }
+            }
+            digest.update(columnBytes.array());
+        }
+
+        StringBuilder cacheKey = new StringBuilder();
+        for (byte digestByte : digest.digest()) {
+            cacheKey.append(String.format("%02x", digestByte));
+        }
+        return cacheKey.toString();
+    }
+
+    /**
+     * Selects how the levels of the transform are ordered. Must be set before transforming an image,
+     * and left unchanged until that image is recovered.
+     * @param decompositionMode The decomposition used by subsequent transforms and recovers
+     */
+    public void setDecompositionMode(DecompositionMode decompositionMode){
+        this.decompositionMode = decompositionMode;
+    }
+
+    public DecompositionMode getDecompositionMode(){
+        return decompositionMode;
+    }
+
+    /**
+     * Selects the wavelet used by the row and column passes. Must be set before transforming an image,
+     * and left unchanged until that image is recovered.
+     * @param waveletFamily The wavelet family used by subsequent transforms and recovers
+     */
+    public void setWaveletFamily(WaveletFamily waveletFamily){
+        this.waveletFamily = waveletFamily;
+        liftingEngine = new LiftingEngine(waveletFamily.createFilter());
+    }
+
+    public WaveletFamily getWaveletFamily(){
+        return waveletFamily;
+    }
+
+    /**
+     * Enables recovering Haar transformed images block by block, skipping the detail coefficients
+     * of every block that holds nothing but zeros, as is mostly the case after thresholding.
+     * Recovers of the other wavelet families are unaffected.
+     * @param sparseRecoverEnabled Whether subsequent recovers skip empty detail blocks
+     */
+    public void setSparseRecoverEnabled(boolean sparseRecoverEnabled){
+        this.sparseRecoverEnabled = sparseRecoverEnabled;
+    }
+
+    public boolean isSparseRecoverEnabled(){
+        return sparseRecoverEnabled;
+    }
+
+    /**
+     * Selects the color transform applied to the bands of subsequently loaded images. Images that
+     * are not RGB are loaded without a color transform.
+     * @param colorTransform The color transform used by subsequent loads
+     */
+    public void setColorTransform(ColorTransform colorTransform){
+        this.colorTransform = colorTransform;
+    }
+
+    public ColorTransform getColorTransform(){
+        return colorTransform;
+    }
+
+    /**
+     * Limits the number of levels, in each direction, the chroma bands of a YCoCg-R transformed
+     * image take part in, the luma band and any alpha band still taking part in every level.
+     * Must be set before transforming an image, and left unchanged until that image is recovered.
+     * @param chromaLevels The number of levels of the chroma bands, Integer.MAX_VALUE for all of them
+     */
+    public void setChromaLevels(int chromaLevels){
+        if (chromaLevels < 0) {
+            throw new IllegalArgumentException("chromaLevels cannot be negative: " + chromaLevels);
+        }
+        this.chromaLevels = chromaLevels;
+    }
+
+    public int getChromaLevels(){
+        return chromaLevels;
+    }
+
+    /**
+     * @return Whether the loaded image has been YCoCg-R transformed
+     */
+    boolean isColorTransformApplied(){
+        return colorTransformApplied;
+    }
+
+    /**
+     * @return Whether the band holds chroma coefficients of the loaded image
+     */
+    boolean isChromaBand(int bandIndex){
+        return colorTransformApplied && ColorTransform.isChromaBand(bandIndex);
+    }
+
+    /**
+     * @return Whether the coefficients of the band in the subband are details produced by the
+     * subband's level. Chroma bands only belong to the subbands of the levels they took part in,
+     * which in the standard decomposition is judged by the deeper of the two directions.
+     */
+    boolean isBandInSubband(int bandIndex, Subband subband){
+        return !isChromaBand(bandIndex) || subband.getLevel() <= chromaLevels;
+    }
+
+    /**
+     * @return The bands taking part in the passes of the given level, counted from 0, or null for every band
+     */
+    private boolean[] bandsInPass(int level){
+        if (!colorTransformApplied || level < chromaLevels) {
+            return null;
+        }
+        boolean[] bandsInPass = new boolean[numOfBands];
+        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+            bandsInPass[bandIndex] = !ColorTransform.isChromaBand(bandIndex);
+        }
+        return bandsInPass;
+    }
+
+    /**
+     * Lists the subbands of the coefficient array once every level of the current image has been
+     * transformed, in the decomposition mode currently selected. The averaged sub-image comes last.
+     * @return The detail subbands from the first level to the last, followed by the averaged sub-image
+     */
+    public List<Subband> getSubbands(){
+        List<Subband> subbands = new ArrayList<>();
+        if (decompositionMode == DecompositionMode.STANDARD) {
+            addStandardSubbands(subbands);
+            return subbands;
+        }
+        int subImageColumns = numOfColumns;
+        int subImageRows = numOfRows;
+
+        for (int level = 0; level < numRowTransformsNeeded || level < numColumnTransformsNeeded; level++) {
+            int averagedColumns = (level < numRowTransformsNeeded) ? subImageColumns / 2 : subImageColumns;
+            int averagedRows = (level < numColumnTransformsNeeded) ? subImageRows / 2 : subImageRows;
+            int detailColumns = subImageColumns - averagedColumns;
+            int detailRows = subImageRows - averagedRows;
+            int levelName = level + 1;
+
+            addSubband(subbands, "HL" + levelName, levelName, averagedColumns, 0, detailColumns, averagedRows);
+            addSubband(subbands, "LH" + levelName, levelName, 0, averagedRows, averagedColumns, detailRows);
+            addSubband(subbands, "HH" + levelName, levelName, averagedColumns, averagedRows, detailColumns, detailRows);
+            subImageColumns = averagedColumns;
+            subImageRows = averagedRows;
+        }
+        subbands.add(new Subband("LL", Math.max(numRowTransformsNeeded, numColumnTransformsNeeded),
+                0, 0, subImageColumns, subImageRows, true));
+        return subbands;
+    }
+
+    /**
+     * In the standard decomposition every column interval left by the row transforms is split by
+     * every row interval left by the column transforms. Subbands are named after the interval of
+     * each direction, L for the averaged interval and Hn for the details of transform n.
+     */
+    private void addStandardSubbands(List<Subband> subbands){
+        int[] columnBoundaries = subImageBoundaries(numOfColumns, numRowTransformsNeeded);
+        int[] rowBoundaries = subImageBoundaries(numOfRows, numColumnTransformsNeeded);
+
+        for (int rowInterval = numColumnTransformsNeeded; rowInterval >= 0; rowInterval--) {
+            for (int columnInterval = numRowTransformsNeeded; columnInterval >= 0; columnInterval--) {
+                boolean averagedColumns = columnInterval == numRowTransformsNeeded;
+                boolean averagedRows = rowInterval == numColumnTransformsNeeded;
+                if (averagedColumns && averagedRows) {
+                    continue;
+                }
+                String name = (averagedColumns ? "L" : "H" + (columnInterval + 1))
+                            + (averagedRows ? "L" : "H" + (rowInterval + 1));
+                int level = Math.max(averagedColumns ? 0 : columnInterval + 1, averagedRows ? 0 : rowInterval + 1);
+                addSubband(subbands, name, level, columnBoundaries[columnInterval + 1], rowBoundaries[rowInterval + 1],
+                        columnBoundaries[columnInterval] - columnBoundaries[columnInterval + 1],
+                        rowBoundaries[rowInterval] - rowBoundaries[rowInterval + 1]);
+            }
+        }
+        subbands.add(new Subband("LL", Math.max(numRowTransformsNeeded, numColumnTransformsNeeded), 0, 0,
+                columnBoundaries[numRowTransformsNeeded], rowBoundaries[numColumnTransformsNeeded], true));
+    }
+
+    /**
+     * @return The size of the averaged part after each number of transforms, followed by a trailing 0,
+     * so that boundaries[level + 1] to boundaries[level] holds the details produced by transform level
+     */
+    private int[] subImageBoundaries(int size, int transformsNeeded){
+        int[] boundaries = new int[transformsNeeded + 2];
+        boundaries[0] = size;
+        for (int transformsDone = 1; transformsDone <= transformsNeeded; transformsDone++) {
+            boundaries[transformsDone] = size / (int)Math.pow(2, transformsDone);
+        }
+        boundaries[transformsNeeded + 1] = 0;
+        return boundaries;
+    }
+
+    private void addSubband(List<Subband> subbands, String name, int level, int startColumn, int startRow,
+                            int subbandColumns, int subbandRows){
+        if (subbandColumns > 0 && subbandRows > 0) {
+            subbands.add(new Subband(name, level, startColumn, startRow, subbandColumns, subbandRows, false));
+        }
+    }
+
+    /**
+     * Hands out the coefficient array itself. As the caller may change it, the next reset copies
+     * the image in again instead of undoing the passes applied to it.
+     */
+    double[][][] getImagePixelArray(){
+        checkCoefficientsUsable();
+        passRollback.invalidate();
+        return imagePixelArray;
+    }
+
+    ColorModel getColorModel(){
+        return colorModel;
+    }
+
+    /**
+     * @return An empty raster laid out like the loaded image, of the given size
+     */
+    WritableRaster createCompatibleRaster(int columns, int rows){
+        return Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(columns, rows), null);
     }
 
     public BufferedImage generateImage(){
-        WritableRaster outputRaster = copy3DArrayToRaster(imagePixelArray);
-        BufferedImage image = new BufferedImage(colorModel, outputRaster, false, null);
+        checkCoefficientsUsable();
+        return renderStageImage(roundSamples(imagePixelArray));
+    }
+
+    /**
+     * Renders the coefficients as they are now without passing them through the image format of
+     * the loaded image, for callers encoding the image themselves
+     */
+    BufferedImage generateUnencodedImage(){
+        checkCoefficientsUsable();
+        return new BufferedImage(colorModel, copy3DArrayToRaster(imagePixelArray), false, null);
+    }
+
+    public BufferedImage generatePixelExpansionImage(int rowTransformsDone, int columnTransformsDone){
+        checkCoefficientsUsable();
+        return renderPixelExpansionImage(roundSamples(imagePixelArray), rowTransformsDone, columnTransformsDone);
+    }
+
+    /**
+     * Renders the samples of a stage, as laid out by roundSamples
+     */
+    BufferedImage renderStageImage(int[] stageSamples){
+        StageRenderEvent event = new StageRenderEvent();
+        event.begin();
+        BufferedImage image = reencodeImage(copySamplesToRaster(stageSamples));
+        commitRenderEvent(event, "Stage", -1, -1);
+        return image;
+    }
+
+    /**
+     * Renders the averaged sub-image of a stage, as laid out by roundSamples, expanded to the size of the image
+     */
+    BufferedImage renderPixelExpansionImage(int[] stageSamples, int rowTransformsDone, int columnTransformsDone){
+        StageRenderEvent event = new StageRenderEvent();
+        event.begin();
+        int[] expandedSamples = calculatePixelExpansion(stageSamples, rowTransformsDone, columnTransformsDone);
+        BufferedImage image = reencodeImage(copySamplesToRaster(expandedSamples));
+        commitRenderEvent(event, "Pixel Expansion", rowTransformsDone, columnTransformsDone);
+        return image;
+    }
+
+    /**
+     * Renders only a region of a stage, as laid out by roundSamples, keeping every subsampling-th
+     * column and row of the region the way ImageRegionSource subsamples. With rowTransformsDone or
+     * columnTransformsDone above zero the region is taken from the pixel expansion of the stage
+     * instead, without expanding the rest of the image.
+     *
+     * <p>The region is shown as its samples are, without passing through the image format of the
+     * loaded image, so it only matches the full rendering exactly for lossless formats.
+     */
+    BufferedImage renderStageRegion(int[] stageSamples, Rectangle region, int subsampling, int rowTransformsDone,
+                                    int columnTransformsDone){
+        int columnScalingFactor = 1 << rowTransformsDone;
+        int rowScalingFactor = 1 << columnTransformsDone;
+        int numOfSubImageColumns = numOfColumns / columnScalingFactor;
+        int numOfSubImageRows = numOfRows / rowScalingFactor;
+        int numOfRegionColumns = (region.width + subsampling - 1) / subsampling;
+        int numOfRegionRows = (region.height + subsampling - 1) / subsampling;
+        WritableRaster regionRaster = createCompatibleRaster(numOfRegionColumns, numOfRegionRows);
+        int[] rowSamples = new int[numOfRegionColumns * numOfBands];
+
+        for (int regionRow = 0; regionRow < numOfRegionRows; regionRow++) {
+            int subImageRow = (region.y + (regionRow * subsampling)) / rowScalingFactor;
+            for (int regionColumn = 0; regionColumn < numOfRegionColumns; regionColumn++) {
+                int subImageColumn = (region.x + (regionColumn * subsampling)) / columnScalingFactor;
+                int sampleOffset = regionColumn * numOfBands;
+                //Pixels past the expanded sub-image stay zero, as they do in calculatePixelExpansion
+                if (subImageColumn < numOfSubImageColumns && subImageRow < numOfSubImageRows) {
+                    System.arraycopy(stageSamples, ((subImageRow * numOfColumns) + subImageColumn) * numOfBands,
+                            rowSamples, sampleOffset, numOfBands);
+                } else {
+                    Arrays.fill(rowSamples, sampleOffset, sampleOffset + numOfBands, 0);
+                }
+                if (colorTransformApplied) {
+                    ColorTransform.inverseYCoCgR(rowSamples, sampleOffset);
+                }
+            }
+            regionRaster.setPixels(0, regionRow, numOfRegionColumns, 1, rowSamples);
+        }
+        return new BufferedImage(colorModel, regionRaster, false, null);
+    }
 
+    /**
+     * Passes a rendered raster through the image format of the loaded image. The image is encoded
+     * into memory rather than a file, so stages can be rendered on any number of threads at once.
+     */
+    private BufferedImage reencodeImage(WritableRaster outputRaster){
+        BufferedImage image = new BufferedImage(colorModel, outputRaster, false, null);
         try{
-            ImageIO.write(image, fileExt, new File("Temp."+ fileExt));
-            image = (ImageIO.read(new File("Temp."+ fileExt)));
-            Files.deleteIfExists(new File("Temp." + fileExt).toPath());
+            ByteArrayOutputStream encodedImage = new ByteArrayOutputStream();
+            //Formats without a writer leave the image as rendered
+            if (ImageIO.write(image, fileExt, encodedImage)) {
+                BufferedImage decodedImage = ImageIO.read(new ByteArrayInputStream(encodedImage.toByteArray()));
+                if (decodedImage != null) {
+                    image = decodedImage;
+                }
+            }
         } catch (IOException ex) {
             Logger.getLogger(HaarTransform.class.getName()).log(Level.SEVERE, null, ex);
         }
         return image;
     }
 
+    /**
+     * Rounds the coefficients to the samples shown for them, laid out row by row with the bands of
+     * a pixel next to each other, the way a raster takes them
+     */
+    int[] roundSamples(double[][][] coefficients){
+        int[] samples = new int[numOfColumns * numOfRows * numOfBands];
+        for (int columnCount = 0; columnCount < numOfColumns; columnCount++) {
+            for (int rowCount = 0; rowCount < numOfRows; rowCount++) {
+                double[] pixelBands = coefficients[columnCount][rowCount];
+                int sampleOffset = ((rowCount * numOfColumns) + columnCount) * numOfBands;
+                for (int bandCount = 0; bandCount < numOfBands; bandCount++) {
+                    samples[sampleOffset + bandCount] = (int)Math.round(pixelBands[bandCount]);
+                }
+            }
+        }
+        return samples;
+    }
+
     private WritableRaster copy3DArrayToRaster( double[][][] sourceArray){
-        int columns = sourceArray.length;
-        int rows = sourceArray[0].length;
-        int bands = sourceArray[0][0].length;
-        WritableRaster tempRaster = originalRaster.createCompatibleWritableRaster();
+        return copySamplesToRaster(roundSamples(sourceArray));
+    }
 
-        for(int bandCount = 0; bandCount < bands; bandCount++) {
-            for (int columnCount = 0; columnCount < columns; columnCount++) {
-                for ( int rowCount = 0; rowCount < rows; rowCount++){
-                     tempRaster.setSample(columnCount, rowCount, bandCount,
-                             sourceArray[columnCount][rowCount][bandCount]);
+    /**
+     * Copies rounded samples into a raster a row at a time, undoing YCoCg-R on each pixel as it is
+     * copied when it was applied
+     */
+    private WritableRaster copySamplesToRaster(int[] samples){
+        int rowLength = numOfColumns * numOfBands;
+        WritableRaster tempRaster = createCompatibleRaster(numOfColumns, numOfRows);
+        int[] rowSamples = new int[rowLength];
+
+        for (int rowCount = 0; rowCount < numOfRows; rowCount++) {
+            System.arraycopy(samples, rowCount * rowLength, rowSamples, 0, rowLength);
+            if (colorTransformApplied) {
+                for (int sampleOffset = 0; sampleOffset < rowLength; sampleOffset += numOfBands) {
+                    ColorTransform.inverseYCoCgR(rowSamples, sampleOffset);
                 }
             }
+            tempRaster.setPixels(0, rowCount, numOfColumns, 1, rowSamples);
         }
         return tempRaster;
     }
 
-    public BufferedImage generatePixelExpansionImage(int rowTransformsDone, int columnTransformsDone){
-        double[][][] result3DArray = calculatePixelExpansion(rowTransformsDone, columnTransformsDone);
-        WritableRaster outputRaster = copy3DArrayToRaster(result3DArray);
-        BufferedImage image = new BufferedImage(colorModel, outputRaster, false, null);
-        try{
-            ImageIO.write(image, fileExt, new File("Temp." + fileExt));
-            image = ImageIO.read(new File("Temp." + fileExt));
-            Files.deleteIfExists(new File("Temp." + fileExt).toPath());
-        } catch (IOException ex) {
-            Logger.getLogger(HaarTransform.class.getName()).log(Level.SEVERE, null, ex);
+    private void commitRenderEvent(StageRenderEvent event, String imageKind, int rowTransformsDone,
+                                   int columnTransformsDone){
+        event.end();
+        if (event.shouldCommit()) {
+            event.imageKind = imageKind;
+            event.rowTransformsDone = rowTransformsDone;
+            event.columnTransformsDone = columnTransformsDone;
+            event.columns = numOfColumns;
+            event.rows = numOfRows;
+            event.bands = numOfBands;
+            event.bytesTouched = bytesInSubImage(numOfColumns, numOfRows);
+            event.commit();
         }
-        return image;
     }
 
-    private double[][][] calculatePixelExpansion(int rowTransformsDone, int columnTransformsDone){
+    private int[] calculatePixelExpansion(int[] stageSamples, int rowTransformsDone, int columnTransformsDone){
         int columnScalingFactor = (int)Math.pow(2,rowTransformsDone);
         int rowScalingFactor = (int)Math.pow(2,columnTransformsDone);
         int numOfSubImageRows = numOfRows /rowScalingFactor;
         int numOfSubImageColumns = numOfColumns /columnScalingFactor;
-        double[][][] result3DArray = new double[numOfColumns][numOfRows][numOfBands];
-
-        for(int bandIndex = 0; bandIndex < numOfBands; bandIndex++){
-            for(int currSubImageColumn = numOfSubImageColumns-ZERO_INDEX_OFFSET; currSubImageColumn >= 0; currSubImageColumn--){
-                for(int currSubImageRow = numOfSubImageRows-ZERO_INDEX_OFFSET; currSubImageRow >= 0; currSubImageRow--){
-                    for(int currColumnOffset = 0; currColumnOffset < columnScalingFactor; currColumnOffset++){
-                        for (int currRowOffset = 0; currRowOffset < rowScalingFactor; currRowOffset++){
-                            result3DArray[(currSubImageColumn * columnScalingFactor) + currColumnOffset]
-                                    [(currSubImageRow * rowScalingFactor) + currRowOffset][bandIndex] =
-                                    imagePixelArray[currSubImageColumn][currSubImageRow][bandIndex];
-                        }
+        int[] expandedSamples = new int[stageSamples.length];
+
+        //Every band of a sub-image pixel is replicated together
+        for(int currSubImageColumn = numOfSubImageColumns-ZERO_INDEX_OFFSET; currSubImageColumn >= 0; currSubImageColumn--){
+            for(int currSubImageRow = numOfSubImageRows-ZERO_INDEX_OFFSET; currSubImageRow >= 0; currSubImageRow--){
+                int sourceOffset = ((currSubImageRow * numOfColumns) + currSubImageColumn) * numOfBands;
+                for(int currColumnOffset = 0; currColumnOffset < columnScalingFactor; currColumnOffset++){
+                    for (int currRowOffset = 0; currRowOffset < rowScalingFactor; currRowOffset++){
+                        int expandedColumn = (currSubImageColumn * columnScalingFactor) + currColumnOffset;
+                        int expandedRow = (currSubImageRow * rowScalingFactor) + currRowOffset;
+                        System.arraycopy(stageSamples, sourceOffset, expandedSamples,
+                                ((expandedRow * numOfColumns) + expandedColumn) * numOfBands, numOfBands);
                     }
                 }
             }
         }
-        return result3DArray;
+        return expandedSamples;
     }
 
+    /**
+     * Writes the files for every image of generateTransformImages or generateRecoverImages, encoding
+     * them on the I/O threads of a StageFileWriter
+     */
     protected void createImageFilesForAllStages(ArrayList<BufferedImage> images, String processThatCreatedImage){
-        File stageFile, expansionFile;
-        int numOfImageInSequence = 0;
-
-        for(BufferedImage image: images) {
-            if (isStandardImage(image, images)) {
-                stageFile = new File(processThatCreatedImage + "_" + numOfImageInSequence + "." + fileExt);
-                generateImageFile(stageFile, image);
+        StageFilesEvent event = new StageFilesEvent();
+        event.begin();
+        try (StageFileWriter stageFileWriter = createStageFileWriter()) {
+            //Images are stored in the ArrayList first Standard, then Expansion, stage after stage
+            for (int imageIndex = 0; imageIndex < images.size(); imageIndex++) {
+                File imageFile = stageFileWriter.getStageFile(processThatCreatedImage, imageIndex / 2, imageIndex % 2 != 0);
+                if (!stageFileWriter.write(imageFile, images.get(imageIndex))) {
+                    break;
+                }
             }
-            else {
-                expansionFile = new File(processThatCreatedImage + "PE_" + numOfImageInSequence + "." + fileExt);
-                generateImageFile(expansionFile, image);
-                numOfImageInSequence++;
+            awaitStageFiles(stageFileWriter, processThatCreatedImage, event);
+        }
+    }
+
+    /**
+     * Writes the files for every stage of a history like createImageFilesForAllStages, rendering
+     * a single stage at a time while the files of the stages before it are being written
+     */
+    protected void createImageFilesForAllStages(StageHistory history, String processThatCreatedImage){
+        StageFilesEvent event = new StageFilesEvent();
+        event.begin();
+        try (StageFileWriter stageFileWriter = createStageFileWriter()) {
+            for (int stageIndex = 0; stageIndex < history.getNumOfStages(); stageIndex++) {
+                if (!stageFileWriter.writeStage(history, stageIndex, processThatCreatedImage)) {
+                    break;
+                }
             }
+            awaitStageFiles(stageFileWriter, processThatCreatedImage, event);
+        }
+    }
+
+    /**
+     * @return A writer of stage files in the format of the loaded image, at its default compression
+     */
+    public StageFileWriter createStageFileWriter(){
+        return new StageFileWriter(fileExt);
+    }
+
+    /**
+     * Writes the coefficients as they are now as a PFM file, keeping the sign and precision that
+     * rendered stages lose. Coefficients of a YCoCg-R image are written as Y, Co and Cg.
+     * @throws TransformException When the file could not be written, or the image has a number of
+     * bands PFM cannot hold, such as gray with alpha or RGBA
+     */
+    public void writeCoefficientFile(File file) throws TransformException {
+        if (!canWriteCoefficientFile()) {
+            throw new TransformException("writeCoefficientFile: PFM holds 1 or 3 bands, not the " + numOfBands
+                    + " of the image\n");
+        }
+        try {
+            NetpbmWriter.writePfm(file, imagePixelArray);
+        } catch (IOException ex) {
+            throw new TransformException("writeCoefficientFile: Could not write\n" + file.getPath() + "\n" + ex.getMessage());
+        }
+    }
 
+    /**
+     * Creates a listener writing the coefficients of every stage of a history being generated by
+     * this transformer to a PFM file, named like the stage files. The file is written on the thread
+     * performing the passes, before the next pass changes the coefficients.
+     * <p>Must be created once the image is loaded, which must have 1 or 3 bands. A file that could
+     * not be written is logged without stopping the passes.
+     */
+    public StageListener createCoefficientFileListener(String processThatCreatedImage){
+        if (!canWriteCoefficientFile()) {
+            throw new IllegalArgumentException("The loaded image must have 1 or 3 bands for PFM files, not: " + numOfBands);
         }
+        return (history, stageIndex) -> {
+            try {
+                writeCoefficientFile(new File(processThatCreatedImage + "_" + stageIndex + ".pfm"));
+            } catch (TransformException ex) {
+                Logger.getLogger(HaarTransform.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        };
     }
 
-    private boolean isStandardImage( BufferedImage image, ArrayList<BufferedImage> images){
-        //Images are stored in the ArrayList first Standard, then Expansion starting at index 0
-        return images.indexOf(image)%2 == 0;
+    private boolean canWriteCoefficientFile(){
+        return numOfBands == 1 || numOfBands == 3;
+    }
+
+    /**
+     * Waits for the stage files queued on a writer, such as by a listener writing the stages of a
+     * history as it is generated, logging the files that could not be written
+     */
+    protected void awaitStageFiles(StageFileWriter stageFileWriter, String processThatCreatedImage){
+        StageFilesEvent event = new StageFilesEvent();
+        event.begin();
+        awaitStageFiles(stageFileWriter, processThatCreatedImage, event);
+    }
+
+    private void awaitStageFiles(StageFileWriter stageFileWriter, String processThatCreatedImage, StageFilesEvent event){
+        int filesWritten = 0;
+        try {
+            filesWritten = stageFileWriter.awaitWrites();
+        } catch (TransformException ex) {
+            Logger.getLogger(HaarTransform.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.process = processThatCreatedImage;
+            event.fileExt = stageFileWriter.getFormatName();
+            event.filesWritten = filesWritten;
+            event.commit();
+        }
     }
 
     protected void generateImageFile(File file, BufferedImage image) {
@@ -274,116 +1027,86 @@ public class HaarTransform {
         }
     }
 
+    /**
+     * Performs the Haar transform on the rows of the current sub-image for the given level.
+     * In the non-standard decomposition only the rows of the shrinking averaged sub-image take part,
+     * while the standard decomposition transforms the leading columns of every row of the image.
+     * @param transformsDone The number of row transforms done before this one
+     */
     public void performRowTransform(int transformsDone){
-        double[][][] result3DArray = new double[numOfColumns][numOfRows][numOfBands];
-        int subImageMaxRow = numOfRows / (int)Math.pow(2, transformsDone);
+        TransformPassEvent event = new TransformPassEvent();
+        event.begin();
+        int subImageMaxRow = (decompositionMode == DecompositionMode.STANDARD) ? numOfRows
+                                                                              : numOfRows / (int)Math.pow(2, transformsDone);
         subImageMaxRow = (subImageMaxRow > 0) ? subImageMaxRow : 1;
         int subImageMaxColumn = numOfColumns / (int)Math.pow(2, transformsDone);
         subImageMaxColumn = (subImageMaxColumn > 0 ) ? subImageMaxColumn: 1;
 
-        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++){
-            for (int currRow = 0; currRow < numOfRows; currRow++){
-                for (int currColumn =0, resultColumn =0; currColumn < numOfColumns; currColumn++, resultColumn++) {
-                    if (currColumn != subImageMaxColumn - ZERO_INDEX_OFFSET) {
-                        performPixelRowTransformation(result3DArray, subImageMaxColumn, subImageMaxRow,
-                                currRow, currColumn, bandIndex, resultColumn);
-                        currColumn++;
-                    } else {
-                        performSpecialPixelRowTransformation(result3DArray, currRow, currColumn, bandIndex);
-                    }
-                }
-            }
-        }
-        imagePixelArray = result3DArray;
-    }
-
-    private void performPixelRowTransformation(double[][][] result3DArray, int subImageMaxColumn,
-                                   int subImageMaxRow, int currRow, int currColumn, int bandIndex, int resultColumn){
-        double averagedResult, differenceResult;
-        if (rowPixelNeedsTransformed(currRow, subImageMaxRow, currColumn, subImageMaxColumn)){
-            averagedResult = (imagePixelArray[currColumn][currRow][bandIndex]
-                    + imagePixelArray[currColumn+1][currRow][bandIndex]) / 2.0;
-            differenceResult = imagePixelArray[currColumn][currRow][bandIndex] - averagedResult;
-            result3DArray[resultColumn][currRow][bandIndex] = averagedResult;
-            result3DArray[(subImageMaxColumn/2)+ resultColumn][currRow][bandIndex] = differenceResult;
-        }
-        else{
-            result3DArray[currColumn][currRow][bandIndex] = imagePixelArray[currColumn][currRow][bandIndex];
-            if (currColumn+1 < numOfColumns) {
-                result3DArray[currColumn+1][currRow][bandIndex] = imagePixelArray[currColumn+1][currRow][bandIndex];
-            }
-        }
-    }
-
-    private boolean rowPixelNeedsTransformed(int currRow, int subImageMaxRow, int currColumn, int subImageMaxColumn){
-        return currColumn < subImageMaxColumn && currRow < subImageMaxRow;
-    }
-
-    private void performSpecialPixelRowTransformation(double[][][] result3DArray, int currRow, int currColumn,
-                                                      int bandIndex){
-        double averagedResult, differenceResult;
-
-        averagedResult = (imagePixelArray[currColumn][currRow][bandIndex] +
-                          imagePixelArray[currColumn-1][currRow][bandIndex])/2;
-        differenceResult = imagePixelArray[currColumn][currRow][bandIndex] - averagedResult;
-        //Skips adding the avg pixel value, making the next generateTransformImages on an even size vector
-        result3DArray[currColumn][currRow][bandIndex]= differenceResult;
+        boolean[] bandsInPass = bandsInPass(transformsDone);
+        recordPassRegion(subImageMaxColumn, subImageMaxRow);
+        liftingEngine.transformRows(imagePixelArray, subImageMaxColumn, subImageMaxRow, false, null, bandsInPass);
+        passRollback.record(liftingEngine, waveletFamily.isIntegerReversible(), true, subImageMaxColumn, subImageMaxRow,
+                false, bandsInPass);
+        commitPassEvent(event, "Row Transform", transformsDone, subImageMaxColumn, subImageMaxRow);
     }
 
+    /**
+     * Performs the Haar transform on the columns of the current sub-image for the given level.
+     * In the non-standard decomposition only the columns of the shrinking sub-image take part,
+     * while the standard decomposition transforms the leading rows of every column of the image.
+     * @param transformsDone The number of column transforms done before this one
+     */
     public void performColumnTransform(int transformsDone) {
-        double[][][] result3DArray = new double[numOfColumns][numOfRows][numOfBands];
+        TransformPassEvent event = new TransformPassEvent();
+        event.begin();
         int subImageMaxRow = numOfRows / (int) Math.pow(2, transformsDone);
         subImageMaxRow = (subImageMaxRow > 0) ? subImageMaxRow : 1;
-        int subImageMaxColumn = numOfColumns / (int) Math.pow(2, transformsDone);
+        int subImageMaxColumn = (decompositionMode == DecompositionMode.STANDARD) ? numOfColumns
+                                                                                 : numOfColumns / (int) Math.pow(2, transformsDone);
         subImageMaxColumn = (subImageMaxColumn > 0) ? subImageMaxColumn : 1;
 
-        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
-            for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
-                for (int currRow = 0, resultRow = 0; currRow < numOfRows; currRow++, resultRow++) {
-                    if (currRow != subImageMaxRow - ZERO_INDEX_OFFSET) {
-                        performPixelColumnTransformation(result3DArray, subImageMaxColumn, subImageMaxRow,
-                                currRow, currColumn, bandIndex, resultRow);
-                        currRow++;
-                    } else {
-                        performSpecialPixelColumnTransformation(result3DArray, currRow, currColumn, bandIndex);
-                    }
-                }
-            }
-        }
-        imagePixelArray = result3DArray;
+        boolean[] bandsInPass = bandsInPass(transformsDone);
+        recordPassRegion(subImageMaxColumn, subImageMaxRow);
+        liftingEngine.transformColumns(imagePixelArray, subImageMaxColumn, subImageMaxRow, false, null, bandsInPass);
+        passRollback.record(liftingEngine, waveletFamily.isIntegerReversible(), false, subImageMaxColumn, subImageMaxRow,
+                false, bandsInPass);
+        commitPassEvent(event, "Column Transform", transformsDone, subImageMaxColumn, subImageMaxRow);
     }
 
-    private void performPixelColumnTransformation(double[][][] result3DArray, int subImageMaxColumn,
-                                 int subImageMaxRow, int currRow, int currColumn, int bandIndex, int resultRow) {
-        double averagedResult, differenceResult;
-        if (columnPixelNeedsTransformed(currRow, subImageMaxRow, currColumn, subImageMaxColumn)) {
-            averagedResult = (imagePixelArray[currColumn][currRow][bandIndex]
-                            + imagePixelArray[currColumn][currRow+1][bandIndex]) / 2.0;
-            differenceResult = imagePixelArray[currColumn][currRow][bandIndex] - averagedResult;
-
-            result3DArray[currColumn][resultRow][bandIndex] = averagedResult;
-            result3DArray[currColumn][(subImageMaxRow/2) + resultRow][bandIndex] = differenceResult;
-        } else {
-            result3DArray[currColumn][currRow][bandIndex] = imagePixelArray[currColumn][currRow][bandIndex];
-            if (currRow + 1 < numOfRows) {
-                result3DArray[currColumn][currRow+1][bandIndex] = imagePixelArray[currColumn][currRow+1][bandIndex];
-            }
+    /**
+     * Records the coefficients as they are now as the next stage of the history being generated,
+     * bringing the history up to date with them first when a listener may show the stage right away
+     */
+    private void recordStage(int rowTransformsDone, int columnTransformsDone){
+        stageHistory.addStage(rowTransformsDone, columnTransformsDone);
+        if (stageListener != null) {
+            stageHistory.finish(imagePixelArray);
+            stageListener.stageRecorded(stageHistory, stageHistory.getNumOfStages() - 1);
         }
     }
 
-    private void performSpecialPixelColumnTransformation(double[][][] result3DArray, int currRow, int currColumn,
-                                                         int bandIndex){
-        double averagedResult, differenceResult;
-
-        averagedResult = (imagePixelArray[currColumn][currRow][bandIndex]
-                        + imagePixelArray[currColumn][currRow-1][bandIndex])/2;
-        differenceResult = imagePixelArray[currColumn][currRow][bandIndex] - averagedResult;
-        //Skips adding the avg pixel value, making the next generateTransformImages on an even size vector
-        result3DArray[currColumn][currRow][bandIndex] = differenceResult;
+    /**
+     * Saves the region a pass is about to change when a stage history is being generated
+     */
+    private void recordPassRegion(int subImageMaxColumn, int subImageMaxRow){
+        if (stageHistory != null) {
+            stageHistory.beforePass(imagePixelArray, subImageMaxColumn, subImageMaxRow);
+        }
     }
 
-    private boolean columnPixelNeedsTransformed(int currRow, int subImageMaxRow, int currColumn, int subImageMaxColumn){
-        return currColumn < subImageMaxColumn && currRow < subImageMaxRow;
+    private void commitPassEvent(TransformPassEvent event, String pass, int level, int subImageColumns,
+                                 int subImageRows){
+        event.end();
+        if (event.shouldCommit()) {
+            event.pass = pass;
+            event.level = level;
+            event.subImageColumns = subImageColumns;
+            event.subImageRows = subImageRows;
+            event.bands = numOfBands;
+            //Each pass reads and writes back every coefficient of its sub-image
+            event.bytesTouched = 2 * bytesInSubImage(subImageColumns, subImageRows);
+            event.commit();
+        }
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -415,16 +1138,73 @@ public class HaarTransform {
 
     public ArrayList<BufferedImage> generateRecoverImages(boolean genFiles, SwingWorker worker, JProgressBar progressBar)
             throws TransformException{
-        ArrayList<BufferedImage> resultImages = new ArrayList<>();
+        ArrayList<BufferedImage> resultImages = generateRecoverHistory(worker, progressBar).renderAllStages();
+        if(genFiles) {
+            createImageFilesForAllStages(resultImages, "Recover");
+        }
+        return resultImages;
+    }
+
+    /**
+     * Recovers the image like generateRecoverImages, but keeps the stages in a StageHistory
+     * holding only the region each pass changed, instead of rendering two images for every stage
+     * @return The stages of the recover, rendered on demand
+     */
+    public StageHistory generateRecoverHistory(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException {
+        return generateRecoverHistory(worker, progressBar, null);
+    }
+
+    /**
+     * Creates a publisher of the stages of the recover, which performs the passes once its generate is called
+     * @param executor Delivers the stages to the subscribers, so they can work on a stage while the next is computed
+     * @param maxBufferCapacity The number of stages a subscriber may fall behind before the passes wait for it
+     */
+    public StagePublisher publishRecoverStages(Executor executor, int maxBufferCapacity){
+        return new StagePublisher(this, true, executor, maxBufferCapacity);
+    }
+
+    /**
+     * Generates the history of the recover, handing each stage to the listener as soon as it is recorded
+     * @param stageListener Notified of every stage on the thread performing the passes, or null
+     */
+    public StageHistory generateRecoverHistory(SwingWorker<?, ?> worker, JProgressBar progressBar, StageListener stageListener)
+            throws TransformException {
+        checkCoefficientsUsable();
+        this.stageListener = stageListener;
+        stageHistory = new StageHistory(createRenderer());
+        beginSparseRecover();
+        try {
+            if (decompositionMode == DecompositionMode.STANDARD) {
+                performStandardRecoverStages(worker, progressBar);
+            } else {
+                performNonStandardRecoverStages(worker, progressBar);
+            }
+            stageHistory.finish(imagePixelArray);
+            return stageHistory;
+        } finally {
+            occupancyMap = null;
+            stageHistory = null;
+            stageListener = null;
+        }
+    }
+
+    /**
+     * Builds the occupancy map of the coefficients when sparse recovers are enabled for a family
+     * that supports them. The recover passes keep it up to date until the recover is done.
+     */
+    private void beginSparseRecover(){
+        boolean sparseRecover = sparseRecoverEnabled && waveletFamily == WaveletFamily.HAAR;
+        occupancyMap = sparseRecover ? BlockOccupancyMap.build(imagePixelArray) : null;
+    }
+
+    private void performNonStandardRecoverStages(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException{
         int columnRecoversNeeded = numColumnTransformsNeeded;
         int rowRecoversNeeded = numRowTransformsNeeded;
-        int progressIncrementStep = (100/((numColumnTransformsNeeded+numRowTransformsNeeded)/2))/4;
+        int progressIncrementStep = (100/Math.max(1, (numColumnTransformsNeeded+numRowTransformsNeeded)/2))/4;
         int progress = 0;
 
-        resultImages.add(generateImage());
-        updateProgress(worker, progressBar, progress += (progressIncrementStep / 2));
-        resultImages.add(generatePixelExpansionImage(rowRecoversNeeded, columnRecoversNeeded));
-        updateProgress(worker, progressBar, progress+= (progressIncrementStep/2));
+        recordStage(rowRecoversNeeded, columnRecoversNeeded);
+        updateProgress(worker, progressBar, progress += progressIncrementStep);
 
         for  (boolean columnRecoverPerformed = false, rowRecoverPerformed = false;
               rowRecoversNeeded > 0 || columnRecoversNeeded > 0;
@@ -460,165 +1240,296 @@ public class HaarTransform {
                 rowRecoversNeeded--;
             }
 
-            resultImages.add(generateImage());
-            updateProgress(worker, progressBar, progress+= progressIncrementStep);
-            resultImages.add(generatePixelExpansionImage(rowRecoversNeeded, columnRecoversNeeded));
-            updateProgress(worker, progressBar, progress+= progressIncrementStep);
+            recordStage(rowRecoversNeeded, columnRecoversNeeded);
+            updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
         }
+    }
 
-        if(genFiles) {
-            createImageFilesForAllStages(resultImages, "Recover");
+    /**
+     * Recovers an image transformed with the standard decomposition, undoing every column transform
+     * before any of the row transforms. A stage is recorded after each single pass.
+     */
+    private void performStandardRecoverStages(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException{
+        int progressIncrementStep = 100 / ((3 * (numRowTransformsNeeded + numColumnTransformsNeeded)) + 2);
+        int progress = 0;
+
+        recordStage(numRowTransformsNeeded, numColumnTransformsNeeded);
+        updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
+
+        for (int columnRecoversNeeded = numColumnTransformsNeeded; columnRecoversNeeded > 0; ) {
+            performColumnRecover(columnRecoversNeeded, 0);
+            updateProgress(worker, progressBar, progress += progressIncrementStep);
+            columnRecoversNeeded--;
+
+            recordStage(numRowTransformsNeeded, columnRecoversNeeded);
+            updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
+        }
+
+        for (int rowRecoversNeeded = numRowTransformsNeeded; rowRecoversNeeded > 0; ) {
+            performRowRecover(rowRecoversNeeded, 0);
+            updateProgress(worker, progressBar, progress += progressIncrementStep);
+            rowRecoversNeeded--;
+
+            recordStage(rowRecoversNeeded, 0);
+            updateProgress(worker, progressBar, progress += 2 * progressIncrementStep);
         }
-        return resultImages;
     }
 
     /**
-     * Performs the Haar recovery functions on the designated rows of the section of the transformed image
-     * @param rowRecoversRemaining The number of recovery steps left to perform on the rows of the image
-     * @param columnRecoversRemaining The number of recovery steps left to perform on the columns of the image
-     //* @param even Flag indicating if the current length of the row segment to be
-     * transformed is even.
+     * Recovers the last image that has undergone an Haar Transform by this object without
+     * rendering any of the intermediate stages. All recover passes but the last are performed
+     * on the coefficient array as usual, while the last pass writes the recovered samples
+     * straight into the DataBuffer of the returned image.
+     * <p>As the last pass never reaches the coefficient array, the transformer cannot transform,
+     * recover or render its coefficients again until the image is reset or loaded again.
+     * @return The fully recovered image
      */
-    public void performRowRecover(int rowRecoversRemaining, int columnRecoversRemaining){
-        rowRecoversRemaining--;
-        columnRecoversRemaining--;
-        double[][][] result3DArray = new double[numOfColumns][numOfRows][numOfBands];
-        int subImageMaxRow = numOfRows / (int)Math.pow(2, columnRecoversRemaining);
-        subImageMaxRow = (subImageMaxRow > 0) ? subImageMaxRow: 1;
-        int subImageMaxColumn = numOfColumns / (int)Math.pow(2, rowRecoversRemaining);
-        subImageMaxColumn = (subImageMaxColumn > 0) ? subImageMaxColumn: 1;
+    public BufferedImage generateRecoveredImage() throws TransformException {
+        return generateRecoveredImage(null, null);
+    }
 
-        //perform row generateRecoverImages transformation
-        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++){
-            for (int currRow = 0; currRow < numOfRows; currRow++){
-                for (int currColumn = 0, resultColumn = 0; currColumn < numOfColumns; currColumn++, resultColumn++) {
-                    if (currColumn != subImageMaxColumn - ZERO_INDEX_OFFSET) {
-                        performPixelRowRecover(result3DArray, subImageMaxColumn, subImageMaxRow, currRow,
-                                currColumn, bandIndex, resultColumn);
-                        currColumn++;
-                    } else {
-                        performSpecialPixelRowRecover(result3DArray, currRow, currColumn, bandIndex);
-                    }
-                }
-            }
+    public BufferedImage generateRecoveredImage(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException {
+        checkCoefficientsUsable();
+        WritableRaster outputRaster;
+        beginSparseRecover();
+        try {
+            outputRaster = recoverAllLevels(worker, progressBar, true);
+        } finally {
+            occupancyMap = null;
+        }
+
+        if (outputRaster == null) {
+            //Single pixel images need no recover passes at all
+            outputRaster = copy3DArrayToRaster(imagePixelArray);
+        } else {
+            coefficientsConsumed = true;
         }
-        imagePixelArray = result3DArray;
+        return new BufferedImage(colorModel, outputRaster, false, null);
     }
 
-    private void performPixelRowRecover(double[][][] result3DArray, int subImageMaxColumn, int subImageMaxRow,
-                                                  int currRow, int currColumn, int bandIndex, int resultColumn) {
-        double firstPixelResult, secondPixelResult;
+    /**
+     * Recovers every level of the coefficient array in place without rendering any images.
+     * Used when the recovered coefficients are processed further, such as for frame groups
+     * undergoing a temporal recover.
+     */
+    public void performAllRecovers() {
+        checkCoefficientsUsable();
+        beginSparseRecover();
+        try {
+            recoverAllLevels(null, null, false);
+        } catch (TransformException ex) {
+            //Cannot happen, there is no worker to cancel the recover
+        } finally {
+            occupancyMap = null;
+        }
+    }
 
-        if (rowPixelNeedsRecovered(currRow, subImageMaxRow, currColumn, subImageMaxColumn)){
-            firstPixelResult = imagePixelArray[resultColumn][currRow][bandIndex]
-                             + imagePixelArray[(subImageMaxColumn/2)+ resultColumn][currRow][bandIndex];
-            secondPixelResult = imagePixelArray[resultColumn][currRow][bandIndex]
-                             - imagePixelArray[(subImageMaxColumn/2)+ resultColumn][currRow][bandIndex];
-            result3DArray[currColumn][currRow][bandIndex] = firstPixelResult;
-            result3DArray[currColumn+1][currRow][bandIndex] = secondPixelResult;
+    private void checkCoefficientsUsable(){
+        if (coefficientsConsumed) {
+            throw new IllegalStateException("HaarTransform: The last recover pass went into the image of "
+                    + "generateRecoveredImage, reset or load the image before using the coefficients again");
+        }
+    }
+
+    private WritableRaster recoverAllLevels(SwingWorker<?, ?> worker, JProgressBar progressBar, boolean streamLastPass)
+            throws TransformException {
+        int columnRecoversNeeded = numColumnTransformsNeeded;
+        int rowRecoversNeeded = numRowTransformsNeeded;
+        int progressIncrementStep = 100 / Math.max(1, columnRecoversNeeded + rowRecoversNeeded);
+        int progress = 0;
+        WritableRaster outputRaster = null;
+
+        if (decompositionMode == DecompositionMode.STANDARD) {
+            for (; columnRecoversNeeded > 0; columnRecoversNeeded--) {
+                if (streamLastPass && columnRecoversNeeded == 1 && rowRecoversNeeded == 0) {
+                    outputRaster = performFinalColumnRecover();
+                } else {
+                    performColumnRecover(columnRecoversNeeded, 0);
+                }
+                updateProgress(worker, progressBar, progress += progressIncrementStep);
+            }
+            for (; rowRecoversNeeded > 0; rowRecoversNeeded--) {
+                if (streamLastPass && rowRecoversNeeded == 1) {
+                    outputRaster = performFinalRowRecover();
+                } else {
+                    performRowRecover(rowRecoversNeeded, 0);
+                }
+                updateProgress(worker, progressBar, progress += progressIncrementStep);
+            }
+            return outputRaster;
         }
-        else{
-            result3DArray[currColumn][currRow][bandIndex] = imagePixelArray[currColumn][currRow][bandIndex];
-            if (currColumn+1 < numOfColumns) {
-                result3DArray[currColumn+1][currRow][bandIndex] = imagePixelArray[currColumn+1][currRow][bandIndex];
+
+        while (rowRecoversNeeded > 0 || columnRecoversNeeded > 0) {
+            boolean lastStep = streamLastPass && rowRecoversNeeded <= 1 && columnRecoversNeeded <= 1;
+            boolean columnRecoverDue = columnRecoversNeeded > 0 && columnRecoversNeeded >= rowRecoversNeeded;
+            boolean rowRecoverDue = rowRecoversNeeded > 0 && rowRecoversNeeded >= columnRecoversNeeded;
+
+            if (columnRecoverDue) {
+                int rowRecoversForColumn = (columnRecoversNeeded > rowRecoversNeeded) ? rowRecoversNeeded + 1
+                                                                                      : rowRecoversNeeded;
+                if (lastStep && !rowRecoverDue) {
+                    outputRaster = performFinalColumnRecover();
+                } else {
+                    performColumnRecover(columnRecoversNeeded, rowRecoversForColumn);
+                }
+                updateProgress(worker, progressBar, progress += progressIncrementStep);
+            }
+            if (rowRecoverDue) {
+                if (lastStep) {
+                    outputRaster = performFinalRowRecover();
+                } else {
+                    int columnRecoversForRow = (rowRecoversNeeded > columnRecoversNeeded) ? columnRecoversNeeded + 1
+                                                                                          : columnRecoversNeeded;
+                    performRowRecover(rowRecoversNeeded, columnRecoversForRow);
+                }
+                updateProgress(worker, progressBar, progress += progressIncrementStep);
+            }
+
+            if (columnRecoverDue) {
+                columnRecoversNeeded--;
+            }
+            if (rowRecoverDue) {
+                rowRecoversNeeded--;
             }
         }
+        return outputRaster;
     }
 
-    private void performSpecialPixelRowRecover(double[][][] temp3DArray, int currRow, int currColumn, int bandIndex){
-        double pixelResult;
+    /**
+     * Performs the last row recover pass, which always covers the whole image, writing the
+     * recovered samples directly into the data buffer of a new raster instead of the coefficient array.
+     * @return The raster holding the recovered image
+     */
+    private WritableRaster performFinalRowRecover(){
+        TransformPassEvent event = new TransformPassEvent();
+        event.begin();
+        WritableRaster outputRaster = createCompatibleRaster(numOfColumns, numOfRows);
+        liftingEngine.recoverRowsToRaster(imagePixelArray, outputRaster, occupancyMap, bandsInPass(0),
+                colorTransformApplied);
+        commitPassEvent(event, "Final Row Recover", 0, numOfColumns, numOfRows);
+        return outputRaster;
+    }
 
-        pixelResult = temp3DArray[currColumn-1][currRow][bandIndex]
-                    + (2 * imagePixelArray[currColumn][currRow][bandIndex]);
-        temp3DArray[currColumn][currRow][bandIndex] = pixelResult;
+    /**
+     * Performs the last column recover pass for images that are a single column wide, writing the
+     * recovered samples directly into the data buffer of a new raster instead of the coefficient array.
+     * @return The raster holding the recovered image
+     */
+    private WritableRaster performFinalColumnRecover(){
+        TransformPassEvent event = new TransformPassEvent();
+        event.begin();
+        WritableRaster outputRaster = createCompatibleRaster(numOfColumns, numOfRows);
+        liftingEngine.recoverColumnsToRaster(imagePixelArray, outputRaster, occupancyMap, bandsInPass(0),
+                colorTransformApplied);
+        commitPassEvent(event, "Final Column Recover", 0, numOfColumns, numOfRows);
+        return outputRaster;
     }
 
-    private boolean rowPixelNeedsRecovered(int currRow, int subImageMaxRow, int currColumn, int subImageMaxColumn){
-        return currColumn < subImageMaxColumn && currRow < subImageMaxRow;
+    /**
+     * Performs the Haar recovery functions on the designated rows of the section of the transformed image
+     * @param rowRecoversRemaining The number of recovery steps left to perform on the rows of the image
+     * @param columnRecoversRemaining The number of recovery steps left to perform on the columns of the image.
+     * Ignored by the standard decomposition, which recovers every column before any of the rows.
+     */
+    public void performRowRecover(int rowRecoversRemaining, int columnRecoversRemaining){
+        TransformPassEvent event = new TransformPassEvent();
+        event.begin();
+        rowRecoversRemaining--;
+        columnRecoversRemaining--;
+        int subImageMaxRow = (decompositionMode == DecompositionMode.STANDARD) ? numOfRows
+                                                                              : numOfRows / (int)Math.pow(2, columnRecoversRemaining);
+        subImageMaxRow = (subImageMaxRow > 0) ? subImageMaxRow: 1;
+        int subImageMaxColumn = numOfColumns / (int)Math.pow(2, rowRecoversRemaining);
+        subImageMaxColumn = (subImageMaxColumn > 0) ? subImageMaxColumn: 1;
+
+        boolean[] bandsInPass = bandsInPass(rowRecoversRemaining);
+        recordPassRegion(subImageMaxColumn, subImageMaxRow);
+        liftingEngine.transformRows(imagePixelArray, subImageMaxColumn, subImageMaxRow, true, occupancyMap, bandsInPass);
+        passRollback.record(liftingEngine, waveletFamily.isIntegerReversible(), true, subImageMaxColumn, subImageMaxRow,
+                true, bandsInPass);
+        commitPassEvent(event, "Row Recover", rowRecoversRemaining, subImageMaxColumn, subImageMaxRow);
     }
 
     /**
      * Performs the Haar recovery functions on the columns of the designated section of the transformed image
-     * @param rowRecoversRemaining The number of recovery steps left to perform on the rows of the image
      * @param columnRecoversRemaining The number of recovery steps left to perform on the columns of the image
-     //* @param even Flag indicating if the current length of the column segment to be
-     * transformed is even.
+     * @param rowRecoversRemaining The number of recovery steps left to perform on the rows of the image.
+     * Ignored by the standard decomposition, which recovers every column before any of the rows.
      */
     public void performColumnRecover(int columnRecoversRemaining, int rowRecoversRemaining) {
+        TransformPassEvent event = new TransformPassEvent();
+        event.begin();
         rowRecoversRemaining--;
         columnRecoversRemaining--;
-        double[][][] result3DArray = new double[numOfColumns][numOfRows][numOfBands];
         int subImageMaxRow = numOfRows / (int)Math.pow(2, columnRecoversRemaining);
         subImageMaxRow = (subImageMaxRow > 0) ? subImageMaxRow: 1;
-        int subImageMaxColumn = numOfColumns / (int)Math.pow(2, rowRecoversRemaining);
+        int subImageMaxColumn = (decompositionMode == DecompositionMode.STANDARD) ? numOfColumns
+                                                                                 : numOfColumns / (int)Math.pow(2, rowRecoversRemaining);
         subImageMaxColumn = (subImageMaxColumn > 0) ? subImageMaxColumn: 1;
 
-        //perform column generateTransformImages
-        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
-            for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
-                for (int currRow = 0, resultRow = 0; currRow < numOfRows; currRow++, resultRow++) {
-                    if (currRow != subImageMaxRow - ZERO_INDEX_OFFSET) {
-                        performPixelColumnRecover(result3DArray, subImageMaxColumn, subImageMaxRow,
-                                currRow, currColumn, bandIndex, resultRow);
-                        currRow++;
-                    } else {
-                        performSpecialPixelColumnRecover(result3DArray, currRow, currColumn, bandIndex);
-                    }
-                }
-            }
-        }
-        imagePixelArray = result3DArray;
+        boolean[] bandsInPass = bandsInPass(columnRecoversRemaining);
+        recordPassRegion(subImageMaxColumn, subImageMaxRow);
+        liftingEngine.transformColumns(imagePixelArray, subImageMaxColumn, subImageMaxRow, true, occupancyMap, bandsInPass);
+        passRollback.record(liftingEngine, waveletFamily.isIntegerReversible(), false, subImageMaxColumn, subImageMaxRow,
+                true, bandsInPass);
+        commitPassEvent(event, "Column Recover", columnRecoversRemaining, subImageMaxColumn, subImageMaxRow);
     }
 
-    private void performPixelColumnRecover(double[][][] result3DArray, int subImageMaxColumn, int subImageMaxRow,
-                                        int currRow, int currColumn, int bandIndex, int resultRow) {
-        double firstPixelResult, secondPixelResult;
-
-        if (columnPixelNeedsRecovered(currRow, subImageMaxRow, currColumn, subImageMaxColumn)){
-            firstPixelResult = imagePixelArray[currColumn][resultRow][bandIndex]
-                    + imagePixelArray[currColumn][(subImageMaxRow/2)+ resultRow][bandIndex];
-            secondPixelResult = imagePixelArray[currColumn][resultRow][bandIndex]
-                    - imagePixelArray[currColumn][(subImageMaxRow/2)+ resultRow][bandIndex];
-            result3DArray[currColumn][currRow][bandIndex] = firstPixelResult;
-            result3DArray[currColumn][currRow + 1][bandIndex] = secondPixelResult;
-        }
-        else{
-            result3DArray[currColumn][currRow][bandIndex] = imagePixelArray[currColumn][currRow][bandIndex];
-            if (currRow+1 < numOfRows) {
-                result3DArray[currColumn][currRow+1][bandIndex] = imagePixelArray[currColumn][currRow+1][bandIndex];
-            }
+    /**
+     * Restores the coefficient array to the pixels of the loaded image. Passes of the integer
+     * reversible wavelets are undone in place, which needs no copy of the image. Otherwise the
+     * image is copied in again, decoding the region source again when it was loaded from one.
+     */
+    public void resetImage() throws TransformException {
+        //The passes recorded lead back to the image whether or not the last recover was streamed
+        coefficientsConsumed = false;
+        if (passRollback.rollBack(imagePixelArray)) {
+            return;
         }
+        imagePixelArray = (regionSource != null) ? copySourceTo3DArray() : copyRasterTo3DArray(sourceRaster);
+        passRollback.clear();
     }
 
-    private void performSpecialPixelColumnRecover(double [][][] result3DArray, int currRow, int currColumn,
-                                                  int bandIndex){
-        double pixelResult;
-
-        pixelResult = result3DArray[currColumn][currRow-1][bandIndex]
-                + (2 * imagePixelArray[currColumn][currRow][bandIndex]);
-        result3DArray[currColumn][currRow][bandIndex] = pixelResult;
-    }
-
-    private boolean columnPixelNeedsRecovered(int currRow, int subImageMaxRow, int currColumn, int subImageMaxColumn){
-        return currColumn < subImageMaxColumn && currRow < subImageMaxRow;
-
-    }
-
-    public void resetImage(){
-        imagePixelArray = copyRasterTo3DArray(originalRaster);
+    /**
+     * Creates a transformer for the same image and settings holding its own copy of the coefficients,
+     * so the copy can be recovered while the coefficients of this object stay untouched
+     */
+    HaarTransform copy(){
+        HaarTransform copy = createRenderer();
+        copy.passRollback = passRollback.copy();
+        copy.coefficientsConsumed = coefficientsConsumed;
+        copy.imagePixelArray = new double[numOfColumns][numOfRows][];
+        for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+            for (int currRow = 0; currRow < numOfRows; currRow++) {
+                copy.imagePixelArray[currColumn][currRow] = imagePixelArray[currColumn][currRow].clone();
+            }
+        }
+        return copy;
     }
 
-}
-
-class TransformException extends Throwable{
-    public TransformException(String message){
-        super(message);
+    /**
+     * Creates a transformer for the same image and settings without any coefficients, which keeps
+     * rendering coefficient arrays of this image after this object has loaded another one
+     */
+    HaarTransform createRenderer(){
+        HaarTransform copy = new HaarTransform();
+        copy.setWaveletFamily(waveletFamily);
+        copy.decompositionMode = decompositionMode;
+        copy.sparseRecoverEnabled = sparseRecoverEnabled;
+        copy.colorTransform = colorTransform;
+        copy.colorTransformApplied = colorTransformApplied;
+        copy.chromaLevels = chromaLevels;
+        copy.fileExt = fileExt;
+        copy.numOfBands = numOfBands;
+        copy.numOfRows = numOfRows;
+        copy.numOfColumns = numOfColumns;
+        copy.numColumnTransformsNeeded = numColumnTransformsNeeded;
+        copy.numRowTransformsNeeded = numRowTransformsNeeded;
+        copy.colorModel = colorModel;
+        copy.sampleModel = sampleModel;
+        copy.sourceRaster = sourceRaster;
+        copy.regionSource = regionSource;
+        return copy;
     }
 
-    @Override
-    public String getMessage(){
-        String message = "ERROR in HaarTransform." + super.getMessage();
-        return message;
-    }
 }
-
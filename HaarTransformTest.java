@@ -3,12 +3,15 @@ package HaarTransform;
 import junit.framework.TestCase;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -109,4 +112,302 @@ public class HaarTransformTest extends TestCase {
     public void testColumnRecover() throws Exception {
 
     }
+
+    public void testTransformThenRecoverReturnsOriginalPixels() throws Throwable {
+        int[][] imageSizes = {{1, 1}, {1, 9}, {9, 1}, {1, 16}, {16, 8}, {13, 7}, {17, 31}};
+        for (WaveletFamily waveletFamily : WaveletFamily.values()) {
+            //Only the integer reversible families are exact, the others round back to the pixels
+            double tolerance = waveletFamily.isIntegerReversible() ? 0.0 : 1e-6;
+            for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+                for (int[] imageSize : imageSizes) {
+                    for (int imageType : new int[]{BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_3BYTE_BGR}) {
+                        String testCase = waveletFamily + " " + decompositionMode + " " + imageSize[0] + "x"
+                                + imageSize[1] + " type " + imageType;
+                        BufferedImage image = createRandomImage(imageSize[0], imageSize[1], imageType, 31);
+                        transformer = createTransformer(waveletFamily, decompositionMode);
+                        transformer.loadImage(image, "png");
+
+                        transformer.performAllTransforms();
+                        transformer.performAllRecovers();
+                        assertPixelArrayEquals(testCase + " in place", image.getRaster(),
+                                transformer.getImagePixelArray(), tolerance);
+
+                        transformer.generateTransformHistory(null, null);
+                        transformer.generateRecoverHistory(null, null);
+                        assertPixelArrayEquals(testCase + " by stages", image.getRaster(),
+                                transformer.getImagePixelArray(), tolerance);
+
+                        transformer.performAllTransforms();
+                        assertImageEquals(testCase + " final only", image, transformer.generateRecoveredImage());
+                    }
+                }
+            }
+        }
+    }
+
+    public void testIntegerReversibleFamiliesReconstructExactly() throws Throwable {
+        for (WaveletFamily waveletFamily : new WaveletFamily[]{WaveletFamily.HAAR, WaveletFamily.CDF_5_3}) {
+            for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+                BufferedImage image = createRandomImage(37, 21, BufferedImage.TYPE_3BYTE_BGR, 5);
+                transformer = createTransformer(waveletFamily, decompositionMode);
+                transformer.loadImage(image, "png");
+                transformer.performAllTransforms();
+                transformer.performAllRecovers();
+
+                double[][][] recovered = transformer.getImagePixelArray();
+                Raster raster = image.getRaster();
+                for (int currColumn = 0; currColumn < 37; currColumn++) {
+                    for (int currRow = 0; currRow < 21; currRow++) {
+                        for (int bandIndex = 0; bandIndex < 3; bandIndex++) {
+                            //Exactly the sample, not merely rounding to it
+                            assertTrue(waveletFamily + " " + decompositionMode,
+                                    recovered[currColumn][currRow][bandIndex] == raster.getSample(currColumn, currRow, bandIndex));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testTransformChangesTheCoefficients() throws Throwable {
+        for (WaveletFamily waveletFamily : WaveletFamily.values()) {
+            BufferedImage image = createRandomImage(8, 8, BufferedImage.TYPE_BYTE_GRAY, 7);
+            transformer = createTransformer(waveletFamily, DecompositionMode.NON_STANDARD);
+            transformer.loadImage(image, "png");
+            transformer.performAllTransforms();
+
+            double[][][] coefficients = transformer.getImagePixelArray();
+            boolean changed = false;
+            for (int currColumn = 0; currColumn < 8; currColumn++) {
+                for (int currRow = 0; currRow < 8; currRow++) {
+                    changed |= coefficients[currColumn][currRow][0] != image.getRaster().getSample(currColumn, currRow, 0);
+                }
+            }
+            assertTrue(waveletFamily.toString(), changed);
+        }
+    }
+
+    public void testGenerateRecoveredImageNeedsAResetBeforeFurtherPasses() throws Throwable {
+        BufferedImage image = createRandomImage(13, 7, BufferedImage.TYPE_3BYTE_BGR, 27);
+        for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+            transformer = createTransformer(WaveletFamily.HAAR, decompositionMode);
+            transformer.loadImage(image, "png");
+            transformer.performAllTransforms();
+            assertImageEquals(decompositionMode.toString(), image, transformer.generateRecoveredImage());
+
+            //The last recover pass only went into the returned image
+            try {
+                transformer.generateRecoveredImage();
+                fail("The coefficients are a level short of the image");
+            } catch (IllegalStateException ex) {
+                //Expected
+            }
+            try {
+                transformer.performAllTransforms();
+                fail("The coefficients are a level short of the image");
+            } catch (IllegalStateException ex) {
+                //Expected
+            }
+            try {
+                transformer.generateImage();
+                fail("The coefficients are a level short of the image");
+            } catch (IllegalStateException ex) {
+                //Expected
+            }
+            try {
+                transformer.getImagePixelArray();
+                fail("The coefficients are a level short of the image");
+            } catch (IllegalStateException ex) {
+                //Expected
+            }
+
+            transformer.resetImage();
+            assertPixelArrayEquals(decompositionMode + " reset", image.getRaster(), transformer.getImagePixelArray(), 0.0);
+            transformer.performAllTransforms();
+            assertImageEquals(decompositionMode + " again", image, transformer.generateRecoveredImage());
+        }
+    }
+
+    public void testSparseRecoverMatchesDenseRecoverAfterThresholding() throws Throwable {
+        for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+            for (boolean colorTransformed : new boolean[]{false, true}) {
+                for (int[] imageSize : new int[][]{{96, 80}, {67, 45}, {33, 130}, {1, 70}}) {
+                    for (double fractionKept : new double[]{0, 0.02, 0.3}) {
+                        BufferedImage image = createRandomImage(imageSize[0], imageSize[1], BufferedImage.TYPE_3BYTE_BGR, 33);
+                        HaarTransform dense = createThresholdedTransformer(image, decompositionMode, colorTransformed,
+                                fractionKept, false);
+                        HaarTransform sparse = createThresholdedTransformer(image, decompositionMode, colorTransformed,
+                                fractionKept, true);
+                        String message = decompositionMode + (colorTransformed ? " YCoCg-R " : " ") + imageSize[0] + "x"
+                                + imageSize[1] + " keeping " + fractionKept;
+
+                        //Every stage of a recover history matches, not only the recovered image
+                        StageHistory denseHistory = dense.generateRecoverHistory(null, null, null);
+                        StageHistory sparseHistory = sparse.generateRecoverHistory(null, null, null);
+                        assertEquals(message, denseHistory.getNumOfStages(), sparseHistory.getNumOfStages());
+                        for (int stageIndex = 0; stageIndex < denseHistory.getNumOfStages(); stageIndex++) {
+                            assertTrue(message + " stage " + stageIndex, Arrays.equals(
+                                    denseHistory.getStageSamples(stageIndex), sparseHistory.getStageSamples(stageIndex)));
+                        }
+                        assertCoefficientsEqual(message, dense.getImagePixelArray(), sparse.getImagePixelArray());
+
+                        dense = createThresholdedTransformer(image, decompositionMode, colorTransformed, fractionKept, false);
+                        sparse = createThresholdedTransformer(image, decompositionMode, colorTransformed, fractionKept, true);
+                        dense.performAllRecovers();
+                        sparse.performAllRecovers();
+                        assertCoefficientsEqual(message, dense.getImagePixelArray(), sparse.getImagePixelArray());
+                    }
+                }
+            }
+        }
+    }
+
+    private static HaarTransform createThresholdedTransformer(BufferedImage image, DecompositionMode decompositionMode,
+                                                              boolean colorTransformed, double fractionKept,
+                                                              boolean sparseRecoverEnabled) throws Throwable {
+        HaarTransform transformer = createRegionTransformer(decompositionMode, colorTransformed, 2);
+        transformer.setSparseRecoverEnabled(sparseRecoverEnabled);
+        transformer.loadImage(image, "png");
+        transformer.performAllTransforms();
+        new CoefficientThresholder(ThresholdMode.HARD).keepLargestInDetailSubbands(transformer, fractionKept);
+        return transformer;
+    }
+
+    public void testUpdateRegionMatchesTransformOfTheEditedImage() throws Throwable {
+        Random random = new Random(50);
+        int[] chromaLevelChoices = {0, 1, 2, Integer.MAX_VALUE};
+        for (int caseIndex = 0; caseIndex < 400; caseIndex++) {
+            DecompositionMode decompositionMode = DecompositionMode.values()[caseIndex % 2];
+            boolean colorTransformed = (caseIndex / 2) % 2 != 0;
+            int chromaLevels = chromaLevelChoices[random.nextInt(chromaLevelChoices.length)];
+            //Mostly odd sizes, which leave leftover pixels at several levels
+            int columns = 1 + random.nextInt(40);
+            int rows = 1 + random.nextInt(40);
+            int regionWidth = 1 + random.nextInt(columns);
+            int regionHeight = 1 + random.nextInt(rows);
+            int regionX = random.nextInt(columns - regionWidth + 1);
+            int regionY = random.nextInt(rows - regionHeight + 1);
+            //Every fourth case reaches the last column and row, where the leftover pixels are
+            if (caseIndex % 4 == 3) {
+                regionX = columns - regionWidth;
+                regionY = rows - regionHeight;
+            }
+            Rectangle region = new Rectangle(regionX, regionY, regionWidth, regionHeight);
+            String testCase = decompositionMode + " " + (colorTransformed ? "YCoCg-R chroma " + chromaLevels : "RGB")
+                    + " " + columns + "x" + rows + " region " + region;
+
+            BufferedImage image = createRandomImage(columns, rows, BufferedImage.TYPE_3BYTE_BGR, caseIndex);
+            BufferedImage regionImage = createRandomImage(regionWidth, regionHeight, BufferedImage.TYPE_3BYTE_BGR,
+                    -caseIndex);
+            BufferedImage editedImage = createRandomImage(columns, rows, BufferedImage.TYPE_3BYTE_BGR, caseIndex);
+            editedImage.getRaster().setRect(regionX, regionY, regionImage.getRaster());
+
+            transformer = createRegionTransformer(decompositionMode, colorTransformed, chromaLevels);
+            transformer.loadImage(image, "png");
+            transformer.performAllTransforms();
+            transformer.updateRegion(region, regionImage.getRaster());
+
+            HaarTransform expected = createRegionTransformer(decompositionMode, colorTransformed, chromaLevels);
+            expected.loadImage(editedImage, "png");
+            expected.performAllTransforms();
+            assertCoefficientsEqual(testCase, expected.getImagePixelArray(), transformer.getImagePixelArray());
+
+            assertImageEquals(testCase + " recovered", editedImage, transformer.generateRecoveredImage());
+        }
+    }
+
+    public void testUpdateRegionOfOtherFamiliesTransformsAgain() throws Throwable {
+        BufferedImage image = createRandomImage(13, 9, BufferedImage.TYPE_3BYTE_BGR, 1);
+        BufferedImage regionImage = createRandomImage(4, 3, BufferedImage.TYPE_3BYTE_BGR, 2);
+        BufferedImage editedImage = createRandomImage(13, 9, BufferedImage.TYPE_3BYTE_BGR, 1);
+        editedImage.getRaster().setRect(9, 6, regionImage.getRaster());
+        for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+            transformer = createTransformer(WaveletFamily.CDF_5_3, decompositionMode);
+            transformer.loadImage(image, "png");
+            transformer.performAllTransforms();
+            transformer.updateRegion(new Rectangle(9, 6, 4, 3), regionImage.getRaster());
+
+            HaarTransform expected = createTransformer(WaveletFamily.CDF_5_3, decompositionMode);
+            expected.loadImage(editedImage, "png");
+            expected.performAllTransforms();
+            assertCoefficientsEqual(decompositionMode.toString(), expected.getImagePixelArray(),
+                    transformer.getImagePixelArray());
+        }
+    }
+
+    public void testUpdateRegionRefusesRegionsOutsideTheImage() throws Throwable {
+        transformer = new HaarTransform();
+        transformer.loadImage(createRandomImage(8, 8, BufferedImage.TYPE_BYTE_GRAY, 1), "png");
+        transformer.performAllTransforms();
+        try {
+            transformer.updateRegion(new Rectangle(6, 6, 4, 4),
+                    createRandomImage(4, 4, BufferedImage.TYPE_BYTE_GRAY, 2).getRaster());
+            fail("The region reaches past the image");
+        } catch (IllegalArgumentException ex) {
+            //Expected
+        }
+    }
+
+    private static HaarTransform createRegionTransformer(DecompositionMode decompositionMode, boolean colorTransformed,
+                                                         int chromaLevels){
+        HaarTransform transformer = createTransformer(WaveletFamily.HAAR, decompositionMode);
+        transformer.setColorTransform(colorTransformed ? ColorTransform.YCOCG_R : ColorTransform.NONE);
+        transformer.setChromaLevels(chromaLevels);
+        return transformer;
+    }
+
+    static void assertCoefficientsEqual(String message, double[][][] expected, double[][][] actual){
+        for (int currColumn = 0; currColumn < expected.length; currColumn++) {
+            for (int currRow = 0; currRow < expected[currColumn].length; currRow++) {
+                for (int bandIndex = 0; bandIndex < expected[currColumn][currRow].length; bandIndex++) {
+                    assertEquals(message + " at " + currColumn + "," + currRow + " band " + bandIndex,
+                            expected[currColumn][currRow][bandIndex], actual[currColumn][currRow][bandIndex], 0.0);
+                }
+            }
+        }
+    }
+
+    static HaarTransform createTransformer(WaveletFamily waveletFamily, DecompositionMode decompositionMode){
+        HaarTransform transformer = new HaarTransform();
+        transformer.setWaveletFamily(waveletFamily);
+        transformer.setDecompositionMode(decompositionMode);
+        return transformer;
+    }
+
+    static BufferedImage createRandomImage(int columns, int rows, int imageType, long seed){
+        BufferedImage image = new BufferedImage(columns, rows, imageType);
+        WritableRaster raster = image.getRaster();
+        Random random = new Random(seed);
+        for (int currColumn = 0; currColumn < columns; currColumn++) {
+            for (int currRow = 0; currRow < rows; currRow++) {
+                for (int bandIndex = 0; bandIndex < raster.getNumBands(); bandIndex++) {
+                    raster.setSample(currColumn, currRow, bandIndex, random.nextInt(256));
+                }
+            }
+        }
+        return image;
+    }
+
+    static void assertPixelArrayEquals(String message, Raster expected, double[][][] actual, double tolerance){
+        for (int currColumn = 0; currColumn < expected.getWidth(); currColumn++) {
+            for (int currRow = 0; currRow < expected.getHeight(); currRow++) {
+                for (int bandIndex = 0; bandIndex < expected.getNumBands(); bandIndex++) {
+                    assertEquals(message + " at " + currColumn + "," + currRow,
+                            expected.getSample(currColumn, currRow, bandIndex), actual[currColumn][currRow][bandIndex],
+                            tolerance);
+                }
+            }
+        }
+    }
+
+    static void assertImageEquals(String message, BufferedImage expected, BufferedImage actual){
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        for (int currColumn = 0; currColumn < expected.getWidth(); currColumn++) {
+            for (int currRow = 0; currRow < expected.getHeight(); currRow++) {
+                assertEquals(message + " at " + currColumn + "," + currRow, expected.getRGB(currColumn, currRow),
+                        actual.getRGB(currColumn, currRow));
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -121,6 +121,21 @@ public class ImageChooserUI {
         stageImageChoicePanel.revalidate();
     }
 
+    /**
+     * Adds buttons until there is one for each of numOfStages stages, so the buttons of a run can be
+     * added as its stages are produced
+     */
+    public void addRadioButtonsUpTo(int numOfStages){
+        int numOfMissingButtons = numOfStages - getNumOfRadioButtons();
+        if (numOfMissingButtons > 0) {
+            addRadioButtons(numOfMissingButtons);
+        }
+    }
+
+    public int getNumOfRadioButtons(){
+        return stageImageChoicePanel.getNumOfRadioButtons();
+    }
+
     public void manualSelectStageByIndex(int index){
         stageImageChoicePanel.selectButtonByIndex(index);
     }
@@ -0,0 +1,29 @@
+package HaarTransform;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event emitted while HaarTransform decodes an image file and copies
+ * it into the coefficient array.
+ */
+@Name("HaarTransform.ImageLoad")
+@Label("Haar Image Load")
+@Category({"HaarTransform", "I/O"})
+@Description("Decoding of an image file into the coefficient array")
+final class ImageLoadEvent extends Event {
+    @Label("File")
+    String path;
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Bands")
+    int bands;
+
+    @Label("Bytes Touched")
+    @DataAmount
+    long bytesTouched;
+}
@@ -0,0 +1,228 @@
+package HaarTransform;
+
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>A region of an image file, optionally subsampled, that is read through an ImageReader one
+ * strip of rows at a time instead of being decoded into a single BufferedImage. Loading a huge
+ * image therefore never holds more than one copy of its coefficients plus the strip being copied
+ * into them, and a source can be read again later without keeping any of its pixels around.
+ *
+ * <p>Only images stored in tiles or strips, or in formats the reader can seek through, are
+ * decoded a strip at a time. Every read of other formats, such as PNG and JPEG, decodes from the
+ * start of the image, so they are decoded in a single read and handed out a strip at a time
+ * from there, holding the decoded samples of the whole region while the region is copied.
+ *
+ * <p>Subsampling keeps every subsampling-th column and row of the region, starting at its top
+ * left pixel, the way ImageReadParam.setSourceSubsampling does.
+ */
+public final class ImageRegionSource {
+    static final int STRIP_ROWS = 64;
+    private final File imageFile;
+    private final Rectangle sourceRegion;
+    private final int subsampling;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+    private final int numOfColumns;
+    private final int numOfRows;
+    private final boolean decodedInStrips;
+
+    private ImageRegionSource(File imageFile, Rectangle sourceRegion, int subsampling, ImageTypeSpecifier imageType,
+                              boolean decodedInStrips){
+        this.imageFile = imageFile;
+        this.decodedInStrips = decodedInStrips;
+        this.sourceRegion = sourceRegion;
+        this.subsampling = subsampling;
+        this.numOfColumns = (sourceRegion.width + subsampling - 1) / subsampling;
+        this.numOfRows = (sourceRegion.height + subsampling - 1) / subsampling;
+        this.colorModel = imageType.getColorModel();
+        this.sampleModel = imageType.getSampleModel(numOfColumns, numOfRows);
+    }
+
+    /**
+     * Opens the whole first image of a file, reading only its header
+     */
+    public static ImageRegionSource open(File imageFile) throws TransformException {
+        return open(imageFile, null, 1);
+    }
+
+    /**
+     * Opens a region of the first image of a file, reading only its header
+     * @param sourceRegion The pixels of the image to read, or null for the whole image. Clipped to the image bounds.
+     * @param subsampling Keeps every subsampling-th column and row of the region
+     */
+    public static ImageRegionSource open(File imageFile, Rectangle sourceRegion, int subsampling)
+            throws TransformException {
+        if (subsampling < 1) {
+            throw new IllegalArgumentException("subsampling must be at least 1: " + subsampling);
+        }
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile)) {
+            ImageReader reader = openReader(imageFile, inputStream);
+            try {
+                Rectangle imageBounds = new Rectangle(reader.getWidth(0), reader.getHeight(0));
+                Rectangle clippedRegion = (sourceRegion == null) ? imageBounds : imageBounds.intersection(sourceRegion);
+                if (clippedRegion.isEmpty()) {
+                    throw new IllegalArgumentException("sourceRegion must overlap the " + imageBounds.width + "x"
+                            + imageBounds.height + " image: " + sourceRegion);
+                }
+                boolean decodedInStrips = reader.isImageTiled(0) || reader.getTileHeight(0) < imageBounds.height
+                        || reader.isRandomAccessEasy(0);
+                return new ImageRegionSource(imageFile, clippedRegion, subsampling, reader.getImageTypes(0).next(),
+                        decodedInStrips);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ex) {
+            throw new TransformException("ImageRegionSource: Could not parse\n" + imageFile.getPath()
+                    + "\ninto an image.\n");
+        }
+    }
+
+    private static ImageReader openReader(File imageFile, ImageInputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            throw new IOException("Could not open " + imageFile.getPath());
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+        if (!readers.hasNext()) {
+            throw new IOException("No image reader found for " + imageFile.getPath());
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(inputStream, false, true);
+        return reader;
+    }
+
+    /**
+     * Decodes the region a strip of at most STRIP_ROWS rows at a time, handing each strip to the
+     * consumer before the next one is decoded. Regions that cannot be decoded a strip at a time
+     * are decoded in one read and then handed to the consumer a strip at a time.
+     */
+    void readStrips(StripConsumer consumer) throws TransformException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(imageFile)) {
+            ImageReader reader = openReader(imageFile, inputStream);
+            try {
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                if (!decodedInStrips) {
+                    readParam.setSourceRegion(sourceRegion);
+                    Raster region = reader.read(0, readParam).getRaster();
+                    for (int firstRow = 0; firstRow < numOfRows; firstRow += STRIP_ROWS) {
+                        consumer.accept(region.createChild(region.getMinX(), region.getMinY() + firstRow, numOfColumns,
+                                Math.min(STRIP_ROWS, numOfRows - firstRow), 0, 0, null), firstRow);
+                    }
+                    return;
+                }
+                for (int firstRow = 0; firstRow < numOfRows; firstRow += STRIP_ROWS) {
+                    int stripSourceRow = sourceRegion.y + (firstRow * subsampling);
+                    int stripSourceRows = Math.min(STRIP_ROWS * subsampling, sourceRegion.y + sourceRegion.height - stripSourceRow);
+                    readParam.setSourceRegion(new Rectangle(sourceRegion.x, stripSourceRow, sourceRegion.width, stripSourceRows));
+                    consumer.accept(reader.read(0, readParam).getRaster(), firstRow);
+                }
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ex) {
+            throw new TransformException("ImageRegionSource: Could not read\n" + imageFile.getPath()
+                    + "\ninto an image.\n");
+        }
+    }
+
+    /**
+     * @return Whether the region is decoded a strip at a time, rather than in a single read
+     */
+    boolean isDecodedInStrips(){
+        return decodedInStrips;
+    }
+
+    /**
+     * @return The bytes of 8 bit samples held by the decoder while the region is read
+     */
+    long getDecodedBytes(){
+        long decodedRows = decodedInStrips ? Math.min(STRIP_ROWS, numOfRows) : numOfRows;
+        return (long)numOfColumns * decodedRows * sampleModel.getNumBands();
+    }
+
+    /**
+     * Copies the samples of the region into a store of at least its size, a strip at a time
+     */
+    public void readInto(CoefficientStore store) throws TransformException {
+        if (store.getNumOfColumns() < numOfColumns || store.getNumOfRows() < numOfRows
+                || store.getNumOfBands() != sampleModel.getNumBands()) {
+            throw new IllegalArgumentException("store must hold a " + numOfColumns + "x" + numOfRows + "x"
+                    + sampleModel.getNumBands() + " region: " + store.getNumOfColumns() + "x"
+                    + store.getNumOfRows() + "x" + store.getNumOfBands());
+        }
+        int numOfBands = sampleModel.getNumBands();
+        double[] rowSamples = new double[numOfColumns * numOfBands];
+
+        readStrips((strip, firstRow) -> {
+            for (int stripRow = 0; stripRow < strip.getHeight(); stripRow++) {
+                strip.getPixels(strip.getMinX(), strip.getMinY() + stripRow, numOfColumns, 1, rowSamples);
+                for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+                    for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                        store.set(currColumn, firstRow + stripRow, bandIndex, rowSamples[(currColumn * numOfBands) + bandIndex]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The name of the image file, for the stage files written for the region
+     */
+    public File getImageFile(){
+        return imageFile;
+    }
+
+    /**
+     * @return The pixels of the image covered by the region, after clipping to the image bounds
+     */
+    public Rectangle getSourceRegion(){
+        return new Rectangle(sourceRegion);
+    }
+
+    public int getSubsampling(){
+        return subsampling;
+    }
+
+    /**
+     * @return The number of columns of the region after subsampling
+     */
+    public int getNumOfColumns(){
+        return numOfColumns;
+    }
+
+    /**
+     * @return The number of rows of the region after subsampling
+     */
+    public int getNumOfRows(){
+        return numOfRows;
+    }
+
+    public int getNumOfBands(){
+        return sampleModel.getNumBands();
+    }
+
+    ColorModel getColorModel(){
+        return colorModel;
+    }
+
+    SampleModel getSampleModel(){
+        return sampleModel;
+    }
+
+    /**
+     * Receives the strips of a region in order, each one starting at the given row of the region
+     */
+    interface StripConsumer {
+        void accept(Raster strip, int firstRow);
+    }
+}
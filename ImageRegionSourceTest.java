@@ -0,0 +1,96 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.File;
+
+public class ImageRegionSourceTest extends TestCase {
+    //Tall enough for several strips of every subsampling tested
+    private static final int NUM_OF_COLUMNS = 150;
+    private static final int NUM_OF_ROWS = 300;
+    private static final Rectangle[] REGIONS = {null, new Rectangle(13, 7, 120, 281), new Rectangle(140, 250, 50, 90)};
+
+    private File imageFile;
+
+    public void tearDown() throws Exception {
+        if (imageFile != null) {
+            imageFile.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testRegionsMatchTheDecodedImage() throws Throwable {
+        for (String format : new String[]{"png", "jpeg", "bmp", "gif", "tiff"}) {
+            imageFile = File.createTempFile("ImageRegionSourceTest", "." + format);
+            assertTrue(format, ImageIO.write(HaarTransformTest.createRandomImage(NUM_OF_COLUMNS, NUM_OF_ROWS,
+                    BufferedImage.TYPE_3BYTE_BGR, 39), format, imageFile));
+            Raster decoded = ImageIO.read(imageFile).getRaster();
+
+            for (Rectangle region : REGIONS) {
+                for (int subsampling : new int[]{1, 2, 3, 7}) {
+                    ImageRegionSource source = ImageRegionSource.open(imageFile, region, subsampling);
+                    String message = format + " " + region + " subsampled by " + subsampling;
+                    Rectangle clippedRegion = (region == null) ? new Rectangle(NUM_OF_COLUMNS, NUM_OF_ROWS)
+                                            : region.intersection(new Rectangle(NUM_OF_COLUMNS, NUM_OF_ROWS));
+                    assertEquals(message, clippedRegion, source.getSourceRegion());
+                    assertEquals(message, (clippedRegion.width + subsampling - 1) / subsampling, source.getNumOfColumns());
+                    assertEquals(message, (clippedRegion.height + subsampling - 1) / subsampling, source.getNumOfRows());
+
+                    try (OffHeapCoefficientStore store = OffHeapCoefficientStore.allocate(source.getNumOfColumns(),
+                            source.getNumOfRows(), source.getNumOfBands())) {
+                        source.readInto(store);
+                        for (int currColumn = 0; currColumn < source.getNumOfColumns(); currColumn++) {
+                            for (int currRow = 0; currRow < source.getNumOfRows(); currRow++) {
+                                for (int bandIndex = 0; bandIndex < source.getNumOfBands(); bandIndex++) {
+                                    assertEquals(message + " at " + currColumn + "," + currRow,
+                                            decoded.getSample(clippedRegion.x + (currColumn * subsampling),
+                                                    clippedRegion.y + (currRow * subsampling), bandIndex),
+                                            store.get(currColumn, currRow, bandIndex), 0.0);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            imageFile.delete();
+        }
+    }
+
+    public void testOnlySeekableImagesAreDecodedInStrips() throws Throwable {
+        BufferedImage image = HaarTransformTest.createRandomImage(NUM_OF_COLUMNS, NUM_OF_ROWS, BufferedImage.TYPE_3BYTE_BGR, 39);
+        imageFile = File.createTempFile("ImageRegionSourceTest", ".png");
+        ImageIO.write(image, "png", imageFile);
+        ImageRegionSource source = ImageRegionSource.open(imageFile);
+        assertFalse(source.isDecodedInStrips());
+        assertEquals((long)NUM_OF_COLUMNS * NUM_OF_ROWS * 3, source.getDecodedBytes());
+        imageFile.delete();
+
+        //TIFF images are written in strips of a few rows
+        imageFile = File.createTempFile("ImageRegionSourceTest", ".tiff");
+        ImageIO.write(image, "tiff", imageFile);
+        source = ImageRegionSource.open(imageFile);
+        assertTrue(source.isDecodedInStrips());
+        assertEquals((long)NUM_OF_COLUMNS * ImageRegionSource.STRIP_ROWS * 3, source.getDecodedBytes());
+    }
+
+    public void testRegionsOutsideTheImageAreRefused() throws Throwable {
+        imageFile = File.createTempFile("ImageRegionSourceTest", ".png");
+        ImageIO.write(HaarTransformTest.createRandomImage(10, 10, BufferedImage.TYPE_BYTE_GRAY, 39), "png", imageFile);
+        try {
+            ImageRegionSource.open(imageFile, new Rectangle(10, 0, 5, 5), 1);
+            fail("The region lies right of the image");
+        } catch (IllegalArgumentException ex) {
+            //Expected
+        }
+        try {
+            ImageRegionSource.open(imageFile, null, 0);
+            fail("Subsampling keeps at least every pixel");
+        } catch (IllegalArgumentException ex) {
+            //Expected
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package HaarTransform;
+
+import java.awt.image.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Runs the row and column passes of a transform or recover over a coefficient array with
+ * any WaveletFilter. Each pass only covers the requested sub-image, starting at the top left
+ * corner of the array, and leaves every coefficient outside of it untouched.
+ *
+ * <p>Lines of a pass are independent of each other, so large passes are split across the
+ * common fork/join pool regardless of the wavelet family in use.
+ *
+ * <p>Every pass gathers a line with all of its bands interleaved, pixel by pixel, so the
+ * coefficient array is read and written once per pass rather than once per band. Haar passes
+ * filter all bands of each pixel pair together; other filters work on one band of the gathered
+ * line at a time while it sits in cache.
+ *
+ * <p>Haar recovers can be given a BlockOccupancyMap of the coefficients. Runs of detail
+ * coefficients lying in empty blocks are then never read, the averages being copied to both
+ * pixels of each pair instead, and the map is updated with the recovered region so it stays
+ * valid for the following passes. Passes leaving out some of the bands are recovered densely,
+ * though the map is still kept up to date.
+ *
+ * <p>Passes can leave out some of the bands, such as chroma bands given fewer levels than the
+ * luma band. The final recover passes writing into a raster can undo YCoCg-R on every pixel as
+ * they write it, so the color transform costs no pass of its own.
+ *
+ * <p>Passes can also run over a CoefficientStore for images too large for a coefficient array.
+ * Column passes over a store gather a group of neighbouring columns row by row, so every row of
+ * the store is read and written in runs rather than one coefficient at a time.
+ */
+final class LiftingEngine {
+    private static final long PARALLEL_THRESHOLD = 1 << 15;
+    /** Bytes of column lines each thread of a column pass over a store gathers at once */
+    static final long STORE_COLUMN_BUFFER_BYTES = 8L << 20;
+    private static final int MIN_STORE_COLUMN_GROUP = 8;
+    private final WaveletFilter filter;
+
+    LiftingEngine(WaveletFilter filter){
+        this.filter = filter;
+    }
+
+    WaveletFilter getFilter(){
+        return filter;
+    }
+
+    /**
+     * Transforms or recovers, in place, the first subImageMaxColumn pixels of each of the first
+     * subImageMaxRow rows
+     */
+    void transformRows(double[][][] pixelArray, int subImageMaxColumn, int subImageMaxRow, boolean recover){
+        transformRows(pixelArray, subImageMaxColumn, subImageMaxRow, recover, null, null);
+    }
+
+    /**
+     * Transforms or recovers, in place, the first subImageMaxColumn pixels of each of the first
+     * subImageMaxRow rows, skipping the empty detail blocks of the occupancy map on Haar recovers
+     * @param bandsInPass The bands taking part in the pass, or null for every band
+     */
+    void transformRows(double[][][] pixelArray, int subImageMaxColumn, int subImageMaxRow, boolean recover,
+                       BlockOccupancyMap occupancyMap, boolean[] bandsInPass){
+        int numOfBands = pixelArray[0][0].length;
+        boolean sparseRecover = recover && usesSparseRecover(occupancyMap);
+        if (sparseRecover) {
+            occupancyMap.beginRegionRewrite(subImageMaxColumn, subImageMaxRow);
+        }
+
+        linesOfPass(subImageMaxRow, subImageMaxColumn, subImageMaxRow).forEach(currRow -> {
+            double[] line = new double[subImageMaxColumn * numOfBands];
+            double[] scratch = new double[line.length];
+            double[] bandLine = new double[subImageMaxColumn];
+            if (sparseRecover && bandsInPass == null) {
+                recoverSparseHaarRow(pixelArray, currRow, subImageMaxColumn, numOfBands, line, occupancyMap);
+            } else {
+                for (int currColumn = 0; currColumn < subImageMaxColumn; currColumn++) {
+                    System.arraycopy(pixelArray[currColumn][currRow], 0, line, currColumn * numOfBands, numOfBands);
+                }
+                applyFilterInterleaved(line, scratch, bandLine, subImageMaxColumn, numOfBands, recover, bandsInPass);
+            }
+            for (int currColumn = 0; currColumn < subImageMaxColumn; currColumn++) {
+                double[] pixelBands = pixelArray[currColumn][currRow];
+                System.arraycopy(line, currColumn * numOfBands, pixelBands, 0, numOfBands);
+                //Bands left out of the pass are written back as they were, and may still be non-zero
+                if (sparseRecover && isNonZero(pixelBands)) {
+                    occupancyMap.markOccupied(currColumn, currRow);
+                }
+            }
+        });
+        if (sparseRecover) {
+            occupancyMap.endRegionRewrite();
+        }
+    }
+
+    /**
+     * Transforms or recovers, in place, the first subImageMaxRow pixels of each of the first
+     * subImageMaxColumn columns
+     */
+    void transformColumns(double[][][] pixelArray, int subImageMaxColumn, int subImageMaxRow, boolean recover){
+        transformColumns(pixelArray, subImageMaxColumn, subImageMaxRow, recover, null, null);
+    }
+
+    /**
+     * Transforms or recovers, in place, the first subImageMaxRow pixels of each of the first
+     * subImageMaxColumn columns, skipping the empty detail blocks of the occupancy map on Haar recovers
+     * @param bandsInPass The bands taking part in the pass, or null for every band
+     */
+    void transformColumns(double[][][] pixelArray, int subImageMaxColumn, int subImageMaxRow, boolean recover,
+                          BlockOccupancyMap occupancyMap, boolean[] bandsInPass){
+        int numOfBands = pixelArray[0][0].length;
+        boolean sparseRecover = recover && usesSparseRecover(occupancyMap);
+        if (sparseRecover) {
+            occupancyMap.beginRegionRewrite(subImageMaxColumn, subImageMaxRow);
+        }
+
+        linesOfPass(subImageMaxColumn, subImageMaxColumn, subImageMaxRow).forEach(currColumn -> {
+            double[] line = new double[subImageMaxRow * numOfBands];
+            double[] scratch = new double[line.length];
+            double[] bandLine = new double[subImageMaxRow];
+            double[][] columnPixels = pixelArray[currColumn];
+            if (sparseRecover && bandsInPass == null) {
+                recoverSparseHaarColumn(columnPixels, currColumn, subImageMaxRow, numOfBands, line, occupancyMap);
+            } else {
+                for (int currRow = 0; currRow < subImageMaxRow; currRow++) {
+                    System.arraycopy(columnPixels[currRow], 0, line, currRow * numOfBands, numOfBands);
+                }
+                applyFilterInterleaved(line, scratch, bandLine, subImageMaxRow, numOfBands, recover, bandsInPass);
+            }
+            for (int currRow = 0; currRow < subImageMaxRow; currRow++) {
+                System.arraycopy(line, currRow * numOfBands, columnPixels[currRow], 0, numOfBands);
+                //Bands left out of the pass are written back as they were, and may still be non-zero
+                if (sparseRecover && isNonZero(columnPixels[currRow])) {
+                    occupancyMap.markOccupied(currColumn, currRow);
+                }
+            }
+        });
+        if (sparseRecover) {
+            occupancyMap.endRegionRewrite();
+        }
+    }
+
+    /**
+     * Recovers every row of the array, writing the recovered samples straight into the data
+     * buffer of the output raster instead of back into the array
+     * @param bandsInPass The bands taking part in the pass, or null for every band. The others are written as they are.
+     * @param inverseColorTransform Whether YCoCg-R is undone on each recovered pixel before it is written
+     */
+    void recoverRowsToRaster(double[][][] pixelArray, WritableRaster outputRaster, BlockOccupancyMap occupancyMap,
+                             boolean[] bandsInPass, boolean inverseColorTransform){
+        boolean sparseRecover = usesSparseRecover(occupancyMap) && bandsInPass == null;
+        int numOfColumns = pixelArray.length;
+        int numOfRows = pixelArray[0].length;
+        int numOfBands = pixelArray[0][0].length;
+        SampleModel sampleModel = outputRaster.getSampleModel();
+        DataBuffer dataBuffer = outputRaster.getDataBuffer();
+
+        //Rows never share a data buffer element, so they can be written concurrently
+        linesOfPass(numOfRows, numOfColumns, numOfRows).forEach(currRow -> {
+            double[] line = new double[numOfColumns * numOfBands];
+            double[] scratch = new double[line.length];
+            double[] bandLine = new double[numOfColumns];
+            int[] pixel = new int[numOfBands];
+            if (sparseRecover) {
+                recoverSparseHaarRow(pixelArray, currRow, numOfColumns, numOfBands, line, occupancyMap);
+            } else {
+                for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+                    System.arraycopy(pixelArray[currColumn][currRow], 0, line, currColumn * numOfBands, numOfBands);
+                }
+                applyFilterInterleaved(line, scratch, bandLine, numOfColumns, numOfBands, true, bandsInPass);
+            }
+            for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+                writePixel(sampleModel, dataBuffer, currColumn, currRow, line, currColumn * numOfBands, pixel, inverseColorTransform);
+            }
+        });
+    }
+
+    /**
+     * Recovers every column of the array, writing the recovered samples straight into the data
+     * buffer of the output raster instead of back into the array
+     * @param bandsInPass The bands taking part in the pass, or null for every band. The others are written as they are.
+     * @param inverseColorTransform Whether YCoCg-R is undone on each recovered pixel before it is written
+     */
+    void recoverColumnsToRaster(double[][][] pixelArray, WritableRaster outputRaster, BlockOccupancyMap occupancyMap,
+                                boolean[] bandsInPass, boolean inverseColorTransform){
+        boolean sparseRecover = usesSparseRecover(occupancyMap) && bandsInPass == null;
+        int numOfColumns = pixelArray.length;
+        int numOfRows = pixelArray[0].length;
+        int numOfBands = pixelArray[0][0].length;
+        SampleModel sampleModel = outputRaster.getSampleModel();
+        DataBuffer dataBuffer = outputRaster.getDataBuffer();
+        double[] line = new double[numOfRows * numOfBands];
+        double[] scratch = new double[line.length];
+        double[] bandLine = new double[numOfRows];
+        int[] pixel = new int[numOfBands];
+
+        //Neighbouring columns can share a data buffer element in packed rasters, so this stays sequential
+        for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+            double[][] columnPixels = pixelArray[currColumn];
+            if (sparseRecover) {
+                recoverSparseHaarColumn(columnPixels, currColumn, numOfRows, numOfBands, line, occupancyMap);
+            } else {
+                for (int currRow = 0; currRow < numOfRows; currRow++) {
+                    System.arraycopy(columnPixels[currRow], 0, line, currRow * numOfBands, numOfBands);
+                }
+                applyFilterInterleaved(line, scratch, bandLine, numOfRows, numOfBands, true, bandsInPass);
+            }
+            for (int currRow = 0; currRow < numOfRows; currRow++) {
+                writePixel(sampleModel, dataBuffer, currColumn, currRow, line, currRow * numOfBands, pixel, inverseColorTransform);
+            }
+        }
+    }
+
+    /**
+     * Transforms or recovers, in place, the first subImageMaxColumn coefficients of each of the
+     * first subImageMaxRow rows of the store
+     */
+    void transformRows(CoefficientStore store, int subImageMaxColumn, int subImageMaxRow, boolean recover){
+        int numOfBands = store.getNumOfBands();
+
+        linesOfPass(subImageMaxRow, subImageMaxColumn, subImageMaxRow).forEach(currRow -> {
+            double[] line = new double[subImageMaxColumn * numOfBands];
+            double[] scratch = new double[line.length];
+            double[] bandLine = new double[subImageMaxColumn];
+            store.readPixels(0, currRow, subImageMaxColumn, line, 0);
+            applyFilterInterleaved(line, scratch, bandLine, subImageMaxColumn, numOfBands, recover, null);
+            store.writePixels(0, currRow, subImageMaxColumn, line, 0);
+        });
+    }
+
+    /**
+     * Transforms or recovers, in place, the first subImageMaxRow coefficients of each of the
+     * first subImageMaxColumn columns of the store
+     */
+    void transformColumns(CoefficientStore store, int subImageMaxColumn, int subImageMaxRow, boolean recover){
+        int numOfBands = store.getNumOfBands();
+        int groupSize = storeColumnGroup(subImageMaxColumn, subImageMaxRow, numOfBands);
+        int numOfGroups = (subImageMaxColumn + groupSize - 1) / groupSize;
+
+        linesOfPass(numOfGroups, subImageMaxColumn, subImageMaxRow).forEach(groupIndex -> {
+            int startColumn = groupIndex * groupSize;
+            int groupColumns = Math.min(groupSize, subImageMaxColumn - startColumn);
+            double[][] lines = new double[groupColumns][subImageMaxRow * numOfBands];
+            double[] scratch = new double[subImageMaxRow * numOfBands];
+            double[] bandLine = new double[subImageMaxRow];
+            //The group's pixels of a row are next to each other in the store, so they are moved as one run
+            double[] groupPixels = new double[groupColumns * numOfBands];
+
+            for (int currRow = 0; currRow < subImageMaxRow; currRow++) {
+                store.readPixels(startColumn, currRow, groupColumns, groupPixels, 0);
+                for (int columnOffset = 0; columnOffset < groupColumns; columnOffset++) {
+                    System.arraycopy(groupPixels, columnOffset * numOfBands, lines[columnOffset], currRow * numOfBands, numOfBands);
+                }
+            }
+            for (double[] line : lines) {
+                applyFilterInterleaved(line, scratch, bandLine, subImageMaxRow, numOfBands, recover, null);
+            }
+            for (int currRow = 0; currRow < subImageMaxRow; currRow++) {
+                for (int columnOffset = 0; columnOffset < groupColumns; columnOffset++) {
+                    System.arraycopy(lines[columnOffset], currRow * numOfBands, groupPixels, columnOffset * numOfBands, numOfBands);
+                }
+                store.writePixels(startColumn, currRow, groupColumns, groupPixels, 0);
+            }
+        });
+    }
+
+    /**
+     * Sizes the groups of columns a column pass over a store gathers, as many as fit the column
+     * buffer of a thread, while leaving a group for every thread of a parallel pass. Every row of
+     * a group is read from the store as a single run, so wider groups mean fewer, longer reads.
+     */
+    static int storeColumnGroup(int subImageMaxColumn, int subImageMaxRow, int numOfBands){
+        long columnBytes = Math.max(1L, (long)subImageMaxRow * numOfBands * Double.BYTES);
+        int groupSize = (int)Math.min(subImageMaxColumn, STORE_COLUMN_BUFFER_BYTES / columnBytes);
+        if ((long)subImageMaxColumn * subImageMaxRow >= PARALLEL_THRESHOLD) {
+            int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+            groupSize = Math.min(groupSize, (subImageMaxColumn + parallelism - 1) / parallelism);
+        }
+        return Math.max(1, Math.max(Math.min(MIN_STORE_COLUMN_GROUP, subImageMaxColumn), groupSize));
+    }
+
+    private boolean usesSparseRecover(BlockOccupancyMap occupancyMap){
+        return occupancyMap != null && filter instanceof HaarFilter;
+    }
+
+    /**
+     * Haar recovers one row of a sub-image into the interleaved line, every band of a pixel pair
+     * together, reading the details of a run of pairs only when the occupancy map has a non-zero
+     * coefficient in the blocks holding them
+     */
+    private void recoverSparseHaarRow(double[][][] pixelArray, int currRow, int subImageMaxColumn, int numOfBands,
+                                      double[] line, BlockOccupancyMap occupancyMap){
+        int half = subImageMaxColumn / 2;
+
+        for (int runStart = 0; runStart < half; runStart += BlockOccupancyMap.BLOCK_SIZE) {
+            int runEnd = Math.min(half, runStart + BlockOccupancyMap.BLOCK_SIZE);
+            boolean zeroDetails = occupancyMap.isZero(half + runStart, currRow, half + runEnd, currRow + 1);
+            for (int pairIndex = runStart; pairIndex < runEnd; pairIndex++) {
+                recoverSparsePair(pixelArray[pairIndex][currRow], zeroDetails ? null : pixelArray[half + pairIndex][currRow],
+                        line, 2 * pairIndex * numOfBands, numOfBands);
+            }
+        }
+        recoverSparseLeftover(pixelArray[subImageMaxColumn - 1][currRow], line, subImageMaxColumn, numOfBands);
+    }
+
+    /**
+     * Haar recovers one column of a sub-image into the interleaved line, every band of a pixel pair
+     * together, reading the details of a run of pairs only when the occupancy map has a non-zero
+     * coefficient in the blocks holding them
+     */
+    private void recoverSparseHaarColumn(double[][] columnPixels, int currColumn, int subImageMaxRow, int numOfBands,
+                                         double[] line, BlockOccupancyMap occupancyMap){
+        int half = subImageMaxRow / 2;
+
+        for (int runStart = 0; runStart < half; runStart += BlockOccupancyMap.BLOCK_SIZE) {
+            int runEnd = Math.min(half, runStart + BlockOccupancyMap.BLOCK_SIZE);
+            boolean zeroDetails = occupancyMap.isZero(currColumn, half + runStart, currColumn + 1, half + runEnd);
+            for (int pairIndex = runStart; pairIndex < runEnd; pairIndex++) {
+                recoverSparsePair(columnPixels[pairIndex], zeroDetails ? null : columnPixels[half + pairIndex],
+                        line, 2 * pairIndex * numOfBands, numOfBands);
+            }
+        }
+        recoverSparseLeftover(columnPixels[subImageMaxRow - 1], line, subImageMaxRow, numOfBands);
+    }
+
+    /**
+     * Writes the two pixels recovered from the averages and differences of a pair, or copies the
+     * averages to both pixels when the differences are known to be zero
+     * @param differenceBands The differences of the pair, or null when they are all zero
+     */
+    private static void recoverSparsePair(double[] averagedBands, double[] differenceBands, double[] line,
+                                          int firstPixel, int numOfBands){
+        int secondPixel = firstPixel + numOfBands;
+        if (differenceBands == null) {
+            System.arraycopy(averagedBands, 0, line, firstPixel, numOfBands);
+            System.arraycopy(averagedBands, 0, line, secondPixel, numOfBands);
+            return;
+        }
+        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+            line[firstPixel + bandIndex] = averagedBands[bandIndex] + differenceBands[bandIndex];
+            line[secondPixel + bandIndex] = averagedBands[bandIndex] - differenceBands[bandIndex];
+        }
+    }
+
+    private static void recoverSparseLeftover(double[] leftoverBands, double[] line, int length, int numOfBands){
+        int leftoverPixel = (length - 1) * numOfBands;
+        if (length < 2) {
+            System.arraycopy(leftoverBands, 0, line, leftoverPixel, numOfBands);
+        } else if (length % 2 != 0) {
+            for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                line[leftoverPixel + bandIndex] = line[leftoverPixel - numOfBands + bandIndex] + (2 * leftoverBands[bandIndex]);
+            }
+        }
+    }
+
+    private static boolean isNonZero(double[] pixelBands){
+        for (double coefficient : pixelBands) {
+            if (coefficient != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBandInPass(boolean[] bandsInPass, int bandIndex){
+        return bandsInPass == null || bandsInPass[bandIndex];
+    }
+
+    /**
+     * Rounds the recovered values of a pixel to the nearest samples, undoing YCoCg-R on them when
+     * asked to, and writes them clamped to the range each band can hold, since lossy wavelets and
+     * thresholded coefficients can recover values slightly outside of it
+     */
+    private static void writePixel(SampleModel sampleModel, DataBuffer dataBuffer, int column, int row,
+                                   double[] line, int lineOffset, int[] pixel, boolean inverseColorTransform){
+        for (int bandIndex = 0; bandIndex < pixel.length; bandIndex++) {
+            pixel[bandIndex] = (int)Math.round(line[lineOffset + bandIndex]);
+        }
+        if (inverseColorTransform) {
+            ColorTransform.inverseYCoCgR(pixel);
+        }
+        for (int bandIndex = 0; bandIndex < pixel.length; bandIndex++) {
+            long maxSample = (1L << sampleModel.getSampleSize(bandIndex)) - 1;
+            sampleModel.setSample(column, row, bandIndex, (int)Math.max(0, Math.min(maxSample, pixel[bandIndex])), dataBuffer);
+        }
+    }
+
+    private void applyFilter(double[] line, double[] scratch, int length, boolean recover){
+        if (recover) {
+            filter.inverse(line, scratch, length);
+        } else {
+            filter.forward(line, scratch, length);
+        }
+    }
+
+    /**
+     * Transforms or recovers the first length pixels of an interleaved line. Haar passes over every
+     * band run the fused kernel, filtering all bands of each pixel pair together. Otherwise each
+     * band in the pass is pulled out of the line, which is small enough to stay in cache, filtered
+     * and put back, leaving the bands outside of the pass as they are.
+     * @param bandLine Holds a single band of the line while it is filtered
+     */
+    private void applyFilterInterleaved(double[] line, double[] scratch, double[] bandLine, int length, int numOfBands,
+                                        boolean recover, boolean[] bandsInPass){
+        if (bandsInPass == null && filter instanceof HaarFilter) {
+            HaarFilter haarFilter = (HaarFilter)filter;
+            if (recover) {
+                haarFilter.inverseInterleaved(line, scratch, length, numOfBands);
+            } else {
+                haarFilter.forwardInterleaved(line, scratch, length, numOfBands);
+            }
+            return;
+        }
+        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+            if (!isBandInPass(bandsInPass, bandIndex)) {
+                continue;
+            }
+            for (int pixelIndex = 0; pixelIndex < length; pixelIndex++) {
+                bandLine[pixelIndex] = line[(pixelIndex * numOfBands) + bandIndex];
+            }
+            applyFilter(bandLine, scratch, length, recover);
+            for (int pixelIndex = 0; pixelIndex < length; pixelIndex++) {
+                line[(pixelIndex * numOfBands) + bandIndex] = bandLine[pixelIndex];
+            }
+        }
+    }
+
+    private IntStream linesOfPass(int numOfLines, int subImageMaxColumn, int subImageMaxRow){
+        IntStream lines = IntStream.range(0, numOfLines);
+        return ((long)subImageMaxColumn * subImageMaxRow >= PARALLEL_THRESHOLD) ? lines.parallel() : lines;
+    }
+}
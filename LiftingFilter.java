@@ -0,0 +1,73 @@
+package HaarTransform;
+
+/**
+ * <p>Base class for the wavelet filters implemented as a sequence of lifting steps. Splits the
+ * even length part of a line into its even and odd samples, which the lifting steps of the
+ * subclass turn into low and high pass coefficients in place.
+ *
+ * <p>When the length of the line is odd the last sample is left out of the lifting steps and
+ * is encoded the same way HaarTransform has always encoded leftover pixels, by averaging it
+ * with the previous sample and storing the difference from that average in the last spot of
+ * the line. Recovering the leftover adds two times the stored value to the recovered previous
+ * sample. Lifting steps that reach past either end of the even length part use the symmetric
+ * extension provided by lowAt and highAt.
+ */
+abstract class LiftingFilter implements WaveletFilter {
+
+    @Override
+    public void forward(double[] line, double[] scratch, int length){
+        if (length < 2) {
+            return;
+        }
+        int half = length / 2;
+
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            scratch[pairIndex] = line[2 * pairIndex];
+            scratch[half + pairIndex] = line[(2 * pairIndex) + 1];
+        }
+        if (length % 2 != 0) {
+            //Skips adding the avg pixel value, making the next step work on an even size vector
+            double averagedResult = (line[length - 1] + line[length - 2]) / 2;
+            scratch[length - 1] = line[length - 1] - averagedResult;
+        }
+        liftForward(scratch, half);
+        System.arraycopy(scratch, 0, line, 0, length);
+    }
+
+    @Override
+    public void inverse(double[] line, double[] scratch, int length){
+        if (length < 2) {
+            return;
+        }
+        int half = length / 2;
+
+        System.arraycopy(line, 0, scratch, 0, length);
+        liftInverse(scratch, half);
+        for (int pairIndex = 0; pairIndex < half; pairIndex++) {
+            line[2 * pairIndex] = scratch[pairIndex];
+            line[(2 * pairIndex) + 1] = scratch[half + pairIndex];
+        }
+        if (length % 2 != 0) {
+            line[length - 1] = line[length - 2] + (2 * scratch[length - 1]);
+        }
+    }
+
+    /**
+     * Turns the even samples stored in coefficients[0, half) and the odd samples stored in
+     * coefficients[half, 2*half) into the low and high pass coefficients, in place
+     */
+    abstract void liftForward(double[] coefficients, int half);
+
+    /**
+     * Turns the low and high pass coefficients back into the even and odd samples, in place
+     */
+    abstract void liftInverse(double[] coefficients, int half);
+
+    static double lowAt(double[] coefficients, int half, int index){
+        return coefficients[Math.max(0, Math.min(index, half - 1))];
+    }
+
+    static double highAt(double[] coefficients, int half, int index){
+        return coefficients[half + Math.max(0, Math.min(index, half - 1))];
+    }
+}
@@ -0,0 +1,154 @@
+package HaarTransform;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>Transforms every frame of a multi-frame image file, such as an animated GIF or a
+ * multi-page TIFF, where HaarTransform.loadImage only reads the first image of a file.
+ *
+ * <p>Frames are read one at a time with ImageReader.read(index) and flow through three
+ * stages that each run on their own thread: decoding, Haar transformation and encoding
+ * of the fully transformed frame to an output file. The stages are connected by bounded
+ * queues, so decoding and encoding I/O overlap with the transform calculations while the
+ * number of frames held in memory stays fixed no matter how many frames the file has.
+ */
+public class MultiFrameImagePipeline {
+    private static final Frame END_OF_FRAMES = new Frame(-1, null);
+    private static final int NUM_OF_STAGES = 3;
+
+    private final File inputFile;
+    private final File outputDirectory;
+    private final String outputFormat;
+    private final int queueCapacity;
+
+    /**
+     * @param inputFile The multi-frame image file to transform
+     * @param outputDirectory The directory the transformed frames are written to
+     * @param outputFormat The informal name of the format the transformed frames are written in, such as png
+     * @param queueCapacity The number of frames each queue between two stages can hold
+     */
+    public MultiFrameImagePipeline(File inputFile, File outputDirectory, String outputFormat, int queueCapacity){
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1: " + queueCapacity);
+        }
+        this.inputFile = inputFile;
+        this.outputDirectory = outputDirectory;
+        this.outputFormat = outputFormat;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Runs all frames of the input file through the decode, transform and encode stages
+     * @return The number of frames written
+     */
+    public int run() throws TransformException {
+        BlockingQueue<Frame> decodedFrames = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Frame> transformedFrames = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService stageThreads = Executors.newFixedThreadPool(NUM_OF_STAGES);
+        CompletionService<Integer> stages = new ExecutorCompletionService<>(stageThreads);
+        int framesWritten = 0;
+
+        try {
+            Future<Integer> encoder = stages.submit(() -> encodeFrames(transformedFrames));
+            stages.submit(() -> transformFrames(decodedFrames, transformedFrames));
+            stages.submit(() -> decodeFrames(decodedFrames));
+
+            for (int stagesDone = 0; stagesDone < NUM_OF_STAGES; stagesDone++) {
+                Future<Integer> finishedStage = stages.take();
+                if (finishedStage == encoder) {
+                    framesWritten = finishedStage.get();
+                } else {
+                    finishedStage.get();
+                }
+            }
+            return framesWritten;
+        } catch (ExecutionException ex) {
+            throw new TransformException("MultiFrameImagePipeline: Could not process\n" + inputFile.getPath()
+                    + "\n" + ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TransformException("MultiFrameImagePipeline: Interrupted while processing\n" + inputFile.getPath());
+        } finally {
+            //Interrupts the remaining stages if any stage failed
+            stageThreads.shutdownNow();
+        }
+    }
+
+    private int decodeFrames(BlockingQueue<Frame> decodedFrames) throws IOException, InterruptedException {
+        int numOfFrames = 0;
+
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(inputFile)) {
+            if (inputStream == null) {
+                throw new IOException("Could not open " + inputFile.getPath());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader found for " + inputFile.getPath());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(inputStream, true, true);
+                while (true) {
+                    BufferedImage frameImage;
+                    try {
+                        frameImage = reader.read(numOfFrames);
+                    } catch (IndexOutOfBoundsException ex) {
+                        break;
+                    }
+                    decodedFrames.put(new Frame(numOfFrames, frameImage));
+                    numOfFrames++;
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+        decodedFrames.put(END_OF_FRAMES);
+        return numOfFrames;
+    }
+
+    private int transformFrames(BlockingQueue<Frame> decodedFrames, BlockingQueue<Frame> transformedFrames)
+            throws InterruptedException {
+        int numOfFrames = 0;
+
+        for (Frame frame = decodedFrames.take(); frame != END_OF_FRAMES; frame = decodedFrames.take()) {
+            HaarTransform transformer = new HaarTransform();
+            transformer.loadImage(frame.image, outputFormat);
+            transformer.performAllTransforms();
+            //Encoded once, by the encode stage
+            transformedFrames.put(new Frame(frame.index, transformer.generateUnencodedImage()));
+            numOfFrames++;
+        }
+        transformedFrames.put(END_OF_FRAMES);
+        return numOfFrames;
+    }
+
+    private int encodeFrames(BlockingQueue<Frame> transformedFrames) throws IOException, InterruptedException {
+        int numOfFrames = 0;
+
+        for (Frame frame = transformedFrames.take(); frame != END_OF_FRAMES; frame = transformedFrames.take()) {
+            File frameFile = new File(outputDirectory, "Transform_frame" + frame.index + "." + outputFormat);
+            if (!ImageIO.write(frame.image, outputFormat, frameFile)) {
+                throw new IOException("No image writer found for the " + outputFormat + " format");
+            }
+            numOfFrames++;
+        }
+        return numOfFrames;
+    }
+
+    private static class Frame {
+        final int index;
+        final BufferedImage image;
+
+        Frame(int index, BufferedImage image){
+            this.index = index;
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MultiFrameImagePipelineTest extends TestCase {
+
+    File workDirectory;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        workDirectory = Files.createTempDirectory("MultiFrameImagePipelineTest").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        File[] workFiles = workDirectory.listFiles();
+        if (workFiles != null) {
+            for (File workFile : workFiles) {
+                workFile.delete();
+            }
+        }
+        workDirectory.delete();
+        super.tearDown();
+    }
+
+    public void testEveryFrameOfAMultiPageTiffIsTransformed() throws Throwable {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int frameIndex = 0; frameIndex < 5; frameIndex++) {
+            frames.add(HaarTransformTest.createRandomImage(19, 12, BufferedImage.TYPE_3BYTE_BGR, frameIndex));
+        }
+        File inputFile = new File(workDirectory, "frames.tif");
+        writeMultiPageTiff(inputFile, frames);
+
+        //A queue smaller than the number of frames makes the stages wait for each other
+        MultiFrameImagePipeline pipeline = new MultiFrameImagePipeline(inputFile, workDirectory, "png", 1);
+        assertEquals(frames.size(), pipeline.run());
+
+        for (int frameIndex = 0; frameIndex < frames.size(); frameIndex++) {
+            HaarTransform expected = new HaarTransform();
+            expected.loadImage(frames.get(frameIndex), "png");
+            expected.performAllTransforms();
+            BufferedImage written = ImageIO.read(new File(workDirectory, "Transform_frame" + frameIndex + ".png"));
+            HaarTransformTest.assertImageEquals("frame " + frameIndex, expected.generateImage(), written);
+        }
+    }
+
+    public void testUnreadableInputIsReported() throws Throwable {
+        File inputFile = new File(workDirectory, "notAnImage.tif");
+        Files.write(inputFile.toPath(), new byte[]{1, 2, 3});
+        try {
+            new MultiFrameImagePipeline(inputFile, workDirectory, "png", 2).run();
+            fail("The input is not an image");
+        } catch (TransformException ex) {
+            //Expected
+        }
+    }
+
+    private static void writeMultiPageTiff(File file, List<BufferedImage> frames) throws Exception {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            for (BufferedImage frame : frames) {
+                writer.writeToSequence(new IIOImage(frame, null, null), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+}
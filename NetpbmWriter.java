@@ -0,0 +1,167 @@
+package HaarTransform;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>Writes images and coefficients as raw netpbm files, straight through a FileChannel from a
+ * direct buffer, so writing a stage costs little more than the disk takes to store it.
+ * <ul>
+ *     <li>PGM (P5), PPM (P6) and PAM (P7): the samples of a rendered image, for images of 1, 3 and
+ *     any other number of bands, with 8 or 16 bit samples</li>
+ *     <li>PFM: coefficients as 32 bit floats, keeping the sign and fraction the rendered images
+ *     lose. Holds 1 or 3 bands, in whatever color space the coefficients are in.</li>
+ * </ul>
+ *
+ * <p>PFM stores its rows from the bottom of the image to the top, and its samples in the byte
+ * order the header gives, which is the native order of the platform writing it.
+ */
+public final class NetpbmWriter {
+    //Rows are written through a buffer of about this many bytes
+    private static final int IO_BUFFER_BYTES = 1 << 20;
+
+    private NetpbmWriter(){
+    }
+
+    /**
+     * Writes the samples of an image as PGM, PPM or PAM, by the number of bands it has
+     */
+    public static void writePnm(File file, BufferedImage image) throws IOException {
+        if (image.getColorModel() instanceof IndexColorModel) {
+            throw new IllegalArgumentException("image must hold samples rather than palette indices: " + image);
+        }
+        Raster raster = image.getRaster();
+        int numOfColumns = raster.getWidth();
+        int numOfRows = raster.getHeight();
+        int numOfBands = raster.getNumBands();
+        int sampleSize = 0;
+        for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+            sampleSize = Math.max(sampleSize, raster.getSampleModel().getSampleSize(bandIndex));
+        }
+        if (sampleSize > 16) {
+            throw new IllegalArgumentException("image must have samples of at most 16 bits: " + sampleSize);
+        }
+        int maxValue = (1 << sampleSize) - 1;
+        int bytesPerSample = (sampleSize > 8) ? 2 : 1;
+
+        String header;
+        if (numOfBands == 1 || numOfBands == 3) {
+            header = ((numOfBands == 1) ? "P5" : "P6") + "\n" + numOfColumns + " " + numOfRows + "\n" + maxValue + "\n";
+        } else {
+            header = "P7\nWIDTH " + numOfColumns + "\nHEIGHT " + numOfRows + "\nDEPTH " + numOfBands + "\nMAXVAL "
+                    + maxValue + "\nENDHDR\n";
+        }
+
+        int rowLength = numOfColumns * numOfBands;
+        int[] rowSamples = new int[rowLength];
+        byte[] rowBytes = new byte[rowLength * bytesPerSample];
+        try (FileChannel fileChannel = openForWriting(file)) {
+            ByteBuffer ioBuffer = createIOBuffer(rowBytes.length);
+            ioBuffer.put(header.getBytes(StandardCharsets.US_ASCII));
+            for (int currRow = 0; currRow < numOfRows; currRow++) {
+                raster.getPixels(0, currRow, numOfColumns, 1, rowSamples);
+                //Netpbm samples wider than a byte are big endian
+                for (int sampleIndex = 0; sampleIndex < rowLength; sampleIndex++) {
+                    if (bytesPerSample == 1) {
+                        rowBytes[sampleIndex] = (byte)rowSamples[sampleIndex];
+                    } else {
+                        rowBytes[2 * sampleIndex] = (byte)(rowSamples[sampleIndex] >>> 8);
+                        rowBytes[(2 * sampleIndex) + 1] = (byte)rowSamples[sampleIndex];
+                    }
+                }
+                if (ioBuffer.remaining() < rowBytes.length) {
+                    ioBuffer.flip();
+                    drain(ioBuffer, fileChannel);
+                }
+                ioBuffer.put(rowBytes);
+            }
+            ioBuffer.flip();
+            drain(ioBuffer, fileChannel);
+        }
+    }
+
+    /**
+     * Writes a coefficient array, indexed by column, row and band, as PFM
+     */
+    public static void writePfm(File file, double[][][] coefficients) throws IOException {
+        int numOfBands = coefficients[0][0].length;
+        writePfm(file, coefficients.length, coefficients[0].length, numOfBands, (row, rowSamples) -> {
+            for (int currColumn = 0; currColumn < coefficients.length; currColumn++) {
+                System.arraycopy(coefficients[currColumn][row], 0, rowSamples, currColumn * numOfBands, numOfBands);
+            }
+        });
+    }
+
+    /**
+     * Writes the coefficients of a store as PFM
+     */
+    public static void writePfm(File file, CoefficientStore store) throws IOException {
+        writePfm(file, store.getNumOfColumns(), store.getNumOfRows(), store.getNumOfBands(),
+                (row, rowSamples) -> store.readPixels(0, row, store.getNumOfColumns(), rowSamples, 0));
+    }
+
+    private static void writePfm(File file, int numOfColumns, int numOfRows, int numOfBands, RowReader rowReader)
+            throws IOException {
+        if (numOfBands != 1 && numOfBands != 3) {
+            throw new IllegalArgumentException("PFM holds 1 or 3 bands: " + numOfBands);
+        }
+        //A negative scale marks little endian samples
+        String header = ((numOfBands == 1) ? "Pf" : "PF") + "\n" + numOfColumns + " " + numOfRows + "\n"
+                + ((ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) ? "-1.0" : "1.0") + "\n";
+
+        int rowLength = numOfColumns * numOfBands;
+        double[] rowSamples = new double[rowLength];
+        float[] rowFloats = new float[rowLength];
+        try (FileChannel fileChannel = openForWriting(file)) {
+            ByteBuffer ioBuffer = createIOBuffer(rowLength * Float.BYTES);
+            drain(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)), fileChannel);
+            FloatBuffer bufferedRows = ioBuffer.asFloatBuffer();
+            for (int currRow = numOfRows - 1; currRow >= 0; currRow--) {
+                rowReader.readRow(currRow, rowSamples);
+                for (int sampleIndex = 0; sampleIndex < rowLength; sampleIndex++) {
+                    rowFloats[sampleIndex] = (float)rowSamples[sampleIndex];
+                }
+                if (bufferedRows.remaining() < rowLength) {
+                    ioBuffer.position(0).limit(bufferedRows.position() * Float.BYTES);
+                    drain(ioBuffer, fileChannel);
+                    bufferedRows.clear();
+                }
+                bufferedRows.put(rowFloats);
+            }
+            ioBuffer.position(0).limit(bufferedRows.position() * Float.BYTES);
+            drain(ioBuffer, fileChannel);
+        }
+    }
+
+    private static FileChannel openForWriting(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static ByteBuffer createIOBuffer(int rowBytes){
+        return ByteBuffer.allocateDirect(Math.max(IO_BUFFER_BYTES, rowBytes)).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Writes out the remaining bytes of the buffer, then clears it
+     */
+    private static void drain(ByteBuffer ioBuffer, FileChannel fileChannel) throws IOException {
+        while (ioBuffer.hasRemaining()) {
+            fileChannel.write(ioBuffer);
+        }
+        ioBuffer.clear();
+    }
+
+    private interface RowReader {
+        void readRow(int row, double[] rowSamples);
+    }
+}
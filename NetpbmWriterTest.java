@@ -0,0 +1,318 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class NetpbmWriterTest extends TestCase {
+
+    File outputDirectory;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        outputDirectory = Files.createTempDirectory("NetpbmWriterTest").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        File[] outputFiles = outputDirectory.listFiles();
+        if (outputFiles != null) {
+            for (File outputFile : outputFiles) {
+                outputFile.delete();
+            }
+        }
+        outputDirectory.delete();
+        super.tearDown();
+    }
+
+    public void testGrayImageIsWrittenAsP5() throws Exception {
+        BufferedImage image = HaarTransformTest.createRandomImage(13, 7, BufferedImage.TYPE_BYTE_GRAY, 1);
+        NetpbmFile netpbmFile = writeAndReadPnm(image);
+        assertEquals("P5", netpbmFile.magic);
+        assertEquals(1, netpbmFile.depth);
+        assertEquals(255, netpbmFile.maxValue);
+        assertSamplesEqual(image.getRaster(), netpbmFile);
+    }
+
+    public void testSixteenBitGrayImageIsWrittenBigEndian() throws Exception {
+        BufferedImage image = new BufferedImage(9, 5, BufferedImage.TYPE_USHORT_GRAY);
+        fillRandomly(image.getRaster(), 65536, 2);
+        NetpbmFile netpbmFile = writeAndReadPnm(image);
+        assertEquals("P5", netpbmFile.magic);
+        assertEquals(65535, netpbmFile.maxValue);
+        assertSamplesEqual(image.getRaster(), netpbmFile);
+    }
+
+    public void testRgbImageIsWrittenAsP6() throws Exception {
+        //Larger than the I/O buffer, so it is written in several pieces
+        BufferedImage image = HaarTransformTest.createRandomImage(700, 600, BufferedImage.TYPE_3BYTE_BGR, 3);
+        NetpbmFile netpbmFile = writeAndReadPnm(image);
+        assertEquals("P6", netpbmFile.magic);
+        assertEquals(3, netpbmFile.depth);
+        assertEquals(255, netpbmFile.maxValue);
+        assertSamplesEqual(image.getRaster(), netpbmFile);
+    }
+
+    public void testOtherBandCountsAreWrittenAsP7() throws Exception {
+        BufferedImage rgbaImage = HaarTransformTest.createRandomImage(11, 6, BufferedImage.TYPE_4BYTE_ABGR, 4);
+        NetpbmFile netpbmFile = writeAndReadPnm(rgbaImage);
+        assertEquals("P7", netpbmFile.magic);
+        assertEquals(4, netpbmFile.depth);
+        assertSamplesEqual(rgbaImage.getRaster(), netpbmFile);
+
+        BufferedImage grayAlphaImage = createGrayAlphaImage(5, 8);
+        netpbmFile = writeAndReadPnm(grayAlphaImage);
+        assertEquals("P7", netpbmFile.magic);
+        assertEquals(2, netpbmFile.depth);
+        assertSamplesEqual(grayAlphaImage.getRaster(), netpbmFile);
+    }
+
+    public void testPaletteImagesAreRefused() throws Exception {
+        try {
+            NetpbmWriter.writePnm(new File(outputDirectory, "palette.pnm"),
+                    new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_INDEXED));
+            fail("Palette indices are not samples");
+        } catch (IllegalArgumentException ex) {
+            //Expected
+        }
+    }
+
+    public void testPfmRowsRunBottomToTopInTheByteOrderOfTheScale() throws Exception {
+        //Large enough to be written in several pieces
+        double[][][] coefficients = createCoefficients(600, 500, 1);
+        File pfmFile = new File(outputDirectory, "gray.pfm");
+        NetpbmWriter.writePfm(pfmFile, coefficients);
+        PfmFile pfm = readPfm(pfmFile);
+        assertEquals("Pf", pfm.magic);
+        //A negative scale marks little endian samples
+        assertEquals(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN, pfm.scale < 0);
+        assertEquals(1.0, Math.abs(pfm.scale), 0.0);
+        assertPfmEquals(coefficients, pfm);
+
+        double[][][] colorCoefficients = createCoefficients(17, 9, 3);
+        File colorPfmFile = new File(outputDirectory, "color.pfm");
+        NetpbmWriter.writePfm(colorPfmFile, colorCoefficients);
+        PfmFile colorPfm = readPfm(colorPfmFile);
+        assertEquals("PF", colorPfm.magic);
+        assertPfmEquals(colorCoefficients, colorPfm);
+    }
+
+    public void testPfmOfAStoreMatchesThePfmOfAnArray() throws Exception {
+        double[][][] coefficients = createCoefficients(31, 20, 3);
+        try (OffHeapCoefficientStore store = OffHeapCoefficientStore.allocate(31, 20, 3)) {
+            for (int currColumn = 0; currColumn < 31; currColumn++) {
+                for (int currRow = 0; currRow < 20; currRow++) {
+                    for (int bandIndex = 0; bandIndex < 3; bandIndex++) {
+                        store.set(currColumn, currRow, bandIndex, coefficients[currColumn][currRow][bandIndex]);
+                    }
+                }
+            }
+            File arrayFile = new File(outputDirectory, "array.pfm");
+            File storeFile = new File(outputDirectory, "store.pfm");
+            NetpbmWriter.writePfm(arrayFile, coefficients);
+            NetpbmWriter.writePfm(storeFile, store);
+            assertTrue(Arrays.equals(Files.readAllBytes(arrayFile.toPath()),
+                    Files.readAllBytes(storeFile.toPath())));
+        }
+    }
+
+    public void testPfmRefusesOtherBandCounts() throws Exception {
+        try {
+            NetpbmWriter.writePfm(new File(outputDirectory, "rgba.pfm"), createCoefficients(4, 4, 4));
+            fail("PFM holds 1 or 3 bands");
+        } catch (IllegalArgumentException ex) {
+            //Expected
+        }
+    }
+
+    public void testCoefficientFilesNeedOneOrThreeBands() throws Throwable {
+        HaarTransform transformer = new HaarTransform();
+        transformer.loadImage(HaarTransformTest.createRandomImage(8, 8, BufferedImage.TYPE_4BYTE_ABGR, 5), "png");
+        try {
+            transformer.createCoefficientFileListener("Transform");
+            fail("An RGBA image has no PFM coefficient files");
+        } catch (IllegalArgumentException ex) {
+            //Expected, before any pass is performed
+        }
+        try {
+            transformer.writeCoefficientFile(new File(outputDirectory, "rgba.pfm"));
+            fail("An RGBA image has no PFM coefficient files");
+        } catch (TransformException ex) {
+            assertFalse(new File(outputDirectory, "rgba.pfm").exists());
+        }
+
+        BufferedImage image = HaarTransformTest.createRandomImage(8, 8, BufferedImage.TYPE_3BYTE_BGR, 6);
+        transformer.loadImage(image, "png");
+        transformer.createCoefficientFileListener("Transform");
+        transformer.performAllTransforms();
+        File coefficientFile = new File(outputDirectory, "coefficients.pfm");
+        transformer.writeCoefficientFile(coefficientFile);
+        assertPfmEquals(transformer.getImagePixelArray(), readPfm(coefficientFile));
+    }
+
+    private NetpbmFile writeAndReadPnm(BufferedImage image) throws Exception {
+        File pnmFile = new File(outputDirectory, "image.pnm");
+        NetpbmWriter.writePnm(pnmFile, image);
+        return readPnm(Files.readAllBytes(pnmFile.toPath()));
+    }
+
+    private static BufferedImage createGrayAlphaImage(int columns, int rows){
+        ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), true,
+                false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(columns, rows);
+        fillRandomly(raster, 256, 9);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static void fillRandomly(WritableRaster raster, int bound, long seed){
+        Random random = new Random(seed);
+        for (int currColumn = 0; currColumn < raster.getWidth(); currColumn++) {
+            for (int currRow = 0; currRow < raster.getHeight(); currRow++) {
+                for (int bandIndex = 0; bandIndex < raster.getNumBands(); bandIndex++) {
+                    raster.setSample(currColumn, currRow, bandIndex, random.nextInt(bound));
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills coefficients with signed values floats hold exactly, different in every column, row and band
+     */
+    private static double[][][] createCoefficients(int columns, int rows, int bands){
+        double[][][] coefficients = new double[columns][rows][bands];
+        for (int currColumn = 0; currColumn < columns; currColumn++) {
+            for (int currRow = 0; currRow < rows; currRow++) {
+                for (int bandIndex = 0; bandIndex < bands; bandIndex++) {
+                    coefficients[currColumn][currRow][bandIndex] = (currColumn - (currRow * 0.5)) + (bandIndex * 0.125);
+                }
+            }
+        }
+        return coefficients;
+    }
+
+    private static void assertSamplesEqual(Raster expected, NetpbmFile actual){
+        assertEquals(expected.getWidth(), actual.width);
+        assertEquals(expected.getHeight(), actual.height);
+        assertEquals(expected.getNumBands(), actual.depth);
+        int bytesPerSample = (actual.maxValue > 255) ? 2 : 1;
+        assertEquals(expected.getWidth() * expected.getHeight() * actual.depth * bytesPerSample, actual.samples.remaining());
+        for (int currRow = 0; currRow < expected.getHeight(); currRow++) {
+            for (int currColumn = 0; currColumn < expected.getWidth(); currColumn++) {
+                for (int bandIndex = 0; bandIndex < actual.depth; bandIndex++) {
+                    int sample = (bytesPerSample == 2) ? (actual.samples.getShort() & 0xFFFF)
+                                                       : (actual.samples.get() & 0xFF);
+                    assertEquals("at " + currColumn + "," + currRow, expected.getSample(currColumn, currRow, bandIndex),
+                            sample);
+                }
+            }
+        }
+    }
+
+    private static void assertPfmEquals(double[][][] expected, PfmFile actual){
+        int bands = expected[0][0].length;
+        assertEquals(expected.length, actual.width);
+        assertEquals(expected[0].length, actual.height);
+        assertEquals(expected.length * expected[0].length * bands * Float.BYTES, actual.samples.remaining());
+        //The first row of the file is the bottom row of the image
+        for (int currRow = actual.height - 1; currRow >= 0; currRow--) {
+            for (int currColumn = 0; currColumn < actual.width; currColumn++) {
+                for (int bandIndex = 0; bandIndex < bands; bandIndex++) {
+                    assertEquals("at " + currColumn + "," + currRow, expected[currColumn][currRow][bandIndex],
+                            actual.samples.getFloat(), 0.0);
+                }
+            }
+        }
+    }
+
+    private static NetpbmFile readPnm(byte[] fileBytes){
+        NetpbmFile netpbmFile = new NetpbmFile();
+        HeaderReader header = new HeaderReader(fileBytes);
+        netpbmFile.magic = header.nextToken();
+        if (netpbmFile.magic.equals("P7")) {
+            for (String field = header.nextToken(); !field.equals("ENDHDR"); field = header.nextToken()) {
+                int value = Integer.parseInt(header.nextToken());
+                switch (field) {
+                    case "WIDTH": netpbmFile.width = value; break;
+                    case "HEIGHT": netpbmFile.height = value; break;
+                    case "DEPTH": netpbmFile.depth = value; break;
+                    case "MAXVAL": netpbmFile.maxValue = value; break;
+                    default: fail("Unexpected PAM header field " + field);
+                }
+            }
+        } else {
+            netpbmFile.width = Integer.parseInt(header.nextToken());
+            netpbmFile.height = Integer.parseInt(header.nextToken());
+            netpbmFile.maxValue = Integer.parseInt(header.nextToken());
+            netpbmFile.depth = netpbmFile.magic.equals("P5") ? 1 : 3;
+        }
+        //A single whitespace character separates the header from the samples, which are big endian
+        netpbmFile.samples = ByteBuffer.wrap(fileBytes, header.position + 1, fileBytes.length - header.position - 1)
+                .slice().order(ByteOrder.BIG_ENDIAN);
+        return netpbmFile;
+    }
+
+    private static PfmFile readPfm(File pfmFile) throws Exception {
+        byte[] fileBytes = Files.readAllBytes(pfmFile.toPath());
+        PfmFile pfm = new PfmFile();
+        HeaderReader header = new HeaderReader(fileBytes);
+        pfm.magic = header.nextToken();
+        pfm.width = Integer.parseInt(header.nextToken());
+        pfm.height = Integer.parseInt(header.nextToken());
+        pfm.scale = Double.parseDouble(header.nextToken());
+        pfm.samples = ByteBuffer.wrap(fileBytes, header.position + 1, fileBytes.length - header.position - 1).slice()
+                .order((pfm.scale < 0) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        return pfm;
+    }
+
+    private static class NetpbmFile {
+        String magic;
+        int width;
+        int height;
+        int depth;
+        int maxValue;
+        ByteBuffer samples;
+    }
+
+    private static class PfmFile {
+        String magic;
+        int width;
+        int height;
+        double scale;
+        ByteBuffer samples;
+    }
+
+    /**
+     * Reads the whitespace separated tokens of a header, leaving position on the whitespace after the last one
+     */
+    private static class HeaderReader {
+        private final byte[] fileBytes;
+        int position;
+
+        HeaderReader(byte[] fileBytes){
+            this.fileBytes = fileBytes;
+        }
+
+        String nextToken(){
+            while (Character.isWhitespace(fileBytes[position])) {
+                position++;
+            }
+            int tokenStart = position;
+            while (!Character.isWhitespace(fileBytes[position])) {
+                position++;
+            }
+            return new String(fileBytes, tokenStart, position - tokenStart, StandardCharsets.US_ASCII);
+        }
+    }
+}
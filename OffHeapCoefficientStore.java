@@ -0,0 +1,170 @@
+package HaarTransform;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>CoefficientStore keeping its coefficients outside of the Java heap, either in direct memory
+ * or in a memory mapped file. Coefficients are laid out row by row with the bands of a pixel
+ * next to each other, and split into chunks of at most 2^27 coefficients, since a single buffer
+ * is indexed with an int. The garbage collector only sees the few chunk buffers, never the
+ * coefficients themselves.
+ *
+ * <p>A store is meant to be used with try-with-resources. Closing a file backed store closes its
+ * file, deleting it when the store was mapped with deleteOnClose. The memory of the chunks is
+ * given back once the closed store is garbage collected.
+ */
+public final class OffHeapCoefficientStore implements CoefficientStore {
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private final int numOfColumns;
+    private final int numOfRows;
+    private final int numOfBands;
+    private final FileChannel backingChannel;
+    private final File fileDeletedOnClose;
+    private DoubleBuffer[] chunks;
+
+    private OffHeapCoefficientStore(int numOfColumns, int numOfRows, int numOfBands, FileChannel backingChannel,
+                                    File fileDeletedOnClose) throws IOException {
+        if (numOfColumns < 1 || numOfRows < 1 || numOfBands < 1) {
+            throw new IllegalArgumentException("A store needs at least one coefficient: " + numOfColumns + "x"
+                    + numOfRows + "x" + numOfBands);
+        }
+        this.numOfColumns = numOfColumns;
+        this.numOfRows = numOfRows;
+        this.numOfBands = numOfBands;
+        this.backingChannel = backingChannel;
+        this.fileDeletedOnClose = fileDeletedOnClose;
+
+        long numOfCoefficients = (long)numOfColumns * numOfRows * numOfBands;
+        chunks = new DoubleBuffer[(int)((numOfCoefficients + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int chunkIndex = 0; chunkIndex < chunks.length; chunkIndex++) {
+            long chunkStart = (long)chunkIndex << CHUNK_SHIFT;
+            int chunkBytes = (int)(Math.min(CHUNK_MASK + 1, numOfCoefficients - chunkStart) * Double.BYTES);
+            ByteBuffer chunkBuffer = (backingChannel == null)
+                    ? ByteBuffer.allocateDirect(chunkBytes)
+                    : backingChannel.map(FileChannel.MapMode.READ_WRITE, chunkStart * Double.BYTES, chunkBytes);
+            chunks[chunkIndex] = chunkBuffer.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+    }
+
+    /**
+     * Allocates a store in direct memory, with every coefficient set to zero
+     */
+    public static OffHeapCoefficientStore allocate(int numOfColumns, int numOfRows, int numOfBands){
+        try {
+            return new OffHeapCoefficientStore(numOfColumns, numOfRows, numOfBands, null, null);
+        } catch (IOException ex) {
+            //Cannot happen, direct memory has no file to fail on
+            throw new IllegalStateException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Maps a store onto a file, which keeps the coefficients it already holds and is grown to
+     * the size of the store when needed
+     * @param backingFile The file holding the coefficients
+     * @param deleteOnClose Whether the file is deleted once the store is closed
+     */
+    public static OffHeapCoefficientStore map(File backingFile, int numOfColumns, int numOfRows, int numOfBands,
+                                              boolean deleteOnClose) throws TransformException {
+        FileChannel backingChannel = null;
+        try {
+            backingChannel = FileChannel.open(backingFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new OffHeapCoefficientStore(numOfColumns, numOfRows, numOfBands, backingChannel,
+                    deleteOnClose ? backingFile : null);
+        } catch (IOException ex) {
+            try {
+                if (backingChannel != null) {
+                    backingChannel.close();
+                }
+            } catch (IOException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            throw new TransformException("OffHeapCoefficientStore: Could not map\n" + backingFile.getPath()
+                    + "\n" + ex.getMessage());
+        }
+    }
+
+    @Override
+    public int getNumOfColumns(){
+        return numOfColumns;
+    }
+
+    @Override
+    public int getNumOfRows(){
+        return numOfRows;
+    }
+
+    @Override
+    public int getNumOfBands(){
+        return numOfBands;
+    }
+
+    @Override
+    public double get(int column, int row, int band){
+        long index = indexOf(column, row, band);
+        return chunks[(int)(index >>> CHUNK_SHIFT)].get((int)(index & CHUNK_MASK));
+    }
+
+    @Override
+    public void set(int column, int row, int band, double value){
+        long index = indexOf(column, row, band);
+        chunks[(int)(index >>> CHUNK_SHIFT)].put((int)(index & CHUNK_MASK), value);
+    }
+
+    @Override
+    public void readPixels(int startColumn, int row, int numOfPixels, double[] samples, int offset){
+        long index = indexOf(startColumn, row, 0);
+        int numOfSamples = numOfPixels * numOfBands;
+        //A run crosses into the next chunk at most once, chunks being far longer than a row
+        for (int sampleIndex = 0; sampleIndex < numOfSamples; ) {
+            //Duplicated, as lines of a pass read the same chunk concurrently from their own positions
+            DoubleBuffer chunk = chunks[(int)(index >>> CHUNK_SHIFT)].duplicate();
+            chunk.position((int)(index & CHUNK_MASK));
+            int runLength = Math.min(numOfSamples - sampleIndex, chunk.remaining());
+            chunk.get(samples, offset + sampleIndex, runLength);
+            sampleIndex += runLength;
+            index += runLength;
+        }
+    }
+
+    @Override
+    public void writePixels(int startColumn, int row, int numOfPixels, double[] samples, int offset){
+        long index = indexOf(startColumn, row, 0);
+        int numOfSamples = numOfPixels * numOfBands;
+        for (int sampleIndex = 0; sampleIndex < numOfSamples; ) {
+            DoubleBuffer chunk = chunks[(int)(index >>> CHUNK_SHIFT)].duplicate();
+            chunk.position((int)(index & CHUNK_MASK));
+            int runLength = Math.min(numOfSamples - sampleIndex, chunk.remaining());
+            chunk.put(samples, offset + sampleIndex, runLength);
+            sampleIndex += runLength;
+            index += runLength;
+        }
+    }
+
+    private long indexOf(int column, int row, int band){
+        return (((long)row * numOfColumns) + column) * numOfBands + band;
+    }
+
+    @Override
+    public void close(){
+        chunks = null;
+        if (backingChannel != null) {
+            try {
+                backingChannel.close();
+            } catch (IOException ex) {
+                //The mapped chunks hold the coefficients, nothing is lost when the channel fails to close
+            }
+            if (fileDeletedOnClose != null) {
+                fileDeletedOnClose.delete();
+            }
+        }
+    }
+}
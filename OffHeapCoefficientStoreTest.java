@@ -0,0 +1,139 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+
+public class OffHeapCoefficientStoreTest extends TestCase {
+    //The largest size is split across threads by the column passes
+    private static final int[][] IMAGE_SIZES = {{64, 64}, {67, 45}, {1, 90}, {90, 1}, {301, 203}};
+
+    public void testStoreTransformMatchesHaarTransform() throws Throwable {
+        for (WaveletFamily waveletFamily : WaveletFamily.values()) {
+            for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+                for (int[] imageSize : IMAGE_SIZES) {
+                    BufferedImage image = HaarTransformTest.createRandomImage(imageSize[0], imageSize[1],
+                            BufferedImage.TYPE_3BYTE_BGR, 35);
+                    String message = waveletFamily + " " + decompositionMode + " " + imageSize[0] + "x" + imageSize[1];
+                    HaarTransform transformer = HaarTransformTest.createTransformer(waveletFamily, decompositionMode);
+                    transformer.loadImage(image, "png");
+                    transformer.performAllTransforms();
+
+                    try (OffHeapCoefficientStore store = loadStore(OffHeapCoefficientStore.allocate(imageSize[0],
+                            imageSize[1], 3), image)) {
+                        CoefficientStoreTransform storeTransform = createStoreTransform(store, waveletFamily, decompositionMode);
+                        storeTransform.performAllTransforms();
+                        assertStoreEquals(message, transformer.getImagePixelArray(), store);
+
+                        storeTransform.performAllRecovers();
+                        assertRecovered(message, image, store, waveletFamily);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testMappedStoreKeepsItsCoefficientsInTheFile() throws Throwable {
+        BufferedImage image = HaarTransformTest.createRandomImage(67, 45, BufferedImage.TYPE_3BYTE_BGR, 35);
+        File backingFile = File.createTempFile("OffHeapCoefficientStoreTest", ".coef");
+        try {
+            for (WaveletFamily waveletFamily : WaveletFamily.values()) {
+                for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+                    String message = waveletFamily + " " + decompositionMode;
+                    HaarTransform transformer = HaarTransformTest.createTransformer(waveletFamily, decompositionMode);
+                    transformer.loadImage(image, "png");
+                    transformer.performAllTransforms();
+
+                    try (OffHeapCoefficientStore store = loadStore(OffHeapCoefficientStore.map(backingFile, 67, 45, 3, false),
+                            image)) {
+                        createStoreTransform(store, waveletFamily, decompositionMode).performAllTransforms();
+                    }
+                    assertTrue(message, backingFile.exists());
+
+                    //A new mapping of the file finds the coefficients of the closed store
+                    try (OffHeapCoefficientStore store = OffHeapCoefficientStore.map(backingFile, 67, 45, 3, false)) {
+                        assertStoreEquals(message, transformer.getImagePixelArray(), store);
+                        createStoreTransform(store, waveletFamily, decompositionMode).performAllRecovers();
+                        assertRecovered(message, image, store, waveletFamily);
+                    }
+                }
+            }
+        } finally {
+            backingFile.delete();
+        }
+    }
+
+    public void testDeleteOnCloseRemovesTheFile() throws Throwable {
+        File backingFile = File.createTempFile("OffHeapCoefficientStoreTest", ".coef");
+        BufferedImage image = HaarTransformTest.createRandomImage(20, 9, BufferedImage.TYPE_BYTE_GRAY, 35);
+        try (OffHeapCoefficientStore store = loadStore(OffHeapCoefficientStore.map(backingFile, 20, 9, 1, true), image)) {
+            CoefficientStoreTransform storeTransform = new CoefficientStoreTransform(store);
+            storeTransform.performAllTransforms();
+            storeTransform.performAllRecovers();
+            assertRecovered("gray", image, store, WaveletFamily.HAAR);
+            assertEquals(20L * 9 * Double.BYTES, backingFile.length());
+        }
+        assertFalse(backingFile.exists());
+    }
+
+    public void testUnmappableFileIsReported() throws Throwable {
+        try {
+            OffHeapCoefficientStore.map(new File(new File("missingDirectory"), "store.coef"), 4, 4, 1, true);
+            fail("A file in a missing directory cannot be mapped");
+        } catch (TransformException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("OffHeapCoefficientStore: Could not map"));
+        }
+    }
+
+    public void testColumnGroupsStayWithinTheBuffer() throws Exception {
+        for (int[] imageSize : new int[][]{{100000, 100000}, {100000, 10}, {7, 3}, {1, 5000000}}) {
+            int groupSize = LiftingEngine.storeColumnGroup(imageSize[0], imageSize[1], 3);
+            String message = imageSize[0] + "x" + imageSize[1];
+            assertTrue(message, groupSize >= 1 && groupSize <= imageSize[0]);
+            assertTrue(message, groupSize <= 8
+                    || (long)groupSize * imageSize[1] * 3 * Double.BYTES <= LiftingEngine.STORE_COLUMN_BUFFER_BYTES);
+        }
+        //Short columns are gathered many at a time
+        assertTrue(LiftingEngine.storeColumnGroup(100000, 10, 3) > 1000);
+    }
+
+    private static OffHeapCoefficientStore loadStore(OffHeapCoefficientStore store, BufferedImage image){
+        store.writeRaster(image.getRaster(), 0, 0);
+        return store;
+    }
+
+    private static CoefficientStoreTransform createStoreTransform(CoefficientStore store, WaveletFamily waveletFamily,
+                                                                  DecompositionMode decompositionMode){
+        CoefficientStoreTransform storeTransform = new CoefficientStoreTransform(store);
+        storeTransform.setWaveletFamily(waveletFamily);
+        storeTransform.setDecompositionMode(decompositionMode);
+        return storeTransform;
+    }
+
+    private static void assertStoreEquals(String message, double[][][] expected, CoefficientStore store){
+        for (int currColumn = 0; currColumn < store.getNumOfColumns(); currColumn++) {
+            for (int currRow = 0; currRow < store.getNumOfRows(); currRow++) {
+                for (int bandIndex = 0; bandIndex < store.getNumOfBands(); bandIndex++) {
+                    assertEquals(message + " at " + currColumn + "," + currRow + " band " + bandIndex,
+                            expected[currColumn][currRow][bandIndex], store.get(currColumn, currRow, bandIndex), 0.0);
+                }
+            }
+        }
+    }
+
+    private static void assertRecovered(String message, BufferedImage image, CoefficientStore store,
+                                        WaveletFamily waveletFamily){
+        WritableRaster expected = image.getRaster();
+        for (int currColumn = 0; currColumn < store.getNumOfColumns(); currColumn++) {
+            for (int currRow = 0; currRow < store.getNumOfRows(); currRow++) {
+                for (int bandIndex = 0; bandIndex < store.getNumOfBands(); bandIndex++) {
+                    assertEquals(message + " recovered at " + currColumn + "," + currRow,
+                            expected.getSample(currColumn, currRow, bandIndex), store.get(currColumn, currRow, bandIndex),
+                            waveletFamily.isIntegerReversible() ? 0 : 1e-6);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package HaarTransform;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Records the row and column passes applied to a coefficient array since its image was loaded,
+ * so the array can be reset by undoing them instead of copying the image into it again. Undoing
+ * a pass runs the opposite pass over the same sub-image and bands, with the engine that ran it.
+ *
+ * <p>Only the integer reversible wavelets take part, as they recover integer samples exactly.
+ * The samples are rounded to the nearest integer once every pass is undone, which removes the
+ * rounding errors of long chains of passes. A pass of any other wavelet, or handing the array to
+ * code that may change it, such as thresholding, invalidates the record, after which the image
+ * has to be copied in again. A pass directly followed by its opposite cancels out of the record.
+ */
+final class PassRollback {
+    private final ArrayDeque<Pass> passes = new ArrayDeque<>();
+    private boolean valid = true;
+    private boolean coefficientsChanged;
+
+    /**
+     * Records a pass that has just been applied to the array
+     * @param bandsInPass The bands taking part in the pass, or null for every band
+     */
+    void record(LiftingEngine liftingEngine, boolean reversible, boolean rowPass, int subImageMaxColumn,
+                int subImageMaxRow, boolean recover, boolean[] bandsInPass){
+        if (!valid) {
+            return;
+        }
+        if (!reversible) {
+            invalidate();
+            return;
+        }
+        coefficientsChanged = true;
+        Pass pass = new Pass(liftingEngine, rowPass, subImageMaxColumn, subImageMaxRow, recover, bandsInPass);
+        Pass lastPass = passes.peekLast();
+        if (lastPass != null && lastPass.isUndoneBy(pass)) {
+            passes.removeLast();
+        } else {
+            passes.addLast(pass);
+        }
+    }
+
+    /**
+     * Stops the array from being rolled back until the next clear, as it may have been changed
+     * in ways that are not recorded
+     */
+    void invalidate(){
+        valid = false;
+        passes.clear();
+    }
+
+    /**
+     * Forgets every recorded pass, for an array holding the samples of the image as loaded
+     */
+    void clear(){
+        passes.clear();
+        valid = true;
+        coefficientsChanged = false;
+    }
+
+    /**
+     * Undoes every recorded pass, last pass first, and rounds the array back to the samples of the image
+     * @return false, leaving the array untouched, when the array cannot be rolled back
+     */
+    boolean rollBack(double[][][] pixelArray){
+        if (!valid) {
+            return false;
+        }
+        if (coefficientsChanged) {
+            for (Iterator<Pass> passIterator = passes.descendingIterator(); passIterator.hasNext();) {
+                passIterator.next().undo(pixelArray);
+            }
+            IntStream.range(0, pixelArray.length).parallel().forEach(currColumn -> {
+                for (double[] pixelBands : pixelArray[currColumn]) {
+                    for (int bandIndex = 0; bandIndex < pixelBands.length; bandIndex++) {
+                        pixelBands[bandIndex] = Math.rint(pixelBands[bandIndex]);
+                    }
+                }
+            });
+        }
+        clear();
+        return true;
+    }
+
+    /**
+     * @return A record of the same passes, for a copy of the array
+     */
+    PassRollback copy(){
+        PassRollback copy = new PassRollback();
+        copy.passes.addAll(passes);
+        copy.valid = valid;
+        copy.coefficientsChanged = coefficientsChanged;
+        return copy;
+    }
+
+    private static class Pass {
+        final LiftingEngine liftingEngine;
+        final boolean rowPass;
+        final int subImageMaxColumn;
+        final int subImageMaxRow;
+        final boolean recover;
+        final boolean[] bandsInPass;
+
+        Pass(LiftingEngine liftingEngine, boolean rowPass, int subImageMaxColumn, int subImageMaxRow, boolean recover,
+             boolean[] bandsInPass){
+            this.liftingEngine = liftingEngine;
+            this.rowPass = rowPass;
+            this.subImageMaxColumn = subImageMaxColumn;
+            this.subImageMaxRow = subImageMaxRow;
+            this.recover = recover;
+            this.bandsInPass = bandsInPass;
+        }
+
+        boolean isUndoneBy(Pass nextPass){
+            return liftingEngine == nextPass.liftingEngine && rowPass == nextPass.rowPass
+                    && subImageMaxColumn == nextPass.subImageMaxColumn && subImageMaxRow == nextPass.subImageMaxRow
+                    && recover != nextPass.recover && Arrays.equals(bandsInPass, nextPass.bandsInPass);
+        }
+
+        void undo(double[][][] pixelArray){
+            if (rowPass) {
+                liftingEngine.transformRows(pixelArray, subImageMaxColumn, subImageMaxRow, !recover, null, bandsInPass);
+            } else {
+                liftingEngine.transformColumns(pixelArray, subImageMaxColumn, subImageMaxRow, !recover, null, bandsInPass);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package HaarTransform;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * <p>Encodes and writes stage files on a fixed number of I/O threads, so the files of a stage are
+ * written while the passes of the following stages are performed. Used as a StageListener it
+ * writes the files of every stage of a history as soon as the stage is recorded, named as
+ * HaarTransform has always named them. Only the samples of a stage are taken on the thread
+ * handing it over, while it holds the history; the stage is rendered on the I/O threads, so
+ * neither the passes nor a viewer of the history wait for rendering and encoding.
+ *
+ * <p>At most maxPendingFiles files are waiting to be written or being written at once. Once the
+ * disk falls that far behind, handing over another file waits for one of them to be done, so the
+ * images and stage samples waiting for the disk never take more than maxPendingFiles images of memory.
+ *
+ * <p>Files are written in any format ImageIO has a writer for, at the writer's default
+ * compression or at an explicit compression quality when the format supports one, or in the
+ * uncompressed NETPBM_FORMAT_NAME, which NetpbmWriter writes at disk speed. A file that could not
+ * be written does not stop the others, and is reported by awaitWrites.
+ */
+public final class StageFileWriter implements AutoCloseable {
+    public static final float DEFAULT_COMPRESSION_QUALITY = -1f;
+    //Raw PGM, PPM or PAM by the number of bands, see NetpbmWriter
+    public static final String NETPBM_FORMAT_NAME = "pnm";
+    private final String formatName;
+    private final float compressionQuality;
+    private final int maxPendingFiles;
+    private final Semaphore pendingFileSlots;
+    private final ExecutorService ioThreads;
+    private int numOfFilesWritten;
+    private int numOfFailedFiles;
+    private String firstFailure;
+
+    /**
+     * Writes files in a format at its default compression, on as many threads as there are processors
+     */
+    public StageFileWriter(String formatName){
+        this(formatName, DEFAULT_COMPRESSION_QUALITY, Runtime.getRuntime().availableProcessors(),
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param formatName The ImageIO format of the files or NETPBM_FORMAT_NAME, which is also their file extension
+     * @param compressionQuality In [0, 1], from the smallest to the best preserved files, or
+     *                           DEFAULT_COMPRESSION_QUALITY for the default of the format
+     * @param numOfThreads The number of files encoded and written at once
+     * @param maxPendingFiles The number of files that may wait for the disk before write waits for them
+     */
+    public StageFileWriter(String formatName, float compressionQuality, int numOfThreads, int maxPendingFiles){
+        boolean netpbmFormat = NETPBM_FORMAT_NAME.equals(formatName);
+        Iterator<ImageWriter> imageWriters = ImageIO.getImageWritersByFormatName(formatName);
+        if (!netpbmFormat && !imageWriters.hasNext()) {
+            throw new IllegalArgumentException("formatName must name a format ImageIO can write: " + formatName);
+        }
+        if (compressionQuality != DEFAULT_COMPRESSION_QUALITY) {
+            if (compressionQuality < 0 || compressionQuality > 1) {
+                throw new IllegalArgumentException("compressionQuality must be in [0, 1]: " + compressionQuality);
+            }
+            if (netpbmFormat) {
+                throw new IllegalArgumentException("formatName must support compression for a compressionQuality: "
+                        + formatName);
+            }
+            ImageWriter imageWriter = imageWriters.next();
+            boolean canWriteCompressed = imageWriter.getDefaultWriteParam().canWriteCompressed();
+            imageWriter.dispose();
+            if (!canWriteCompressed) {
+                throw new IllegalArgumentException("formatName must support compression for a compressionQuality: "
+                        + formatName);
+            }
+        }
+        if (numOfThreads < 1) {
+            throw new IllegalArgumentException("numOfThreads must be at least 1: " + numOfThreads);
+        }
+        if (maxPendingFiles < 1) {
+            throw new IllegalArgumentException("maxPendingFiles must be at least 1: " + maxPendingFiles);
+        }
+        this.formatName = formatName;
+        this.compressionQuality = compressionQuality;
+        this.maxPendingFiles = maxPendingFiles;
+        this.pendingFileSlots = new Semaphore(maxPendingFiles);
+        this.ioThreads = Executors.newFixedThreadPool(numOfThreads, runnable -> {
+            Thread thread = new Thread(runnable, "StageFileWriter I/O");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String getFormatName(){
+        return formatName;
+    }
+
+    public float getCompressionQuality(){
+        return compressionQuality;
+    }
+
+    /**
+     * Queues an image to be written to a file, first waiting while maxPendingFiles files are pending
+     * @return Whether the image was queued. It is not when the thread is interrupted while waiting,
+     * which leaves the thread interrupted.
+     */
+    public boolean write(File file, BufferedImage image){
+        return write(file, () -> image);
+    }
+
+    /**
+     * Queues an image rendered on the I/O thread writing it, first waiting while maxPendingFiles files are pending
+     */
+    private boolean write(File file, Supplier<BufferedImage> imageRenderer){
+        try {
+            pendingFileSlots.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        ioThreads.execute(() -> {
+            try {
+                writeFile(file, imageRenderer.get());
+                recordWrite(null, null);
+            } catch (IOException | RuntimeException ex) {
+                recordWrite(file, ex);
+            } finally {
+                pendingFileSlots.release();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Creates a listener queueing the stage image and the pixel expansion image of every stage
+     * recorded, to files named after the process and the index of the stage
+     * @param processThatCreatedImage "Transform" or "Recover", which the file names start with
+     */
+    public StageListener writeStages(String processThatCreatedImage){
+        return (history, stageIndex) -> writeStage(history, stageIndex, processThatCreatedImage);
+    }
+
+    /**
+     * Queues the stage image and the pixel expansion image of a stage, copying the samples of the
+     * stage to render both from on the I/O threads
+     * @return Whether both were queued, which they are not once the thread is interrupted
+     */
+    public boolean writeStage(StageHistory history, int stageIndex, String processThatCreatedImage){
+        int[] stageSamples = history.getStageSamples(stageIndex);
+        int rowTransformsDone = history.getRowTransformsDone(stageIndex);
+        int columnTransformsDone = history.getColumnTransformsDone(stageIndex);
+        return write(getStageFile(processThatCreatedImage, stageIndex, false), () -> history.renderStageImage(stageSamples))
+                && write(getStageFile(processThatCreatedImage, stageIndex, true),
+                         () -> history.renderPixelExpansionImage(stageSamples, rowTransformsDone, columnTransformsDone));
+    }
+
+    File getStageFile(String processThatCreatedImage, int stageIndex, boolean pixelExpansion){
+        return new File(processThatCreatedImage + (pixelExpansion ? "PE_" : "_") + stageIndex + "." + formatName);
+    }
+
+    private void writeFile(File file, BufferedImage image) throws IOException {
+        if (NETPBM_FORMAT_NAME.equals(formatName)) {
+            NetpbmWriter.writePnm(file, image);
+            return;
+        }
+        ImageWriter imageWriter = ImageIO.getImageWritersByFormatName(formatName).next();
+        try {
+            ImageWriteParam writeParam = imageWriter.getDefaultWriteParam();
+            if (compressionQuality != DEFAULT_COMPRESSION_QUALITY) {
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (writeParam.getCompressionType() == null) {
+                    writeParam.setCompressionType(writeParam.getCompressionTypes()[0]);
+                }
+                writeParam.setCompressionQuality(compressionQuality);
+            }
+            //An output stream over a file overwrites it without truncating it, so start from no file
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Could not replace the existing file");
+            }
+            try (ImageOutputStream output = new FileImageOutputStream(file)) {
+                imageWriter.setOutput(output);
+                imageWriter.write(null, new IIOImage(image, null, null), writeParam);
+            }
+        } finally {
+            imageWriter.dispose();
+        }
+    }
+
+    private synchronized void recordWrite(File failedFile, Exception failure){
+        if (failure == null) {
+            numOfFilesWritten++;
+        } else {
+            numOfFailedFiles++;
+            if (firstFailure == null) {
+                firstFailure = failedFile.getPath() + "\n" + failure.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Waits until every file queued so far has been written
+     * @return The number of files written since the last call
+     * @throws TransformException When any of those files could not be written
+     */
+    public int awaitWrites() throws TransformException {
+        pendingFileSlots.acquireUninterruptibly(maxPendingFiles);
+        pendingFileSlots.release(maxPendingFiles);
+        synchronized (this) {
+            int filesWritten = numOfFilesWritten;
+            String failure = firstFailure;
+            int failedFiles = numOfFailedFiles;
+            numOfFilesWritten = 0;
+            numOfFailedFiles = 0;
+            firstFailure = null;
+            if (failure != null) {
+                throw new TransformException("StageFileWriter: Could not write " + failedFiles + " files, the first being\n"
+                        + failure);
+            }
+            return filesWritten;
+        }
+    }
+
+    /**
+     * Lets the queued files be written without accepting new ones
+     */
+    @Override
+    public void close(){
+        ioThreads.shutdown();
+    }
+}
@@ -0,0 +1,60 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+
+public class StageFileWriterTest extends TestCase {
+
+    StageFileWriter stageFileWriter;
+    int numOfStages;
+
+    public void tearDown() throws Exception {
+        if (stageFileWriter != null) {
+            stageFileWriter.close();
+            for (int stageIndex = 0; stageIndex < numOfStages; stageIndex++) {
+                stageFileWriter.getStageFile("Transform", stageIndex, false).delete();
+                stageFileWriter.getStageFile("Transform", stageIndex, true).delete();
+            }
+        }
+        super.tearDown();
+    }
+
+    public void testWritesTheFilesOfEveryStageAsItIsRecorded() throws Throwable {
+        BufferedImage image = HaarTransformTest.createRandomImage(19, 11, BufferedImage.TYPE_3BYTE_BGR, 48);
+        HaarTransform transformer = new HaarTransform();
+        transformer.loadImage(image, "png");
+        stageFileWriter = new StageFileWriter("png", StageFileWriter.DEFAULT_COMPRESSION_QUALITY, 2, 3);
+
+        StageHistory history = transformer.generateTransformHistory(null, null, stageFileWriter.writeStages("Transform"));
+        numOfStages = history.getNumOfStages();
+        assertEquals(2 * numOfStages, stageFileWriter.awaitWrites());
+
+        HaarTransform expected = new HaarTransform();
+        expected.loadImage(image, "png");
+        ArrayList<BufferedImage> expectedImages = expected.generateTransformImages(false);
+        for (int stageIndex = 0; stageIndex < numOfStages; stageIndex++) {
+            HaarTransformTest.assertImageEquals("stage " + stageIndex, expectedImages.get(2 * stageIndex),
+                    ImageIO.read(stageFileWriter.getStageFile("Transform", stageIndex, false)));
+            HaarTransformTest.assertImageEquals("expansion " + stageIndex, expectedImages.get((2 * stageIndex) + 1),
+                    ImageIO.read(stageFileWriter.getStageFile("Transform", stageIndex, true)));
+        }
+    }
+
+    public void testFailedFilesAreReportedByAwaitWrites() throws Throwable {
+        stageFileWriter = new StageFileWriter("png", StageFileWriter.DEFAULT_COMPRESSION_QUALITY, 1, 1);
+        BufferedImage image = HaarTransformTest.createRandomImage(4, 4, BufferedImage.TYPE_BYTE_GRAY, 1);
+        assertTrue(stageFileWriter.write(new File(new File("missingDirectory"), "stage.png"), image));
+        try {
+            stageFileWriter.awaitWrites();
+            fail("A file in a missing directory cannot be written");
+        } catch (TransformException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("Could not write 1 files"));
+        }
+        //Failures are reported once
+        assertEquals(0, stageFileWriter.awaitWrites());
+    }
+}
@@ -0,0 +1,22 @@
+package HaarTransform;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event emitted while HaarTransform writes the image files for all
+ * stages of a transform or recover run.
+ */
+@Name("HaarTransform.StageFiles")
+@Label("Haar Stage Files")
+@Category({"HaarTransform", "I/O"})
+@Description("Writing of the image files for every stage of a run")
+final class StageFilesEvent extends Event {
+    @Label("Process")
+    String process;
+
+    @Label("File Extension")
+    String fileExt;
+
+    @Label("Files Written")
+    int filesWritten;
+}
@@ -0,0 +1,284 @@
+package HaarTransform;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The stages of a transform or recover generated by HaarTransform, kept as the samples after
+ * the last pass plus, for every pass, the samples of the region the pass was about to change.
+ * Passes only change the sub-image of their level, so the regions of all passes together take
+ * a small multiple of the memory of the image, where rendering two images per stage grows with
+ * the number of levels. A pass changing no more than a region already saved for the same stage,
+ * such as the column pass following the row pass of a non-standard level, saves nothing.
+ *
+ * <p>Stages are only ever rendered, so the coefficients are kept rounded to the int samples the
+ * rendered images show, laid out as HaarTransform.roundSamples lays them out.
+ *
+ * <p>Any stage is rebuilt on demand by restoring the saved regions, last pass first, on top of the
+ * samples after the last pass. The most recently rebuilt stage is kept, so browsing towards
+ * earlier stages only restores the regions in between.
+ *
+ * <p>Stages can be rendered from another thread while the history is still being generated, as
+ * long as the samples of the last recorded stage are kept up to date with finish.
+ */
+public final class StageHistory {
+    private final HaarTransform renderer;
+    private final List<RegionSnapshot> passRegions = new ArrayList<>();
+    private final List<Stage> stages = new ArrayList<>();
+    private int[] lastSamples;
+    private int[] cachedSamples;
+    private int cachedStageIndex = -1;
+
+    /**
+     * @param renderer A transformer for the image of the history, holding no coefficients of its own
+     */
+    StageHistory(HaarTransform renderer){
+        this.renderer = renderer;
+    }
+
+    /**
+     * Saves the columns [0, subImageMaxColumn) of the rows [0, subImageMaxRow) of the array before
+     * a pass changes them, unless a region saved for the current stage already covers them
+     */
+    synchronized void beforePass(double[][][] pixelArray, int subImageMaxColumn, int subImageMaxRow){
+        int firstRegionOfStage = stages.isEmpty() ? 0 : stages.get(stages.size() - 1).numOfPassRegions;
+        for (int regionIndex = firstRegionOfStage; regionIndex < passRegions.size(); regionIndex++) {
+            if (passRegions.get(regionIndex).covers(subImageMaxColumn, subImageMaxRow)) {
+                return;
+            }
+        }
+        passRegions.add(new RegionSnapshot(pixelArray, subImageMaxColumn, subImageMaxRow));
+    }
+
+    /**
+     * Records the coefficients as they are now as the next stage
+     * @param rowTransformsDone The number of row levels of the stage, for its pixel expansion
+     * @param columnTransformsDone The number of column levels of the stage, for its pixel expansion
+     */
+    synchronized void addStage(int rowTransformsDone, int columnTransformsDone){
+        stages.add(new Stage(passRegions.size(), rowTransformsDone, columnTransformsDone));
+    }
+
+    /**
+     * Keeps the samples as they are at the last recorded stage, which every stage is rebuilt from.
+     * Called once all passes are done, or after every stage while the history is shown as it grows.
+     */
+    synchronized void finish(double[][][] pixelArray){
+        lastSamples = renderer.roundSamples(pixelArray);
+        cachedSamples = null;
+        cachedStageIndex = -1;
+    }
+
+    public int getNumOfColumns(){
+        return renderer.numOfColumns;
+    }
+
+    public int getNumOfRows(){
+        return renderer.numOfRows;
+    }
+
+    public synchronized int getNumOfStages(){
+        return stages.size();
+    }
+
+    /**
+     * @return The number of row levels in effect at a stage
+     */
+    public synchronized int getRowTransformsDone(int stageIndex){
+        return getStage(stageIndex).rowTransformsDone;
+    }
+
+    /**
+     * @return The number of column levels in effect at a stage
+     */
+    public synchronized int getColumnTransformsDone(int stageIndex){
+        return getStage(stageIndex).columnTransformsDone;
+    }
+
+    /**
+     * @return A copy of the rounded coefficients of a stage, laid out row by row with the bands of
+     * a pixel next to each other
+     */
+    public synchronized int[] getStageSamples(int stageIndex){
+        return rebuildStage(stageIndex).clone();
+    }
+
+    /**
+     * @return The coefficients of a stage rendered as an image
+     */
+    public synchronized BufferedImage getStageImage(int stageIndex){
+        return renderer.renderStageImage(rebuildStage(stageIndex));
+    }
+
+    /**
+     * @return The averaged sub-image of a stage expanded to the size of the image
+     */
+    public synchronized BufferedImage getPixelExpansionImage(int stageIndex){
+        Stage stage = stages.get(stageIndex);
+        return renderer.renderPixelExpansionImage(rebuildStage(stageIndex), stage.rowTransformsDone,
+                stage.columnTransformsDone);
+    }
+
+    /**
+     * Renders samples taken with getStageSamples without holding the history, so a stage can be
+     * rendered on another thread while passes are recorded or other stages are shown
+     */
+    BufferedImage renderStageImage(int[] stageSamples){
+        return renderer.renderStageImage(stageSamples);
+    }
+
+    /**
+     * Renders the pixel expansion of samples taken with getStageSamples without holding the history
+     */
+    BufferedImage renderPixelExpansionImage(int[] stageSamples, int rowTransformsDone, int columnTransformsDone){
+        return renderer.renderPixelExpansionImage(stageSamples, rowTransformsDone, columnTransformsDone);
+    }
+
+    /**
+     * Renders a region of samples taken with getStageSamples without holding the history
+     */
+    BufferedImage renderStageRegionImage(int[] stageSamples, Rectangle region, int subsampling){
+        return renderer.renderStageRegion(stageSamples, clipRegion(region, subsampling), subsampling, 0, 0);
+    }
+
+    /**
+     * Renders only a region of a stage, for viewers showing a part of a large image at a time
+     * @param region The pixels of the image to render. Clipped to the image bounds.
+     * @param subsampling Keeps every subsampling-th column and row of the region, to show it zoomed out
+     * @return The region of the stage, ceil(width / subsampling) by ceil(height / subsampling) pixels
+     */
+    public synchronized BufferedImage getStageRegionImage(int stageIndex, Rectangle region, int subsampling){
+        return renderer.renderStageRegion(rebuildStage(stageIndex), clipRegion(region, subsampling), subsampling, 0, 0);
+    }
+
+    /**
+     * Renders only a region of the pixel expansion of a stage, as getStageRegionImage renders the stage
+     */
+    public synchronized BufferedImage getPixelExpansionRegionImage(int stageIndex, Rectangle region, int subsampling){
+        Rectangle clippedRegion = clipRegion(region, subsampling);
+        Stage stage = stages.get(stageIndex);
+        return renderer.renderStageRegion(rebuildStage(stageIndex), clippedRegion, subsampling,
+                stage.rowTransformsDone, stage.columnTransformsDone);
+    }
+
+    private Rectangle clipRegion(Rectangle region, int subsampling){
+        if (subsampling < 1) {
+            throw new IllegalArgumentException("subsampling must be at least 1: " + subsampling);
+        }
+        Rectangle imageBounds = new Rectangle(renderer.numOfColumns, renderer.numOfRows);
+        Rectangle clippedRegion = imageBounds.intersection(region);
+        if (clippedRegion.isEmpty()) {
+            throw new IllegalArgumentException("region must overlap the " + imageBounds.width + "x"
+                    + imageBounds.height + " image: " + region);
+        }
+        return clippedRegion;
+    }
+
+    /**
+     * Renders both images of every stage, in the order generateTransformImages and
+     * generateRecoverImages have always returned them, rebuilding the stages last to first
+     */
+    synchronized ArrayList<BufferedImage> renderAllStages(){
+        BufferedImage[] stageImages = new BufferedImage[2 * stages.size()];
+        for (int stageIndex = stages.size() - 1; stageIndex >= 0; stageIndex--) {
+            stageImages[2 * stageIndex] = getStageImage(stageIndex);
+            stageImages[(2 * stageIndex) + 1] = getPixelExpansionImage(stageIndex);
+        }
+        ArrayList<BufferedImage> resultImages = new ArrayList<>(stageImages.length);
+        for (BufferedImage stageImage : stageImages) {
+            resultImages.add(stageImage);
+        }
+        return resultImages;
+    }
+
+    /**
+     * @return The number of bytes of samples held by the history
+     */
+    public synchronized long getRetainedBytes(){
+        long numOfSamples = lastSamples.length + ((cachedSamples == null) ? 0 : cachedSamples.length);
+        for (RegionSnapshot passRegion : passRegions) {
+            numOfSamples += passRegion.samples.length;
+        }
+        return numOfSamples * Integer.BYTES;
+    }
+
+    private Stage getStage(int stageIndex){
+        if (stageIndex < 0 || stageIndex >= stages.size()) {
+            throw new IndexOutOfBoundsException("stageIndex must be in [0, " + stages.size() + "): " + stageIndex);
+        }
+        return stages.get(stageIndex);
+    }
+
+    private int[] rebuildStage(int stageIndex){
+        getStage(stageIndex);
+        if (cachedStageIndex < stageIndex) {
+            //Regions are only ever restored backwards, so later stages start over from the last one
+            cachedSamples = lastSamples.clone();
+            cachedStageIndex = stages.size() - 1;
+        }
+        int numOfColumns = renderer.numOfColumns;
+        int firstRegionToKeep = stages.get(stageIndex).numOfPassRegions;
+        for (int regionIndex = stages.get(cachedStageIndex).numOfPassRegions - 1; regionIndex >= firstRegionToKeep;
+             regionIndex--) {
+            passRegions.get(regionIndex).restore(cachedSamples, numOfColumns);
+        }
+        cachedStageIndex = stageIndex;
+        return cachedSamples;
+    }
+
+    private static class Stage {
+        final int numOfPassRegions;
+        final int rowTransformsDone;
+        final int columnTransformsDone;
+
+        Stage(int numOfPassRegions, int rowTransformsDone, int columnTransformsDone){
+            this.numOfPassRegions = numOfPassRegions;
+            this.rowTransformsDone = rowTransformsDone;
+            this.columnTransformsDone = columnTransformsDone;
+        }
+    }
+
+    /**
+     * The rounded samples of the top left region of an array, laid out row by row with the bands
+     * of a pixel next to each other
+     */
+    private static class RegionSnapshot {
+        final int numOfColumns;
+        final int numOfRows;
+        final int numOfBands;
+        final int[] samples;
+
+        RegionSnapshot(double[][][] pixelArray, int numOfColumns, int numOfRows){
+            this.numOfColumns = numOfColumns;
+            this.numOfRows = numOfRows;
+            this.numOfBands = pixelArray[0][0].length;
+            this.samples = new int[numOfColumns * numOfRows * numOfBands];
+            for (int currColumn = 0; currColumn < numOfColumns; currColumn++) {
+                for (int currRow = 0; currRow < numOfRows; currRow++) {
+                    double[] pixelBands = pixelArray[currColumn][currRow];
+                    int sampleOffset = ((currRow * numOfColumns) + currColumn) * numOfBands;
+                    for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                        samples[sampleOffset + bandIndex] = (int)Math.round(pixelBands[bandIndex]);
+                    }
+                }
+            }
+        }
+
+        boolean covers(int otherColumns, int otherRows){
+            return otherColumns <= numOfColumns && otherRows <= numOfRows;
+        }
+
+        /**
+         * Copies the region back into the samples of a stage of an image numOfImageColumns wide
+         */
+        void restore(int[] stageSamples, int numOfImageColumns){
+            int regionRowLength = numOfColumns * numOfBands;
+            for (int currRow = 0; currRow < numOfRows; currRow++) {
+                System.arraycopy(samples, currRow * regionRowLength, stageSamples,
+                        currRow * numOfImageColumns * numOfBands, regionRowLength);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package HaarTransform;
+
+/**
+ * Notified by HaarTransform each time a stage of a transform or recover has been recorded in its
+ * StageHistory, so the stage can be shown before the remaining passes are done. Called on the
+ * thread performing the passes.
+ */
+public interface StageListener {
+
+    /**
+     * @param history The history being generated, which can already render every stage up to stageIndex
+     * @param stageIndex The index of the stage just recorded
+     */
+    void stageRecorded(StageHistory history, int stageIndex);
+}
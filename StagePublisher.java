@@ -0,0 +1,70 @@
+package HaarTransform;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import javax.swing.*;
+
+/**
+ * <p>Publishes the stages of a transform or recover to reactive subscribers as each stage is
+ * recorded, so an encoder, uploader or analyzer can work on one stage while the passes of the next
+ * are being performed, instead of waiting for every stage of generateTransformImages.
+ *
+ * <p>Stages are delivered to each subscriber on the executor of the publisher, in order. A
+ * subscriber is sent no more stages than it has requested, and once a subscriber has fallen
+ * maxBufferCapacity stages behind, the passes wait for it before publishing the next stage.
+ *
+ * <p>Like SubmissionPublisher, the stages are only sent to the subscribers subscribed by the time
+ * they are published, so subscribe before calling generate. Subscribers are completed once the
+ * last stage has been published, or given the exception the passes failed with.
+ */
+public final class StagePublisher implements Flow.Publisher<StageResult> {
+    private final HaarTransform transformer;
+    private final boolean recover;
+    private final SubmissionPublisher<StageResult> publisher;
+    private boolean generated;
+
+    StagePublisher(HaarTransform transformer, boolean recover, Executor executor, int maxBufferCapacity){
+        if (maxBufferCapacity < 1) {
+            throw new IllegalArgumentException("maxBufferCapacity must be at least 1: " + maxBufferCapacity);
+        }
+        this.transformer = transformer;
+        this.recover = recover;
+        this.publisher = new SubmissionPublisher<>(executor, maxBufferCapacity);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super StageResult> subscriber){
+        publisher.subscribe(subscriber);
+    }
+
+    public int getNumberOfSubscribers(){
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * Performs the passes on the calling thread, publishing every stage as soon as it is recorded
+     * @param worker Checked for cancellation between passes and given the progress, or null
+     * @param progressBar Given the progress, or null
+     * @return The history of every stage published
+     */
+    public StageHistory generate(SwingWorker<?, ?> worker, JProgressBar progressBar) throws TransformException {
+        synchronized (this) {
+            if (generated) {
+                throw new IllegalStateException("StagePublisher: The stages have already been generated");
+            }
+            generated = true;
+        }
+        //Waits while any subscriber has maxBufferCapacity stages it has not taken yet
+        StageListener stageListener = (history, stageIndex) -> publisher.submit(new StageResult(history, stageIndex));
+        try {
+            StageHistory history = recover ? transformer.generateRecoverHistory(worker, progressBar, stageListener)
+                                           : transformer.generateTransformHistory(worker, progressBar, stageListener);
+            publisher.close();
+            return history;
+        } catch (Throwable ex) {
+            publisher.closeExceptionally(ex);
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class StagePublisherTest extends TestCase {
+
+    public void testConcurrentPublishersRenderTheirOwnStages() throws Throwable {
+        BufferedImage[] images = {
+                HaarTransformTest.createRandomImage(21, 13, BufferedImage.TYPE_3BYTE_BGR, 1),
+                HaarTransformTest.createRandomImage(21, 13, BufferedImage.TYPE_3BYTE_BGR, 2),
+                HaarTransformTest.createRandomImage(21, 13, BufferedImage.TYPE_3BYTE_BGR, 3)};
+        ExecutorService executor = Executors.newFixedThreadPool(images.length);
+        ExecutorService passThreads = Executors.newFixedThreadPool(images.length);
+        try {
+            List<RenderingSubscriber> subscribers = new ArrayList<>();
+            for (BufferedImage image : images) {
+                HaarTransform transformer = new HaarTransform();
+                transformer.loadImage(image, "png");
+                StagePublisher publisher = transformer.publishTransformStages(executor, 2);
+                RenderingSubscriber subscriber = new RenderingSubscriber();
+                publisher.subscribe(subscriber);
+                subscribers.add(subscriber);
+                passThreads.execute(() -> {
+                    try {
+                        publisher.generate(null, null);
+                    } catch (TransformException ex) {
+                        //Handed to the subscriber by the publisher
+                    }
+                });
+            }
+
+            for (int imageIndex = 0; imageIndex < images.length; imageIndex++) {
+                RenderingSubscriber subscriber = subscribers.get(imageIndex);
+                assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+                assertNull(subscriber.failure);
+
+                HaarTransform expected = new HaarTransform();
+                expected.loadImage(images[imageIndex], "png");
+                ArrayList<BufferedImage> expectedImages = expected.generateTransformImages(false);
+                assertEquals(expectedImages.size() / 2, subscriber.stageImages.size());
+                for (int stageIndex = 0; stageIndex < subscriber.stageImages.size(); stageIndex++) {
+                    HaarTransformTest.assertImageEquals("image " + imageIndex + " stage " + stageIndex,
+                            expectedImages.get(2 * stageIndex), subscriber.stageImages.get(stageIndex));
+                    HaarTransformTest.assertImageEquals("image " + imageIndex + " expansion " + stageIndex,
+                            expectedImages.get((2 * stageIndex) + 1), subscriber.expansionImages.get(stageIndex));
+                }
+            }
+        } finally {
+            executor.shutdown();
+            passThreads.shutdown();
+        }
+        //Stages are re-encoded in memory, leaving no file behind
+        assertFalse(new File("Temp.png").exists());
+    }
+
+    public void testPassesGoOnWhileASubscriberRenders() throws Throwable {
+        BufferedImage image = HaarTransformTest.createRandomImage(37, 29, BufferedImage.TYPE_3BYTE_BGR, 47);
+        BlockingWriterSpi writerSpi = new BlockingWriterSpi();
+        IIORegistry.getDefaultInstance().registerServiceProvider(writerSpi);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ExecutorService passThread = Executors.newSingleThreadExecutor();
+        try {
+            //Every stage is rendered through a writer that holds the subscriber up until it is let go
+            HaarTransform transformer = new HaarTransform();
+            transformer.loadImage(image, BlockingWriterSpi.FORMAT_NAME);
+            StagePublisher publisher = transformer.publishTransformStages(executor, 256);
+            RenderingSubscriber subscriber = new RenderingSubscriber();
+            publisher.subscribe(subscriber);
+            CompletableFuture<StageHistory> generated = new CompletableFuture<>();
+            passThread.execute(() -> {
+                try {
+                    generated.complete(publisher.generate(null, null));
+                } catch (TransformException ex) {
+                    generated.completeExceptionally(ex);
+                }
+            });
+
+            assertTrue(writerSpi.writing.await(30, TimeUnit.SECONDS));
+            StageHistory history = generated.get(30, TimeUnit.SECONDS);
+            assertEquals(1, subscriber.completed.getCount());
+            writerSpi.released.countDown();
+
+            assertTrue(subscriber.completed.await(30, TimeUnit.SECONDS));
+            assertNull(subscriber.failure);
+            HaarTransform expected = new HaarTransform();
+            expected.loadImage(image, "png");
+            ArrayList<BufferedImage> expectedImages = expected.generateTransformImages(false);
+            assertEquals(history.getNumOfStages(), subscriber.stageImages.size());
+            for (int stageIndex = 0; stageIndex < history.getNumOfStages(); stageIndex++) {
+                HaarTransformTest.assertImageEquals("stage " + stageIndex, expectedImages.get(2 * stageIndex),
+                        subscriber.stageImages.get(stageIndex));
+                HaarTransformTest.assertImageEquals("expansion " + stageIndex, expectedImages.get((2 * stageIndex) + 1),
+                        subscriber.expansionImages.get(stageIndex));
+            }
+        } finally {
+            writerSpi.released.countDown();
+            IIORegistry.getDefaultInstance().deregisterServiceProvider(writerSpi);
+            executor.shutdown();
+            passThread.shutdown();
+        }
+    }
+
+    public void testGenerateRunsOnce() throws Throwable {
+        HaarTransform transformer = new HaarTransform();
+        transformer.loadImage(HaarTransformTest.createRandomImage(4, 4, BufferedImage.TYPE_BYTE_GRAY, 1), "png");
+        StagePublisher publisher = transformer.publishTransformStages(Runnable::run, 1);
+        publisher.generate(null, null);
+        try {
+            publisher.generate(null, null);
+            fail("A publisher performs its passes once");
+        } catch (IllegalStateException ex) {
+            //Expected
+        }
+    }
+
+    /**
+     * Writes nothing, once it is let go, for a format no reader decodes, leaving the images as rendered
+     */
+    private static class BlockingWriterSpi extends ImageWriterSpi {
+        static final String FORMAT_NAME = "stagepublishertest";
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+
+        BlockingWriterSpi(){
+            super("HaarTransform", "1.0", new String[]{FORMAT_NAME}, new String[]{FORMAT_NAME}, null,
+                    ImageWriter.class.getName(), new Class<?>[]{ImageOutputStream.class}, null,
+                    false, null, null, null, null, false, null, null, null, null);
+        }
+
+        @Override
+        public boolean canEncodeImage(ImageTypeSpecifier type){
+            return true;
+        }
+
+        @Override
+        public ImageWriter createWriterInstance(Object extension){
+            return new ImageWriter(this) {
+                @Override
+                public void write(IIOMetadata streamMetadata, IIOImage image, ImageWriteParam param) throws IOException {
+                    writing.countDown();
+                    try {
+                        released.await();
+                    } catch (InterruptedException ex) {
+                        throw new IOException(ex.getMessage());
+                    }
+                }
+
+                @Override
+                public IIOMetadata getDefaultStreamMetadata(ImageWriteParam param){
+                    return null;
+                }
+
+                @Override
+                public IIOMetadata getDefaultImageMetadata(ImageTypeSpecifier imageType, ImageWriteParam param){
+                    return null;
+                }
+
+                @Override
+                public IIOMetadata convertStreamMetadata(IIOMetadata inData, ImageWriteParam param){
+                    return null;
+                }
+
+                @Override
+                public IIOMetadata convertImageMetadata(IIOMetadata inData, ImageTypeSpecifier imageType,
+                                                        ImageWriteParam param){
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        public String getDescription(Locale locale){
+            return "Blocks until released";
+        }
+    }
+
+    /**
+     * Renders both images of every stage on the thread delivering it, a stage at a time
+     */
+    private static class RenderingSubscriber implements Flow.Subscriber<StageResult> {
+        final List<BufferedImage> stageImages = new ArrayList<>();
+        final List<BufferedImage> expansionImages = new ArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Throwable failure;
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription){
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(StageResult stage){
+            stageImages.add(stage.getStageImage());
+            expansionImages.add(stage.getPixelExpansionImage());
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable){
+            failure = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete(){
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package HaarTransform;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event emitted while HaarTransform renders the coefficient array,
+ * or its pixel expansion, into a BufferedImage for one stage.
+ */
+@Name("HaarTransform.StageRender")
+@Label("Haar Stage Render")
+@Category({"HaarTransform", "Rendering"})
+@Description("Rendering of a transform or recover stage into an image")
+final class StageRenderEvent extends Event {
+    @Label("Image Kind")
+    String imageKind;
+
+    @Label("Row Transforms Done")
+    int rowTransformsDone;
+
+    @Label("Column Transforms Done")
+    int columnTransformsDone;
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Bands")
+    int bands;
+
+    @Label("Bytes Touched")
+    @DataAmount
+    long bytesTouched;
+}
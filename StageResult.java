@@ -0,0 +1,82 @@
+package HaarTransform;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>A stage of a transform or recover as published by a StagePublisher: the levels in effect,
+ * the extent of the averaged sub-image, and views of the coefficients as they were at the stage.
+ *
+ * <p>The views are rendered from the StageHistory being generated when they are asked for, so a
+ * consumer only pays for the views it uses, and can still ask for them once later stages have
+ * been recorded. Only copying the samples of the stage holds up the passes, not rendering them.
+ */
+public final class StageResult {
+    private final StageHistory history;
+    private final int stageIndex;
+    private final int rowTransformsDone;
+    private final int columnTransformsDone;
+
+    StageResult(StageHistory history, int stageIndex){
+        this.history = history;
+        this.stageIndex = stageIndex;
+        this.rowTransformsDone = history.getRowTransformsDone(stageIndex);
+        this.columnTransformsDone = history.getColumnTransformsDone(stageIndex);
+    }
+
+    public StageHistory getHistory(){
+        return history;
+    }
+
+    public int getStageIndex(){
+        return stageIndex;
+    }
+
+    /**
+     * @return The number of row levels in effect at the stage
+     */
+    public int getRowTransformsDone(){
+        return rowTransformsDone;
+    }
+
+    /**
+     * @return The number of column levels in effect at the stage
+     */
+    public int getColumnTransformsDone(){
+        return columnTransformsDone;
+    }
+
+    /**
+     * @return The number of columns of the averaged sub-image at the stage, starting at column 0
+     */
+    public int getAveragedColumns(){
+        return Math.max(1, history.getNumOfColumns() >> rowTransformsDone);
+    }
+
+    /**
+     * @return The number of rows of the averaged sub-image at the stage, starting at row 0
+     */
+    public int getAveragedRows(){
+        return Math.max(1, history.getNumOfRows() >> columnTransformsDone);
+    }
+
+    /**
+     * @return A copy of the rounded coefficients of the stage, laid out row by row with the bands of
+     * a pixel next to each other
+     */
+    public int[] getSamples(){
+        return history.getStageSamples(stageIndex);
+    }
+
+    public BufferedImage getStageImage(){
+        return history.renderStageImage(getSamples());
+    }
+
+    public BufferedImage getPixelExpansionImage(){
+        return history.renderPixelExpansionImage(getSamples(), rowTransformsDone, columnTransformsDone);
+    }
+
+    public BufferedImage getStageRegionImage(Rectangle region, int subsampling){
+        return history.renderStageRegionImage(getSamples(), region, subsampling);
+    }
+}
@@ -0,0 +1,114 @@
+package HaarTransform;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+
+/**
+ * <p>Shows a stage of a StageHistory by rendering only the part of it that is being painted, so
+ * a stage inside a scroll pane never exists as a full image and scrolling only renders the pixels
+ * scrolled into view. Other images, such as the loaded image, are shown as icons.
+ *
+ * <p>Holding control while turning the mouse wheel zooms out in powers of two, rendering every
+ * subsampling-th column and row of the stage so zoomed out views cost no more than the pixels
+ * on screen. Without control the wheel scrolls the enclosing scroll pane as usual.
+ */
+public class StageViewer extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_ZOOM_OUT_LEVEL = 8;
+    private Icon icon;
+    private StageHistory history;
+    private int stageIndex;
+    private boolean pixelExpansion;
+    private int numOfColumns;
+    private int numOfRows;
+    private int zoomOutLevel;
+
+    public StageViewer(Icon icon){
+        setIcon(icon);
+        setOpaque(false);
+        addMouseWheelListener(this::zoomOrScroll);
+    }
+
+    public void setIcon(Icon icon){
+        this.icon = icon;
+        this.history = null;
+        setImageSize(icon.getIconWidth(), icon.getIconHeight());
+    }
+
+    /**
+     * Shows a stage of a history, or its pixel expansion, in place of the current image
+     */
+    public void showStage(StageHistory history, int stageIndex, boolean pixelExpansion){
+        this.icon = null;
+        this.history = history;
+        this.stageIndex = stageIndex;
+        this.pixelExpansion = pixelExpansion;
+        setImageSize(history.getNumOfColumns(), history.getNumOfRows());
+    }
+
+    private void setImageSize(int numOfColumns, int numOfRows){
+        this.numOfColumns = numOfColumns;
+        this.numOfRows = numOfRows;
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @return The number of image pixels along each side of a pixel on screen
+     */
+    public int getSubsampling(){
+        return (history == null) ? 1 : 1 << zoomOutLevel;
+    }
+
+    public void setZoomOutLevel(int zoomOutLevel){
+        if (zoomOutLevel < 0 || zoomOutLevel > MAX_ZOOM_OUT_LEVEL) {
+            throw new IllegalArgumentException("zoomOutLevel must be in [0, " + MAX_ZOOM_OUT_LEVEL + "]: " + zoomOutLevel);
+        }
+        this.zoomOutLevel = zoomOutLevel;
+        revalidate();
+        repaint();
+    }
+
+    private void zoomOrScroll(MouseWheelEvent e){
+        if (e.isControlDown() && history != null) {
+            int newZoomOutLevel = Math.max(0, Math.min(MAX_ZOOM_OUT_LEVEL, zoomOutLevel + e.getWheelRotation()));
+            if (newZoomOutLevel != zoomOutLevel) {
+                setZoomOutLevel(newZoomOutLevel);
+            }
+        } else if (getParent() != null) {
+            //A component listening to the wheel keeps it from the scroll pane, so hand it on
+            getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize(){
+        int subsampling = getSubsampling();
+        return new Dimension((numOfColumns + subsampling - 1) / subsampling, (numOfRows + subsampling - 1) / subsampling);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g){
+        Dimension imageSize = getPreferredSize();
+        //Centered in whatever space the layout gives, as a JLabel centers its icon
+        int imageX = Math.max(0, (getWidth() - imageSize.width) / 2);
+        int imageY = Math.max(0, (getHeight() - imageSize.height) / 2);
+        if (icon != null) {
+            icon.paintIcon(this, g, imageX, imageY);
+            return;
+        }
+
+        Rectangle visibleImage = g.getClipBounds(new Rectangle(0, 0, getWidth(), getHeight()))
+                .intersection(new Rectangle(imageX, imageY, imageSize.width, imageSize.height));
+        if (visibleImage.isEmpty()) {
+            return;
+        }
+        int subsampling = getSubsampling();
+        Rectangle region = new Rectangle((visibleImage.x - imageX) * subsampling, (visibleImage.y - imageY) * subsampling,
+                visibleImage.width * subsampling, visibleImage.height * subsampling);
+        Image regionImage = pixelExpansion ? history.getPixelExpansionRegionImage(stageIndex, region, subsampling)
+                : history.getStageRegionImage(stageIndex, region, subsampling);
+        g.drawImage(regionImage, visibleImage.x, visibleImage.y, null);
+    }
+}
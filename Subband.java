@@ -0,0 +1,82 @@
+package HaarTransform;
+
+/**
+ * <p>A rectangular region of the coefficient array holding the coefficients of one subband of a
+ * fully transformed image, such as the detail coefficients of one level or the final averaged
+ * (LL) sub-image. Leftover pixels belong to the detail subband they are stored in.
+ */
+public final class Subband {
+    private final String name;
+    private final int level;
+    private final int startColumn;
+    private final int startRow;
+    private final int numOfColumns;
+    private final int numOfRows;
+    private final boolean approximation;
+
+    Subband(String name, int level, int startColumn, int startRow, int numOfColumns, int numOfRows,
+            boolean approximation){
+        this.name = name;
+        this.level = level;
+        this.startColumn = startColumn;
+        this.startRow = startRow;
+        this.numOfColumns = numOfColumns;
+        this.numOfRows = numOfRows;
+        this.approximation = approximation;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @return The level that produced the subband, starting at 1 for the first level
+     */
+    public int getLevel(){
+        return level;
+    }
+
+    public int getStartColumn(){
+        return startColumn;
+    }
+
+    public int getStartRow(){
+        return startRow;
+    }
+
+    public int getNumOfColumns(){
+        return numOfColumns;
+    }
+
+    public int getNumOfRows(){
+        return numOfRows;
+    }
+
+    public int getEndColumn(){
+        return startColumn + numOfColumns;
+    }
+
+    public int getEndRow(){
+        return startRow + numOfRows;
+    }
+
+    /**
+     * @return true for the averaged sub-image left after the last level, false for detail subbands
+     */
+    public boolean isApproximation(){
+        return approximation;
+    }
+
+    public long getNumOfCoefficients(int numOfBands){
+        return (long)numOfColumns * numOfRows * numOfBands;
+    }
+
+    public boolean isEmpty(){
+        return numOfColumns == 0 || numOfRows == 0;
+    }
+
+    @Override
+    public String toString(){
+        return name + " [" + startColumn + ", " + startRow + ", " + numOfColumns + "x" + numOfRows + "]";
+    }
+}
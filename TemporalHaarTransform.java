@@ -0,0 +1,163 @@
+package HaarTransform;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Extends the two dimensional Haar transformation of HaarTransform with a third, temporal
+ * axis for sequences of frames such as video. Frames are split into groups of a fixed
+ * length and each group undergoes the usual row and column transforms on every frame
+ * followed by Haar transforms along the time axis, pairing up the same coefficient of
+ * neighbouring frames. Frames that barely change from one to the next leave almost nothing
+ * but zeros in the temporal differences.
+ *
+ * <p>Groups whose length is not a power of two, including a shorter last group of a
+ * sequence, are handled with the same leftover encoding that HaarTransform uses for rows
+ * and columns.
+ *
+ * <p>The frames of a group are transformed and recovered in parallel, and the temporal
+ * passes are split across the columns of the frames.
+ */
+public class TemporalHaarTransform {
+    private final HaarFilter filter = new HaarFilter();
+    private final int groupLength;
+
+    /**
+     * @param groupLength The number of frames that are transformed together along the time axis
+     */
+    public TemporalHaarTransform(int groupLength){
+        if (groupLength < 1) {
+            throw new IllegalArgumentException("groupLength must be at least 1: " + groupLength);
+        }
+        this.groupLength = groupLength;
+    }
+
+    public int getGroupLength(){
+        return groupLength;
+    }
+
+    /**
+     * Transforms every group of frames of the sequence. Each frame must already have its image
+     * loaded and the last group may be shorter than the group length.
+     * @param frames The frames of the sequence in display order
+     */
+    public void transformSequence(List<HaarTransform> frames) throws TransformException {
+        for (List<HaarTransform> group : splitIntoGroups(frames)) {
+            transformGroup(group);
+        }
+    }
+
+    /**
+     * Recovers every group of frames of a sequence previously transformed by transformSequence
+     * @param frames The frames of the sequence in display order
+     */
+    public void recoverSequence(List<HaarTransform> frames) throws TransformException {
+        for (List<HaarTransform> group : splitIntoGroups(frames)) {
+            recoverGroup(group);
+        }
+    }
+
+    private List<List<HaarTransform>> splitIntoGroups(List<HaarTransform> frames){
+        List<List<HaarTransform>> groups = new ArrayList<>();
+        for (int groupStart = 0; groupStart < frames.size(); groupStart += groupLength) {
+            groups.add(frames.subList(groupStart, Math.min(groupStart + groupLength, frames.size())));
+        }
+        return groups;
+    }
+
+    /**
+     * Performs the row and column transforms on every frame of the group in parallel, then
+     * transforms the group along the time axis.
+     * @param group The frames of one group, all sharing the same dimensions
+     */
+    public void transformGroup(List<HaarTransform> group) throws TransformException {
+        checkGroup(group, "transformGroup");
+        group.parallelStream().forEach(HaarTransform::performAllTransforms);
+
+        double[][][][] framePixelArrays = getFramePixelArrays(group);
+        int temporalTransformsNeeded = calcTransformsNeeded(group.size());
+        for (int transformsDone = 0; transformsDone < temporalTransformsNeeded; transformsDone++) {
+            performTemporalTransform(framePixelArrays, transformsDone, false);
+        }
+    }
+
+    /**
+     * Recovers the group along the time axis, then performs the column and row recovers
+     * on every frame of the group in parallel.
+     * @param group The frames of one group previously transformed by transformGroup
+     */
+    public void recoverGroup(List<HaarTransform> group) throws TransformException {
+        checkGroup(group, "recoverGroup");
+        double[][][][] framePixelArrays = getFramePixelArrays(group);
+        int temporalTransformsNeeded = calcTransformsNeeded(group.size());
+        for (int recoversRemaining = temporalTransformsNeeded; recoversRemaining > 0; recoversRemaining--) {
+            performTemporalTransform(framePixelArrays, recoversRemaining - 1, true);
+        }
+
+        group.parallelStream().forEach(HaarTransform::performAllRecovers);
+    }
+
+    private void checkGroup(List<HaarTransform> group, String caller) throws TransformException {
+        if (group.isEmpty()) {
+            throw new TransformException(caller + ": A frame group must contain at least one frame");
+        }
+        HaarTransform firstFrame = group.get(0);
+        for (HaarTransform frame : group) {
+            if (frame.numOfColumns != firstFrame.numOfColumns || frame.numOfRows != firstFrame.numOfRows
+                    || frame.numOfBands != firstFrame.numOfBands) {
+                throw new TransformException(caller + ": All frames in a group must share the same dimensions");
+            }
+        }
+    }
+
+    private double[][][][] getFramePixelArrays(List<HaarTransform> group){
+        double[][][][] framePixelArrays = new double[group.size()][][][];
+        for (int frameIndex = 0; frameIndex < group.size(); frameIndex++) {
+            framePixelArrays[frameIndex] = group.get(frameIndex).getImagePixelArray();
+        }
+        return framePixelArrays;
+    }
+
+    private int calcTransformsNeeded(int size){
+        int numOfTransformsNeeded = 0;
+        while(size > 1) {
+            numOfTransformsNeeded++;
+            size/=2;
+        }
+        return numOfTransformsNeeded;
+    }
+
+    /**
+     * Performs a single temporal transform or recover step on the frames of a group, in place
+     * @param framePixelArrays The coefficient arrays of every frame in the group
+     * @param transformsDone The number of temporal transforms done before this step
+     * @param recover Flag indicating the step should undo the transform instead of performing it
+     */
+    private void performTemporalTransform(double[][][][] framePixelArrays, int transformsDone, boolean recover){
+        int numOfFrames = framePixelArrays.length;
+        int numOfColumns = framePixelArrays[0].length;
+        int numOfRows = framePixelArrays[0][0].length;
+        int numOfBands = framePixelArrays[0][0][0].length;
+        int subGroupLength = Math.max(1, numOfFrames / (int)Math.pow(2, transformsDone));
+
+        IntStream.range(0, numOfColumns).parallel().forEach(currColumn -> {
+            double[] frameLine = new double[numOfFrames];
+            double[] scratch = new double[numOfFrames];
+            for (int currRow = 0; currRow < numOfRows; currRow++) {
+                for (int bandIndex = 0; bandIndex < numOfBands; bandIndex++) {
+                    for (int frameIndex = 0; frameIndex < subGroupLength; frameIndex++) {
+                        frameLine[frameIndex] = framePixelArrays[frameIndex][currColumn][currRow][bandIndex];
+                    }
+                    if (recover) {
+                        filter.inverse(frameLine, scratch, subGroupLength);
+                    } else {
+                        filter.forward(frameLine, scratch, subGroupLength);
+                    }
+                    for (int frameIndex = 0; frameIndex < subGroupLength; frameIndex++) {
+                        framePixelArrays[frameIndex][currColumn][currRow][bandIndex] = frameLine[frameIndex];
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TemporalHaarTransformTest extends TestCase {
+
+    public void testSequenceWithAShortFinalGroupRecoversExactly() throws Throwable {
+        for (int[] sequence : new int[][]{{7, 3}, {8, 4}, {5, 8}, {1, 2}, {6, 1}}) {
+            int numOfFrames = sequence[0];
+            int groupLength = sequence[1];
+            List<BufferedImage> images = new ArrayList<>();
+            List<HaarTransform> frames = new ArrayList<>();
+            for (int frameIndex = 0; frameIndex < numOfFrames; frameIndex++) {
+                BufferedImage image = HaarTransformTest.createRandomImage(11, 6, BufferedImage.TYPE_3BYTE_BGR, frameIndex);
+                HaarTransform frame = new HaarTransform();
+                frame.loadImage(image, "png");
+                images.add(image);
+                frames.add(frame);
+            }
+
+            TemporalHaarTransform temporalTransform = new TemporalHaarTransform(groupLength);
+            temporalTransform.transformSequence(frames);
+            temporalTransform.recoverSequence(frames);
+            for (int frameIndex = 0; frameIndex < numOfFrames; frameIndex++) {
+                HaarTransformTest.assertPixelArrayEquals(numOfFrames + " frames in groups of " + groupLength
+                        + ", frame " + frameIndex, images.get(frameIndex).getRaster(),
+                        frames.get(frameIndex).getImagePixelArray(), 0.0);
+            }
+        }
+    }
+
+    public void testUnchangingFramesLeaveZeroTemporalDifferences() throws Throwable {
+        BufferedImage image = HaarTransformTest.createRandomImage(8, 8, BufferedImage.TYPE_BYTE_GRAY, 28);
+        List<HaarTransform> group = new ArrayList<>();
+        for (int frameIndex = 0; frameIndex < 4; frameIndex++) {
+            HaarTransform frame = new HaarTransform();
+            frame.loadImage(image, "png");
+            group.add(frame);
+        }
+        HaarTransform spatialOnly = new HaarTransform();
+        spatialOnly.loadImage(image, "png");
+        spatialOnly.performAllTransforms();
+
+        new TemporalHaarTransform(4).transformGroup(group);
+        //The temporal average of identical frames is the frame, every difference is zero
+        HaarTransformTest.assertCoefficientsEqual("average", spatialOnly.getImagePixelArray(),
+                group.get(0).getImagePixelArray());
+        double[][][] zeros = new double[8][8][1];
+        for (int frameIndex = 1; frameIndex < 4; frameIndex++) {
+            HaarTransformTest.assertCoefficientsEqual("difference " + frameIndex, zeros,
+                    group.get(frameIndex).getImagePixelArray());
+        }
+    }
+
+    public void testFramesOfAGroupMustShareTheirDimensions() throws Throwable {
+        List<HaarTransform> group = new ArrayList<>();
+        for (int columns : new int[]{8, 9}) {
+            HaarTransform frame = new HaarTransform();
+            frame.loadImage(HaarTransformTest.createRandomImage(columns, 8, BufferedImage.TYPE_BYTE_GRAY, 1), "png");
+            group.add(frame);
+        }
+        try {
+            new TemporalHaarTransform(2).transformGroup(group);
+            fail("Frames of different sizes cannot be paired");
+        } catch (TransformException ex) {
+            //Expected
+        }
+        try {
+            new TemporalHaarTransform(0);
+            fail("A group holds at least one frame");
+        } catch (IllegalArgumentException ex) {
+            //Expected
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package HaarTransform;
+
+/**
+ * How CoefficientThresholder treats the coefficients whose magnitude is above the threshold.
+ */
+public enum ThresholdMode {
+    /** Keeps coefficients above the threshold unchanged */
+    HARD,
+
+    /** Shrinks coefficients above the threshold towards zero by the threshold */
+    SOFT
+}
@@ -0,0 +1,224 @@
+package HaarTransform;
+
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.stream.IntStream;
+import javax.imageio.ImageIO;
+
+/**
+ * <p>Splits an image into fixed-size square tiles, in the manner of JPEG 2000, and transforms and
+ * recovers every tile independently of the others. Tiles at the right and bottom edges of the
+ * image are smaller when the image size is not a multiple of the tile size, and are handled by
+ * the usual leftover pixel encoding of HaarTransform.
+ *
+ * <p>Each tile keeps its own coefficient array, so the tiles of a pass are spread over the
+ * work-stealing common fork/join pool and a single tile can be decoded without touching the
+ * coefficients of any other tile.
+ */
+public class TiledHaarTransform {
+    public static final int DEFAULT_TILE_SIZE = 256;
+    private final int tileSize;
+    private WaveletFamily waveletFamily = WaveletFamily.HAAR;
+    private DecompositionMode decompositionMode = DecompositionMode.NON_STANDARD;
+    private HaarTransform[][] tiles;
+    private ColorModel colorModel;
+    private SampleModel sampleModel;
+    private int numOfColumns;
+    private int numOfRows;
+    private int numOfTileColumns;
+    private int numOfTileRows;
+
+    public TiledHaarTransform(){
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * @param tileSize The width and height of every tile but those at the right and bottom edges of the image
+     */
+    public TiledHaarTransform(int tileSize){
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("tileSize must be at least 1: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Selects the wavelet used by the tiles of subsequently loaded images
+     */
+    public void setWaveletFamily(WaveletFamily waveletFamily){
+        this.waveletFamily = waveletFamily;
+    }
+
+    public WaveletFamily getWaveletFamily(){
+        return waveletFamily;
+    }
+
+    /**
+     * Selects the decomposition used by the tiles of subsequently loaded images
+     */
+    public void setDecompositionMode(DecompositionMode decompositionMode){
+        this.decompositionMode = decompositionMode;
+    }
+
+    public DecompositionMode getDecompositionMode(){
+        return decompositionMode;
+    }
+
+    /**
+     * Reads an image file and splits it into tiles
+     * @param imageFile The image file to be split
+     */
+    public BufferedImage loadImage(File imageFile) throws TransformException {
+        try {
+            BufferedImage inputImage = ImageIO.read(imageFile);
+            if (inputImage == null){
+                throw new IOException();
+            }
+            String fileName = imageFile.getName();
+            loadImage(inputImage, fileName.substring(fileName.lastIndexOf('.') + 1));
+            return inputImage;
+        }
+        catch (IOException ex) {
+            throw new TransformException("TiledHaarTransform: Could not parse\n" + imageFile.getPath()
+                    + "\ninto an image.\n");
+        }
+    }
+
+    /**
+     * Splits an image that has already been decoded into tiles, each converted to its own coefficient array
+     * @param inputImage The image to be split
+     * @param imageFileExt The image format used when writing files for the stages of the tiles
+     */
+    public void loadImage(BufferedImage inputImage, String imageFileExt){
+        colorModel = inputImage.getColorModel();
+        sampleModel = inputImage.getSampleModel();
+        numOfColumns = inputImage.getWidth();
+        numOfRows = inputImage.getHeight();
+        numOfTileColumns = (numOfColumns + tileSize - 1) / tileSize;
+        numOfTileRows = (numOfRows + tileSize - 1) / tileSize;
+        HaarTransform[][] loadedTiles = new HaarTransform[numOfTileColumns][numOfTileRows];
+
+        tileIndices().forEach(tileIndex -> {
+            Rectangle bounds = getTileBounds(tileIndex % numOfTileColumns, tileIndex / numOfTileColumns);
+            HaarTransform tile = new HaarTransform();
+            tile.setWaveletFamily(waveletFamily);
+            tile.setDecompositionMode(decompositionMode);
+            tile.loadImage(copyTileImage(inputImage, bounds), imageFileExt);
+            loadedTiles[bounds.x / tileSize][bounds.y / tileSize] = tile;
+        });
+        tiles = loadedTiles;
+    }
+
+    /**
+     * Copies the pixels of a tile into an image of its own. Sub-images returned by getSubimage cannot
+     * be used, as copying them with getData copies the sample model, and with it the size, of the whole image.
+     */
+    private static BufferedImage copyTileImage(BufferedImage inputImage, Rectangle bounds){
+        WritableRaster inputRaster = inputImage.getRaster();
+        WritableRaster tileRaster = inputRaster.createCompatibleWritableRaster(bounds.width, bounds.height);
+        tileRaster.setRect(inputRaster.createChild(bounds.x, bounds.y, bounds.width, bounds.height, 0, 0, null));
+        return new BufferedImage(inputImage.getColorModel(), tileRaster, inputImage.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Transforms every level of every tile, in place
+     */
+    public void performAllTransforms(){
+        tileIndices().forEach(tileIndex -> tileAt(tileIndex).performAllTransforms());
+    }
+
+    /**
+     * Recovers every level of every tile, in place
+     */
+    public void performAllRecovers(){
+        tileIndices().forEach(tileIndex -> tileAt(tileIndex).performAllRecovers());
+    }
+
+    /**
+     * Recovers a single tile of the transformed image, leaving the coefficients of every tile untouched
+     * @param tileColumn The column of the tile, counted in tiles from the left edge of the image
+     * @param tileRow The row of the tile, counted in tiles from the top edge of the image
+     * @return The recovered pixels of the tile
+     */
+    public BufferedImage decodeTile(int tileColumn, int tileRow){
+        checkTileIndex(tileColumn, tileRow);
+        return recoverTile(tiles[tileColumn][tileRow]);
+    }
+
+    /**
+     * Recovers every tile of the transformed image in parallel and assembles the recovered image,
+     * leaving the coefficients of every tile untouched
+     * @return The fully recovered image
+     */
+    public BufferedImage generateRecoveredImage(){
+        WritableRaster outputRaster = Raster.createWritableRaster(
+                sampleModel.createCompatibleSampleModel(numOfColumns, numOfRows), null);
+
+        tileIndices().forEach(tileIndex -> {
+            Rectangle bounds = getTileBounds(tileIndex % numOfTileColumns, tileIndex / numOfTileColumns);
+            Raster tileRaster = recoverTile(tileAt(tileIndex)).getRaster();
+            //Tiles of packed rasters can share a data buffer element at their edges
+            synchronized (outputRaster) {
+                outputRaster.setRect(bounds.x, bounds.y, tileRaster);
+            }
+        });
+        return new BufferedImage(colorModel, outputRaster, false, null);
+    }
+
+    /**
+     * @return The pixels of the image covered by the tile
+     */
+    public Rectangle getTileBounds(int tileColumn, int tileRow){
+        checkTileIndex(tileColumn, tileRow);
+        int startColumn = tileColumn * tileSize;
+        int startRow = tileRow * tileSize;
+        return new Rectangle(startColumn, startRow, Math.min(tileSize, numOfColumns - startColumn),
+                Math.min(tileSize, numOfRows - startRow));
+    }
+
+    /**
+     * @return The coefficient array of a single tile, in the layout used by HaarTransform
+     */
+    double[][][] getTileCoefficients(int tileColumn, int tileRow){
+        checkTileIndex(tileColumn, tileRow);
+        return tiles[tileColumn][tileRow].getImagePixelArray();
+    }
+
+    public int getTileSize(){
+        return tileSize;
+    }
+
+    public int getNumOfTileColumns(){
+        return numOfTileColumns;
+    }
+
+    public int getNumOfTileRows(){
+        return numOfTileRows;
+    }
+
+    private BufferedImage recoverTile(HaarTransform tile){
+        try {
+            return tile.copy().generateRecoveredImage();
+        } catch (TransformException ex) {
+            //Cannot happen, there is no worker to cancel the recover
+            throw new IllegalStateException(ex.getMessage());
+        }
+    }
+
+    private HaarTransform tileAt(int tileIndex){
+        return tiles[tileIndex % numOfTileColumns][tileIndex / numOfTileColumns];
+    }
+
+    private IntStream tileIndices(){
+        return IntStream.range(0, numOfTileColumns * numOfTileRows).parallel();
+    }
+
+    private void checkTileIndex(int tileColumn, int tileRow){
+        if (tileColumn < 0 || tileColumn >= numOfTileColumns || tileRow < 0 || tileRow >= numOfTileRows) {
+            throw new IndexOutOfBoundsException("No tile at column " + tileColumn + ", row " + tileRow
+                    + " of a " + numOfTileColumns + "x" + numOfTileRows + " tiling");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+public class TiledHaarTransformTest extends TestCase {
+    //Sizes leaving narrow, short and single pixel tiles at the right and bottom edges
+    private static final int[][] IMAGE_SIZES = {{37, 21}, {32, 32}, {33, 47}, {5, 40}, {17, 1}};
+    private static final int TILE_SIZE = 16;
+
+    public void testRoundTripWithOddEdgeTiles() throws Throwable {
+        for (WaveletFamily waveletFamily : WaveletFamily.values()) {
+            for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+                for (int[] imageSize : IMAGE_SIZES) {
+                    BufferedImage image = HaarTransformTest.createRandomImage(imageSize[0], imageSize[1],
+                            BufferedImage.TYPE_3BYTE_BGR, 34);
+                    TiledHaarTransform tiledTransform = createTiledTransform(image, waveletFamily, decompositionMode);
+                    String message = waveletFamily + " " + decompositionMode + " " + imageSize[0] + "x" + imageSize[1];
+                    assertEquals(message, (imageSize[0] + TILE_SIZE - 1) / TILE_SIZE, tiledTransform.getNumOfTileColumns());
+                    assertEquals(message, (imageSize[1] + TILE_SIZE - 1) / TILE_SIZE, tiledTransform.getNumOfTileRows());
+
+                    assertRasterEquals(message, image.getRaster(), tiledTransform.generateRecoveredImage().getRaster(),
+                            waveletFamily.isIntegerReversible() ? 0 : 1);
+
+                    //Recovering in place returns every tile to the pixels it was cut from
+                    tiledTransform.performAllRecovers();
+                    for (int tileColumn = 0; tileColumn < tiledTransform.getNumOfTileColumns(); tileColumn++) {
+                        for (int tileRow = 0; tileRow < tiledTransform.getNumOfTileRows(); tileRow++) {
+                            Rectangle bounds = tiledTransform.getTileBounds(tileColumn, tileRow);
+                            HaarTransformTest.assertPixelArrayEquals(message + " tile " + tileColumn + "," + tileRow,
+                                    image.getData(bounds).createTranslatedChild(0, 0),
+                                    tiledTransform.getTileCoefficients(tileColumn, tileRow),
+                                    waveletFamily.isIntegerReversible() ? 0 : 1e-6);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testEveryTileIsTransformedLikeAnImageOfItsOwn() throws Throwable {
+        for (DecompositionMode decompositionMode : DecompositionMode.values()) {
+            BufferedImage image = HaarTransformTest.createRandomImage(37, 21, BufferedImage.TYPE_BYTE_GRAY, 34);
+            TiledHaarTransform tiledTransform = createTiledTransform(image, WaveletFamily.HAAR, decompositionMode);
+            for (int tileColumn = 0; tileColumn < tiledTransform.getNumOfTileColumns(); tileColumn++) {
+                for (int tileRow = 0; tileRow < tiledTransform.getNumOfTileRows(); tileRow++) {
+                    Rectangle bounds = tiledTransform.getTileBounds(tileColumn, tileRow);
+                    HaarTransform expected = HaarTransformTest.createTransformer(WaveletFamily.HAAR, decompositionMode);
+                    expected.loadImage(image.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height), "png");
+                    expected.performAllTransforms();
+                    HaarTransformTest.assertCoefficientsEqual(decompositionMode + " tile " + tileColumn + "," + tileRow,
+                            expected.getImagePixelArray(), tiledTransform.getTileCoefficients(tileColumn, tileRow));
+                }
+            }
+        }
+    }
+
+    public void testDecodeTileLeavesTheCoefficientsUntouched() throws Throwable {
+        BufferedImage image = HaarTransformTest.createRandomImage(33, 47, BufferedImage.TYPE_3BYTE_BGR, 34);
+        TiledHaarTransform tiledTransform = createTiledTransform(image, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD);
+        int lastTileColumn = tiledTransform.getNumOfTileColumns() - 1;
+        int lastTileRow = tiledTransform.getNumOfTileRows() - 1;
+        Rectangle bounds = tiledTransform.getTileBounds(lastTileColumn, lastTileRow);
+        assertEquals(new Rectangle(32, 32, 1, 15), bounds);
+
+        for (int decode = 0; decode < 2; decode++) {
+            BufferedImage tileImage = tiledTransform.decodeTile(lastTileColumn, lastTileRow);
+            HaarTransformTest.assertImageEquals("decode " + decode,
+                    image.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height), tileImage);
+        }
+        try {
+            tiledTransform.decodeTile(lastTileColumn + 1, 0);
+            fail("There is no tile past the right edge");
+        } catch (IndexOutOfBoundsException ex) {
+            //Expected
+        }
+    }
+
+    private static TiledHaarTransform createTiledTransform(BufferedImage image, WaveletFamily waveletFamily,
+                                                           DecompositionMode decompositionMode){
+        TiledHaarTransform tiledTransform = new TiledHaarTransform(TILE_SIZE);
+        tiledTransform.setWaveletFamily(waveletFamily);
+        tiledTransform.setDecompositionMode(decompositionMode);
+        tiledTransform.loadImage(image, "png");
+        tiledTransform.performAllTransforms();
+        return tiledTransform;
+    }
+
+    private static void assertRasterEquals(String message, Raster expected, Raster actual, int tolerance){
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        for (int currColumn = 0; currColumn < expected.getWidth(); currColumn++) {
+            for (int currRow = 0; currRow < expected.getHeight(); currRow++) {
+                for (int bandIndex = 0; bandIndex < expected.getNumBands(); bandIndex++) {
+                    assertEquals(message + " at " + currColumn + "," + currRow,
+                            expected.getSample(currColumn, currRow, bandIndex),
+                            actual.getSample(currColumn, currRow, bandIndex), tolerance);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package HaarTransform;
+
+/**
+ * Thrown when an image cannot be loaded, transformed, recovered or written, with a message naming
+ * the method or class that failed followed by the reason.
+ */
+class TransformException extends Throwable{
+    private static final long serialVersionUID = 1L;
+
+    public TransformException(String message){
+        super(message);
+    }
+
+    @Override
+    public String getMessage(){
+        String message = "ERROR in HaarTransform." + super.getMessage();
+        return message;
+    }
+}
@@ -0,0 +1,346 @@
+package HaarTransform;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Runs transform jobs on a fixed number of threads while keeping the memory they take within a
+ * heap budget and an off-heap budget. The peak footprint of a job is estimated from the header of
+ * its image before anything is decoded, and a job only starts once its footprint fits in what the
+ * running jobs leave of both budgets. Jobs start in the order they were submitted, so a large job
+ * is never passed over indefinitely by smaller ones.
+ *
+ * <p>Every job transforms all levels of its image and hands the coefficients to the job, in the
+ * first of these execution modes that fits the budgets on its own:
+ * <ul>
+ *     <li>IN_MEMORY: the coefficient array of HaarTransform, on the heap</li>
+ *     <li>OFF_HEAP: an OffHeapCoefficientStore in direct memory, with only line buffers on the heap</li>
+ *     <li>MAPPED_FILE: an OffHeapCoefficientStore mapped onto a temporary file, left to the page cache</li>
+ * </ul>
+ * A job too large for even the last mode runs once no other job is running, rather than never.
+ *
+ * <p>The estimates cover what the transform allocates, not what the job itself does with the
+ * coefficients. Direct memory of a closed store is given back once the store is garbage collected,
+ * which the JVM forces when direct memory runs out.
+ */
+public class TransformJobScheduler implements AutoCloseable {
+    //Array header and reference of each double[] of the coefficient array, with compressed references
+    private static final long ARRAY_HEADER_BYTES = 16;
+    private static final long REFERENCE_BYTES = 4;
+    private final long heapBudgetBytes;
+    private final long offHeapBudgetBytes;
+    private final ExecutorService jobThreads;
+    private final Set<Long> abandonedTickets = new HashSet<>();
+    private long heapBytesInUse;
+    private long offHeapBytesInUse;
+    private long nextTicket;
+    private long servingTicket;
+
+    /**
+     * @param heapBudgetBytes The heap the running jobs may take together
+     * @param offHeapBudgetBytes The direct memory the running jobs may take together
+     * @param numOfThreads The number of jobs that may run at once when they fit the budgets
+     */
+    public TransformJobScheduler(long heapBudgetBytes, long offHeapBudgetBytes, int numOfThreads){
+        if (heapBudgetBytes < 0 || offHeapBudgetBytes < 0) {
+            throw new IllegalArgumentException("Budgets cannot be negative: " + heapBudgetBytes + ", " + offHeapBudgetBytes);
+        }
+        if (numOfThreads < 1) {
+            throw new IllegalArgumentException("numOfThreads must be at least 1: " + numOfThreads);
+        }
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.offHeapBudgetBytes = offHeapBudgetBytes;
+        this.jobThreads = Executors.newFixedThreadPool(numOfThreads, runnable -> {
+            Thread thread = new Thread(runnable, "TransformJobScheduler job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Estimates the footprint of a job in each execution mode and picks the mode it will run in
+     */
+    public Footprint planJob(ImageRegionSource source){
+        long numOfColumns = source.getNumOfColumns();
+        long numOfRows = source.getNumOfRows();
+        long numOfBands = source.getNumOfBands();
+        //The decoded strip, or region, of 8 bit samples, and the row of it being copied
+        long stripBytes = source.getDecodedBytes() + (numOfColumns * numOfBands * Double.BYTES);
+        //Each thread of a pass holds a line, its scratch line and one band of it
+        long lineBytes = ((2 * numOfBands) + 1) * Math.max(numOfColumns, numOfRows) * Double.BYTES;
+        long passThreads = ForkJoinPool.getCommonPoolParallelism() + 1;
+
+        long pixelBytes = (ARRAY_HEADER_BYTES + (numOfBands * Double.BYTES) + 7) / 8 * 8;
+        long arrayBytes = numOfColumns * (ARRAY_HEADER_BYTES + (numOfRows * (REFERENCE_BYTES + pixelBytes)));
+        long inMemoryHeapBytes = arrayBytes + stripBytes + (passThreads * lineBytes);
+        if (inMemoryHeapBytes <= heapBudgetBytes) {
+            return new Footprint(ExecutionMode.IN_MEMORY, inMemoryHeapBytes, 0);
+        }
+
+        //Column passes of a store also gather the lines of a group of columns per thread
+        long groupBytes = LiftingEngine.storeColumnGroup((int)numOfColumns, (int)numOfRows, (int)numOfBands)
+                * numOfRows * numOfBands * Double.BYTES;
+        long storeHeapBytes = stripBytes + (passThreads * (lineBytes + groupBytes));
+        long storeBytes = numOfColumns * numOfRows * numOfBands * Double.BYTES;
+        if (storeHeapBytes <= heapBudgetBytes && storeBytes <= offHeapBudgetBytes) {
+            return new Footprint(ExecutionMode.OFF_HEAP, storeHeapBytes, storeBytes);
+        }
+        return new Footprint(ExecutionMode.MAPPED_FILE, storeHeapBytes, 0);
+    }
+
+    /**
+     * Queues a job, which transforms the image of the source once its footprint fits the budgets
+     * @param source The image of the job, of which only the header has been read
+     * @param waveletFamily The wavelet the image is transformed with
+     * @param decompositionMode The decomposition the image is transformed with
+     * @param job Receives the transformed coefficients, which it must not keep once it returns
+     * @return Completes with the execution mode the job ran in, or fails with the TransformException the job failed with
+     */
+    public Future<ExecutionMode> submit(ImageRegionSource source, WaveletFamily waveletFamily,
+                                        DecompositionMode decompositionMode, TransformJob job){
+        Footprint footprint = planJob(source);
+        //A job larger than a budget on its own takes all of it, and so runs alone
+        long heapBytes = Math.min(footprint.heapBytes, heapBudgetBytes);
+        long offHeapBytes = Math.min(footprint.offHeapBytes, offHeapBudgetBytes);
+
+        //Completed by hand, as a Callable cannot throw the TransformException a job fails with
+        CompletableFuture<ExecutionMode> jobResult = new CompletableFuture<>();
+        //Turns are handed out on submission, the order jobs reach the threads in may differ
+        long ticket = takeTicket();
+        jobResult.whenComplete((executionMode, failure) -> {
+            if (jobResult.isCancelled()) {
+                abandonTicket(ticket);
+            }
+        });
+        jobThreads.execute(() -> {
+            try {
+                if (!admit(ticket, heapBytes, offHeapBytes, jobResult)) {
+                    return;
+                }
+                try {
+                    //A job cancelled as it was admitted is skipped
+                    if (!jobResult.isCancelled()) {
+                        runJob(source, waveletFamily, decompositionMode, job, footprint.executionMode);
+                    }
+                } finally {
+                    release(heapBytes, offHeapBytes);
+                }
+                //Completed once released, so a finished job no longer counts against the budgets
+                jobResult.complete(footprint.executionMode);
+            } catch (TransformException | RuntimeException ex) {
+                jobResult.completeExceptionally(ex);
+            } catch (InterruptedException ex) {
+                jobResult.cancel(false);
+            }
+        });
+        return jobResult;
+    }
+
+    private void runJob(ImageRegionSource source, WaveletFamily waveletFamily, DecompositionMode decompositionMode,
+                        TransformJob job, ExecutionMode executionMode) throws TransformException {
+        if (executionMode == ExecutionMode.IN_MEMORY) {
+            HaarTransform transformer = new HaarTransform();
+            transformer.setWaveletFamily(waveletFamily);
+            transformer.setDecompositionMode(decompositionMode);
+            transformer.loadImage(source);
+            transformer.performAllTransforms();
+            job.accept(new ArrayCoefficientStore(transformer.getImagePixelArray()), executionMode);
+            return;
+        }
+
+        try (OffHeapCoefficientStore store = createStore(source, executionMode)) {
+            source.readInto(store);
+            CoefficientStoreTransform storeTransformer = new CoefficientStoreTransform(store);
+            storeTransformer.setWaveletFamily(waveletFamily);
+            storeTransformer.setDecompositionMode(decompositionMode);
+            storeTransformer.performAllTransforms();
+            job.accept(store, executionMode);
+        }
+    }
+
+    private static OffHeapCoefficientStore createStore(ImageRegionSource source, ExecutionMode executionMode)
+            throws TransformException {
+        if (executionMode == ExecutionMode.OFF_HEAP) {
+            return OffHeapCoefficientStore.allocate(source.getNumOfColumns(), source.getNumOfRows(), source.getNumOfBands());
+        }
+        File backingFile;
+        try {
+            backingFile = File.createTempFile("HaarTransformJob", ".coef");
+        } catch (IOException ex) {
+            throw new TransformException("TransformJobScheduler: Could not create a file for\n"
+                    + source.getImageFile().getPath() + "\n" + ex.getMessage());
+        }
+        return OffHeapCoefficientStore.map(backingFile, source.getNumOfColumns(), source.getNumOfRows(),
+                source.getNumOfBands(), true);
+    }
+
+    private synchronized long takeTicket(){
+        return nextTicket++;
+    }
+
+    /**
+     * Waits until every job submitted earlier has started or been cancelled and the footprint fits
+     * what is left of the budgets
+     * @return false, without taking anything from the budgets, when the job was cancelled while it waited
+     */
+    private synchronized boolean admit(long ticket, long heapBytes, long offHeapBytes, Future<?> jobResult)
+            throws InterruptedException {
+        try {
+            while (ticket != servingTicket || heapBytesInUse + heapBytes > heapBudgetBytes
+                    || offHeapBytesInUse + offHeapBytes > offHeapBudgetBytes) {
+                //Cancelling a job gives up its turn and wakes the waiting jobs
+                if (jobResult.isCancelled()) {
+                    return false;
+                }
+                wait();
+            }
+        } catch (InterruptedException ex) {
+            //An interrupted job gives up its turn, or the jobs after it would wait forever
+            abandonTicket(ticket);
+            throw ex;
+        }
+        if (jobResult.isCancelled()) {
+            return false;
+        }
+        heapBytesInUse += heapBytes;
+        offHeapBytesInUse += offHeapBytes;
+        servingTicket++;
+        skipAbandonedTickets();
+        return true;
+    }
+
+    /**
+     * Lets the jobs after a ticket go ahead without it, unless its job has already been admitted
+     */
+    private synchronized void abandonTicket(long ticket){
+        if (ticket >= servingTicket) {
+            abandonedTickets.add(ticket);
+            skipAbandonedTickets();
+        }
+    }
+
+    private void skipAbandonedTickets(){
+        while (abandonedTickets.remove(servingTicket)) {
+            servingTicket++;
+        }
+        notifyAll();
+    }
+
+    private synchronized void release(long heapBytes, long offHeapBytes){
+        heapBytesInUse -= heapBytes;
+        offHeapBytesInUse -= offHeapBytes;
+        notifyAll();
+    }
+
+    public synchronized long getHeapBytesInUse(){
+        return heapBytesInUse;
+    }
+
+    public synchronized long getOffHeapBytesInUse(){
+        return offHeapBytesInUse;
+    }
+
+    public long getHeapBudgetBytes(){
+        return heapBudgetBytes;
+    }
+
+    public long getOffHeapBudgetBytes(){
+        return offHeapBudgetBytes;
+    }
+
+    /**
+     * Lets the queued jobs finish without accepting new ones
+     */
+    @Override
+    public void close(){
+        jobThreads.shutdown();
+    }
+
+    public enum ExecutionMode {
+        IN_MEMORY,
+        OFF_HEAP,
+        MAPPED_FILE
+    }
+
+    /**
+     * Receives the coefficients of a transformed image
+     */
+    public interface TransformJob {
+        void accept(CoefficientStore coefficients, ExecutionMode executionMode) throws TransformException;
+    }
+
+    /**
+     * The estimated peak footprint of a job in the execution mode picked for it
+     */
+    public static final class Footprint {
+        private final ExecutionMode executionMode;
+        private final long heapBytes;
+        private final long offHeapBytes;
+
+        Footprint(ExecutionMode executionMode, long heapBytes, long offHeapBytes){
+            this.executionMode = executionMode;
+            this.heapBytes = heapBytes;
+            this.offHeapBytes = offHeapBytes;
+        }
+
+        public ExecutionMode getExecutionMode(){
+            return executionMode;
+        }
+
+        public long getHeapBytes(){
+            return heapBytes;
+        }
+
+        public long getOffHeapBytes(){
+            return offHeapBytes;
+        }
+    }
+
+    /**
+     * Presents the coefficient array of HaarTransform as a store, so every job sees the same interface
+     */
+    private static class ArrayCoefficientStore implements CoefficientStore {
+        private final double[][][] coefficients;
+
+        ArrayCoefficientStore(double[][][] coefficients){
+            this.coefficients = coefficients;
+        }
+
+        @Override
+        public int getNumOfColumns(){
+            return coefficients.length;
+        }
+
+        @Override
+        public int getNumOfRows(){
+            return coefficients[0].length;
+        }
+
+        @Override
+        public int getNumOfBands(){
+            return coefficients[0][0].length;
+        }
+
+        @Override
+        public double get(int column, int row, int band){
+            return coefficients[column][row][band];
+        }
+
+        @Override
+        public void set(int column, int row, int band, double value){
+            coefficients[column][row][band] = value;
+        }
+
+        @Override
+        public void close(){
+            //The array is left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class TransformJobSchedulerTest extends TestCase {
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final List<File> imageFiles = new ArrayList<>();
+    private TransformJobScheduler scheduler;
+
+    public void tearDown() throws Exception {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        for (File imageFile : imageFiles) {
+            imageFile.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testPlanJobPicksTheFirstModeThatFits() throws Throwable {
+        ImageRegionSource source = ImageRegionSource.open(writeImage(1000, 1000, BufferedImage.TYPE_BYTE_GRAY));
+        TransformJobScheduler.Footprint inMemory = new TransformJobScheduler(UNLIMITED, UNLIMITED, 1).planJob(source);
+        assertEquals(TransformJobScheduler.ExecutionMode.IN_MEMORY, inMemory.getExecutionMode());
+        assertEquals(0, inMemory.getOffHeapBytes());
+        //Every coefficient of the array is a double[] of its own
+        assertTrue(inMemory.getHeapBytes() > 1000L * 1000 * Double.BYTES * 3);
+
+        TransformJobScheduler.Footprint offHeap = new TransformJobScheduler(inMemory.getHeapBytes() - 1, UNLIMITED, 1)
+                .planJob(source);
+        assertEquals(TransformJobScheduler.ExecutionMode.OFF_HEAP, offHeap.getExecutionMode());
+        assertEquals(1000L * 1000 * Double.BYTES, offHeap.getOffHeapBytes());
+        assertTrue(offHeap.getHeapBytes() < inMemory.getHeapBytes());
+
+        TransformJobScheduler.Footprint mappedFile = new TransformJobScheduler(inMemory.getHeapBytes() - 1,
+                offHeap.getOffHeapBytes() - 1, 1).planJob(source);
+        assertEquals(TransformJobScheduler.ExecutionMode.MAPPED_FILE, mappedFile.getExecutionMode());
+        assertEquals(0, mappedFile.getOffHeapBytes());
+        assertEquals(offHeap.getHeapBytes(), mappedFile.getHeapBytes());
+    }
+
+    public void testJobsOfEveryModeReceiveTheTransformedImage() throws Throwable {
+        File imageFile = writeImage(300, 200, BufferedImage.TYPE_3BYTE_BGR);
+        ImageRegionSource source = ImageRegionSource.open(imageFile);
+        HaarTransform expected = HaarTransformTest.createTransformer(WaveletFamily.CDF_5_3, DecompositionMode.STANDARD);
+        expected.loadImage(ImageIO.read(imageFile), "png");
+        expected.performAllTransforms();
+        double[][][] expectedCoefficients = expected.getImagePixelArray();
+
+        TransformJobScheduler.Footprint inMemory = new TransformJobScheduler(UNLIMITED, UNLIMITED, 1).planJob(source);
+        TransformJobScheduler.Footprint offHeap = new TransformJobScheduler(inMemory.getHeapBytes() - 1, UNLIMITED, 1)
+                .planJob(source);
+        long[][] budgets = {{UNLIMITED, UNLIMITED}, {inMemory.getHeapBytes() - 1, UNLIMITED},
+                {inMemory.getHeapBytes() - 1, offHeap.getOffHeapBytes() - 1}};
+        for (long[] budget : budgets) {
+            TransformJobScheduler modeScheduler = new TransformJobScheduler(budget[0], budget[1], 1);
+            TransformJobScheduler.ExecutionMode plannedMode = modeScheduler.planJob(source).getExecutionMode();
+            Future<TransformJobScheduler.ExecutionMode> jobResult = modeScheduler.submit(source, WaveletFamily.CDF_5_3,
+                    DecompositionMode.STANDARD, (coefficients, executionMode) -> {
+                        for (int currColumn = 0; currColumn < 300; currColumn++) {
+                            for (int currRow = 0; currRow < 200; currRow++) {
+                                for (int bandIndex = 0; bandIndex < 3; bandIndex++) {
+                                    assertEquals(executionMode + " at " + currColumn + "," + currRow,
+                                            expectedCoefficients[currColumn][currRow][bandIndex],
+                                            coefficients.get(currColumn, currRow, bandIndex), 0.0);
+                                }
+                            }
+                        }
+                    });
+            assertEquals(plannedMode, jobResult.get(30, TimeUnit.SECONDS));
+            modeScheduler.close();
+        }
+    }
+
+    public void testJobsStartInTheOrderTheyWereSubmitted() throws Throwable {
+        ImageRegionSource source = ImageRegionSource.open(writeImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+        long jobHeapBytes = new TransformJobScheduler(UNLIMITED, UNLIMITED, 1).planJob(source).getHeapBytes();
+        //Room for one job at a time, with threads for every job to wait on
+        scheduler = new TransformJobScheduler(jobHeapBytes, 0, 8);
+        CountDownLatch firstJobRunning = new CountDownLatch(1);
+        CountDownLatch firstJobReleased = new CountDownLatch(1);
+        List<Integer> startOrder = Collections.synchronizedList(new ArrayList<>());
+
+        List<Future<TransformJobScheduler.ExecutionMode>> jobResults = new ArrayList<>();
+        jobResults.add(scheduler.submit(source, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD, (coefficients, mode) -> {
+            startOrder.add(0);
+            firstJobRunning.countDown();
+            awaitLatch(firstJobReleased);
+        }));
+        assertTrue(firstJobRunning.await(30, TimeUnit.SECONDS));
+        for (int jobIndex = 1; jobIndex < 8; jobIndex++) {
+            int currJob = jobIndex;
+            jobResults.add(scheduler.submit(source, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD,
+                    (coefficients, mode) -> {
+                        startOrder.add(currJob);
+                        //Only one job fits the budget at a time
+                        assertEquals(jobHeapBytes, scheduler.getHeapBytesInUse());
+                    }));
+        }
+        assertEquals(jobHeapBytes, scheduler.getHeapBytesInUse());
+        firstJobReleased.countDown();
+        for (Future<TransformJobScheduler.ExecutionMode> jobResult : jobResults) {
+            assertEquals(TransformJobScheduler.ExecutionMode.IN_MEMORY, jobResult.get(30, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), startOrder);
+        assertEquals(0, scheduler.getHeapBytesInUse());
+    }
+
+    public void testJobsThatFitTogetherRunTogether() throws Throwable {
+        ImageRegionSource source = ImageRegionSource.open(writeImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+        long jobHeapBytes = new TransformJobScheduler(UNLIMITED, UNLIMITED, 1).planJob(source).getHeapBytes();
+        scheduler = new TransformJobScheduler(2 * jobHeapBytes, 0, 3);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        CountDownLatch released = new CountDownLatch(1);
+
+        List<Future<TransformJobScheduler.ExecutionMode>> jobResults = new ArrayList<>();
+        for (int jobIndex = 0; jobIndex < 2; jobIndex++) {
+            jobResults.add(scheduler.submit(source, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD, (coefficients, mode) -> {
+                bothRunning.countDown();
+                awaitLatch(released);
+            }));
+        }
+        assertTrue(bothRunning.await(30, TimeUnit.SECONDS));
+        assertEquals(2 * jobHeapBytes, scheduler.getHeapBytesInUse());
+
+        //A third job waits for the budget one of them takes
+        CountDownLatch thirdRunning = new CountDownLatch(1);
+        Future<TransformJobScheduler.ExecutionMode> thirdResult = scheduler.submit(source, WaveletFamily.HAAR,
+                DecompositionMode.NON_STANDARD, (coefficients, mode) -> thirdRunning.countDown());
+        assertFalse(thirdRunning.await(100, TimeUnit.MILLISECONDS));
+        released.countDown();
+        assertEquals(TransformJobScheduler.ExecutionMode.IN_MEMORY, thirdResult.get(30, TimeUnit.SECONDS));
+        for (Future<TransformJobScheduler.ExecutionMode> jobResult : jobResults) {
+            jobResult.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(0, scheduler.getHeapBytesInUse());
+    }
+
+    public void testJobFailuresArePassedOnAndReleaseTheBudget() throws Throwable {
+        ImageRegionSource source = ImageRegionSource.open(writeImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+        scheduler = new TransformJobScheduler(UNLIMITED, UNLIMITED, 1);
+
+        Future<TransformJobScheduler.ExecutionMode> failed = scheduler.submit(source, WaveletFamily.HAAR,
+                DecompositionMode.NON_STANDARD, (coefficients, mode) -> {
+                    throw new TransformException("TransformJobSchedulerTest: job failed");
+                });
+        try {
+            failed.get(30, TimeUnit.SECONDS);
+            fail("The job threw");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TransformException);
+        }
+
+        Future<TransformJobScheduler.ExecutionMode> crashed = scheduler.submit(source, WaveletFamily.HAAR,
+                DecompositionMode.NON_STANDARD, (coefficients, mode) -> {
+                    throw new IllegalStateException("job crashed");
+                });
+        try {
+            crashed.get(30, TimeUnit.SECONDS);
+            fail("The job threw");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, scheduler.getHeapBytesInUse());
+        assertEquals(0, scheduler.getOffHeapBytesInUse());
+    }
+
+    public void testCancellingAWaitingJobLetsTheNextOnesRun() throws Throwable {
+        ImageRegionSource source = ImageRegionSource.open(writeImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+        long jobHeapBytes = new TransformJobScheduler(UNLIMITED, UNLIMITED, 1).planJob(source).getHeapBytes();
+        for (int numOfThreads : new int[]{1, 3}) {
+            //With one thread the cancelled job has not reached a thread, with three it waits in one
+            scheduler = new TransformJobScheduler(jobHeapBytes, 0, numOfThreads);
+            CountDownLatch firstJobRunning = new CountDownLatch(1);
+            CountDownLatch firstJobReleased = new CountDownLatch(1);
+            Future<TransformJobScheduler.ExecutionMode> first = scheduler.submit(source, WaveletFamily.HAAR,
+                    DecompositionMode.NON_STANDARD, (coefficients, mode) -> {
+                        firstJobRunning.countDown();
+                        awaitLatch(firstJobReleased);
+                    });
+            assertTrue(firstJobRunning.await(30, TimeUnit.SECONDS));
+
+            CountDownLatch cancelledRan = new CountDownLatch(1);
+            Future<TransformJobScheduler.ExecutionMode> cancelled = scheduler.submit(source, WaveletFamily.HAAR,
+                    DecompositionMode.NON_STANDARD, (coefficients, mode) -> cancelledRan.countDown());
+            Future<TransformJobScheduler.ExecutionMode> last = scheduler.submit(source, WaveletFamily.HAAR,
+                    DecompositionMode.NON_STANDARD, (coefficients, mode) -> { });
+            assertTrue(cancelled.cancel(true));
+            //The thread of a cancelled job stops waiting for its turn at once
+            int expectedWaiting = (numOfThreads > 2) ? 1 : 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (countJobsWaitingForAdmission() > expectedWaiting && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(expectedWaiting, countJobsWaitingForAdmission());
+            try {
+                cancelled.get(1, TimeUnit.SECONDS);
+                fail("The job was cancelled");
+            } catch (CancellationException ex) {
+                //Expected
+            }
+            try {
+                last.get(100, TimeUnit.MILLISECONDS);
+                fail("The first job still holds the budget");
+            } catch (TimeoutException ex) {
+                //Expected
+            }
+
+            firstJobReleased.countDown();
+            assertEquals(TransformJobScheduler.ExecutionMode.IN_MEMORY, first.get(30, TimeUnit.SECONDS));
+            assertEquals(TransformJobScheduler.ExecutionMode.IN_MEMORY, last.get(30, TimeUnit.SECONDS));
+            assertEquals(1, cancelledRan.getCount());
+            assertEquals(0, scheduler.getHeapBytesInUse());
+            scheduler.close();
+        }
+    }
+
+    private static int countJobsWaitingForAdmission(){
+        int numWaiting = 0;
+        for (StackTraceElement[] stackTrace : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement frame : stackTrace) {
+                if (frame.getClassName().equals(TransformJobScheduler.class.getName())
+                        && frame.getMethodName().equals("admit")) {
+                    numWaiting++;
+                    break;
+                }
+            }
+        }
+        return numWaiting;
+    }
+
+    private File writeImage(int columns, int rows, int imageType) throws Exception {
+        File imageFile = File.createTempFile("TransformJobSchedulerTest", ".png");
+        imageFiles.add(imageFile);
+        ImageIO.write(HaarTransformTest.createRandomImage(columns, rows, imageType, 45), "png", imageFile);
+        return imageFile;
+    }
+
+    private static void awaitLatch(CountDownLatch latch) throws TransformException {
+        try {
+            if (!latch.await(30, TimeUnit.SECONDS)) {
+                throw new TransformException("TransformJobSchedulerTest: latch timed out");
+            }
+        } catch (InterruptedException ex) {
+            throw new TransformException("TransformJobSchedulerTest: interrupted");
+        }
+    }
+}
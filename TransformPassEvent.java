@@ -0,0 +1,34 @@
+package HaarTransform;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event emitted around each row/column transform or recover pass
+ * performed by HaarTransform. The level is the Haar level being applied (transform)
+ * or undone (recover), and the sub-image extents describe the area of the
+ * coefficient array that the pass actually transforms.
+ */
+@Name("HaarTransform.TransformPass")
+@Label("Haar Transform Pass")
+@Category({"HaarTransform", "Passes"})
+@Description("A single row or column transform/recover pass over the coefficient array")
+final class TransformPassEvent extends Event {
+    @Label("Pass")
+    String pass;
+
+    @Label("Level")
+    int level;
+
+    @Label("Sub-Image Columns")
+    int subImageColumns;
+
+    @Label("Sub-Image Rows")
+    int subImageRows;
+
+    @Label("Bands")
+    int bands;
+
+    @Label("Bytes Touched")
+    @DataAmount
+    long bytesTouched;
+}
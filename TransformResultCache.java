@@ -0,0 +1,232 @@
+package HaarTransform;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>A directory of transformed coefficient arrays, each kept in a file named after a key that
+ * HaarTransform derives from the coefficients before the transform and every setting the
+ * transform depends on. Transforming the same image the same way again then only reads the file.
+ *
+ * <p>An entry holds nothing but its coefficients, laid out as OffHeapCoefficientStore lays them
+ * out in native byte order, so it can also be mapped with OffHeapCoefficientStore.map. The size of
+ * the coefficients is part of the key, and an entry of any other length is treated as missing.
+ *
+ * <p>Entries are written to a temporary file that is then moved over the entry, so a reader, in
+ * this process or another, never sees a partly written one. Once the entries take more than the
+ * size limit, the least recently used ones are deleted, a hit counting as a use.
+ */
+public final class TransformResultCache {
+    static final String ENTRY_EXT = ".coef";
+    //Rows are read and written through a buffer of about this many bytes
+    private static final int IO_BUFFER_BYTES = 1 << 20;
+    private final File directory;
+    private final long maxBytes;
+
+    private TransformResultCache(File directory, long maxBytes){
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens a cache in a directory, creating the directory when needed
+     * @param maxBytes The size the entries are kept within
+     */
+    public static TransformResultCache open(File directory, long maxBytes) throws TransformException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative: " + maxBytes);
+        }
+        try {
+            Files.createDirectories(directory.toPath());
+        } catch (IOException ex) {
+            throw new TransformException("TransformResultCache: Could not create\n" + directory.getPath()
+                    + "\n" + ex.getMessage());
+        }
+        return new TransformResultCache(directory, maxBytes);
+    }
+
+    public File getDirectory(){
+        return directory;
+    }
+
+    public long getMaxBytes(){
+        return maxBytes;
+    }
+
+    /**
+     * @return The number of bytes taken by the entries
+     */
+    public synchronized long getCachedBytes(){
+        long cachedBytes = 0;
+        for (File entryFile : listEntries()) {
+            cachedBytes += entryFile.length();
+        }
+        return cachedBytes;
+    }
+
+    /**
+     * Deletes every entry
+     */
+    public synchronized void clear(){
+        for (File entryFile : listEntries()) {
+            entryFile.delete();
+        }
+    }
+
+    File getEntryFile(String key){
+        return new File(directory, key + ENTRY_EXT);
+    }
+
+    /**
+     * Reads the entry of a key into a coefficient array of the size the entry was written from
+     * @return Whether the key has an entry of that size. The array is left untouched when it has none.
+     * @throws TransformException When the entry could not be read completely, leaving the array partly overwritten
+     */
+    synchronized boolean read(String key, double[][][] coefficients) throws TransformException {
+        File entryFile = getEntryFile(key);
+        int numOfColumns = coefficients.length;
+        int numOfRows = coefficients[0].length;
+        int numOfBands = coefficients[0][0].length;
+        if (entryFile.length() != (long)numOfColumns * numOfRows * numOfBands * Double.BYTES) {
+            return false;
+        }
+        try (FileChannel entryChannel = FileChannel.open(entryFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer ioBuffer = createIOBuffer(numOfColumns * numOfBands);
+            double[] rowCoefficients = new double[numOfColumns * numOfBands];
+            for (int currRow = 0; currRow < numOfRows; ) {
+                ioBuffer.clear();
+                boolean endOfEntry = false;
+                while (ioBuffer.hasRemaining() && !endOfEntry) {
+                    //Only the last rows of an entry leave the buffer partly filled
+                    endOfEntry = entryChannel.read(ioBuffer) < 0;
+                }
+                ioBuffer.flip();
+                DoubleBuffer bufferedRows = ioBuffer.asDoubleBuffer();
+                for (; bufferedRows.remaining() >= rowCoefficients.length && currRow < numOfRows; currRow++) {
+                    bufferedRows.get(rowCoefficients);
+                    scatterRow(rowCoefficients, coefficients, currRow, numOfBands);
+                }
+                if (endOfEntry && currRow < numOfRows) {
+                    throw new IOException("Entry ended after " + currRow + " of " + numOfRows + " rows");
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            //Evicted by another process since its length was read, which is a miss like any other
+            return false;
+        } catch (IOException ex) {
+            throw new TransformException("TransformResultCache: Could not read\n" + entryFile.getPath()
+                    + "\n" + ex.getMessage());
+        }
+        entryFile.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Writes a coefficient array as the entry of a key, replacing any entry the key already has,
+     * then evicts the least recently used entries until the cache fits in its size limit again
+     */
+    synchronized void write(String key, double[][][] coefficients) throws TransformException {
+        int numOfColumns = coefficients.length;
+        int numOfRows = coefficients[0].length;
+        int numOfBands = coefficients[0][0].length;
+        Path entryPath = getEntryFile(key).toPath();
+        Path tempPath = null;
+        try {
+            tempPath = Files.createTempFile(directory.toPath(), key, ".tmp");
+            try (FileChannel tempChannel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                ByteBuffer ioBuffer = createIOBuffer(numOfColumns * numOfBands);
+                DoubleBuffer bufferedRows = ioBuffer.asDoubleBuffer();
+                double[] rowCoefficients = new double[numOfColumns * numOfBands];
+                for (int currRow = 0; currRow < numOfRows; currRow++) {
+                    gatherRow(coefficients, currRow, numOfBands, rowCoefficients);
+                    bufferedRows.put(rowCoefficients);
+                    if (bufferedRows.remaining() < rowCoefficients.length || currRow == numOfRows - 1) {
+                        ioBuffer.position(0).limit(bufferedRows.position() * Double.BYTES);
+                        while (ioBuffer.hasRemaining()) {
+                            tempChannel.write(ioBuffer);
+                        }
+                        ioBuffer.clear();
+                        bufferedRows.clear();
+                    }
+                }
+                tempChannel.force(false);
+            }
+            try {
+                Files.move(tempPath, entryPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            try {
+                if (tempPath != null) {
+                    Files.deleteIfExists(tempPath);
+                }
+            } catch (IOException deleteEx) {
+                ex.addSuppressed(deleteEx);
+            }
+            throw new TransformException("TransformResultCache: Could not write\n" + entryPath + "\n" + ex.getMessage());
+        }
+        evictLeastRecentlyUsed(entryPath.toFile());
+    }
+
+    private void evictLeastRecentlyUsed(File entryKept){
+        List<File> entryFiles = listEntries();
+        long cachedBytes = 0;
+        for (File entryFile : entryFiles) {
+            cachedBytes += entryFile.length();
+        }
+        entryFiles.sort(Comparator.comparingLong(File::lastModified));
+        for (File entryFile : entryFiles) {
+            if (cachedBytes <= maxBytes) {
+                break;
+            }
+            if (!entryFile.equals(entryKept)) {
+                long entryBytes = entryFile.length();
+                if (entryFile.delete()) {
+                    cachedBytes -= entryBytes;
+                }
+            }
+        }
+    }
+
+    private List<File> listEntries(){
+        List<File> entryFiles = new ArrayList<>();
+        File[] directoryFiles = directory.listFiles((dir, name) -> name.endsWith(ENTRY_EXT));
+        if (directoryFiles != null) {
+            for (File directoryFile : directoryFiles) {
+                entryFiles.add(directoryFile);
+            }
+        }
+        return entryFiles;
+    }
+
+    private static ByteBuffer createIOBuffer(int rowLength){
+        int rowsPerBuffer = Math.max(1, IO_BUFFER_BYTES / (rowLength * Double.BYTES));
+        return ByteBuffer.allocateDirect(rowsPerBuffer * rowLength * Double.BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    private static void gatherRow(double[][][] coefficients, int row, int numOfBands, double[] rowCoefficients){
+        for (int currColumn = 0; currColumn < coefficients.length; currColumn++) {
+            System.arraycopy(coefficients[currColumn][row], 0, rowCoefficients, currColumn * numOfBands, numOfBands);
+        }
+    }
+
+    private static void scatterRow(double[] rowCoefficients, double[][][] coefficients, int row, int numOfBands){
+        for (int currColumn = 0; currColumn < coefficients.length; currColumn++) {
+            System.arraycopy(rowCoefficients, currColumn * numOfBands, coefficients[currColumn][row], 0, numOfBands);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package HaarTransform;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+public class TransformResultCacheTest extends TestCase {
+
+    File cacheDirectory;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        cacheDirectory = Files.createTempDirectory("TransformResultCacheTest").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        File[] cachedFiles = cacheDirectory.listFiles();
+        if (cachedFiles != null) {
+            for (File cachedFile : cachedFiles) {
+                cachedFile.delete();
+            }
+        }
+        cacheDirectory.delete();
+        super.tearDown();
+    }
+
+    public void testHitReturnsTheCoefficientsOfTheMiss() throws Throwable {
+        TransformResultCache cache = TransformResultCache.open(cacheDirectory, Long.MAX_VALUE);
+        BufferedImage image = HaarTransformTest.createRandomImage(23, 17, BufferedImage.TYPE_3BYTE_BGR, 44);
+
+        HaarTransform uncached = new HaarTransform();
+        uncached.loadImage(image, "png");
+        uncached.performAllTransforms();
+
+        HaarTransform miss = new HaarTransform();
+        miss.loadImage(image, "png");
+        miss.performAllTransforms(cache);
+        assertEquals(1, listEntries().length);
+        assertCoefficientsEqual(uncached.getImagePixelArray(), miss.getImagePixelArray());
+
+        HaarTransform hit = new HaarTransform();
+        hit.loadImage(image, "png");
+        hit.performAllTransforms(cache);
+        assertEquals(1, listEntries().length);
+        assertCoefficientsEqual(uncached.getImagePixelArray(), hit.getImagePixelArray());
+
+        //A hit recovers like any transform, reloading the image on reset as its passes were never recorded
+        hit.performAllRecovers();
+        HaarTransformTest.assertPixelArrayEquals("recovered hit", image.getRaster(), hit.getImagePixelArray(), 0.0);
+        hit.resetImage();
+        HaarTransformTest.assertPixelArrayEquals("reset hit", image.getRaster(), hit.getImagePixelArray(), 0.0);
+    }
+
+    public void testHitIsReadFromTheEntry() throws Throwable {
+        TransformResultCache cache = TransformResultCache.open(cacheDirectory, Long.MAX_VALUE);
+        BufferedImage image = HaarTransformTest.createRandomImage(8, 8, BufferedImage.TYPE_BYTE_GRAY, 3);
+        HaarTransform transformer = new HaarTransform();
+        transformer.loadImage(image, "png");
+        transformer.performAllTransforms(cache);
+
+        //Replacing the entry shows the next transform reads it instead of performing the passes
+        String key = listEntries()[0].getName().replace(TransformResultCache.ENTRY_EXT, "");
+        double[][][] marked = createCoefficients(8, 8, 1, 1000.0);
+        cache.write(key, marked);
+
+        transformer.resetImage();
+        transformer.performAllTransforms(cache);
+        assertCoefficientsEqual(marked, transformer.getImagePixelArray());
+    }
+
+    public void testResetAfterAnEntryIsTruncatedReturnsTheImage() throws Throwable {
+        TransformResultCache cache = TransformResultCache.open(cacheDirectory, Long.MAX_VALUE);
+        BufferedImage image = HaarTransformTest.createRandomImage(512, 512, BufferedImage.TYPE_3BYTE_BGR, 44);
+        HaarTransform transformer = new HaarTransform();
+        transformer.loadImage(image, "png");
+        transformer.performAllTransforms(cache);
+        File entryFile = listEntries()[0];
+        String key = entryFile.getName().replace(TransformResultCache.ENTRY_EXT, "");
+        double[][][] transformed = transformer.getImagePixelArray();
+
+        //Truncating an entry while it is read fails the read part way, or makes it a miss when it comes first
+        for (int truncateDelayMillis = 0; truncateDelayMillis < 40; truncateDelayMillis += 2) {
+            //A transform and recover leave the image in place, but with passes recorded to undo on reset
+            transformer.resetImage();
+            transformer.performAllTransforms();
+            transformer.performAllRecovers();
+            cache.write(key, transformed);
+
+            long delayNanos = TimeUnit.MILLISECONDS.toNanos(truncateDelayMillis);
+            Thread truncator = new Thread(() -> {
+                LockSupport.parkNanos(delayNanos);
+                try (FileChannel entryChannel = FileChannel.open(entryFile.toPath(), StandardOpenOption.WRITE)) {
+                    entryChannel.truncate(entryChannel.size() / 2);
+                } catch (IOException ex) {
+                    //Replaced by the miss before it could be truncated
+                }
+            });
+            truncator.start();
+            try {
+                transformer.performAllTransforms(cache);
+            } catch (TransformException ex) {
+                //The read failed part way, leaving the transformed coefficients of the rows it got to
+            }
+            truncator.join();
+            transformer.resetImage();
+            HaarTransformTest.assertPixelArrayEquals("truncated after " + truncateDelayMillis + "ms", image.getRaster(),
+                    transformer.getImagePixelArray(), 0.0);
+        }
+    }
+
+    public void testKeyChangesWithEverySetting() throws Throwable {
+        TransformResultCache cache = TransformResultCache.open(cacheDirectory, Long.MAX_VALUE);
+        BufferedImage image = HaarTransformTest.createRandomImage(16, 12, BufferedImage.TYPE_3BYTE_BGR, 9);
+        BufferedImage otherImage = HaarTransformTest.createRandomImage(16, 12, BufferedImage.TYPE_3BYTE_BGR, 10);
+        BufferedImage otherSize = HaarTransformTest.createRandomImage(12, 16, BufferedImage.TYPE_3BYTE_BGR, 9);
+
+        transformWithCache(cache, image, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD, ColorTransform.NONE, 99);
+        transformWithCache(cache, otherImage, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD, ColorTransform.NONE, 99);
+        transformWithCache(cache, otherSize, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD, ColorTransform.NONE, 99);
+        transformWithCache(cache, image, WaveletFamily.CDF_5_3, DecompositionMode.NON_STANDARD, ColorTransform.NONE, 99);
+        transformWithCache(cache, image, WaveletFamily.HAAR, DecompositionMode.STANDARD, ColorTransform.NONE, 99);
+        transformWithCache(cache, image, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD, ColorTransform.YCOCG_R, 99);
+        transformWithCache(cache, image, WaveletFamily.HAAR, DecompositionMode.NON_STANDARD, ColorTransform.YCOCG_R, 1);
+        assertEquals(7, listEntries().length);
+
+        //The same image and settings again are a hit
+        transformWithCache(cache, image, WaveletFamily.HAAR, DecompositionMode.STANDARD, ColorTransform.NONE, 99);
+        assertEquals(7, listEntries().length);
+    }
+
+    public void testEntryOfAnotherSizeIsAMiss() throws Throwable {
+        TransformResultCache cache = TransformResultCache.open(cacheDirectory, Long.MAX_VALUE);
+        cache.write("key", createCoefficients(4, 4, 1, 1.0));
+        double[][][] coefficients = createCoefficients(4, 3, 1, 2.0);
+        assertFalse(cache.read("key", coefficients));
+        assertCoefficientsEqual(createCoefficients(4, 3, 1, 2.0), coefficients);
+        assertFalse(cache.read("missing", coefficients));
+    }
+
+    public void testWriteReplacesAnEntryAtomically() throws Throwable {
+        double[][][] first = createCoefficients(64, 64, 3, 1.0);
+        double[][][] second = createCoefficients(64, 64, 3, 2.0);
+        TransformResultCache writingCache = TransformResultCache.open(cacheDirectory, Long.MAX_VALUE);
+        writingCache.write("key", first);
+
+        //A second cache over the directory reads without waiting for the writer, as another process would
+        TransformResultCache readingCache = TransformResultCache.open(cacheDirectory, Long.MAX_VALUE);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> mixedRead = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            double[][][] read = createCoefficients(64, 64, 3, 0.0);
+            try {
+                while (writing.get()) {
+                    if (readingCache.read("key", read)) {
+                        double value = read[0][0][0];
+                        if ((value != 1.0 && value != 2.0) || !allEqual(read, value)) {
+                            mixedRead.set("Read a partly written entry starting with " + value);
+                        }
+                    }
+                }
+            } catch (TransformException ex) {
+                mixedRead.set(ex.getMessage());
+            }
+        });
+        reader.start();
+        for (int writeCount = 0; writeCount < 50; writeCount++) {
+            writingCache.write("key", (writeCount % 2 == 0) ? second : first);
+        }
+        writing.set(false);
+        reader.join();
+        assertNull(mixedRead.get(), mixedRead.get());
+
+        double[][][] read = createCoefficients(64, 64, 3, 0.0);
+        assertTrue(readingCache.read("key", read));
+        assertCoefficientsEqual(first, read);
+        //Nothing but the entry is left behind
+        assertEquals(1, cacheDirectory.listFiles().length);
+    }
+
+    public void testEvictsTheLeastRecentlyUsedEntries() throws Throwable {
+        long entryBytes = 8L * 8 * 1 * Double.BYTES;
+        TransformResultCache cache = TransformResultCache.open(cacheDirectory, 2 * entryBytes);
+        cache.write("first", createCoefficients(8, 8, 1, 1.0));
+        cache.write("second", createCoefficients(8, 8, 1, 2.0));
+        assertEquals(2 * entryBytes, cache.getCachedBytes());
+
+        //Set apart further than the resolution of any file system, then make the first entry the most recent use
+        long now = System.currentTimeMillis();
+        cache.getEntryFile("first").setLastModified(now - 20000);
+        cache.getEntryFile("second").setLastModified(now - 10000);
+        assertTrue(cache.read("first", createCoefficients(8, 8, 1, 0.0)));
+
+        cache.write("third", createCoefficients(8, 8, 1, 3.0));
+        assertTrue(cache.getEntryFile("first").exists());
+        assertFalse(cache.getEntryFile("second").exists());
+        assertTrue(cache.getEntryFile("third").exists());
+        assertTrue(cache.getCachedBytes() <= cache.getMaxBytes());
+
+        //An entry larger than the limit is still kept until the next write
+        TransformResultCache smallCache = TransformResultCache.open(cacheDirectory, entryBytes / 2);
+        smallCache.write("fourth", createCoefficients(8, 8, 1, 4.0));
+        assertEquals(1, listEntries().length);
+        assertTrue(smallCache.getEntryFile("fourth").exists());
+
+        smallCache.clear();
+        assertEquals(0, smallCache.getCachedBytes());
+    }
+
+    private void transformWithCache(TransformResultCache cache, BufferedImage image, WaveletFamily waveletFamily,
+                                    DecompositionMode decompositionMode, ColorTransform colorTransform,
+                                    int chromaLevels) throws TransformException {
+        HaarTransform transformer = HaarTransformTest.createTransformer(waveletFamily, decompositionMode);
+        transformer.setColorTransform(colorTransform);
+        transformer.setChromaLevels(chromaLevels);
+        transformer.loadImage(image, "png");
+        transformer.performAllTransforms(cache);
+    }
+
+    private File[] listEntries(){
+        return cacheDirectory.listFiles((dir, name) -> name.endsWith(TransformResultCache.ENTRY_EXT));
+    }
+
+    private static double[][][] createCoefficients(int columns, int rows, int bands, double value){
+        double[][][] coefficients = new double[columns][rows][bands];
+        for (int currColumn = 0; currColumn < columns; currColumn++) {
+            for (int currRow = 0; currRow < rows; currRow++) {
+                for (int bandIndex = 0; bandIndex < bands; bandIndex++) {
+                    coefficients[currColumn][currRow][bandIndex] = value;
+                }
+            }
+        }
+        return coefficients;
+    }
+
+    private static boolean allEqual(double[][][] coefficients, double value){
+        for (double[][] column : coefficients) {
+            for (double[] pixel : column) {
+                for (double coefficient : pixel) {
+                    if (coefficient != value) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void assertCoefficientsEqual(double[][][] expected, double[][][] actual){
+        assertEquals(expected.length, actual.length);
+        for (int currColumn = 0; currColumn < expected.length; currColumn++) {
+            assertEquals(expected[currColumn].length, actual[currColumn].length);
+            for (int currRow = 0; currRow < expected[currColumn].length; currRow++) {
+                for (int bandIndex = 0; bandIndex < expected[currColumn][currRow].length; bandIndex++) {
+                    assertEquals("at " + currColumn + "," + currRow, expected[currColumn][currRow][bandIndex],
+                            actual[currColumn][currRow][bandIndex], 0.0);
+                }
+            }
+        }
+    }
+}
@@ -46,7 +46,9 @@ public class VerticalRadioButtonPanel extends JPanel{
         c.anchor = GridBagConstraints.CENTER;
         c.fill = GridBagConstraints.BOTH;
 
-        for (int count = 0; count < numOfButtons; count++) {
+        //Buttons added later continue the numbering of the buttons already there
+        int firstCount = radioButtons.size();
+        for (int count = firstCount; count < firstCount + numOfButtons; count++) {
             JRadioButton theRButton = new JRadioButton(label + " " + count);
             theRButton.setBackground(backgroundColor);
             theRButton.setForeground(foregroundColor);
@@ -57,6 +59,10 @@ public class VerticalRadioButtonPanel extends JPanel{
         }
     }
 
+    public int getNumOfRadioButtons(){
+        return radioButtons.size();
+    }
+
     public void setItemListener(ItemListener listener){
         radioButtonListener = listener;
     }
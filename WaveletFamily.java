@@ -0,0 +1,33 @@
+package HaarTransform;
+
+/**
+ * The wavelet families HaarTransform can use for its row and column passes.
+ */
+public enum WaveletFamily {
+    HAAR,
+    /** Integer reversible, recovers integer images without loss */
+    CDF_5_3,
+    CDF_9_7,
+    DAUBECHIES_4;
+
+    /**
+     * @return Whether the passes of the family recover integer samples exactly, so a transform can
+     * be undone instead of reloading the image
+     */
+    boolean isIntegerReversible(){
+        return this == HAAR || this == CDF_5_3;
+    }
+
+    public WaveletFilter createFilter(){
+        switch (this) {
+            case CDF_5_3:
+                return new Cdf53Filter();
+            case CDF_9_7:
+                return new Cdf97Filter();
+            case DAUBECHIES_4:
+                return new Daubechies4Filter();
+            default:
+                return new HaarFilter();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package HaarTransform;
+
+/**
+ * <p>One dimensional wavelet step applied to every line of samples taking part in a row,
+ * column or temporal pass. After a forward step the first length/2 samples of the line hold
+ * the low pass (averaged) coefficients and the following length/2 samples hold the high pass
+ * (detail) coefficients. For odd lengths the last sample holds the encoded leftover sample,
+ * so the next level always works on the first length/2 samples of the line.
+ */
+public interface WaveletFilter {
+
+    /**
+     * Performs one forward step on the first length samples of the line
+     * @param line The samples to transform, overwritten with the low and high pass coefficients
+     * @param scratch Working storage at least length samples long
+     * @param length The number of samples of the line that take part in this step
+     */
+    void forward(double[] line, double[] scratch, int length);
+
+    /**
+     * Undoes one forward step on the first length samples of the line
+     * @param line The low and high pass coefficients, overwritten with the recovered samples
+     * @param scratch Working storage at least length samples long
+     * @param length The number of samples of the line that took part in the forward step
+     */
+    void inverse(double[] line, double[] scratch, int length);
+}